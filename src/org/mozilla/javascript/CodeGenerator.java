@@ -108,6 +108,15 @@ class CodeGenerator extends Icode {
         if (theFunction.isInStrictMode()) {
             itsData.isStrict = true;
         }
+        if (!theFunction.isGenerator()
+            && theFunction.getFunctionType() != FunctionNode.ARROW_FUNCTION)
+        {
+            // Lets TieredCompilation compile the function on its own
+            itsData.rawSourceStart = theFunction.getAbsolutePosition();
+            itsData.rawSourceEnd = itsData.rawSourceStart
+                                   + theFunction.getLength();
+            itsData.rawSourceLine = theFunction.getLineno();
+        }
 
         itsData.declaredAsVar = (theFunction.getParent() instanceof VariableInitializer);
 
@@ -359,9 +368,11 @@ class CodeGenerator extends Icode {
           case Token.IFNE :
             {
                 Node target = ((Jump)node).target;
-                visitExpression(child, 0);
-                addGoto(target, type);
-                stackChange(-1);
+                if (!visitVarCompare(child, target, type == Token.IFEQ)) {
+                    visitExpression(child, 0);
+                    addGoto(target, type);
+                    stackChange(-1);
+                }
             }
             break;
 
@@ -397,6 +408,9 @@ class CodeGenerator extends Icode {
           case Token.EXPR_VOID:
           case Token.EXPR_RESULT:
             updateLineNumber(node);
+            if (type == Token.EXPR_VOID && visitVarBinOp(child)) {
+                break;
+            }
             visitExpression(child, 0);
             addIcode((type == Token.EXPR_VOID) ? Icode_POP : Icode_POP_RESULT);
             stackChange(-1);
@@ -510,6 +524,131 @@ class CodeGenerator extends Icode {
         }
     }
 
+    /**
+     * Generate Icode_VAR_BINOP for an assignment of a binary operation to a
+     * variable whose value is not used, as in "x = y + 1;", if both operands
+     * are variables or small integers. The single instruction replaces the
+     * sequence GETVAR, GETVAR, op, SETVAR, POP and keeps numbers unboxed in
+     * the variable slots. Return false if the node does not have that form.
+     */
+    private boolean visitVarBinOp(Node node)
+    {
+        if (node.getType() != Token.SETVAR) {
+            return false;
+        }
+        Node nameNode = node.getFirstChild();
+        Node value = nameNode.getNext();
+        int op = value.getType();
+        switch (op) {
+          case Token.ADD:
+          case Token.SUB:
+          case Token.MUL:
+          case Token.DIV:
+          case Token.MOD:
+          case Token.BITAND:
+          case Token.BITOR:
+          case Token.BITXOR:
+          case Token.LSH:
+          case Token.RSH:
+          case Token.URSH:
+            break;
+          default:
+            return false;
+        }
+        Node lhs = value.getFirstChild();
+        Node rhs = lhs.getNext();
+        int dst = scriptOrFn.getIndexForNameNode(nameNode);
+        int a = getVarOperand(lhs);
+        int b = getVarOperand(rhs);
+        if (dst > 0xFF || a < 0 || b < 0) {
+            return false;
+        }
+        addIcode(Icode_VAR_BINOP);
+        addUint8(op);
+        addUint8(dst);
+        addUint8(getVarOperandKinds(lhs, rhs));
+        addUint8(a);
+        addUint8(b);
+        // Operands that are not numbers are evaluated on the stack
+        stackChange(2);
+        stackChange(-2);
+        return true;
+    }
+
+    /**
+     * Generate Icode_VAR_IFCMP for a conditional jump on a relational
+     * operator, as in "if (i < n)", if both operands are variables or small
+     * integers. Return false if the condition does not have that form.
+     */
+    private boolean visitVarCompare(Node cond, Node target, boolean jumpIfTrue)
+    {
+        int op = cond.getType();
+        switch (op) {
+          case Token.LT:
+          case Token.LE:
+          case Token.GT:
+          case Token.GE:
+            break;
+          default:
+            return false;
+        }
+        Node lhs = cond.getFirstChild();
+        Node rhs = lhs.getNext();
+        int a = getVarOperand(lhs);
+        int b = getVarOperand(rhs);
+        if (a < 0 || b < 0) {
+            return false;
+        }
+        int kinds = getVarOperandKinds(lhs, rhs);
+        if (jumpIfTrue) {
+            kinds |= VAR_OP_JUMP_IF_TRUE;
+        }
+        addGoto(target, Icode_VAR_IFCMP);
+        addUint8(op);
+        addUint8(kinds);
+        addUint8(a);
+        addUint8(b);
+        stackChange(2);
+        stackChange(-2);
+        return true;
+    }
+
+    /**
+     * Return the operand byte of Icode_VAR_BINOP or Icode_VAR_IFCMP for
+     * "node", or -1 if it is neither a variable with an index below 256 nor
+     * an integer that fits into a signed byte.
+     */
+    private int getVarOperand(Node node)
+    {
+        if (node.getType() == Token.GETVAR) {
+            int index = scriptOrFn.getIndexForNameNode(node);
+            return index <= 0xFF ? index : -1;
+        }
+        if (node.getType() == Token.NUMBER) {
+            double num = node.getDouble();
+            int inum = (int)num;
+            // Check for negative zero
+            if (inum == num && (byte)inum == inum
+                && !(inum == 0 && 1.0 / num < 0.0))
+            {
+                return inum & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    private static int getVarOperandKinds(Node lhs, Node rhs)
+    {
+        int kinds = 0;
+        if (lhs.getType() == Token.NUMBER) {
+            kinds |= VAR_OP_LHS_CONST;
+        }
+        if (rhs.getType() == Token.NUMBER) {
+            kinds |= VAR_OP_RHS_CONST;
+        }
+        return kinds;
+    }
+
     private void visitExpression(Node node, int contextFlags)
     {
         int type = node.getType();
@@ -25,6 +25,8 @@ public class CompilerEnvirons
         strictMode = false;
         warningAsError = false;
         generateObserverCount = false;
+        generateDynamicCallSites = false;
+        generatePropertyCaches = false;
         allowSharpComments = false;
     }
 
@@ -51,6 +53,11 @@ public class CompilerEnvirons
 
         // Observer code generation in compiled code :
         generateObserverCount = cx.generateObserverCount;
+
+        generateDynamicCallSites
+            = cx.hasFeature(Context.FEATURE_DYNAMIC_CALL_SITES);
+        generatePropertyCaches
+            = cx.hasFeature(Context.FEATURE_SHAPED_OBJECTS);
     }
 
     public final ErrorReporter getErrorReporter()
@@ -195,6 +202,45 @@ public class CompilerEnvirons
         this.generateObserverCount = generateObserverCount;
     }
 
+    /**
+     * @return true iff compiled code will make calls through invokedynamic
+     * call sites
+     */
+    public boolean isGenerateDynamicCallSites() {
+        return generateDynamicCallSites;
+    }
+
+    /**
+     * Turn on or off the use of invokedynamic call sites for function calls
+     * in JVM byte code. Has no effect in interpretive mode.
+     * @param generateDynamicCallSites if true, generated code will link each
+     * call site directly to the function it calls.
+     * @see Context#FEATURE_DYNAMIC_CALL_SITES
+     */
+    public void setGenerateDynamicCallSites(boolean generateDynamicCallSites) {
+        this.generateDynamicCallSites = generateDynamicCallSites;
+    }
+
+    /**
+     * @return true iff compiled code will cache the properties it looks up
+     * by name
+     */
+    public boolean isGeneratePropertyCaches() {
+        return generatePropertyCaches;
+    }
+
+    /**
+     * Turn on or off the inline caches for "obj.name" accesses in JVM byte
+     * code. They only hit for objects with shapes, so they are on when
+     * {@link Context#FEATURE_SHAPED_OBJECTS} is. Has no effect in
+     * interpretive mode.
+     * @param generatePropertyCaches if true, generated code will give each
+     * property access its own cache.
+     */
+    public void setGeneratePropertyCaches(boolean generatePropertyCaches) {
+        this.generatePropertyCaches = generatePropertyCaches;
+    }
+
     public boolean isRecordingComments() {
         return recordingComments;
     }
@@ -285,6 +331,8 @@ public class CompilerEnvirons
     private boolean strictMode;
     private boolean warningAsError;
     private boolean generateObserverCount;
+    private boolean generateDynamicCallSites;
+    private boolean generatePropertyCaches;
     private boolean recordingComments;
     private boolean recordingLocalJsDocComments;
     private boolean recoverFromErrors;
@@ -0,0 +1,346 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.mozilla.javascript.ScriptableObject.Slot;
+import org.mozilla.javascript.ScriptableObject.SlotAccess;
+
+/**
+ * A SlotMap whose "query" may run at the same time as modifications in other
+ * threads, without any locking. Only one thread at a time may modify the map,
+ * and iterating over it must not overlap with modifications;
+ * ThreadSafeSlotMapContainer ensures both with its lock.
+ *
+ * Unlike EmbeddedSlotMap, the hash table does not link the slots themselves but
+ * immutable entries. A modification replaces the entries of a bucket, or the
+ * whole table when it grows, and publishes them with a volatile write, so a
+ * reader always walks a consistent chain. The definition order is kept in the
+ * orderedNext links of the slots, as in EmbeddedSlotMap.
+ *
+ * Long chains of colliding keys make the hash table slow, so a large map
+ * moves its slots to a ConcurrentHashMap, which is resistant to collisions
+ * and may also be read without locking.
+ */
+class ConcurrentSlotMap
+    implements SlotMap
+{
+    private static final class Entry
+    {
+        final Slot slot;
+        final Entry next;
+
+        Entry(Slot slot, Entry next)
+        {
+            this.slot = slot;
+            this.next = next;
+        }
+    }
+
+    private static final class Iter
+        implements Iterator<Slot>
+    {
+        private Slot next;
+
+        Iter(Slot slot)
+        {
+            next = slot;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @Override
+        public Slot next()
+        {
+            Slot ret = next;
+            next = next.orderedNext;
+            return ret;
+        }
+    }
+
+    // initial table size, must be a power of 2
+    private static final int INITIAL_TABLE_SIZE = 4;
+
+    private volatile AtomicReferenceArray<Entry> table;
+    private volatile int count;
+
+    // replaces the table once the map has switched to a ConcurrentHashMap
+    private volatile ConcurrentHashMap<Object, Slot> hashMap;
+
+    // gateways into the definition-order linked list of slots
+    private Slot firstAdded;
+    private Slot lastAdded;
+
+    @Override
+    public int size()
+    {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    @Override
+    public Iterator<Slot> iterator()
+    {
+        return new Iter(firstAdded);
+    }
+
+    @Override
+    public Slot query(Object key, int index)
+    {
+        AtomicReferenceArray<Entry> t = table;
+        if (t == null) {
+            // The hash map is set before the table is cleared
+            ConcurrentHashMap<Object, Slot> h = hashMap;
+            return h == null ? null : h.get(hashKey(key, index));
+        }
+        final int indexOrHash = (key != null ? key.hashCode() : index);
+        for (Entry e = t.get(indexOrHash & (t.length() - 1));
+             e != null;
+             e = e.next) {
+            Slot slot = e.slot;
+            Object skey = slot.name;
+            if (indexOrHash == slot.indexOrHash &&
+                (skey == key || (key != null && key.equals(skey)))) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the slot that "get" would return without modifying the map, or
+     * null if "get" needs to add or replace a slot. Like "query", this may
+     * run at the same time as modifications.
+     */
+    Slot getExisting(Object key, int index, SlotAccess accessType)
+    {
+        Slot slot = query(key, index);
+        return isUsable(slot, accessType) ? slot : null;
+    }
+
+    /**
+     * Return true if "get" returns "slot", the slot currently in the map,
+     * for "accessType".
+     */
+    private static boolean isUsable(Slot slot, SlotAccess accessType)
+    {
+        switch (accessType) {
+            case MODIFY:
+            case MODIFY_CONST:
+                return slot != null;
+            case MODIFY_GETTER_SETTER:
+                return slot instanceof ScriptableObject.GetterSlot;
+            case CONVERT_ACCESSOR_TO_DATA:
+                return !(slot instanceof ScriptableObject.GetterSlot);
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public Slot get(Object key, int index, SlotAccess accessType)
+    {
+        Slot slot = query(key, index);
+        if (isUsable(slot, accessType)) {
+            return slot;
+        }
+
+        final int indexOrHash = (key != null ? key.hashCode() : index);
+        if (slot != null) {
+            // Redefine a value as a getter slot or the other way around
+            Slot newSlot;
+            if (accessType == SlotAccess.MODIFY_GETTER_SETTER) {
+                newSlot = new ScriptableObject.GetterSlot(key, indexOrHash,
+                                                          slot.getAttributes());
+            } else {
+                newSlot = new Slot(key, indexOrHash, slot.getAttributes());
+            }
+            newSlot.value = slot.value;
+            replaceSlot(slot, newSlot);
+            return newSlot;
+        }
+
+        Slot newSlot = (accessType == SlotAccess.MODIFY_GETTER_SETTER
+                        ? new ScriptableObject.GetterSlot(key, indexOrHash, 0)
+                        : new Slot(key, indexOrHash, 0));
+        if (accessType == SlotAccess.MODIFY_CONST) {
+            newSlot.setAttributes(ScriptableObject.CONST);
+        }
+        addSlot(newSlot);
+        return newSlot;
+    }
+
+    @Override
+    public void addSlot(Slot newSlot)
+    {
+        ConcurrentHashMap<Object, Slot> h = hashMap;
+        AtomicReferenceArray<Entry> t = table;
+        if (h != null) {
+            h.put(hashKey(newSlot.name, newSlot.indexOrHash), newSlot);
+        } else if (t == null) {
+            t = new AtomicReferenceArray<Entry>(INITIAL_TABLE_SIZE);
+            table = t;
+        } else if (4 * (count + 1) > 3 * t.length()) {
+            t = grow(t);
+        }
+        // add new slot to linked list
+        if (lastAdded != null) {
+            lastAdded.orderedNext = newSlot;
+        }
+        if (firstAdded == null) {
+            firstAdded = newSlot;
+        }
+        lastAdded = newSlot;
+
+        if (h == null) {
+            int pos = newSlot.indexOrHash & (t.length() - 1);
+            t.set(pos, new Entry(newSlot, t.get(pos)));
+        }
+        count++;
+    }
+
+    @Override
+    public void remove(Object key, int index)
+    {
+        Slot slot = query(key, index);
+        if (slot == null) {
+            return;
+        }
+        // non-configurable
+        if ((slot.getAttributes() & ScriptableObject.PERMANENT) != 0) {
+            Context cx = Context.getContext();
+            if (cx.isStrictMode()) {
+                throw ScriptRuntime.typeError1("msg.delete.property.with.configurable.false", key);
+            }
+            return;
+        }
+        replaceEntry(slot, null);
+        count--;
+
+        // remove from ordered list
+        Slot prev = null;
+        if (slot == firstAdded) {
+            firstAdded = slot.orderedNext;
+        } else {
+            prev = firstAdded;
+            while (prev.orderedNext != slot) {
+                prev = prev.orderedNext;
+            }
+            prev.orderedNext = slot.orderedNext;
+        }
+        if (slot == lastAdded) {
+            lastAdded = prev;
+        }
+    }
+
+    private void replaceSlot(Slot slot, Slot newSlot)
+    {
+        // Replace new slot in linked list, keeping same order
+        newSlot.orderedNext = slot.orderedNext;
+        if (slot == firstAdded) {
+            firstAdded = newSlot;
+        } else {
+            Slot ps = firstAdded;
+            while ((ps != null) && (ps.orderedNext != slot)) {
+                ps = ps.orderedNext;
+            }
+            if (ps != null) {
+                ps.orderedNext = newSlot;
+            }
+        }
+        if (slot == lastAdded) {
+            lastAdded = newSlot;
+        }
+        replaceEntry(slot, newSlot);
+    }
+
+    /**
+     * Publish a new chain for the bucket of "slot", in which "slot" is
+     * replaced with "newSlot", or left out if newSlot is null.
+     */
+    private void replaceEntry(Slot slot, Slot newSlot)
+    {
+        ConcurrentHashMap<Object, Slot> h = hashMap;
+        if (h != null) {
+            Object key = hashKey(slot.name, slot.indexOrHash);
+            if (newSlot != null) {
+                h.put(key, newSlot);
+            } else {
+                h.remove(key);
+            }
+            return;
+        }
+        AtomicReferenceArray<Entry> t = table;
+        int pos = slot.indexOrHash & (t.length() - 1);
+        Entry head = t.get(pos);
+        Entry found = head;
+        while (found.slot != slot) {
+            found = found.next;
+        }
+        Entry chain = found.next;
+        if (newSlot != null) {
+            chain = new Entry(newSlot, chain);
+        }
+        // Copy the entries in front of the one that is replaced
+        for (Entry e = head; e != found; e = e.next) {
+            chain = new Entry(e.slot, chain);
+        }
+        t.set(pos, chain);
+    }
+
+    /**
+     * Move the slots from the hash table to a ConcurrentHashMap, unless that
+     * was already done. Readers keep using the table until the map is
+     * complete.
+     */
+    void switchToHashMap()
+    {
+        if (hashMap != null) {
+            return;
+        }
+        ConcurrentHashMap<Object, Slot> h =
+            new ConcurrentHashMap<Object, Slot>(2 * count);
+        for (Slot s = firstAdded; s != null; s = s.orderedNext) {
+            h.put(hashKey(s.name, s.indexOrHash), s);
+        }
+        hashMap = h;
+        table = null;
+    }
+
+    private static Object hashKey(Object key, int index)
+    {
+        return key == null ? String.valueOf(index) : key;
+    }
+
+    private AtomicReferenceArray<Entry> grow(AtomicReferenceArray<Entry> t)
+    {
+        // table size must be a power of 2 -- always grow by x2!
+        int length = t.length() * 2;
+        Entry[] buckets = new Entry[length];
+        for (int i = 0; i < t.length(); i++) {
+            for (Entry e = t.get(i); e != null; e = e.next) {
+                int pos = e.slot.indexOrHash & (length - 1);
+                buckets[pos] = new Entry(e.slot, buckets[pos]);
+            }
+        }
+        AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<Entry>(buckets);
+        table = newTable;
+        return newTable;
+    }
+}
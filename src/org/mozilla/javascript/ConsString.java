@@ -7,7 +7,8 @@
 package org.mozilla.javascript;
 
 import java.io.Serializable;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>This class represents a string composed of two components, each of which
@@ -16,8 +17,25 @@ import java.util.ArrayDeque;
  * <p>This string representation is optimized for concatenation using the "+"
  * operator. Instead of immediately copying both components to a new character
  * array, ConsString keeps references to the original components and only
- * converts them to a String if either toString() is called or a certain depth
- * level is reached.</p>
+ * converts them to a String when toString() is called.</p>
+ *
+ * <p>The components form a rope that is kept balanced as it is built: when
+ * a string is appended to a ConsString whose right component is no deeper
+ * than it, the two are joined first, like the digits of a binary counter.
+ * Strings built by appending or prepending pieces in a loop thus have a
+ * depth that is logarithmic in the number of pieces, and short pieces are
+ * copied into one string instead of being linked. Characters and
+ * subsequences are read from the components without flattening the rope,
+ * and the component that was last read from is remembered, so that
+ * reading the characters in order is as fast as from a String. Ropes that
+ * the above does not keep balanced, such as those built by wrapping a
+ * string or by alternately appending and prepending to it, are rebuilt
+ * from their components once their depth exceeds twice the logarithm of
+ * their length, so the depth is always logarithmic.</p>
+ *
+ * <p>No locks are taken. Once flattened, the components are dropped and the
+ * String is kept instead; threads that flatten the same ConsString at once
+ * compute equal Strings.</p>
  *
  * <p>Note that instances of this class are only immutable if both parts are
  * immutable, i.e. either Strings or ConsStrings that are ultimately composed
@@ -29,59 +47,380 @@ public class ConsString implements CharSequence, Serializable {
 
     private static final long serialVersionUID = -8432806714471372570L;
 
-    private CharSequence left, right;
+    // Strings up to this length are copied rather than linked
+    private static final int MERGE_LENGTH = 32;
+
+    // Ropes deeper than 2 * log2(length) + DEPTH_SLACK are rebalanced
+    private static final int DEPTH_SLACK = 8;
+
+    // When a rope is rebalanced, runs of components shorter than half of
+    // this are copied into Strings of up to this length
+    private static final int CHUNK_LENGTH = 1024;
+
+    // The components, which are cleared once flat is set
+    private volatile CharSequence left, right;
+    private volatile String flat;
     private final int length;
-    private boolean isFlat;
+    // The number of ConsStrings on the longest path to a component that is
+    // not one, or 0 once flat is set
+    private final int depth;
+
+    // The component that charAt() last read from
+    private transient Chunk chunk;
 
     public ConsString(CharSequence str1, CharSequence str2) {
-        left = str1;
-        right = str2;
-        length = left.length() + right.length();
-        isFlat = false;
+        CharSequence l = str1;
+        CharSequence r = str2;
+        length = l.length() + r.length();
+        if (l instanceof String && r instanceof String && length <= MERGE_LENGTH) {
+            flat = ((String) l).concat((String) r);
+            depth = 0;
+            return;
+        }
+        // Appending: (a + b) + r is built as a + (b + r) while the left
+        // side is the deeper one and b is no deeper than r
+        int dl = depthOf(l);
+        int dr = depthOf(r);
+        ConsString c;
+        while (dl > dr && (c = unflattened(l)) != null) {
+            CharSequence cl = c.left;
+            CharSequence cr = c.right;
+            if (cl == null || cr == null || depthOf(cr) > dr) {
+                // Flattened meanwhile, or balanced enough
+                break;
+            }
+            r = join(cr, r);
+            l = cl;
+            dl = depthOf(l);
+            dr = depthOf(r);
+        }
+        // Prepending: l + (a + b) is built as (l + a) + b in the same way
+        while (dr > dl && (c = unflattened(r)) != null) {
+            CharSequence cl = c.left;
+            CharSequence cr = c.right;
+            if (cl == null || cr == null || depthOf(cl) > dl) {
+                break;
+            }
+            l = join(l, cl);
+            r = cr;
+            dl = depthOf(l);
+            dr = depthOf(r);
+        }
+        int d = 1 + Math.max(dl, dr);
+        if (d > maxDepth(length)) {
+            // Wrapping a string, or concatenating at alternate ends, is not
+            // balanced by the above, so rebuild the rope from its leaves
+            List<CharSequence> leaves = leaves(l, r, d);
+            if (leaves.size() <= 1) {
+                flat = leaves.isEmpty() ? "" : leaves.get(0).toString();
+                depth = 0;
+                return;
+            }
+            int mid = leaves.size() / 2;
+            l = balance(leaves, 0, mid);
+            r = balance(leaves, mid, leaves.size());
+            d = 1 + Math.max(depthOf(l), depthOf(r));
+        }
+        left = l;
+        right = r;
+        depth = d;
+    }
+
+    private ConsString(CharSequence left, CharSequence right, int depth) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+        this.depth = depth;
+    }
+
+    /**
+     * Return the concatenation of l and r, without balancing it.
+     */
+    private static CharSequence join(CharSequence l, CharSequence r) {
+        if (l instanceof String && r instanceof String
+            && l.length() + r.length() <= MERGE_LENGTH)
+        {
+            return ((String) l).concat((String) r);
+        }
+        return new ConsString(l, r, 1 + Math.max(depthOf(l), depthOf(r)));
+    }
+
+    private static int maxDepth(int length) {
+        return 2 * (31 - Integer.numberOfLeadingZeros(length)) + DEPTH_SLACK;
+    }
+
+    /**
+     * Return the components of l + r that are not ConsStrings, in order,
+     * where adjacent short ones are copied into one String. depth is the
+     * depth of l + r.
+     */
+    private static List<CharSequence> leaves(CharSequence l, CharSequence r,
+                                             int depth)
+    {
+        List<CharSequence> leaves = new ArrayList<CharSequence>();
+        StringBuilder run = new StringBuilder();
+        CharSequence[] pending = new CharSequence[depth];
+        int top = 0;
+        pending[top++] = r;
+        CharSequence node = l;
+        for (;;) {
+            ConsString c;
+            while ((c = unflattened(node)) != null) {
+                CharSequence cl = c.left;
+                CharSequence cr = c.right;
+                if (cl == null || cr == null) {
+                    node = c.flat;
+                    break;
+                }
+                pending[top++] = cr;
+                node = cl;
+            }
+            if (node instanceof ConsString) {
+                node = ((ConsString) node).flat;
+            }
+            int n = node.length();
+            if (n >= CHUNK_LENGTH / 2) {
+                endRun(run, leaves);
+                leaves.add(node);
+            } else if (n > 0) {
+                if (run.length() + n > CHUNK_LENGTH) {
+                    endRun(run, leaves);
+                }
+                run.append(node);
+            }
+            if (top == 0) {
+                break;
+            }
+            node = pending[--top];
+        }
+        endRun(run, leaves);
+        return leaves;
+    }
+
+    private static void endRun(StringBuilder run, List<CharSequence> leaves) {
+        if (run.length() > 0) {
+            leaves.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Return the concatenation of the leaves from begin up to end, as a
+     * tree of the least depth.
+     */
+    private static CharSequence balance(List<CharSequence> leaves, int begin,
+                                        int end)
+    {
+        if (end - begin == 1) {
+            return leaves.get(begin);
+        }
+        int mid = (begin + end) >>> 1;
+        CharSequence l = balance(leaves, begin, mid);
+        CharSequence r = balance(leaves, mid, end);
+        return new ConsString(l, r, 1 + Math.max(depthOf(l), depthOf(r)));
+    }
+
+    private static ConsString unflattened(CharSequence s) {
+        if (s instanceof ConsString) {
+            ConsString c = (ConsString) s;
+            if (c.flat == null) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private static int depthOf(CharSequence s) {
+        if (s instanceof ConsString) {
+            ConsString c = (ConsString) s;
+            return c.flat == null ? c.depth : 0;
+        }
+        return 0;
     }
 
     // Replace with string representation when serializing
     private Object writeReplace() {
         return this.toString();
     }
-    
+
     @Override
     public String toString() {
-        return isFlat ? (String)left : flatten();
-    }
-
-    private synchronized String flatten() {
-        if (!isFlat) {
-            final char[] chars = new char[length];
-            int charPos = length;
-
-            ArrayDeque<CharSequence> stack = new ArrayDeque<CharSequence>();
-            stack.addFirst(left);
-
-            CharSequence next = right;
-            do {
-                if (next instanceof ConsString) {
-                    ConsString casted = (ConsString) next;
-                    if (casted.isFlat) {
-                        next = casted.left;
-                    } else {
-                        stack.addFirst(casted.left);
-                        next = casted.right;
-                        continue;
+        String s = flat;
+        return s != null ? s : flatten();
+    }
+
+    private String flatten() {
+        char[] chars = new char[length];
+        getChars(0, length, chars, 0);
+        String s = new String(chars);
+        flat = s;
+        left = null;
+        right = null;
+        chunk = null;
+        return s;
+    }
+
+    /**
+     * Copy the characters from srcBegin up to srcEnd into dst at dstBegin,
+     * like {@link String#getChars(int, int, char[], int)}, without
+     * flattening this string.
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcBegin < 0 || srcBegin > srcEnd || srcEnd > length) {
+            throw new StringIndexOutOfBoundsException(
+                "begin " + srcBegin + ", end " + srcEnd + ", length " + length);
+        }
+        // The right components that are still to be copied, with their
+        // starts. There are at most depth of them.
+        CharSequence[] pending = null;
+        int[] pendingStarts = null;
+        int top = 0;
+
+        CharSequence node = this;
+        int start = 0;
+        for (;;) {
+            // Go down to the leftmost component in the range
+            ConsString c;
+            while ((c = unflattened(node)) != null) {
+                CharSequence l = c.left;
+                CharSequence r = c.right;
+                if (l == null || r == null) {
+                    node = c.flat;
+                    break;
+                }
+                int mid = start + l.length();
+                if (srcEnd <= mid) {
+                    node = l;
+                } else if (srcBegin >= mid) {
+                    node = r;
+                    start = mid;
+                } else {
+                    if (pending == null) {
+                        pending = new CharSequence[c.depth];
+                        pendingStarts = new int[c.depth];
                     }
+                    pending[top] = r;
+                    pendingStarts[top++] = mid;
+                    node = l;
+                }
+            }
+            if (node instanceof ConsString) {
+                node = ((ConsString) node).flat;
+            }
+            int from = Math.max(srcBegin, start);
+            int to = Math.min(srcEnd, start + node.length());
+            if (node instanceof String) {
+                ((String) node).getChars(from - start, to - start, dst,
+                                         dstBegin + from - srcBegin);
+            } else {
+                for (int i = from; i < to; i++) {
+                    dst[dstBegin + i - srcBegin] = node.charAt(i - start);
                 }
+            }
+            if (top == 0) {
+                return;
+            }
+            node = pending[--top];
+            start = pendingStarts[top];
+        }
+    }
 
-                final String str = (String) next;
-                charPos -= str.length();
-                str.getChars(0, str.length(), chars, charPos);
-                next = stack.isEmpty() ? null : stack.removeFirst();
-            } while (next != null);
+    /**
+     * Like {@link String#indexOf(String, int)}, without flattening this
+     * string. Each component is searched with String.indexOf; only where
+     * str would span two of them are the characters compared one by one.
+     */
+    public int indexOf(String str, int fromIndex) {
+        String s = flat;
+        if (s != null) {
+            return s.indexOf(str, fromIndex);
+        }
+        int n = str.length();
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex > length - n) {
+            return n == 0 ? length : -1;
+        }
+        if (n == 0) {
+            return fromIndex;
+        }
+        // The right components that are still to be searched, with their
+        // starts. There are at most depth of them.
+        CharSequence[] pending = null;
+        int[] pendingStarts = null;
+        int top = 0;
+
+        CharSequence node = this;
+        int start = 0;
+        for (;;) {
+            // Go down to the leftmost component that ends after fromIndex
+            ConsString c;
+            while ((c = unflattened(node)) != null) {
+                CharSequence l = c.left;
+                CharSequence r = c.right;
+                if (l == null || r == null) {
+                    node = c.flat;
+                    break;
+                }
+                int mid = start + l.length();
+                if (fromIndex >= mid) {
+                    node = r;
+                    start = mid;
+                } else {
+                    if (pending == null) {
+                        pending = new CharSequence[c.depth];
+                        pendingStarts = new int[c.depth];
+                    }
+                    pending[top] = r;
+                    pendingStarts[top++] = mid;
+                    node = l;
+                }
+            }
+            if (node instanceof ConsString) {
+                node = ((ConsString) node).flat;
+            }
+            int end = start + node.length();
+            int from = Math.max(fromIndex, start);
+            int index = -1;
+            if (node instanceof String) {
+                index = ((String) node).indexOf(str, from - start);
+                from = Math.max(from, end - n + 1);
+            } else if (node instanceof SlicedString) {
+                index = ((SlicedString) node).indexOf(str, from - start);
+                from = Math.max(from, end - n + 1);
+            }
+            if (index >= 0) {
+                return start + index;
+            }
+            for (int i = from; i < end && i <= length - n; i++) {
+                // Compare the part in this component first
+                int k = 0;
+                while (i + k < end && node.charAt(i - start + k) == str.charAt(k)) {
+                    k++;
+                }
+                if (i + k == end && regionMatches(end, str, k)) {
+                    return i;
+                }
+            }
+            if (top == 0) {
+                return -1;
+            }
+            node = pending[--top];
+            start = pendingStarts[top];
+        }
+    }
 
-            left = new String(chars);
-            right = "";
-            isFlat = true;
+    /**
+     * Whether the characters from offset on are those of str from k on.
+     */
+    private boolean regionMatches(int offset, String str, int k) {
+        for (int i = offset; k < str.length(); i++, k++) {
+            if (charAt(i) != str.charAt(k)) {
+                return false;
+            }
         }
-        return (String)left;
+        return true;
     }
 
     @Override
@@ -91,13 +430,97 @@ public class ConsString implements CharSequence, Serializable {
 
     @Override
     public char charAt(int index) {
-        String str = isFlat ? (String)left : flatten();
-        return str.charAt(index);
+        String s = flat;
+        if (s != null) {
+            return s.charAt(index);
+        }
+        Chunk last = chunk;
+        if (last != null && index >= last.start && index < last.end) {
+            return last.leaf.charAt(index - last.start);
+        }
+        return findChar(index);
+    }
+
+    private char findChar(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        CharSequence node = this;
+        int start = 0;
+        ConsString c;
+        while ((c = unflattened(node)) != null) {
+            CharSequence l = c.left;
+            CharSequence r = c.right;
+            if (l == null || r == null) {
+                node = c.flat;
+                break;
+            }
+            int mid = start + l.length();
+            if (index < mid) {
+                node = l;
+            } else {
+                node = r;
+                start = mid;
+            }
+        }
+        if (node instanceof ConsString) {
+            node = ((ConsString) node).flat;
+        }
+        chunk = new Chunk(node, start);
+        return node.charAt(index - start);
     }
 
     @Override
     public CharSequence subSequence(int start, int end) {
-        String str = isFlat ? (String)left : flatten();
-        return str.substring(start, end);
+        String s = flat;
+        if (s != null) {
+            return s.substring(start, end);
+        }
+        if (start < 0 || start > end || end > length) {
+            throw new StringIndexOutOfBoundsException(
+                "begin " + start + ", end " + end + ", length " + length);
+        }
+        // Take the subsequence of a single component if it holds all of it
+        CharSequence node = this;
+        int offset = 0;
+        ConsString c;
+        while ((c = unflattened(node)) != null) {
+            CharSequence l = c.left;
+            CharSequence r = c.right;
+            if (l == null || r == null) {
+                node = c.flat;
+                break;
+            }
+            int mid = offset + l.length();
+            if (end <= mid) {
+                node = l;
+            } else if (start >= mid) {
+                node = r;
+                offset = mid;
+            } else {
+                char[] chars = new char[end - start];
+                c.getChars(start - offset, end - offset, chars, 0);
+                return new String(chars);
+            }
+        }
+        if (node instanceof ConsString) {
+            node = ((ConsString) node).flat;
+        }
+        return node.subSequence(start - offset, end - offset).toString();
+    }
+
+    /**
+     * A component of a ConsString that is not one, and where it starts.
+     */
+    private static final class Chunk {
+        final CharSequence leaf;
+        final int start;
+        final int end;
+
+        Chunk(CharSequence leaf, int start) {
+            this.leaf = leaf;
+            this.start = start;
+            this.end = start + leaf.length();
+        }
     }
 }
@@ -353,6 +353,51 @@ public class Context
      * @since 1.7 Release 12
      */
     public static final int FEATURE_ENABLE_XML_SECURE_PARSING = 20;
+
+    /**
+     * If set, then new objects store their properties using shared property shapes
+     * ("hidden classes"): objects that receive the same properties in the same order
+     * share one immutable description of their property names and keep only an array
+     * of values. An object falls back to a regular property map as soon as one of its
+     * properties is deleted, gets attributes, or is given a getter or setter.
+     * This reduces memory use when many objects with the same layout are created.
+     * It is ignored if {@link #FEATURE_THREAD_SAFE_OBJECTS} is set. The default is false.
+     * @since 1.7 Release 12
+     */
+    public static final int FEATURE_SHAPED_OBJECTS = 21;
+
+    /**
+     * If set, then code compiled by the optimizer (optimization level 0 or higher)
+     * makes calls through invokedynamic call sites instead of the generic
+     * OptRuntime.call methods. Each call site links directly to the function it
+     * calls, guarded on the identity of that function (or on its class, for closures
+     * of the same code), so the JVM can inline the call. The feature affects
+     * compilation only; scripts compiled before it is changed keep the call sites
+     * they were compiled with. The default is false.
+     * @since 1.7 Release 12
+     */
+    public static final int FEATURE_DYNAMIC_CALL_SITES = 22;
+
+    /**
+     * If set, then regular expressions that are executed often are compiled to
+     * Java bytecode. A regular expression is interpreted until it has been executed
+     * a number of times, then it is compiled once and later executions run the
+     * generated class. Regular expressions that use features the compiler does not
+     * support keep being interpreted. The default is false.
+     * @since 1.7 Release 12
+     */
+    public static final int FEATURE_COMPILED_REGEXP = 23;
+
+    /**
+     * If set, then a regular expression that backtracks too much on its input
+     * and can not be switched to the linear-time automaton, because it uses
+     * back references or lookahead, fails with an error instead of going on.
+     * This bounds the time a script can spend in one match. Otherwise such a
+     * regular expression keeps backtracking until it is done. The default is
+     * false.
+     * @since 1.7 Release 12
+     */
+    public static final int FEATURE_REGEXP_BACKTRACK_LIMIT = 24;
     
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty   = "error reporter";
@@ -2518,24 +2563,69 @@ public class Context
             compilationErrorReporter = compilerEnv.getErrorReporter();
         }
 
-        ScriptNode tree = parse(sourceString, sourceName, lineno,
-                                    compilerEnv, compilationErrorReporter, returnFunction);
+        // The caches are only used with the default compilers, and not
+        // for debugging, which needs the parse tree
+        ScriptCache scriptCache = null;
+        ScriptCache.Key scriptKey = null;
+        ScriptFileCache fileCache = null;
+        String fileKey = null;
+        Object bytecode = null;
+        if (compiler == null && debugger == null) {
+            scriptCache = returnFunction ? null : factory.getScriptCache();
+            if (scriptCache != null) {
+                scriptKey = new ScriptCache.Key(this, compilerEnv, sourceString,
+                                                sourceName, lineno, securityDomain);
+                Script script = scriptCache.get(scriptKey);
+                if (script != null) {
+                    return script;
+                }
+            }
+            fileCache = factory.getScriptFileCache();
+            if (fileCache != null) {
+                fileKey = ScriptFileCache.getKey(this, compilerEnv, sourceString,
+                                                 sourceName, lineno, returnFunction);
+                bytecode = fileCache.load(fileKey);
+            }
+        }
 
-        Object bytecode;
-        try {
-            if (compiler == null) {
+        if (bytecode != null) {
+            if (bytecode instanceof InterpreterData) {
+                Interpreter interpreter = new Interpreter();
+                interpreter.itsData = (InterpreterData) bytecode;
+                compiler = interpreter;
+            } else {
                 compiler = createCompiler();
             }
+        } else {
+            ScriptNode tree = parse(sourceString, sourceName, lineno,
+                                    compilerEnv, compilationErrorReporter, returnFunction);
 
-            bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), returnFunction);
-        } catch (ClassFileFormatException e) {
-            // we hit some class file limit, fall back to interpreter or report
+            try {
+                if (compiler == null) {
+                    compiler = createCompiler();
+                }
 
-            // we have to recreate the tree because the compile call might have changed the tree already
-            tree = parse(sourceString, sourceName, lineno, compilerEnv, compilationErrorReporter, returnFunction);
+                bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), returnFunction);
+            } catch (ClassFileFormatException e) {
+                // we hit some class file limit, fall back to interpreter or report
 
-            compiler = createInterpreter();
-            bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), returnFunction);
+                // we have to recreate the tree because the compile call might have changed the tree already
+                tree = parse(sourceString, sourceName, lineno, compilerEnv, compilationErrorReporter, returnFunction);
+
+                compiler = createInterpreter();
+                bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), returnFunction);
+            }
+
+            if (fileCache != null) {
+                fileCache.store(fileKey, bytecode);
+            }
+        }
+
+        if (bytecode instanceof InterpreterData
+            && factory.getTieredCompilation() != null)
+        {
+            // Needed to compile its functions separately
+            ((InterpreterData) bytecode).rawSource = sourceString;
         }
 
         if (debugger != null) {
@@ -2553,6 +2643,9 @@ public class Context
             result = compiler.createFunctionObject(this, scope, bytecode, securityDomain);
         } else {
             result = compiler.createScriptObject(bytecode, securityDomain);
+            if (scriptCache != null) {
+                scriptCache.put(scriptKey, (Script) result);
+            }
         }
 
         return result;
@@ -2605,8 +2698,8 @@ public class Context
     private Evaluator createCompiler()
     {
         Evaluator result = null;
-        if (optimizationLevel >= 0 && codegenClass != null) {
-            result = (Evaluator)Kit.newInstanceOrNull(codegenClass);
+        if (optimizationLevel >= 0) {
+            result = createCodegen();
         }
         if (result == null) {
             result = createInterpreter();
@@ -2614,6 +2707,17 @@ public class Context
         return result;
     }
 
+    /**
+     * Return a new instance of the optimizer, or null if it is not available.
+     */
+    static Evaluator createCodegen()
+    {
+        if (codegenClass == null) {
+            return null;
+        }
+        return (Evaluator)Kit.newInstanceOrNull(codegenClass);
+    }
+
     static Evaluator createInterpreter()
     {
         return (Evaluator)Kit.newInstanceOrNull(interpreterClass);
@@ -2625,16 +2729,35 @@ public class Context
         if (cx == null)
             return null;
         if (cx.lastInterpreterFrame != null) {
+            // With tiered compilation the innermost frame may be a compiled
+            // function that was called from the interpreter
+            if (cx.factory.getTieredCompilation() != null) {
+                String file = getSourcePositionFromJavaStack(linep, true);
+                if (file != null)
+                    return file;
+            }
             Evaluator evaluator = createInterpreter();
             if (evaluator != null)
                 return evaluator.getSourcePositionFromStack(cx, linep);
         }
+        return getSourcePositionFromJavaStack(linep, false);
+    }
+
+    private static String getSourcePositionFromJavaStack(int[] linep,
+                                                         boolean aboveInterpreter)
+    {
         /**
          * A bit of a hack, but the only way to get filename and line
          * number from an enclosing frame.
          */
         StackTraceElement[] stackTrace = new Throwable().getStackTrace();
         for (StackTraceElement st : stackTrace) {
+            if (aboveInterpreter
+                && st.getClassName().equals(Interpreter.class.getName())
+                && st.getMethodName().equals("interpretLoop"))
+            {
+                return null;
+            }
             String file = st.getFileName();
             if (!(file == null || file.endsWith(".java"))) {
                 int line = st.getLineNumber();
@@ -117,6 +117,9 @@ public class ContextFactory
     private volatile Object listeners;
     private boolean disabledListening;
     private ClassLoader applicationClassLoader;
+    private volatile ScriptCache scriptCache;
+    private volatile ScriptFileCache scriptFileCache;
+    private volatile TieredCompilation tieredCompilation;
 
     /**
      * Listener of {@link Context} creation and release events.
@@ -301,6 +304,18 @@ public class ContextFactory
 
           case Context.FEATURE_ENABLE_XML_SECURE_PARSING:
               return true;
+
+          case Context.FEATURE_SHAPED_OBJECTS:
+              return false;
+
+          case Context.FEATURE_DYNAMIC_CALL_SITES:
+              return false;
+
+          case Context.FEATURE_COMPILED_REGEXP:
+              return false;
+
+          case Context.FEATURE_REGEXP_BACKTRACK_LIMIT:
+              return false;
         }
         // It is a bug to call the method with unknown featureIndex
         throw new IllegalArgumentException(String.valueOf(featureIndex));
@@ -398,6 +413,74 @@ public class ContextFactory
         this.applicationClassLoader = loader;
     }
 
+    /**
+     * Get the in-memory cache of compiled scripts, or null if there is none.
+     *
+     * @see #setScriptCache(ScriptCache)
+     */
+    public final ScriptCache getScriptCache()
+    {
+        return scriptCache;
+    }
+
+    /**
+     * Set the in-memory cache that Contexts of this factory use when compiling
+     * scripts, or null to not use one.
+     *
+     * @see ScriptCache
+     */
+    public final void setScriptCache(ScriptCache cache)
+    {
+        checkNotSealed();
+        this.scriptCache = cache;
+    }
+
+    /**
+     * Get the on-disk cache of compiled scripts, or null if there is none.
+     *
+     * @see #setScriptFileCache(ScriptFileCache)
+     */
+    public final ScriptFileCache getScriptFileCache()
+    {
+        return scriptFileCache;
+    }
+
+    /**
+     * Set the on-disk cache that Contexts of this factory use when compiling
+     * scripts, or null to not use one.
+     *
+     * @see ScriptFileCache
+     */
+    public final void setScriptFileCache(ScriptFileCache cache)
+    {
+        checkNotSealed();
+        this.scriptFileCache = cache;
+    }
+
+    /**
+     * Get the tiered compilation of interpreted functions, or null if there is
+     * none.
+     *
+     * @see #setTieredCompilation(TieredCompilation)
+     */
+    public final TieredCompilation getTieredCompilation()
+    {
+        return tieredCompilation;
+    }
+
+    /**
+     * Set the tiered compilation that promotes hot interpreted functions of
+     * Contexts of this factory to compiled code, or null to always interpret
+     * them.
+     *
+     * @see TieredCompilation
+     */
+    public final void setTieredCompilation(TieredCompilation tieredCompilation)
+    {
+        checkNotSealed();
+        this.tieredCompilation = tieredCompilation;
+    }
+
     /**
      * Execute top call to script or function.
      * When the runtime is about to execute a script or function that will
@@ -410,7 +493,8 @@ public class ContextFactory
                                Scriptable thisObj, Object[] args)
     {
         Object result = callable.call(cx, scope, thisObj, args);
-        return result instanceof ConsString ? result.toString() : result;
+        return result instanceof ConsString || result instanceof SlicedString
+            ? result.toString() : result;
     }
 
     /**
@@ -202,7 +202,7 @@ public class FunctionObject extends BaseFunction
           case JAVA_DOUBLE_TYPE:
             if (arg instanceof Double)
                 return arg;
-            return Double.valueOf(ScriptRuntime.toNumber(arg));
+            return ScriptRuntime.wrapDouble(ScriptRuntime.toNumber(arg));
           case JAVA_SCRIPTABLE_TYPE:
               return ScriptRuntime.toObjectOrNull(cx, arg, scope);
           case JAVA_OBJECT_TYPE:
@@ -379,8 +379,9 @@ public class FunctionObject extends BaseFunction
         int argsLength = args.length;
 
         for (int i = 0; i < argsLength; i++) {
-            // flatten cons-strings before passing them as arguments
-            if (args[i] instanceof ConsString) {
+            // flatten cons-strings and sliced strings before passing them
+            // as arguments
+            if (args[i] instanceof ConsString || args[i] instanceof SlicedString) {
                 args[i] = args[i].toString();
             }
         }
@@ -56,7 +56,7 @@ public class Hashtable implements Serializable, Iterable<Hashtable.Entry> {
             if ((k instanceof Number) && ( ! ( k instanceof Double))) {
                 // Hash comparison won't work if we don't do this
                 this.key = ((Number)k).doubleValue();
-            } else if (k instanceof ConsString) {
+            } else if (k instanceof ConsString || k instanceof SlicedString) {
                 this.key = k.toString();
             } else {
                 this.key = k;
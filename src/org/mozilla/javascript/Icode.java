@@ -135,8 +135,20 @@ abstract class Icode {
 
        Icode_DEBUGGER                   = -64,
 
+    // Three-address forms that operate on variables directly, see
+    // CodeGenerator.visitVarBinOp and CodeGenerator.visitVarCompare.
+    // Stack: ... -> ...
+       Icode_VAR_BINOP                  = -65,
+       Icode_VAR_IFCMP                  = -66,
+
        // Last icode
-        MIN_ICODE                       = -64;
+        MIN_ICODE                       = -66;
+
+    // Bits of the operand kind byte of Icode_VAR_BINOP and Icode_VAR_IFCMP
+    static final int
+        VAR_OP_LHS_CONST    = 0x1,
+        VAR_OP_RHS_CONST    = 0x2,
+        VAR_OP_JUMP_IF_TRUE = 0x4;
 
     static String bytecodeName(int bytecode)
     {
@@ -217,6 +229,8 @@ abstract class Icode {
           case Icode_GENERATOR:        return "GENERATOR";
           case Icode_GENERATOR_END:    return "GENERATOR_END";
           case Icode_DEBUGGER:         return "DEBUGGER";
+          case Icode_VAR_BINOP:        return "VAR_BINOP";
+          case Icode_VAR_IFCMP:        return "VAR_IFCMP";
         }
 
         // icode without name
@@ -16,6 +16,9 @@ final class InterpretedFunction extends NativeFunction implements Script
     SecurityController securityController;
     Object securityDomain;
 
+    // The compiled version of this function, see TieredCompilation
+    transient volatile NativeFunction compiledFunction;
+
     private InterpretedFunction(InterpreterData idata,
                                 Object staticSecurityDomain)
     {
@@ -106,9 +109,27 @@ final class InterpretedFunction extends NativeFunction implements Script
         if (!ScriptRuntime.hasTopCall(cx)) {
             return ScriptRuntime.doTopCall(this, cx, scope, thisObj, args, idata.isStrict);
         }
+        Function compiled = getCompiledFunction(cx);
+        if (compiled != null) {
+            return compiled.call(cx, scope, thisObj, args);
+        }
         return Interpreter.interpret(this, cx, scope, thisObj, args);
     }
 
+    /**
+     * Return the compiled version of this function if it was promoted by the
+     * TieredCompilation of the Context's factory, or null if it should be
+     * interpreted. Calling this counts as a call of the function.
+     */
+    Function getCompiledFunction(Context cx)
+    {
+        TieredCompilation tiers = cx.getFactory().getTieredCompilation();
+        if (tiers == null) {
+            return null;
+        }
+        return tiers.getCompiledFunction(cx, this);
+    }
+
     @Override
     public Object exec(Context cx, Scriptable scope)
     {
@@ -85,6 +85,8 @@ public final class Interpreter extends Icode implements Evaluator
         int savedStackTop;
         int savedCallOp;
         Object throwable;
+        // Loop iterations, for TieredCompilation
+        int backwardJumps;
 
         CallFrame(Context cx, Scriptable thisObj, InterpretedFunction fnOrScript, CallFrame parentFrame) {
             idata = fnOrScript.idata;
@@ -653,6 +655,21 @@ public final class Interpreter extends Icode implements Evaluator
                 out.println(tname+" "+indexReg);
                 ++pc;
                 break;
+              case Icode_VAR_BINOP: {
+                out.println(tname + " var" + (0xFF & iCode[pc + 1]) + " = "
+                            + dumpVarOperands(iCode, pc));
+                pc += 5;
+                break;
+              }
+              case Icode_VAR_IFCMP: {
+                int offset = getShort(iCode, pc);
+                out.println(tname + " " + dumpVarOperands(iCode, pc + 2)
+                            + " " + (((iCode[pc + 3] & VAR_OP_JUMP_IF_TRUE) != 0)
+                                     ? "true" : "false")
+                            + " -> " + (old_pc + offset));
+                pc += 2 + 4;
+                break;
+              }
             }
             if (old_pc + icodeLength != pc) Kit.codeBug();
         }
@@ -679,6 +696,16 @@ public final class Interpreter extends Icode implements Evaluator
         out.flush();
     }
 
+    private static String dumpVarOperands(byte[] iCode, int pc)
+    {
+        int kinds = iCode[pc + 1];
+        String lhs = ((kinds & VAR_OP_LHS_CONST) != 0)
+            ? String.valueOf(iCode[pc + 2]) : "var" + (0xFF & iCode[pc + 2]);
+        String rhs = ((kinds & VAR_OP_RHS_CONST) != 0)
+            ? String.valueOf(iCode[pc + 3]) : "var" + (0xFF & iCode[pc + 3]);
+        return lhs + " " + Token.name(iCode[pc]) + " " + rhs;
+    }
+
     private static int bytecodeSpan(int bytecode)
     {
         switch (bytecode) {
@@ -757,6 +784,20 @@ public final class Interpreter extends Icode implements Evaluator
             case Icode_LINE :
                 // line number
                 return 1 + 2;
+
+            case Icode_VAR_BINOP:
+                // operator
+                // target var index
+                // operand kinds
+                // two operands
+                return 1 + 1 + 1 + 1 + 2;
+
+            case Icode_VAR_IFCMP:
+                // target pc offset
+                // operator
+                // operand kinds
+                // two operands
+                return 1 + 2 + 1 + 1 + 2;
         }
         if (!validBytecode(bytecode)) throw Kit.codeBug();
         return 1;
@@ -1569,7 +1610,9 @@ switch (op) {
         }
         if (fun instanceof InterpretedFunction) {
             InterpretedFunction ifun = (InterpretedFunction)fun;
-            if (frame.fnOrScript.securityDomain == ifun.securityDomain) {
+            if (frame.fnOrScript.securityDomain == ifun.securityDomain
+                && ifun.getCompiledFunction(cx) == null)
+            {
                 CallFrame callParentFrame = frame;
                 if (op == Icode_TAIL_CALL) {
                     // In principle tail call can re-use the current
@@ -1635,7 +1678,9 @@ switch (op) {
                 Callable applyCallable = ScriptRuntime.getCallable(funThisObj);
                 if (applyCallable instanceof InterpretedFunction) {
                     InterpretedFunction iApplyCallable = (InterpretedFunction)applyCallable;
-                    if (frame.fnOrScript.securityDomain == iApplyCallable.securityDomain) {
+                    if (frame.fnOrScript.securityDomain == iApplyCallable.securityDomain
+                        && iApplyCallable.getCompiledFunction(cx) == null)
+                    {
                         frame = initFrameForApplyOrCall(cx, frame, indexReg,
                                 stack, sDbl, stackTop, op, calleeScope, ifun,
                                 iApplyCallable);
@@ -1682,7 +1727,9 @@ switch (op) {
         Object lhs = stack[stackTop];
         if (lhs instanceof InterpretedFunction) {
             InterpretedFunction f = (InterpretedFunction)lhs;
-            if (frame.fnOrScript.securityDomain == f.securityDomain) {
+            if (frame.fnOrScript.securityDomain == f.securityDomain
+                && f.getCompiledFunction(cx) == null)
+            {
                 Scriptable newInstance = f.createObject(cx, frame.scope);
                 CallFrame calleeFrame = initFrame(cx, frame.scope, newInstance, stack, sDbl,
                           stackTop + 1, indexReg, f, frame);
@@ -1775,6 +1822,17 @@ switch (op) {
                                vars, varDbls, varAttributes, indexReg);
         continue Loop;
     }
+    case Icode_VAR_BINOP :
+        doVarBinOp(cx, frame, stack, sDbl, stackTop, vars, varDbls,
+                   varAttributes);
+        continue Loop;
+    case Icode_VAR_IFCMP :
+        if (doVarCompare(frame, stack, sDbl, stackTop, vars, varDbls)) {
+            break jumplessRun;
+        }
+        // skip the jump offset and the operands
+        frame.pc += 2 + 4;
+        continue Loop;
     case Icode_ZERO :
         ++stackTop;
         stack[stackTop] = DBL_MRK;
@@ -2099,6 +2157,9 @@ switch (op) {
                     if (offset != 0) {
                         // -1 accounts for pc pointing to jump opcode + 1
                         frame.pc += offset - 1;
+                        if (offset < 0) {
+                            ++frame.backwardJumps;
+                        }
                     } else {
                         frame.pc = frame.idata.longJumps.
                                        getExistingInt(frame.pc);
@@ -2595,6 +2656,227 @@ switch (op) {
         return stackTop;
     }
 
+    /**
+     * Execute Icode_VAR_BINOP: store the result of "lhs op rhs" in a variable,
+     * where each operand is a variable or a small integer. Numbers are
+     * computed without going through the stack, anything else is evaluated on
+     * the two free stack slots above stackTop exactly like the equivalent
+     * sequence of stack instructions.
+     */
+    private static void doVarBinOp(Context cx, CallFrame frame,
+                                   Object[] stack, double[] sDbl,
+                                   int stackTop, Object[] vars,
+                                   double[] varDbls, int[] varAttributes)
+    {
+        byte[] iCode = frame.idata.itsICode;
+        int pc = frame.pc;
+        int op = iCode[pc];
+        int dst = 0xFF & iCode[pc + 1];
+        int kinds = iCode[pc + 2];
+        int a = iCode[pc + 3];
+        int b = iCode[pc + 4];
+        if (!frame.useActivation) {
+            double lDbl, rDbl;
+            number_op: {
+                if ((kinds & VAR_OP_LHS_CONST) != 0) {
+                    lDbl = a;
+                } else {
+                    Object lhs = vars[0xFF & a];
+                    if (lhs == DOUBLE_MARK) {
+                        lDbl = varDbls[0xFF & a];
+                    } else if (lhs instanceof Number) {
+                        lDbl = ((Number)lhs).doubleValue();
+                    } else {
+                        break number_op;
+                    }
+                }
+                if ((kinds & VAR_OP_RHS_CONST) != 0) {
+                    rDbl = b;
+                } else {
+                    Object rhs = vars[0xFF & b];
+                    if (rhs == DOUBLE_MARK) {
+                        rDbl = varDbls[0xFF & b];
+                    } else if (rhs instanceof Number) {
+                        rDbl = ((Number)rhs).doubleValue();
+                    } else {
+                        break number_op;
+                    }
+                }
+                switch (op) {
+                  case Token.ADD:
+                    lDbl += rDbl;
+                    break;
+                  case Token.SUB:
+                    lDbl -= rDbl;
+                    break;
+                  case Token.MUL:
+                    lDbl *= rDbl;
+                    break;
+                  case Token.DIV:
+                    lDbl /= rDbl;
+                    break;
+                  case Token.MOD:
+                    lDbl %= rDbl;
+                    break;
+                  case Token.BITAND:
+                    lDbl = ScriptRuntime.toInt32(lDbl)
+                           & ScriptRuntime.toInt32(rDbl);
+                    break;
+                  case Token.BITOR:
+                    lDbl = ScriptRuntime.toInt32(lDbl)
+                           | ScriptRuntime.toInt32(rDbl);
+                    break;
+                  case Token.BITXOR:
+                    lDbl = ScriptRuntime.toInt32(lDbl)
+                           ^ ScriptRuntime.toInt32(rDbl);
+                    break;
+                  case Token.LSH:
+                    lDbl = ScriptRuntime.toInt32(lDbl)
+                           << ScriptRuntime.toInt32(rDbl);
+                    break;
+                  case Token.RSH:
+                    lDbl = ScriptRuntime.toInt32(lDbl)
+                           >> ScriptRuntime.toInt32(rDbl);
+                    break;
+                  case Token.URSH:
+                    lDbl = ScriptRuntime.toUint32(lDbl)
+                           >>> (ScriptRuntime.toInt32(rDbl) & 0x1F);
+                    break;
+                  default:
+                    throw Kit.codeBug();
+                }
+                if ((varAttributes[dst] & ScriptableObject.READONLY) == 0) {
+                    vars[dst] = DOUBLE_MARK;
+                    varDbls[dst] = lDbl;
+                }
+                frame.pc = pc + 5;
+                return;
+            }
+        }
+
+        int top = pushVarOperand(frame, stack, sDbl, stackTop, vars, varDbls,
+                                 (kinds & VAR_OP_LHS_CONST) != 0, a);
+        top = pushVarOperand(frame, stack, sDbl, top, vars, varDbls,
+                             (kinds & VAR_OP_RHS_CONST) != 0, b);
+        switch (op) {
+          case Token.ADD:
+            --top;
+            doAdd(stack, sDbl, top, cx);
+            break;
+          case Token.SUB:
+          case Token.MUL:
+          case Token.DIV:
+          case Token.MOD:
+            top = doArithmetic(frame, op, stack, sDbl, top);
+            break;
+          case Token.URSH: {
+            double lDbl = stack_double(frame, top - 1);
+            int rIntValue = stack_int32(frame, top) & 0x1F;
+            stack[--top] = DOUBLE_MARK;
+            sDbl[top] = ScriptRuntime.toUint32(lDbl) >>> rIntValue;
+            break;
+          }
+          default:
+            top = doBitOp(frame, op, stack, sDbl, top);
+            break;
+        }
+        doSetVar(frame, stack, sDbl, top, vars, varDbls, varAttributes, dst);
+        stack[stackTop + 1] = null;
+        stack[stackTop + 2] = null;
+        frame.pc = pc + 5;
+    }
+
+    /**
+     * Execute the comparison of Icode_VAR_IFCMP and return true if the jump
+     * should be taken. Like doVarBinOp, operands that are not both numbers
+     * are compared on the stack.
+     */
+    private static boolean doVarCompare(CallFrame frame, Object[] stack,
+                                        double[] sDbl, int stackTop,
+                                        Object[] vars, double[] varDbls)
+    {
+        byte[] iCode = frame.idata.itsICode;
+        // frame.pc points to the jump offset
+        int pc = frame.pc + 2;
+        int op = iCode[pc];
+        int kinds = iCode[pc + 1];
+        int a = iCode[pc + 2];
+        int b = iCode[pc + 3];
+        boolean valBln;
+        object_compare: {
+            if (!frame.useActivation) {
+                double lDbl, rDbl;
+                number_compare: {
+                    if ((kinds & VAR_OP_LHS_CONST) != 0) {
+                        lDbl = a;
+                    } else {
+                        Object lhs = vars[0xFF & a];
+                        if (lhs == DOUBLE_MARK) {
+                            lDbl = varDbls[0xFF & a];
+                        } else if (lhs instanceof Number) {
+                            lDbl = ((Number)lhs).doubleValue();
+                        } else {
+                            break number_compare;
+                        }
+                    }
+                    if ((kinds & VAR_OP_RHS_CONST) != 0) {
+                        rDbl = b;
+                    } else {
+                        Object rhs = vars[0xFF & b];
+                        if (rhs == DOUBLE_MARK) {
+                            rDbl = varDbls[0xFF & b];
+                        } else if (rhs instanceof Number) {
+                            rDbl = ((Number)rhs).doubleValue();
+                        } else {
+                            break number_compare;
+                        }
+                    }
+                    switch (op) {
+                      case Token.GE:
+                        valBln = (lDbl >= rDbl);
+                        break object_compare;
+                      case Token.LE:
+                        valBln = (lDbl <= rDbl);
+                        break object_compare;
+                      case Token.GT:
+                        valBln = (lDbl > rDbl);
+                        break object_compare;
+                      case Token.LT:
+                        valBln = (lDbl < rDbl);
+                        break object_compare;
+                      default:
+                        throw Kit.codeBug();
+                    }
+                }
+            }
+            int top = pushVarOperand(frame, stack, sDbl, stackTop, vars,
+                                     varDbls,
+                                     (kinds & VAR_OP_LHS_CONST) != 0, a);
+            top = pushVarOperand(frame, stack, sDbl, top, vars, varDbls,
+                                 (kinds & VAR_OP_RHS_CONST) != 0, b);
+            top = doCompare(frame, op, stack, sDbl, top);
+            valBln = stack_boolean(frame, top);
+            stack[stackTop + 1] = null;
+            stack[stackTop + 2] = null;
+        }
+        return valBln == ((kinds & VAR_OP_JUMP_IF_TRUE) != 0);
+    }
+
+    private static int pushVarOperand(CallFrame frame, Object[] stack,
+                                      double[] sDbl, int stackTop,
+                                      Object[] vars, double[] varDbls,
+                                      boolean isConst, int operand)
+    {
+        if (isConst) {
+            ++stackTop;
+            stack[stackTop] = DOUBLE_MARK;
+            sDbl[stackTop] = operand;
+            return stackTop;
+        }
+        return doGetVar(frame, stack, sDbl, stackTop, vars, varDbls,
+                        0xFF & operand);
+    }
+
     private static int doRefMember(Context cx, Object[] stack, double[] sDbl,
                                    int stackTop, int flags) {
         Object elem = stack[stackTop];
@@ -2976,6 +3258,10 @@ switch (op) {
             ScriptRuntime.exitActivationFunction(cx);
         }
 
+        if (frame.backwardJumps != 0) {
+            TieredCompilation.countLoops(cx, frame.idata, frame.backwardJumps);
+        }
+
         if (frame.debuggerFrame != null) {
             try {
                 if (throwable instanceof Throwable) {
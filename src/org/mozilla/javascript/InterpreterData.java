@@ -98,6 +98,21 @@ final class InterpreterData implements Serializable, DebuggableScript
     /** true if the function has been declared like "!function() {}". */
     boolean declaredAsFunctionExpression;
 
+    // Position and first line of the function in the source it was compiled
+    // from, or -1 if TieredCompilation can not compile it separately
+    int rawSourceStart = -1;
+    int rawSourceEnd = -1;
+    int rawSourceLine;
+
+    // Source of the top level script, only kept for TieredCompilation
+    transient String rawSource;
+
+    // Number of calls and loop iterations, see TieredCompilation
+    transient int tierCount;
+
+    // Compilation state or compiled code, see TieredCompilation
+    transient volatile Object tierCode;
+
     @Override
     public boolean isTopLevel()
     {
@@ -61,11 +61,8 @@ public class NativeArray extends IdScriptableObject implements List
     {
         denseOnly = lengthArg <= maximumInitialCapacity;
         if (denseOnly) {
-            int intLength = (int) lengthArg;
-            if (intLength < DEFAULT_INITIAL_CAPACITY)
-                intLength = DEFAULT_INITIAL_CAPACITY;
-            dense = new Object[intLength];
-            Arrays.fill(dense, Scriptable.NOT_FOUND);
+            // The holes up to the length take no room
+            ints = new int[DEFAULT_INITIAL_CAPACITY];
         }
         length = lengthArg;
     }
@@ -73,7 +70,11 @@ public class NativeArray extends IdScriptableObject implements List
     public NativeArray(Object[] array)
     {
         denseOnly = true;
-        dense = array;
+        if (array.length == 0) {
+            ints = new int[DEFAULT_INITIAL_CAPACITY];
+        } else {
+            dense = array;
+        }
         length = array.length;
     }
 
@@ -395,6 +396,8 @@ public class NativeArray extends IdScriptableObject implements List
             return super.get(index, start);
         if (dense != null && 0 <= index && index < dense.length)
             return dense[index];
+        if (0 <= index && index < primitiveLength)
+            return getPrimitive(index);
         return super.get(index, start);
     }
 
@@ -405,6 +408,8 @@ public class NativeArray extends IdScriptableObject implements List
             return super.has(index, start);
         if (dense != null && 0 <= index && index < dense.length)
             return dense[index] != NOT_FOUND;
+        if (0 <= index && index < primitiveLength)
+            return true;
         return super.has(index, start);
     }
 
@@ -453,6 +458,7 @@ public class NativeArray extends IdScriptableObject implements List
             // If the object is sealed, super will throw exception
             long index = toArrayIndex(id);
             if (index >= length) {
+                convertToObjects();
                 length = index + 1;
                 denseOnly = false;
             }
@@ -476,9 +482,197 @@ public class NativeArray extends IdScriptableObject implements List
         return true;
     }
 
+    /**
+     * Return true if the elements are stored in ints or doubles.
+     */
+    private boolean isPrimitiveKind()
+    {
+        return ints != null || doubles != null;
+    }
+
+    /**
+     * Return ints if the elements are stored there, or null. Only the first
+     * getPrimitiveLength() entries are elements.
+     */
+    int[] getIntElements()
+    {
+        return ints;
+    }
+
+    /**
+     * Return doubles if the elements are stored there, or null. Only the
+     * first getPrimitiveLength() entries are elements.
+     */
+    double[] getDoubleElements()
+    {
+        return doubles;
+    }
+
+    int getPrimitiveLength()
+    {
+        return primitiveLength;
+    }
+
+    private Object getPrimitive(int index)
+    {
+        if (ints != null) {
+            return ScriptRuntime.wrapInt(ints[index]);
+        }
+        return ScriptRuntime.wrapNumber(doubles[index]);
+    }
+
+    /**
+     * Store "value" in ints or doubles at an index that is at most
+     * primitiveLength, switching from ints to doubles if needed. Return
+     * false if the value is not a number, and nothing was stored.
+     */
+    private boolean putPrimitive(int index, Object value)
+    {
+        if (!(value instanceof Integer || value instanceof Double)) {
+            return false;
+        }
+        if (index == primitiveLength && !ensurePrimitiveCapacity(index + 1)) {
+            return false;
+        }
+        if (ints != null) {
+            if (value instanceof Integer) {
+                ints[index] = ((Integer) value).intValue();
+            } else {
+                // A Double stays one, even if its value is an int, so that
+                // Java code reads back the type it stored
+                doubles = new double[ints.length];
+                for (int j = 0; j < primitiveLength; j++) {
+                    doubles[j] = ints[j];
+                }
+                ints = null;
+                doubles[index] = ((Double) value).doubleValue();
+            }
+        } else {
+            doubles[index] = ((Number) value).doubleValue();
+        }
+        if (index == primitiveLength) {
+            primitiveLength++;
+            if (length <= index) {
+                length = (long) index + 1;
+            }
+        }
+        return true;
+    }
+
+    private boolean ensurePrimitiveCapacity(int capacity)
+    {
+        int current = ints != null ? ints.length : doubles.length;
+        if (capacity > current) {
+            if (capacity > MAX_PRE_GROW_SIZE) {
+                return false;
+            }
+            capacity = Math.max(capacity, (int)(current * GROW_FACTOR));
+            if (ints != null) {
+                ints = Arrays.copyOf(ints, capacity);
+            } else {
+                doubles = Arrays.copyOf(doubles, capacity);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move the elements from ints or doubles to dense, which can hold any
+     * value and holes anywhere. Operations that are not specialized for the
+     * primitive storage call this before they use dense.
+     */
+    private void convertToObjects()
+    {
+        if (!isPrimitiveKind()) {
+            return;
+        }
+        int capacity = Math.max(ints != null ? ints.length : doubles.length,
+                                (int) length);
+        Object[] values = new Object[capacity];
+        for (int i = 0; i < primitiveLength; i++) {
+            values[i] = getPrimitive(i);
+        }
+        Arrays.fill(values, primitiveLength, capacity, NOT_FOUND);
+        dense = values;
+        ints = null;
+        doubles = null;
+        primitiveLength = 0;
+    }
+
+    /**
+     * Return the index of the first primitive element from "from" up to "to",
+     * stepping by "step", that equals "value", or -1. With "sameValueZero"
+     * NaN equals itself, as in includes().
+     */
+    private int findPrimitive(Object value, int from, int to, int step,
+                              boolean sameValueZero)
+    {
+        if (!(value instanceof Number)) {
+            return -1;
+        }
+        double d = ((Number) value).doubleValue();
+        if (ints != null) {
+            for (int i = from; i != to; i += step) {
+                if (ints[i] == d) {
+                    return i;
+                }
+            }
+        } else if (d == d) {
+            for (int i = from; i != to; i += step) {
+                if (doubles[i] == d) {
+                    return i;
+                }
+            }
+        } else if (sameValueZero) {
+            for (int i = from; i != to; i += step) {
+                if (Double.isNaN(doubles[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void sortPrimitives(Comparator<Object> comparator)
+    {
+        int n = primitiveLength;
+        if (comparator == DEFAULT_COMPARATOR && ints != null) {
+            // The default order compares the string values
+            String[] keys = new String[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = Integer.toString(ints[i]);
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < n; i++) {
+                ints[i] = Integer.parseInt(keys[i]);
+            }
+            return;
+        }
+        Object[] working = new Object[n];
+        for (int i = 0; i < n; i++) {
+            working[i] = getPrimitive(i);
+        }
+        Sorting.get().hybridSort(working, comparator);
+        // The compare function may have changed the array meanwhile
+        for (int i = 0; i < n; i++) {
+            put(i, this, working[i]);
+        }
+    }
+
     @Override
     public void put(int index, Scriptable start, Object value)
     {
+        if (start == this && isPrimitiveKind()) {
+            if (!isSealed() && 0 <= index && index <= primitiveLength) {
+                if (!isExtensible() && this.length <= index) {
+                    return;
+                }
+                if (putPrimitive(index, value)) {
+                    return;
+                }
+            }
+            convertToObjects();
+        }
         if (start == this && !isSealed() && dense != null && 0 <= index &&
             (denseOnly || !isGetterOrSetter(null, index, true)))
         {
@@ -512,6 +706,16 @@ public class NativeArray extends IdScriptableObject implements List
     @Override
     public void delete(int index)
     {
+        if (isPrimitiveKind() && !isSealed() && 0 <= index
+            && index < primitiveLength)
+        {
+            if (index == primitiveLength - 1) {
+                // The last element becomes a hole like the ones after it
+                primitiveLength--;
+                return;
+            }
+            convertToObjects();
+        }
         if (dense != null && 0 <= index && index < dense.length &&
             !isSealed() && (denseOnly || !isGetterOrSetter(null, index, true)))
         {
@@ -525,6 +729,14 @@ public class NativeArray extends IdScriptableObject implements List
     public Object[] getIds(boolean nonEnumerable, boolean getSymbols)
     {
         Object[] superIds = super.getIds(nonEnumerable, getSymbols);
+        if (isPrimitiveKind()) {
+            Object[] ids = new Object[primitiveLength + superIds.length];
+            for (int i = 0; i != primitiveLength; ++i) {
+                ids[i] = Integer.valueOf(i);
+            }
+            System.arraycopy(superIds, 0, ids, primitiveLength, superIds.length);
+            return ids;
+        }
         if (dense == null) { return superIds; }
         int N = dense.length;
         long currentLength = length;
@@ -594,11 +806,20 @@ public class NativeArray extends IdScriptableObject implements List
                 && dense[index] != NOT_FOUND) {
             return EMPTY;
         }
+        if (index >= 0 && index < primitiveLength) {
+            return EMPTY;
+        }
         return super.getAttributes(index);
     }
 
     @Override
     protected ScriptableObject getOwnPropertyDescriptor(Context cx, Object id) {
+      if (isPrimitiveKind()) {
+        int index = toDenseIndex(id);
+        if (0 <= index && index < primitiveLength) {
+          return defaultIndexPropertyDescriptor(getPrimitive(index));
+        }
+      }
       if (dense != null) {
         int index = toDenseIndex(id);
         if (0 <= index && index < dense.length && dense[index] != NOT_FOUND) {
@@ -613,6 +834,7 @@ public class NativeArray extends IdScriptableObject implements List
     protected void defineOwnProperty(Context cx, Object id,
                                      ScriptableObject desc,
                                      boolean checkValid) {
+      convertToObjects();
       if (dense != null) {
         Object[] values = dense;
         dense = null;
@@ -773,6 +995,8 @@ public class NativeArray extends IdScriptableObject implements List
     void setDenseOnly(boolean denseOnly) {
         if (denseOnly && !this.denseOnly)
             throw new IllegalArgumentException();
+        if (!denseOnly)
+            convertToObjects();
         this.denseOnly = denseOnly;
     }
 
@@ -794,6 +1018,16 @@ public class NativeArray extends IdScriptableObject implements List
             throw ScriptRuntime.constructError("RangeError", msg);
         }
 
+        if (isPrimitiveKind()) {
+            if (longVal <= length) {
+                if (longVal < primitiveLength) {
+                    primitiveLength = (int) longVal;
+                }
+                length = longVal;
+                return;
+            }
+            convertToObjects();
+        }
         if (denseOnly) {
             if (longVal < length) {
                 // downcast okay because denseOnly
@@ -1053,6 +1287,22 @@ public class NativeArray extends IdScriptableObject implements List
                            : ScriptRuntime.toString(args[0]);
         if (thisObj instanceof NativeArray) {
             NativeArray na = (NativeArray) thisObj;
+            if (na.isPrimitiveKind()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    if (i != 0) {
+                        sb.append(separator);
+                    }
+                    if (i < na.primitiveLength) {
+                        if (na.ints != null) {
+                            sb.append(na.ints[i]);
+                        } else {
+                            sb.append(ScriptRuntime.toString(na.doubles[i]));
+                        }
+                    }
+                }
+                return sb.toString();
+            }
             if (na.denseOnly) {
                 StringBuilder sb = new StringBuilder();
                 for (int i = 0; i < length; i++) {
@@ -1106,7 +1356,22 @@ public class NativeArray extends IdScriptableObject implements List
     {
         if (thisObj instanceof NativeArray) {
             NativeArray na = (NativeArray) thisObj;
+            if (na.isPrimitiveKind() && na.primitiveLength == na.length) {
+                for (int i=0, j=na.primitiveLength-1; i < j; i++,j--) {
+                    if (na.ints != null) {
+                        int temp = na.ints[i];
+                        na.ints[i] = na.ints[j];
+                        na.ints[j] = temp;
+                    } else {
+                        double temp = na.doubles[i];
+                        na.doubles[i] = na.doubles[j];
+                        na.doubles[j] = temp;
+                    }
+                }
+                return thisObj;
+            }
             if (na.denseOnly) {
+                na.convertToObjects();
                 for (int i=0, j=((int)na.length)-1; i < j; i++,j--) {
                     Object temp = na.dense[i];
                     na.dense[i] = na.dense[j];
@@ -1168,6 +1433,13 @@ public class NativeArray extends IdScriptableObject implements List
             throw Context.reportRuntimeError1(
                 "msg.arraylength.too.big", String.valueOf(llength));
         }
+        if (thisObj instanceof NativeArray
+            && ((NativeArray) thisObj).isPrimitiveKind())
+        {
+            // The holes, if any, stay at the end
+            ((NativeArray) thisObj).sortPrimitives(comparator);
+            return thisObj;
+        }
         // copy the JS array into a working array, so it can be
         // sorted cheaply.
         final Object[] working = new Object[length];
@@ -1190,6 +1462,12 @@ public class NativeArray extends IdScriptableObject implements List
     {
         if (thisObj instanceof NativeArray) {
             NativeArray na = (NativeArray) thisObj;
+            if (na.isPrimitiveKind()) {
+                for (int i = 0; i < args.length; i++) {
+                    na.put((int) na.length, na, args[i]);
+                }
+                return ScriptRuntime.wrapNumber(na.length);
+            }
             if (na.denseOnly &&
                 na.ensureCapacity((int) na.length + args.length))
             {
@@ -1226,6 +1504,14 @@ public class NativeArray extends IdScriptableObject implements List
         Object result;
         if (thisObj instanceof NativeArray) {
             NativeArray na = (NativeArray) thisObj;
+            if (na.isPrimitiveKind() && na.length > 0) {
+                na.length--;
+                if (na.primitiveLength > na.length) {
+                    na.primitiveLength--;
+                    return na.getPrimitive(na.primitiveLength);
+                }
+                return Undefined.instance;
+            }
             if (na.denseOnly && na.length > 0) {
                 na.length--;
                 result = na.dense[(int)na.length];
@@ -1257,7 +1543,22 @@ public class NativeArray extends IdScriptableObject implements List
     {
         if (thisObj instanceof NativeArray) {
             NativeArray na = (NativeArray) thisObj;
+            if (na.isPrimitiveKind() && na.length > 0
+                && na.primitiveLength == na.length)
+            {
+                Object result = na.getPrimitive(0);
+                na.length--;
+                na.primitiveLength--;
+                if (na.ints != null) {
+                    System.arraycopy(na.ints, 1, na.ints, 0, na.primitiveLength);
+                } else {
+                    System.arraycopy(na.doubles, 1, na.doubles, 0,
+                                     na.primitiveLength);
+                }
+                return result;
+            }
             if (na.denseOnly && na.length > 0) {
+                na.convertToObjects();
                 na.length--;
                 Object result = na.dense[0];
                 System.arraycopy(na.dense, 1, na.dense, 0, (int)na.length);
@@ -1298,6 +1599,7 @@ public class NativeArray extends IdScriptableObject implements List
     {
         if (thisObj instanceof NativeArray) {
             NativeArray na = (NativeArray) thisObj;
+            na.convertToObjects();
             if (na.denseOnly &&
                 na.ensureCapacity((int)na.length + args.length))
             {
@@ -1339,6 +1641,7 @@ public class NativeArray extends IdScriptableObject implements List
       boolean denseMode = false;
         if (thisObj instanceof NativeArray) {
             na = (NativeArray) thisObj;
+            na.convertToObjects();
             denseMode = na.denseOnly;
         }
 
@@ -1504,8 +1807,16 @@ public class NativeArray extends IdScriptableObject implements List
           final NativeArray denseArg = (NativeArray) arg;
           if (denseArg.denseOnly) {
             // Now we can optimize
+            denseResult.convertToObjects();
             denseResult.ensureCapacity((int) newlen);
-            System.arraycopy(denseArg.dense, 0, denseResult.dense, (int) offset, (int) srclen);
+            if (denseArg.isPrimitiveKind()) {
+              for (int i = 0; i < srclen; i++) {
+                denseResult.dense[(int) offset + i] = i < denseArg.primitiveLength
+                    ? denseArg.getPrimitive(i) : NOT_FOUND;
+              }
+            } else {
+              System.arraycopy(denseArg.dense, 0, denseResult.dense, (int) offset, (int) srclen);
+            }
             return newlen;
           }
           // We could also optimize here if we are copying to a dense target from a non-dense
@@ -1630,7 +1941,17 @@ public class NativeArray extends IdScriptableObject implements List
         }
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
-            if (na.denseOnly) {
+            if (na.isPrimitiveKind()) {
+                int end = na.primitiveLength;
+                if (start < end) {
+                    int i = na.findPrimitive(compareTo, (int) start, end, 1, false);
+                    if (i >= 0) {
+                        return Long.valueOf(i);
+                    }
+                    start = end;
+                }
+                // Look up the holes after the elements below
+            } else if (na.denseOnly) {
                 Scriptable proto = na.getPrototype();
                 for (int i=(int)start; i < length; i++) {
                     Object val = na.dense[i];
@@ -1686,6 +2007,17 @@ public class NativeArray extends IdScriptableObject implements List
         }
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
+            if (na.isPrimitiveKind()) {
+                // The holes come after the elements
+                for (; start >= na.primitiveLength; start--) {
+                    Object val = getRawElem(o, start);
+                    if (val != NOT_FOUND && ScriptRuntime.shallowEq(val, compareTo)) {
+                        return Long.valueOf(start);
+                    }
+                }
+                int i = na.findPrimitive(compareTo, (int) start, -1, -1, false);
+                return i >= 0 ? Long.valueOf(i) : NEGATIVE_ONE;
+            }
             if (na.denseOnly) {
                 Scriptable proto = na.getPrototype();
                 for (int i=(int)start; i >= 0; i--) {
@@ -1735,7 +2067,16 @@ public class NativeArray extends IdScriptableObject implements List
         }
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
-            if (na.denseOnly) {
+            if (na.isPrimitiveKind()) {
+                int end = na.primitiveLength;
+                if (k < end) {
+                    if (na.findPrimitive(compareTo, (int) k, end, 1, true) >= 0) {
+                        return Boolean.TRUE;
+                    }
+                    k = end;
+                }
+                // Look up the holes after the elements below
+            } else if (na.denseOnly) {
                 Scriptable proto = na.getPrototype();
                 for (int i = (int) k; i < len; i++) {
                     Object elementK = na.dense[i];
@@ -1851,6 +2192,7 @@ public class NativeArray extends IdScriptableObject implements List
         if ((o instanceof NativeArray) && (count <= Integer.MAX_VALUE)) {
             NativeArray na = (NativeArray) o;
             if (na.denseOnly) {
+                na.convertToObjects();
                 for (; count > 0; count--) {
                     na.dense[(int)to] = na.dense[(int)from];
                     from += direction;
@@ -2481,7 +2823,25 @@ public class NativeArray extends IdScriptableObject implements List
     private Object[] dense;
 
     /**
-     * True if all numeric properties are stored in <code>dense</code>.
+     * Storage for dense arrays that only hold numbers, so that the elements
+     * are not boxed. Arrays start out with ints, switch to doubles when a
+     * Double is stored, and move to <code>dense</code>
+     * when anything else is stored, or a hole is made before the last
+     * element. At most one of dense, ints and doubles is set, and denseOnly
+     * is true while ints or doubles are.
+     */
+    private int[] ints;
+    private double[] doubles;
+
+    /**
+     * The number of elements in <code>ints</code> or <code>doubles</code>.
+     * The indexes from there up to the length are holes.
+     */
+    private int primitiveLength;
+
+    /**
+     * True if all numeric properties are stored in <code>dense</code>,
+     * <code>ints</code> or <code>doubles</code>.
      */
     private boolean denseOnly;
 
@@ -6,12 +6,23 @@
 
 package org.mozilla.javascript;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
+import java.util.Set;
 
 import org.mozilla.javascript.json.JsonParser;
 
@@ -28,6 +39,9 @@ public final class NativeJSON extends IdScriptableObject
 
     private static final int MAX_STRINGIFY_GAP_LENGTH = 10;
 
+    // Size of the chunks in which stringify writes to a Writer
+    private static final int FLUSH_SIZE = 8192;
+
     static void init(Scriptable scope, boolean sealed)
     {
         NativeJSON obj = new NativeJSON();
@@ -121,6 +135,90 @@ public final class NativeJSON extends IdScriptableObject
       return walk(cx, scope, reviver, root, "");
     }
 
+    /**
+     * Parse the JSON text read from reader into objects of scope, like
+     * JSON.parse does with a string. The text is parsed as it is read, so
+     * it is never held in memory as a whole. The reader is not closed.
+     *
+     * @throws EcmaError a SyntaxError if the text is not valid JSON
+     * @throws IOException if reading from reader fails
+     */
+    public static Object parseReader(Context cx, Scriptable scope, Reader reader)
+        throws IOException
+    {
+      try {
+        return new JsonParser(cx, scope).parseReader(reader);
+      } catch (JsonParser.ParseException ex) {
+        throw parseError(ex);
+      }
+    }
+
+    private static EcmaError parseError(JsonParser.ParseException ex)
+        throws IOException
+    {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      return ScriptRuntime.constructError("SyntaxError", ex.getMessage());
+    }
+
+    /**
+     * Like {@link #parseReader(Context, Scriptable, Reader)}, and then calls
+     * reviver on each value like JSON.parse does.
+     */
+    public static Object parseReader(Context cx, Scriptable scope,
+                                     Reader reader, Callable reviver)
+        throws IOException
+    {
+      Object unfiltered = parseReader(cx, scope, reader);
+      Scriptable root = cx.newObject(scope);
+      root.put("", root, unfiltered);
+      return walk(cx, scope, reviver, root, "");
+    }
+
+    /**
+     * Parse the JSON text read from in, which is decoded as UTF-8. The
+     * stream is not closed.
+     *
+     * @see #parseReader(Context, Scriptable, Reader)
+     */
+    public static Object parseStream(Context cx, Scriptable scope, InputStream in)
+        throws IOException
+    {
+      return parseReader(cx, scope, new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse JSON text into Java values rather than JavaScript objects:
+     * objects become Maps, arrays Lists, and numbers Integers, Longs or
+     * Doubles, as described for {@link JsonParser#forJavaValues()}. No
+     * JavaScript objects are created, and no Context is needed.
+     *
+     * @throws EcmaError a SyntaxError if the text is not valid JSON
+     */
+    public static Object parseJava(String jtext)
+    {
+      try {
+        return JsonParser.forJavaValues().parseValue(jtext);
+      } catch (JsonParser.ParseException ex) {
+        throw ScriptRuntime.constructError("SyntaxError", ex.getMessage());
+      }
+    }
+
+    /**
+     * Like {@link #parseJava(String)}, with the text read from reader as
+     * {@link #parseReader(Context, Scriptable, Reader)} reads it.
+     */
+    public static Object parseJavaReader(Reader reader)
+        throws IOException
+    {
+      try {
+        return JsonParser.forJavaValues().parseReader(reader);
+      } catch (JsonParser.ParseException ex) {
+        throw parseError(ex);
+      }
+    }
+
     private static Object walk(Context cx, Scriptable scope, Callable reviver,
                                Scriptable holder, Object name)
     {
@@ -198,7 +296,9 @@ public final class NativeJSON extends IdScriptableObject
             this.space = space;
         }
 
-        Stack<Scriptable> stack = new Stack<Scriptable>();
+        // The objects and arrays being serialized, to detect cycles
+        Set<Object> stack =
+            Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
         String indent;
         String gap;
         Callable replacer;
@@ -207,10 +307,141 @@ public final class NativeJSON extends IdScriptableObject
 
         Context cx;
         Scriptable scope;
+        // True if Java collections are serialized and Java objects unwrapped
+        boolean javaValues;
+
+        // The text is appended to out, which is written to writer when it
+        // grows past FLUSH_SIZE if there is a writer
+        final StringBuilder out = new StringBuilder();
+        Writer writer;
+        private char[] chunk;
+
+        void flush(boolean always) throws IOException {
+            int n = out.length();
+            if (writer == null || (n < FLUSH_SIZE && !always) || n == 0) {
+                return;
+            }
+            if (chunk == null || chunk.length < n) {
+                chunk = new char[Math.max(n, FLUSH_SIZE * 2)];
+            }
+            out.getChars(0, n, chunk, 0);
+            writer.write(chunk, 0, n);
+            out.setLength(0);
+        }
     }
 
     public static Object stringify(Context cx, Scriptable scope, Object value,
                                    Object replacer, Object space)
+    {
+        StringifyState state = newState(cx, scope, replacer, space);
+        try {
+            if (!write(value, scope, state)) {
+                return Undefined.instance;
+            }
+        } catch (IOException e) {
+            // Only thrown by a writer
+            throw Kit.codeBug();
+        }
+        return state.out.toString();
+    }
+
+    /**
+     * Write the JSON text of value to writer, like JSON.stringify with the
+     * replacer and space arguments. The text is written in chunks as it is
+     * produced, so that it is never held in memory as a whole. The writer
+     * is not flushed or closed.
+     *
+     * @return false if value is not serialized, like undefined or a
+     *         function, and nothing was written
+     * @throws IOException if writing to writer fails
+     */
+    public static boolean stringify(Context cx, Scriptable scope, Object value,
+                                    Object replacer, Object space, Writer writer)
+        throws IOException
+    {
+        StringifyState state = newState(cx, scope, replacer, space);
+        state.writer = writer;
+        boolean written = write(value, scope, state);
+        state.flush(true);
+        return written;
+    }
+
+    /**
+     * Return the JSON text of a graph of Java values without converting it
+     * to JavaScript objects first. Maps, Collections and arrays are written
+     * like objects and arrays, and CharSequences, Characters, Numbers,
+     * Booleans and null like the JavaScript values, also when they are
+     * wrapped in NativeJavaObjects. Longs and other integers are written
+     * with all their digits. Other Java objects are left out, like
+     * functions are by JSON.stringify, and JavaScript objects in the graph
+     * are written as JSON.stringify writes them. Their toJSON methods run in
+     * the current Context, or in one entered from the global ContextFactory
+     * if the thread has none.
+     *
+     * @param space the indent, like the space argument of JSON.stringify
+     * @return the text, or null if value is not serialized
+     */
+    public static String stringifyJava(Object value, Object space)
+    {
+        Context cx = ContextFactory.getGlobal().enterContext();
+        try {
+            StringifyState state = newJavaState(cx, space);
+            if (!writeJava(value, state)) {
+                return null;
+            }
+            return state.out.toString();
+        } catch (IOException e) {
+            // Only thrown by a writer
+            throw Kit.codeBug();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Like {@link #stringifyJava(Object, Object)}, writing the text to
+     * writer in chunks, like
+     * {@link #stringify(Context, Scriptable, Object, Object, Object, Writer)}.
+     *
+     * @return false if value is not serialized, and nothing was written
+     * @throws IOException if writing to writer fails
+     */
+    public static boolean stringifyJava(Object value, Object space, Writer writer)
+        throws IOException
+    {
+        Context cx = ContextFactory.getGlobal().enterContext();
+        try {
+            StringifyState state = newJavaState(cx, space);
+            state.writer = writer;
+            boolean written = writeJava(value, state);
+            state.flush(true);
+            return written;
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static StringifyState newJavaState(Context cx, Object space)
+    {
+        StringifyState state = newState(cx, null, null, space);
+        state.javaValues = true;
+        return state;
+    }
+
+    private static boolean writeJava(Object value, StringifyState state)
+        throws IOException
+    {
+        // There is no replacer, so no holder is needed
+        value = str("", value, null, state);
+        if (value == Undefined.instance) {
+            return false;
+        }
+        write(value, state);
+        return true;
+    }
+
+    private static StringifyState newState(Context cx, Scriptable scope,
+                                           Object replacer, Object space)
     {
         String indent = "";
         String gap = "";
@@ -251,35 +482,71 @@ public final class NativeJSON extends IdScriptableObject
             }
         }
 
-        StringifyState state = new StringifyState(cx, scope,
+        return new StringifyState(cx, scope,
             indent,
             gap,
             replacerFunction,
             propertyList,
             space);
+    }
 
+    /**
+     * Append the JSON text of value to state.out, or return false if it is
+     * not serialized.
+     */
+    private static boolean write(Object value, Scriptable scope,
+                                 StringifyState state)
+        throws IOException
+    {
         ScriptableObject wrapper = new NativeObject();
         wrapper.setParentScope(scope);
         wrapper.setPrototype(ScriptableObject.getObjectPrototype(scope));
         wrapper.defineProperty("", value, 0);
-        return str("", wrapper, state);
+        value = str("", value, wrapper, state);
+        if (value == Undefined.instance) {
+            return false;
+        }
+        write(value, state);
+        return true;
+    }
+
+    private static Object getValue(Scriptable holder, Object key) {
+        if (key instanceof String) {
+            return getProperty(holder, (String) key);
+        }
+        return getProperty(holder, ((Number) key).intValue());
     }
 
-    private static Object str(Object key, Scriptable holder,
+    /**
+     * Return the value to serialize for key of holder, after toJSON and the
+     * replacer are applied and wrapper objects are unwrapped. That is null
+     * for values that are written as null, and Undefined.instance for the
+     * ones that are not serialized.
+     */
+    private static Object str(Object key, Object value, Scriptable holder,
                               StringifyState state)
     {
-        Object value = null;
-        if (key instanceof String) {
-            value = getProperty(holder, (String) key);
-        } else {
-            value = getProperty(holder, ((Number) key).intValue());
+        if (state.javaValues && value instanceof NativeJavaObject) {
+            value = ((NativeJavaObject) value).unwrap();
         }
 
-        if (value instanceof Scriptable && hasProperty((Scriptable) value, "toJSON")) {
-            Object toJSON = getProperty((Scriptable) value, "toJSON");
+        // Strings and numbers are the common values, and have no toJSON
+        if (!(value instanceof String) && !(value instanceof Number)
+            && value instanceof Scriptable)
+        {
+            Scriptable thisObj = (Scriptable) value;
+            // A single lookup, as most objects have no toJSON. Wrapped Java
+            // objects throw when a member is missing, so test for it first
+            Object toJSON = NOT_FOUND;
+            if (thisObj instanceof ScriptableObject
+                || hasProperty(thisObj, "toJSON"))
+            {
+                toJSON = getProperty(thisObj, "toJSON");
+            }
             if (toJSON instanceof Callable) {
-                value = callMethod(state.cx, (Scriptable) value, "toJSON",
-                                   new Object[] { key });
+                value = ((Callable) toJSON).call(state.cx,
+                    ScriptableObject.getTopLevelScope(thisObj), thisObj,
+                    new Object[] { key });
             }
         }
 
@@ -297,12 +564,13 @@ public final class NativeJSON extends IdScriptableObject
             value = ((NativeBoolean) value).getDefaultValue(ScriptRuntime.BooleanClass);
         }
 
-        if (value == null) return "null";
-        if (value.equals(Boolean.TRUE)) return "true";
-        if (value.equals(Boolean.FALSE)) return "false";
-
-        if (value instanceof CharSequence) {
-            return quote(value.toString());
+        // The common classes are tested first, as testing for interfaces
+        // is slower
+        if (value == null || value instanceof String
+            || value instanceof Boolean || value instanceof NativeObject
+            || value instanceof NativeArray)
+        {
+            return value;
         }
 
         if (value instanceof Number) {
@@ -310,42 +578,84 @@ public final class NativeJSON extends IdScriptableObject
             if (!Double.isNaN(d) && d != Double.POSITIVE_INFINITY &&
                 d != Double.NEGATIVE_INFINITY)
             {
-                return ScriptRuntime.toString(value);
+                return value;
             }
-            return "null";
+            return null;
+        }
+
+        if (value instanceof CharSequence) {
+            return value;
         }
 
         if (value instanceof Scriptable && !(value instanceof Callable)) {
-            if (value instanceof NativeArray) {
-                return ja((NativeArray) value, state);
+            return value;
+        }
+
+        if (state.javaValues && !(value instanceof Scriptable)) {
+            if (value instanceof Map || value instanceof Collection
+                || value.getClass().isArray())
+            {
+                return value;
+            }
+            if (value instanceof Character) {
+                return value.toString();
             }
-            return jo((Scriptable) value, state);
         }
 
         return Undefined.instance;
     }
 
-    private static String join(Collection<Object> objs, String delimiter) {
-        if (objs == null || objs.isEmpty()) {
-            return "";
-        }
-        Iterator<Object> iter = objs.iterator();
-        if (!iter.hasNext()) return "";
-        StringBuilder builder = new StringBuilder(iter.next().toString());
-        while (iter.hasNext()) {
-            builder.append(delimiter).append(iter.next().toString());
+    /**
+     * Append the JSON text of value, as returned by str(), to state.out.
+     */
+    private static void write(Object value, StringifyState state)
+        throws IOException
+    {
+        StringBuilder out = state.out;
+        if (value instanceof String) {
+            quote((String) value, out);
+        } else if (value instanceof Integer) {
+            out.append(((Integer) value).intValue());
+        } else if (value instanceof Double) {
+            out.append(ScriptRuntime.toString(((Double) value).doubleValue()));
+        } else if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue());
+        } else if (value instanceof NativeArray) {
+            ja((NativeArray) value, state);
+        } else if (value instanceof Number) {
+            if (state.javaValues && (value instanceof Long
+                || value instanceof BigInteger || value instanceof Short
+                || value instanceof Byte))
+            {
+                out.append(value.toString());
+            } else {
+                out.append(ScriptRuntime.toString(value));
+            }
+        } else if (value instanceof CharSequence) {
+            quote(value.toString(), out);
+        } else if (value instanceof Scriptable) {
+            jo((Scriptable) value, state);
+        } else if (value instanceof Map) {
+            jm((Map<?, ?>) value, state);
+        } else if (value instanceof Collection) {
+            jl(value, (Collection<?>) value, state);
+        } else {
+            jl(value, arrayAsList(value), state);
         }
-        return builder.toString();
     }
 
-    private static String jo(Scriptable value, StringifyState state) {
-        if (state.stack.search(value) != -1) {
+    private static void jo(Scriptable value, StringifyState state)
+        throws IOException
+    {
+        if (!state.stack.add(value)) {
             throw ScriptRuntime.typeError0("msg.cyclic.value");
         }
-        state.stack.push(value);
 
         String stepback = state.indent;
         state.indent = state.indent + state.gap;
+        boolean pretty = state.gap.length() > 0;
         Object[] k = null;
         if (state.propertyList != null) {
             k = state.propertyList.toArray();
@@ -353,90 +663,215 @@ public final class NativeJSON extends IdScriptableObject
             k = value.getIds();
         }
 
-        List<Object> partial = new LinkedList<Object>();
-
+        StringBuilder out = state.out;
+        out.append('{');
+        boolean empty = true;
         for (Object p : k) {
-            Object strP = str(p, value, state);
-            if (strP != Undefined.instance) {
-                String member = quote(p.toString()) + ":";
-                if (state.gap.length() > 0) {
-                    member = member + " ";
-                }
-                member = member + strP;
-                partial.add(member);
+            Object strP = str(p, getValue(value, p), value, state);
+            if (strP == Undefined.instance) {
+                continue;
             }
-        }
-
-        final String finalValue;
-
-        if (partial.isEmpty()) {
-            finalValue = "{}";
-        } else {
-            if (state.gap.length() == 0) {
-                finalValue = '{' + join(partial, ",") + '}';
-            } else {
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "{\n" + state.indent + properties + '\n' +
-                    stepback + '}';
+            if (!empty) {
+                out.append(',');
+            }
+            empty = false;
+            if (pretty) {
+                out.append('\n').append(state.indent);
             }
+            quote(p.toString(), out);
+            out.append(pretty ? ": " : ":");
+            write(strP, state);
+            state.flush(false);
         }
+        if (!empty && pretty) {
+            out.append('\n').append(stepback);
+        }
+        out.append('}');
 
-        state.stack.pop();
+        state.stack.remove(value);
         state.indent = stepback;
-        return finalValue;
     }
 
-    private static String ja(NativeArray value, StringifyState state) {
-        if (state.stack.search(value) != -1) {
+    private static void ja(NativeArray value, StringifyState state)
+        throws IOException
+    {
+        if (!state.stack.add(value)) {
             throw ScriptRuntime.typeError0("msg.cyclic.value");
         }
-        state.stack.push(value);
 
         String stepback = state.indent;
         state.indent = state.indent + state.gap;
-        List<Object> partial = new LinkedList<Object>();
+        boolean pretty = state.gap.length() > 0;
 
+        StringBuilder out = state.out;
+        out.append('[');
         long len = value.getLength();
-        for (long index = 0; index < len; index++) {
+        long index = 0;
+        if (state.replacer == null) {
+            // Numbers stored unboxed are written directly, as no code that
+            // could change the array runs for them
+            int[] ints = value.getIntElements();
+            double[] doubles = value.getDoubleElements();
+            int n = (int) Math.min(len, value.getPrimitiveLength());
+            for (; index < n && (ints != null || doubles != null); index++) {
+                if (index > 0) {
+                    out.append(',');
+                }
+                if (pretty) {
+                    out.append('\n').append(state.indent);
+                }
+                if (ints != null) {
+                    out.append(ints[(int) index]);
+                } else {
+                    double d = doubles[(int) index];
+                    if (Double.isNaN(d) || Double.isInfinite(d)) {
+                        out.append("null");
+                    } else {
+                        out.append(ScriptRuntime.toString(d));
+                    }
+                }
+            }
+            state.flush(false);
+        }
+        for (; index < len; index++) {
+            if (index > 0) {
+                out.append(',');
+            }
+            if (pretty) {
+                out.append('\n').append(state.indent);
+            }
             Object strP;
             if (index > Integer.MAX_VALUE) {
-                strP = str(Long.toString(index), value, state);
+                String key = Long.toString(index);
+                strP = str(key, getProperty(value, key), value, state);
             } else {
-                strP = str((int) index, value, state);
+                strP = str((int) index, getProperty(value, (int) index), value, state);
             }
             if (strP == Undefined.instance) {
-                partial.add("null");
+                out.append("null");
             } else {
-                partial.add(strP);
+                write(strP, state);
+            }
+            state.flush(false);
+        }
+        if (len > 0 && pretty) {
+            out.append('\n').append(stepback);
+        }
+        out.append(']');
+
+        state.stack.remove(value);
+        state.indent = stepback;
+    }
+
+    private static void jm(Map<?, ?> value, StringifyState state)
+        throws IOException
+    {
+        if (!state.stack.add(value)) {
+            throw ScriptRuntime.typeError0("msg.cyclic.value");
+        }
+
+        String stepback = state.indent;
+        state.indent = state.indent + state.gap;
+        boolean pretty = state.gap.length() > 0;
+
+        StringBuilder out = state.out;
+        out.append('{');
+        boolean empty = true;
+        for (Map.Entry<?, ?> entry : value.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object strP = str(key, entry.getValue(), null, state);
+            if (strP == Undefined.instance) {
+                continue;
+            }
+            if (!empty) {
+                out.append(',');
             }
+            empty = false;
+            if (pretty) {
+                out.append('\n').append(state.indent);
+            }
+            quote(key, out);
+            out.append(pretty ? ": " : ":");
+            write(strP, state);
+            state.flush(false);
+        }
+        if (!empty && pretty) {
+            out.append('\n').append(stepback);
         }
+        out.append('}');
 
-        final String finalValue;
+        state.stack.remove(value);
+        state.indent = stepback;
+    }
 
-        if (partial.isEmpty()) {
-            finalValue = "[]";
-        } else {
-            if (state.gap.length() == 0) {
-                finalValue = '[' + join(partial, ",") + ']';
+    /**
+     * Append the elements of a Java Collection or array like an array.
+     */
+    private static void jl(Object value, Collection<?> elements,
+                           StringifyState state)
+        throws IOException
+    {
+        if (!state.stack.add(value)) {
+            throw ScriptRuntime.typeError0("msg.cyclic.value");
+        }
+
+        String stepback = state.indent;
+        state.indent = state.indent + state.gap;
+        boolean pretty = state.gap.length() > 0;
+
+        StringBuilder out = state.out;
+        out.append('[');
+        int index = 0;
+        for (Object element : elements) {
+            if (index > 0) {
+                out.append(',');
+            }
+            if (pretty) {
+                out.append('\n').append(state.indent);
+            }
+            Object strP = str(index++, element, null, state);
+            if (strP == Undefined.instance) {
+                out.append("null");
             } else {
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "[\n" + state.indent + properties + '\n' + stepback + ']';
+                write(strP, state);
             }
+            state.flush(false);
+        }
+        if (index > 0 && pretty) {
+            out.append('\n').append(stepback);
         }
+        out.append(']');
 
-        state.stack.pop();
+        state.stack.remove(value);
         state.indent = stepback;
-        return finalValue;
     }
 
-    private static String quote(String string) {
-        StringBuilder product = new StringBuilder(string.length()+2); // two extra chars for " on either side
+    private static List<?> arrayAsList(Object array) {
+        if (array instanceof Object[]) {
+            return Arrays.asList((Object[]) array);
+        }
+        int length = Array.getLength(array);
+        List<Object> list = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++) {
+            list.add(Array.get(array, i));
+        }
+        return list;
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static void quote(String string, StringBuilder product) {
         product.append('"');
         int length = string.length();
+        // Append the runs of chars that need no escaping at once
+        int start = 0;
         for (int i = 0; i < length; i++) {
             char c = string.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\') {
+                continue;
+            }
+            product.append(string, start, i);
+            start = i + 1;
             switch (c) {
                 case '"':
                     product.append("\\\"");
@@ -460,19 +895,14 @@ public final class NativeJSON extends IdScriptableObject
                     product.append("\\t");
                     break;
                 default:
-                    if (c < ' ') {
-                        product.append("\\u");
-                        String hex = String.format("%04x", (int) c);
-                        product.append(hex);
-                    }
-                    else {
-                        product.append(c);
-                    }
+                    product.append("\\u00")
+                        .append(HEX_DIGITS[c >> 4])
+                        .append(HEX_DIGITS[c & 0xf]);
                     break;
             }
         }
+        product.append(string, start, length);
         product.append('"');
-        return product.toString();
     }
 
 // #string_id_map#
@@ -317,8 +317,7 @@ final class NativeNumber extends IdScriptableObject
         if (val instanceof Double) {
             return (Double)val;
         }
-        double d = val.doubleValue();
-        return Double.valueOf(d);
+        return ScriptRuntime.wrapDouble(val.doubleValue());
     }
 
 // #string_id_map#
@@ -288,12 +288,12 @@ final class NativeString extends IdScriptableObject
                 }
 
                 case Id_indexOf:
-                    return ScriptRuntime.wrapInt(js_indexOf(Id_indexOf, ScriptRuntime.toString(thisObj), args));
+                    return ScriptRuntime.wrapInt(js_indexOf(Id_indexOf, ScriptRuntime.toCharSequence(thisObj), args));
 
                 case Id_includes:
                 case Id_startsWith:
                 case Id_endsWith:
-                    String s = ScriptRuntime.toString(requireObjectCoercible(cx, thisObj, f));
+                    CharSequence s = ScriptRuntime.toCharSequence(requireObjectCoercible(cx, thisObj, f));
                     if (args.length > 0 && args[0] instanceof NativeRegExp) {
                         throw ScriptRuntime.typeError2("msg.first.arg.not.regexp", String.class.getSimpleName(), f.getFunctionName());
                     }
@@ -341,7 +341,7 @@ final class NativeString extends IdScriptableObject
                     return js_substr(ScriptRuntime.toCharSequence(thisObj), args);
 
                 case Id_concat:
-                    return js_concat(ScriptRuntime.toString(thisObj), args);
+                    return js_concat(ScriptRuntime.toCharSequence(thisObj), args);
 
                 case Id_slice:
                     return js_slice(ScriptRuntime.toCharSequence(thisObj), args);
@@ -609,7 +609,7 @@ final class NativeString extends IdScriptableObject
      * See ECMA 15.5.4.6.  Uses Java String.indexOf()
      * OPT to add - BMH searching from jsstr.c.
      */
-    private static int  js_indexOf(int methodId, String target, Object[] args) {
+    private static int  js_indexOf(int methodId, CharSequence target, Object[] args) {
         String searchStr = ScriptRuntime.toString(args, 0);
         double position = ScriptRuntime.toInteger(args, 1);
 
@@ -623,11 +623,19 @@ final class NativeString extends IdScriptableObject
 
         if (Id_endsWith == methodId) {
             if (args.length == 0 || args.length == 1 || (args.length == 2 && args[1] == Undefined.instance)) position = target.length();
-            return target.substring(0, (int)position).endsWith(searchStr) ? 0 : -1;
+            return target.toString().substring(0, (int)position).endsWith(searchStr) ? 0 : -1;
         }
+        if (target instanceof SlicedString) {
+            // Search the substring where it is, rather than copying it
+            SlicedString sliced = (SlicedString) target;
+            return methodId == Id_startsWith
+                    ? sliced.startsWith(searchStr, (int)position) ? 0 : -1
+                    : sliced.indexOf(searchStr, (int)position);
+        }
+        String str = target.toString();
         return methodId == Id_startsWith
-                ? target.startsWith(searchStr, (int)position) ? 0 : -1
-                : target.indexOf(searchStr, (int)position);
+                ? str.startsWith(searchStr, (int)position) ? 0 : -1
+                : str.indexOf(searchStr, (int)position);
     }
 
     /*
@@ -684,7 +692,7 @@ final class NativeString extends IdScriptableObject
                 }
             }
         }
-        return target.subSequence((int)start, (int)end);
+        return SlicedString.slice(target, (int)start, (int)end);
     }
 
     int getLength() {
@@ -721,36 +729,19 @@ final class NativeString extends IdScriptableObject
                 end = length;
         }
 
-        return target.subSequence((int)begin, (int)end);
+        return SlicedString.slice(target, (int)begin, (int)end);
     }
 
     /*
      * Python-esque sequence operations.
      */
-    private static String js_concat(String target, Object[] args) {
-        int N = args.length;
-        if (N == 0) { return target; }
-        else if (N == 1) {
-            String arg = ScriptRuntime.toString(args[0]);
-            return target.concat(arg);
-        }
-
-        // Find total capacity for the final string to avoid unnecessary
-        // re-allocations in StringBuilder
-        int size = target.length();
-        String[] argsAsStrings = new String[N];
-        for (int i = 0; i != N; ++i) {
-            String s = ScriptRuntime.toString(args[i]);
-            argsAsStrings[i] = s;
-            size += s.length();
+    private static CharSequence js_concat(CharSequence target, Object[] args) {
+        // Build a ConsString, so that concat() in a loop takes linear time
+        CharSequence result = target;
+        for (Object arg : args) {
+            result = new ConsString(result, ScriptRuntime.toCharSequence(arg));
         }
-
-        StringBuilder result = new StringBuilder(size);
-        result.append(target);
-        for (int i = 0; i != N; ++i) {
-            result.append(argsAsStrings[i]);
-        }
-        return result.toString();
+        return result;
     }
 
     private static CharSequence js_slice(CharSequence target, Object[] args) {
@@ -779,7 +770,7 @@ final class NativeString extends IdScriptableObject
             if (end < begin)
                 end = begin;
         }
-        return target.subSequence((int) begin, (int) end);
+        return SlicedString.slice(target, (int) begin, (int) end);
     }
 
     private static String js_repeat(Context cx, Scriptable thisObj, IdFunctionObject f, Object[] args)
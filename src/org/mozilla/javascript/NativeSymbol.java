@@ -247,7 +247,7 @@ public class NativeSymbol
     private Object js_for(Context cx, Scriptable scope, Object[] args) {
         String name = (args.length > 0 ? ScriptRuntime.toString(args[0]) : ScriptRuntime.toString(Undefined.instance));
 
-        Map<String, NativeSymbol> table = getGlobalMap();
+        Map<String, NativeSymbol> table = getGlobalMap(scope);
         NativeSymbol ret = table.get(name);
 
         if (ret == null) {
@@ -264,7 +264,7 @@ public class NativeSymbol
         }
         NativeSymbol sym = (NativeSymbol)s;
 
-        Map<String, NativeSymbol> table = getGlobalMap();
+        Map<String, NativeSymbol> table = getGlobalMap(scope);
         for (Map.Entry<String, NativeSymbol> e : table.entrySet()) {
             if (e.getValue().key == sym.key) {
                 return e.getKey();
@@ -345,8 +345,10 @@ public class NativeSymbol
         return key;
     }
 
-    private Map<String, NativeSymbol> getGlobalMap() {
-        ScriptableObject top = (ScriptableObject)getTopLevelScope(this);
+    private static Map<String, NativeSymbol> getGlobalMap(Scriptable scope) {
+        // Use the scope of the caller, so that scopes created by a
+        // RealmSnapshot each have their own registry
+        ScriptableObject top = (ScriptableObject)getTopLevelScope(scope);
         Map<String, NativeSymbol> map = (Map<String, NativeSymbol>)top.getAssociatedValue(GLOBAL_TABLE_KEY);
         if (map == null) {
             map = new HashMap<String, NativeSymbol>();
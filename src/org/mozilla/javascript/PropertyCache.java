@@ -0,0 +1,223 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * An inline cache for a single property access site in compiled code. The optimizer
+ * creates one instance per "obj.name" expression and stores it in a static field of the
+ * generated class.
+ *
+ * The cache remembers up to MAX_ENTRIES receiver shapes (see PropertyShape) and the
+ * position of the property for each. A cached property is either an own property of
+ * the receiver, or a property of the receiver's immediate prototype. In the latter case
+ * the prototype's identity and shape are checked on every access as well. Since adding
+ * a property to an object changes its shape, and deleting a property or changing its
+ * attributes takes the object out of shape mode altogether, these checks are enough to
+ * detect any change to the objects involved and no explicit invalidation is needed.
+ *
+ * Only plain NativeObject instances that use shapes are cached. Every other receiver
+ * goes through the regular ScriptRuntime methods.
+ */
+
+public final class PropertyCache
+{
+    private static final int MAX_ENTRIES = 4;
+
+    private static final class Entry
+    {
+        final PropertyShape shape;
+        final int index;
+        // Null if the property is an own property of the receiver
+        final WeakReference<ScriptableObject> holder;
+        final PropertyShape holderShape;
+
+        Entry(PropertyShape shape, int index,
+              ScriptableObject holder, PropertyShape holderShape)
+        {
+            this.shape = shape;
+            this.index = index;
+            this.holder = holder == null ? null : new WeakReference<ScriptableObject>(holder);
+            this.holderShape = holderShape;
+        }
+    }
+
+    // Replaced as a whole on update, so that racing threads only ever see complete entries
+    private Entry[] entries;
+
+    public PropertyCache()
+    {
+    }
+
+    /**
+     * Cached version of
+     * {@link ScriptRuntime#getObjectProp(Object, String, Context, Scriptable)}.
+     */
+    public Object getObjectProp(Object obj, String property,
+                                Context cx, Scriptable scope)
+    {
+        ScriptableObject target = cacheableTarget(obj);
+        if (target != null) {
+            PropertyShape shape = target.getShape();
+            if (shape != null) {
+                Object value = lookup(target, shape);
+                if (value != Scriptable.NOT_FOUND) {
+                    return value;
+                }
+                value = ScriptRuntime.getObjectProp(obj, property, cx, scope);
+                update(target, shape, property);
+                return value;
+            }
+        }
+        return ScriptRuntime.getObjectProp(obj, property, cx, scope);
+    }
+
+    /**
+     * Cached version of
+     * {@link ScriptRuntime#setObjectProp(Object, String, Object, Context, Scriptable)}.
+     * Only existing own properties are updated directly.
+     */
+    public Object setObjectProp(Object obj, String property, Object value,
+                                Context cx, Scriptable scope)
+    {
+        ScriptableObject target = cacheableTarget(obj);
+        if (target != null && target.isExtensible() && !target.isSealed()) {
+            PropertyShape shape = target.getShape();
+            if (shape != null) {
+                Entry[] e = entries;
+                if (e != null) {
+                    for (Entry entry : e) {
+                        if (entry.shape == shape && entry.holder == null) {
+                            target.setShapedValue(entry.index, value);
+                            return value;
+                        }
+                    }
+                }
+                ScriptRuntime.setObjectProp(obj, property, value, cx, scope);
+                // The put may have changed the shape, so cache the new one
+                PropertyShape newShape = target.getShape();
+                if (newShape != null) {
+                    update(target, newShape, property);
+                }
+                return value;
+            }
+        }
+        return ScriptRuntime.setObjectProp(obj, property, value, cx, scope);
+    }
+
+    /**
+     * Cached version of
+     * {@link ScriptRuntime#getPropFunctionAndThis(Object, String, Context, Scriptable)}.
+     */
+    public Callable getPropFunctionAndThis(Object obj, String property,
+                                           Context cx, Scriptable scope)
+    {
+        ScriptableObject target = cacheableTarget(obj);
+        if (target != null) {
+            PropertyShape shape = target.getShape();
+            if (shape != null) {
+                Object value = lookup(target, shape);
+                if (value instanceof Callable) {
+                    ScriptRuntime.storeScriptable(cx, target);
+                    return (Callable) value;
+                }
+                Callable f = ScriptRuntime.getPropFunctionAndThis(obj, property, cx, scope);
+                update(target, shape, property);
+                return f;
+            }
+        }
+        return ScriptRuntime.getPropFunctionAndThis(obj, property, cx, scope);
+    }
+
+    private static ScriptableObject cacheableTarget(Object obj)
+    {
+        // Subclasses may override get and put, so only accept the exact class.
+        // Objects without a prototype may be builtin prototypes with special ids.
+        if (obj != null && obj.getClass() == NativeObject.class) {
+            ScriptableObject target = (ScriptableObject) obj;
+            if (target.getPrototype() != null) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    private Object lookup(ScriptableObject target, PropertyShape shape)
+    {
+        Entry[] e = entries;
+        if (e == null) {
+            return Scriptable.NOT_FOUND;
+        }
+        for (Entry entry : e) {
+            if (entry.shape != shape) {
+                continue;
+            }
+            if (entry.holder == null) {
+                return target.getShapedValue(entry.index);
+            }
+            ScriptableObject holder = entry.holder.get();
+            if (holder != null && target.getPrototype() == holder
+                && holder.getShape() == entry.holderShape) {
+                return holder.getShapedValue(entry.index);
+            }
+        }
+        return Scriptable.NOT_FOUND;
+    }
+
+    private void update(ScriptableObject target, PropertyShape shape, String property)
+    {
+        Entry entry;
+        int index = shape.indexOf(property);
+        if (index >= 0) {
+            entry = new Entry(shape, index, null, null);
+        } else {
+            Scriptable proto = target.getPrototype();
+            if (proto == null || proto.getClass() != NativeObject.class) {
+                return;
+            }
+            ScriptableObject holder = (ScriptableObject) proto;
+            PropertyShape holderShape = holder.getShape();
+            if (holderShape == null) {
+                return;
+            }
+            index = holderShape.indexOf(property);
+            if (index < 0) {
+                return;
+            }
+            entry = new Entry(shape, index, holder, holderShape);
+        }
+
+        Entry[] e = entries;
+        Entry[] newEntries;
+        if (e == null) {
+            newEntries = new Entry[] { entry };
+        } else if (indexOfShape(e, shape) >= 0) {
+            // The entry for this shape is stale, for instance because the prototype changed
+            newEntries = e.clone();
+            newEntries[indexOfShape(e, shape)] = entry;
+        } else if (e.length < MAX_ENTRIES) {
+            newEntries = new Entry[e.length + 1];
+            System.arraycopy(e, 0, newEntries, 0, e.length);
+            newEntries[e.length] = entry;
+        } else {
+            // Megamorphic: keep the entries we have
+            return;
+        }
+        entries = newEntries;
+    }
+
+    private static int indexOfShape(Entry[] e, PropertyShape shape)
+    {
+        for (int i = 0; i < e.length; i++) {
+            if (e[i].shape == shape) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,142 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A PropertyShape (also known as a "hidden class") describes the ordered set of property
+ * names of an object. Shapes are immutable and shared: all objects that had the same
+ * properties added in the same order point to the same shape, and store only their
+ * values in a compact array indexed by the position of the name in the shape.
+ *
+ * Shapes form a tree rooted at {@link #EMPTY}. Adding a property follows (or creates)
+ * a transition to a child shape. To keep the tree from growing without bounds when
+ * objects are used as dictionaries, both the number of properties per shape and the
+ * total number of shapes are limited. When a limit is reached, addProperty returns
+ * null and the caller is expected to fall back to a regular hash-based SlotMap.
+ */
+
+final class PropertyShape {
+
+    /**
+     * The root of the shape tree, with no properties.
+     */
+    static final PropertyShape EMPTY = new PropertyShape(new Object[0]);
+
+    /**
+     * The maximum number of properties that an object may have while it uses a shape.
+     */
+    static final int MAX_PROPERTIES = 64;
+
+    // Upper bound on the number of shapes ever created in this VM
+    private static final int MAX_SHAPES = 100000;
+
+    // Up to this many properties we search the key array rather than building a lookup map
+    private static final int LINEAR_SEARCH_LIMIT = 8;
+
+    private static final AtomicInteger shapeCount = new AtomicInteger();
+
+    private final Object[] keys;
+    private volatile Map<Object, PropertyShape> transitions;
+    private volatile Map<Object, Integer> lookup;
+
+    private PropertyShape(Object[] keys)
+    {
+        this.keys = keys;
+    }
+
+    /**
+     * Return the number of properties described by this shape.
+     */
+    int size()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Return the name of the property stored at "index".
+     */
+    Object getKey(int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * Return the position of "key" in this shape, or -1 if it is not present.
+     */
+    int indexOf(Object key)
+    {
+        final Object[] k = keys;
+        if (k.length <= LINEAR_SEARCH_LIMIT) {
+            // Property names are very often interned literals, so try identity first
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < k.length; i++) {
+                if (key.equals(k[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Map<Object, Integer> l = lookup;
+        if (l == null) {
+            // Racing threads may both build the map, which is harmless
+            l = new HashMap<Object, Integer>(k.length * 2);
+            for (int i = 0; i < k.length; i++) {
+                l.put(k[i], Integer.valueOf(i));
+            }
+            lookup = l;
+        }
+        Integer pos = l.get(key);
+        return pos == null ? -1 : pos.intValue();
+    }
+
+    /**
+     * Return the shape that results from adding "key" to this shape, or null if
+     * the shape tree may not grow any further.
+     */
+    PropertyShape addProperty(Object key)
+    {
+        Map<Object, PropertyShape> t = transitions;
+        if (t != null) {
+            PropertyShape next = t.get(key);
+            if (next != null) {
+                return next;
+            }
+        }
+        if (keys.length >= MAX_PROPERTIES) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (transitions == null) {
+                transitions = new ConcurrentHashMap<Object, PropertyShape>(4);
+            }
+            PropertyShape next = transitions.get(key);
+            if (next == null) {
+                if (shapeCount.incrementAndGet() > MAX_SHAPES) {
+                    shapeCount.decrementAndGet();
+                    return null;
+                }
+                Object[] newKeys = new Object[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                newKeys[keys.length] = key;
+                next = new PropertyShape(newKeys);
+                transitions.put(key, next);
+            }
+            return next;
+        }
+    }
+}
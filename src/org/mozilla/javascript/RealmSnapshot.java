@@ -0,0 +1,81 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+/**
+ * A template for top-level scopes with the standard objects, from which new
+ * scopes are created much faster than with
+ * {@link Context#initStandardObjects()}.
+ *
+ * <p>The snapshot initializes the standard objects once, in a sealed
+ * template scope. {@link #newScope()} then only copies the global properties
+ * of the template to a new {@link TopLevel}, so that each scope has its own
+ * global variables, while the built-in constructors, prototypes and functions
+ * are shared by all scopes. As they are sealed, a script can not change them
+ * for the other scopes, just like with a shared sealed scope; unlike a scope
+ * that has the shared scope as prototype, global names are found in the scope
+ * itself.</p>
+ *
+ * <pre>
+ * RealmSnapshot snapshot = new RealmSnapshot(cx);
+ * ...
+ * Scriptable scope = snapshot.newScope();
+ * cx.evaluateString(scope, source, "request.js", 1, null);
+ * </pre>
+ *
+ * <p>Once it is created, a snapshot may be used by many threads at the same
+ * time. The scopes it creates are independent of each other.</p>
+ *
+ * @see Context#initStandardObjects(ScriptableObject, boolean)
+ */
+public class RealmSnapshot
+{
+    private final TopLevel template;
+
+    /**
+     * Create a snapshot of the standard objects.
+     *
+     * @param cx the current Context, whose language version and features
+     *        determine the standard objects
+     */
+    public RealmSnapshot(Context cx)
+    {
+        this(cx, new TopLevel());
+    }
+
+    /**
+     * Create a snapshot of a top-level scope. The standard objects are
+     * initialized in the scope, which may already have other properties of
+     * the embedding. The scope and the standard objects are sealed, and must
+     * not be used for anything else afterwards.
+     *
+     * @param cx the current Context
+     * @param scope the template for the new scopes
+     */
+    public RealmSnapshot(Context cx, TopLevel scope)
+    {
+        cx.initStandardObjects(scope, true);
+        // Sealing also initializes the lazily loaded constructors, so that
+        // the new scopes share them instead of loading their own
+        scope.sealObject();
+        template = scope;
+    }
+
+    /**
+     * Create a new top-level scope with the standard objects.
+     *
+     * @return the new scope
+     */
+    public TopLevel newScope()
+    {
+        TopLevel scope = new TopLevel();
+        scope.setPrototype(template.getPrototype());
+        scope.copyPropertiesFrom(template);
+        scope.copyBuiltins(template);
+        return scope;
+    }
+}
@@ -0,0 +1,204 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An in-memory cache of compiled scripts, so that compiling the same source again
+ * returns the Script that was compiled before instead of parsing and compiling it
+ * once more. Install it with {@link ContextFactory#setScriptCache(ScriptCache)}.
+ * It is then consulted by {@link Context#compileString} and
+ * {@link Context#compileReader}, and so also by {@link Context#evaluateString}.
+ *
+ * Scripts are cached by their source text, source name and line number, the
+ * language version and optimization level, the other compiler settings of the
+ * Context, and the security domain. When the cache holds more than its maximum
+ * number of scripts, the least recently used one is dropped.
+ *
+ * Sharing a Script is safe because compiled scripts keep no state of their own
+ * between executions; the same Script may be executed in different scopes and by
+ * different threads at the same time. Functions compiled with
+ * {@link Context#compileFunction} belong to a scope and are not cached. Scripts are
+ * not cached either when a debugger is attached, or when a specific Evaluator is
+ * used, as for eval().
+ *
+ * All methods of this class are thread-safe.
+ */
+
+public class ScriptCache
+{
+    private final int maxSize;
+    private final LinkedHashMap<Key, Script> scripts;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a cache that holds at most "maxSize" scripts.
+     */
+    public ScriptCache(int maxSize)
+    {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.scripts = new LinkedHashMap<Key, Script>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Script> eldest)
+            {
+                if (size() > ScriptCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public final int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Return the number of scripts in the cache.
+     */
+    public synchronized int size()
+    {
+        return scripts.size();
+    }
+
+    /**
+     * Return the number of compilations that were answered from the cache.
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Return the number of compilations that did not find their script in the cache.
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Return the number of scripts that were dropped to make room for others.
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * Remove all scripts from the cache. The statistics are kept.
+     */
+    public synchronized void clear()
+    {
+        scripts.clear();
+    }
+
+    synchronized Script get(Key key)
+    {
+        Script script = scripts.get(key);
+        if (script == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return script;
+    }
+
+    synchronized void put(Key key, Script script)
+    {
+        scripts.put(key, script);
+    }
+
+    /**
+     * Everything that the result of compiling a script depends on.
+     */
+    static final class Key
+    {
+        private final String source;
+        private final String sourceName;
+        private final int lineno;
+        private final int languageVersion;
+        private final int optimizationLevel;
+        private final int flags;
+        private final Set<String> activationNames;
+        private final Object securityDomain;
+        private final int hashCode;
+
+        Key(Context cx, CompilerEnvirons compilerEnv, String source,
+            String sourceName, int lineno, Object securityDomain)
+        {
+            this.source = source;
+            this.sourceName = sourceName;
+            this.lineno = lineno;
+            this.languageVersion = compilerEnv.getLanguageVersion();
+            this.optimizationLevel = compilerEnv.getOptimizationLevel();
+            int f = 0;
+            if (cx.isStrictMode()) f |= 1 << 0;
+            if (compilerEnv.isGenerateDebugInfo()) f |= 1 << 1;
+            if (compilerEnv.isReservedKeywordAsIdentifier()) f |= 1 << 2;
+            if (compilerEnv.isAllowMemberExprAsFunctionName()) f |= 1 << 3;
+            if (compilerEnv.isStrictMode()) f |= 1 << 4;
+            if (compilerEnv.reportWarningAsError()) f |= 1 << 5;
+            if (compilerEnv.isXmlAvailable()) f |= 1 << 6;
+            if (compilerEnv.isGeneratingSource()) f |= 1 << 7;
+            if (compilerEnv.isGenerateObserverCount()) f |= 1 << 8;
+            if (compilerEnv.isGenerateDynamicCallSites()) f |= 1 << 9;
+            if (compilerEnv.isGeneratePropertyCaches()) f |= 1 << 10;
+            this.flags = f;
+            // Copied since the Context may still change its set
+            this.activationNames = compilerEnv.activationNames == null
+                ? null : new HashSet<String>(compilerEnv.activationNames);
+            this.securityDomain = securityDomain;
+
+            int h = source.hashCode();
+            h = 31 * h + sourceName.hashCode();
+            h = 31 * h + lineno;
+            h = 31 * h + languageVersion;
+            h = 31 * h + optimizationLevel;
+            h = 31 * h + flags;
+            this.hashCode = h;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return hashCode == k.hashCode
+                && lineno == k.lineno
+                && languageVersion == k.languageVersion
+                && optimizationLevel == k.optimizationLevel
+                && flags == k.flags
+                && sourceName.equals(k.sourceName)
+                && source.equals(k.source)
+                && Objects.equals(activationNames, k.activationNames)
+                && Objects.equals(securityDomain, k.securityDomain);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of compiled scripts in a directory on disk, so that scripts do not have to
+ * be parsed and compiled again every time the JVM starts. Install it with
+ * {@link ContextFactory#setScriptFileCache(ScriptFileCache)}. It is then consulted
+ * by {@link Context#compileString}, {@link Context#compileReader} and
+ * {@link Context#compileFunction} before the source is parsed.
+ *
+ * The cache stores the class file generated by the optimizer, or the interpreter's
+ * Icode when the optimization level is -1. Each entry is stored in its own file,
+ * named after a SHA-256 hash of the source text, the source name and line number,
+ * every CompilerEnvirons setting that affects the generated code, and the Rhino
+ * build returned by {@link Context#getImplementationVersion()}. An entry produced
+ * by another Rhino build or with other settings is therefore never found, and stale
+ * files can be deleted at any time. Development builds without a Rhino manifest all
+ * share one version, so their cache directory must be cleared by hand after Rhino
+ * itself changes.
+ *
+ * Scripts are not cached when a debugger is attached, or when a specific Evaluator
+ * is used, as for eval(). Warnings that the compiler reported for a script are not
+ * reported again when it is loaded from the cache.
+ *
+ * Entries are read with Java serialization, restricted to Rhino's own classes, and
+ * turned into classes of the running JVM. The directory should therefore only be
+ * writable by the application itself. Errors while reading or writing the cache are
+ * ignored and the script is compiled as usual.
+ */
+
+public class ScriptFileCache
+{
+    private static final int MAGIC = 0x52686e43;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte KIND_CLASS = 1;
+    private static final byte KIND_ICODE = 2;
+
+    private static final String SUFFIX = ".rhc";
+
+    private final File directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache that keeps its files in "directory". The directory is
+     * created when the first script is stored.
+     */
+    public ScriptFileCache(File directory)
+    {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory is null");
+        }
+        this.directory = directory;
+    }
+
+    public final File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Return the number of scripts that were loaded from the cache.
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of scripts that had to be compiled because they were not
+     * in the cache, or their entry could not be read.
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Delete all the entries in the cache directory.
+     */
+    public void clear()
+    {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.getName().endsWith(SUFFIX)) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Return the key under which the compiled form of the source is cached.
+     */
+    static String getKey(Context cx, CompilerEnvirons compilerEnv,
+                         String source, String sourceName, int lineno,
+                         boolean returnFunction)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            String version = cx.getImplementationVersion();
+            out.writeUTF(version == null ? "" : version);
+            out.writeUTF(sourceName);
+            out.writeInt(lineno);
+            out.writeBoolean(returnFunction);
+            out.writeBoolean(cx.isStrictMode());
+            out.writeInt(compilerEnv.getLanguageVersion());
+            out.writeInt(compilerEnv.getOptimizationLevel());
+            out.writeBoolean(compilerEnv.isGenerateDebugInfo());
+            out.writeBoolean(compilerEnv.isReservedKeywordAsIdentifier());
+            out.writeBoolean(compilerEnv.isAllowMemberExprAsFunctionName());
+            out.writeBoolean(compilerEnv.isStrictMode());
+            out.writeBoolean(compilerEnv.reportWarningAsError());
+            out.writeBoolean(compilerEnv.isXmlAvailable());
+            out.writeBoolean(compilerEnv.isGeneratingSource());
+            out.writeBoolean(compilerEnv.isGenerateObserverCount());
+            out.writeBoolean(compilerEnv.isGenerateDynamicCallSites());
+            out.writeBoolean(compilerEnv.isGeneratePropertyCaches());
+            if (compilerEnv.activationNames == null) {
+                out.writeInt(-1);
+            } else {
+                List<String> names = new ArrayList<String>(compilerEnv.activationNames);
+                Collections.sort(names);
+                out.writeInt(names.size());
+                for (String name : names) {
+                    out.writeUTF(name);
+                }
+            }
+        } catch (IOException e) {
+            // Can not happen with a ByteArrayOutputStream
+            throw new RuntimeException(e);
+        }
+        digest.update(bytes.toByteArray());
+        // Hash the chars themselves, since an encoding would map unpaired
+        // surrogates in different sources to the same bytes
+        byte[] chars = new byte[source.length() * 2];
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            chars[2 * i] = (byte) (c >> 8);
+            chars[2 * i + 1] = (byte) c;
+        }
+        digest.update(chars);
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return the cached compiled form for "key" as it would have been returned by
+     * Evaluator.compile, or null if there is none.
+     */
+    Object load(String key)
+    {
+        Object bytecode = read(key);
+        if (bytecode == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return bytecode;
+    }
+
+    private Object read(String key)
+    {
+        File file = new File(directory, key + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                || !key.equals(in.readUTF()))
+            {
+                return null;
+            }
+            byte kind = in.readByte();
+            if (kind == KIND_CLASS) {
+                String className = in.readUTF();
+                byte[] classBytes = new byte[in.readInt()];
+                in.readFully(classBytes);
+                return new Object[] { className, classBytes };
+            } else if (kind == KIND_ICODE) {
+                return (InterpreterData) new IcodeInputStream(in).readObject();
+            }
+            return null;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // A damaged or incompatible entry, compile the script again
+            return null;
+        }
+    }
+
+    /**
+     * Store the result of Evaluator.compile under "key". Only the forms produced by
+     * the interpreter and the optimizer are supported, anything else is ignored.
+     */
+    void store(String key, Object bytecode)
+    {
+        byte kind;
+        if (bytecode instanceof InterpreterData) {
+            kind = KIND_ICODE;
+        } else if (bytecode instanceof Object[]
+                   && ((Object[]) bytecode).length == 2
+                   && ((Object[]) bytecode)[0] instanceof String
+                   && ((Object[]) bytecode)[1] instanceof byte[])
+        {
+            kind = KIND_CLASS;
+        } else {
+            return;
+        }
+
+        File tmp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            tmp = File.createTempFile(key, ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key);
+                out.writeByte(kind);
+                if (kind == KIND_CLASS) {
+                    Object[] nameBytesPair = (Object[]) bytecode;
+                    byte[] classBytes = (byte[]) nameBytesPair[1];
+                    out.writeUTF((String) nameBytesPair[0]);
+                    out.writeInt(classBytes.length);
+                    out.write(classBytes);
+                } else {
+                    ObjectOutputStream oos = new ObjectOutputStream(out);
+                    oos.writeObject(bytecode);
+                    oos.flush();
+                }
+            }
+            // Readers in other threads or processes must never see a partial file
+            File file = new File(directory, key + SUFFIX);
+            try {
+                Files.move(tmp.toPath(), file.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException | SecurityException e) {
+            // The cache is an optimization only
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Only accepts the classes that make up InterpreterData, so that a file placed
+     * in the cache directory can not instantiate arbitrary classes.
+     */
+    private static final class IcodeInputStream extends ObjectInputStream
+    {
+        IcodeInputStream(InputStream in) throws IOException
+        {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+            throws IOException, ClassNotFoundException
+        {
+            String name = desc.getName();
+            if (!name.startsWith("[")
+                && !name.startsWith("org.mozilla.javascript.")
+                && !name.equals("java.lang.String")
+                && !name.equals("java.lang.Number")
+                && !name.equals("java.lang.Integer")
+                && !name.equals("java.lang.Double")
+                && !name.equals("java.lang.Boolean"))
+            {
+                throw new InvalidClassException(name, "not allowed in Icode");
+            }
+            return Class.forName(name, false, ScriptFileCache.class.getClassLoader());
+        }
+    }
+}
@@ -366,17 +366,73 @@ public class ScriptRuntime {
         return b ? Boolean.TRUE : Boolean.FALSE;
     }
 
+    /**
+     * The smallest integer that {@link #wrapInt(int)} and
+     * {@link #wrapDouble(double)} return a shared instance for.
+     */
+    public static final int NUMBER_CACHE_LOW = -128;
+
+    /**
+     * The largest integer that {@link #wrapInt(int)} and
+     * {@link #wrapDouble(double)} return a shared instance for. It is 1023
+     * unless the "rhino.number.cache.high" system property sets another
+     * value between 127 and 2^20.
+     */
+    public static final int NUMBER_CACHE_HIGH;
+
+    private static final Integer[] integerCache;
+    private static final Double[] doubleCache;
+
+    static {
+        int high = 1023;
+        String prop = System.getProperty("rhino.number.cache.high");
+        if (prop != null) {
+            try {
+                high = Math.max(127, Math.min(Integer.parseInt(prop.trim()),
+                                              1 << 20));
+            } catch (NumberFormatException ex) {
+                // Keep the default
+            }
+        }
+        NUMBER_CACHE_HIGH = high;
+        integerCache = new Integer[high - NUMBER_CACHE_LOW + 1];
+        doubleCache = new Double[integerCache.length];
+        for (int i = 0; i != integerCache.length; ++i) {
+            integerCache[i] = Integer.valueOf(i + NUMBER_CACHE_LOW);
+            doubleCache[i] = Double.valueOf(i + NUMBER_CACHE_LOW);
+        }
+    }
+
     public static Integer wrapInt(int i)
     {
+        if (i >= NUMBER_CACHE_LOW && i <= NUMBER_CACHE_HIGH) {
+            return integerCache[i - NUMBER_CACHE_LOW];
+        }
         return Integer.valueOf(i);
     }
 
     public static Number wrapNumber(double x)
     {
-        if (Double.isNaN(x)) {
-            return ScriptRuntime.NaNobj;
+        return wrapDouble(x);
+    }
+
+    /**
+     * Box a number. Small integers other than -0 and NaN are not allocated
+     * again but share one instance each, since they are by far the most
+     * common numbers that scripts produce.
+     */
+    public static Double wrapDouble(double x)
+    {
+        int i = (int) x;
+        if (i == x && i >= NUMBER_CACHE_LOW && i <= NUMBER_CACHE_HIGH
+            && (i != 0 || 1 / x > 0))
+        {
+            return doubleCache[i - NUMBER_CACHE_LOW];
+        }
+        if (x != x) {
+            return NaNobj;
         }
-        return new Double(x);
+        return Double.valueOf(x);
     }
 
     /**
@@ -4499,7 +4555,7 @@ public class ScriptRuntime {
         return value;
     }
 
-    private static void storeScriptable(Context cx, Scriptable value)
+    static void storeScriptable(Context cx, Scriptable value)
     {
         // The previously stored scratchScriptable should be consumed
         if (cx.scratchScriptable != null)
@@ -362,11 +362,35 @@ public abstract class ScriptableObject implements Scriptable,
         }
     }
 
+    /**
+     * Return the shared shape describing this object's properties, or null if
+     * the object does not currently use shapes.
+     */
+    final PropertyShape getShape()
+    {
+        return slotMap.getShape();
+    }
+
+    final Object getShapedValue(int index)
+    {
+        return slotMap.getShapedValue(index);
+    }
+
+    final void setShapedValue(int index, Object value)
+    {
+        slotMap.setShapedValue(index, value);
+    }
+
     private SlotMapContainer createSlotMap(int initialSize)
     {
         Context cx = Context.getCurrentContext();
-        if ((cx != null) && cx.hasFeature(Context.FEATURE_THREAD_SAFE_OBJECTS)) {
-            return new ThreadSafeSlotMapContainer(initialSize);
+        if (cx != null) {
+            if (cx.hasFeature(Context.FEATURE_THREAD_SAFE_OBJECTS)) {
+                return new ThreadSafeSlotMapContainer(initialSize);
+            }
+            if (cx.hasFeature(Context.FEATURE_SHAPED_OBJECTS)) {
+                return new SlotMapContainer(initialSize, true);
+            }
         }
         return new SlotMapContainer(initialSize);
     }
@@ -415,7 +439,7 @@ public abstract class ScriptableObject implements Scriptable,
     @Override
     public boolean has(String name, Scriptable start)
     {
-        return null != slotMap.query(name, 0);
+        return slotMap.has(name, 0);
     }
 
     /**
@@ -456,11 +480,7 @@ public abstract class ScriptableObject implements Scriptable,
     @Override
     public Object get(String name, Scriptable start)
     {
-        Slot slot = slotMap.query(name, 0);
-        if (slot == null) {
-            return Scriptable.NOT_FOUND;
-        }
-        return slot.getValue(start);
+        return slotMap.queryValue(name, 0, start);
     }
 
     /**
@@ -2280,6 +2300,43 @@ public abstract class ScriptableObject implements Scriptable,
         }
     }
 
+    /**
+     * Add copies of the properties of "source" to this object, with the same
+     * attributes, and the values associated with "source". Where the value is
+     * "source" itself, the copy refers to this object instead.
+     */
+    void copyPropertiesFrom(ScriptableObject source) {
+        final long stamp = source.slotMap.readLock();
+        try {
+            for (Slot slot : source.slotMap) {
+                Slot copy;
+                if (slot instanceof GetterSlot) {
+                    GetterSlot gslot = new GetterSlot(slot.name, slot.indexOrHash,
+                                                      slot.getAttributes());
+                    gslot.getter = ((GetterSlot) slot).getter;
+                    gslot.setter = ((GetterSlot) slot).setter;
+                    copy = gslot;
+                } else {
+                    copy = new Slot(slot.name, slot.indexOrHash, slot.getAttributes());
+                }
+                copy.value = (slot.value == source ? this : slot.value);
+                slotMap.addSlot(copy);
+            }
+        } finally {
+            source.slotMap.unlockRead(stamp);
+        }
+        Map<Object,Object> values = source.associatedValues;
+        if (values != null) {
+            Map<Object,Object> h = new HashMap<Object,Object>(values);
+            for (Map.Entry<Object,Object> e : h.entrySet()) {
+                if (e.getValue() == source) {
+                    e.setValue(this);
+                }
+            }
+            associatedValues = h;
+        }
+    }
+
     /**
      * Return true if this object is sealed.
      *
@@ -2806,7 +2863,7 @@ public abstract class ScriptableObject implements Scriptable,
         // so we inline the extensible/sealed checks below.
         Slot slot;
         if (this != start) {
-            slot = slotMap.query(key, index);
+            slot = queryInherited(key, index);
             if(!isExtensible && Context.getContext().isStrictMode() && (slot == null || !(slot instanceof GetterSlot)))
                 throw ScriptRuntime.typeError0("msg.not.extensible");
             if (slot == null) {
@@ -2821,11 +2878,27 @@ public abstract class ScriptableObject implements Scriptable,
             }
         } else {
             if (isSealed) checkNotSealed(key, index);
+            if (slotMap.putShapedValue(key, value)) {
+                return true;
+            }
             slot = slotMap.get(key, index, SlotAccess.MODIFY);
         }
         return slot.setValue(value, this, start);
     }
 
+    /**
+     * Return the slot that a put on start, an object that inherits from
+     * this one, may have to go through, or null if start gets its own
+     * property. A shaped map only holds writable data properties, which such
+     * a put shadows, so the map is not converted to hand out a Slot.
+     */
+    private Slot queryInherited(Object key, int index)
+    {
+        if (slotMap.getShape() != null) {
+            return null;
+        }
+        return slotMap.query(key, index);
+    }
 
     /**
      *
@@ -2850,7 +2923,7 @@ public abstract class ScriptableObject implements Scriptable,
         }
         Slot slot;
         if (this != start) {
-            slot = slotMap.query(name, index);
+            slot = queryInherited(name, index);
             if (slot == null) {
                 return false;
             }
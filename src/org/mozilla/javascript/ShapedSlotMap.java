@@ -0,0 +1,207 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class stores the properties of an object as a shared PropertyShape plus an array
+ * of values, so that many objects with the same property names do not each need a
+ * hash table and a Slot per property. It can only represent writable, enumerable,
+ * configurable data properties with String names. Because it does not hold actual
+ * Slot objects, SlotMapContainer must replace it with a regular SlotMap before any
+ * operation that needs a Slot, such as changing attributes, defining a getter or setter,
+ * or deleting a property. Only "size", "isEmpty" and "iterator" from the SlotMap
+ * interface are supported directly. The iterator returns copies of the properties,
+ * so changes made to those Slots are not reflected in the map.
+ */
+
+final class ShapedSlotMap
+    implements SlotMap {
+
+    private static final int INITIAL_SIZE = 4;
+
+    private PropertyShape shape = PropertyShape.EMPTY;
+    private Object[] values;
+
+    /**
+     * Return true if "key" can be stored in a shaped map at all.
+     */
+    static boolean isShapeKey(Object key)
+    {
+        return key instanceof String;
+    }
+
+    @Override
+    public int size() {
+        return shape.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return shape.size() == 0;
+    }
+
+    PropertyShape getShape()
+    {
+        return shape;
+    }
+
+    Object getValueAt(int index)
+    {
+        return values[index];
+    }
+
+    void setValueAt(int index, Object value)
+    {
+        values[index] = value;
+    }
+
+    /**
+     * Return the position of the property in the value array, or -1.
+     */
+    int indexOf(Object key)
+    {
+        if (!isShapeKey(key)) {
+            return -1;
+        }
+        return shape.indexOf(key);
+    }
+
+    /**
+     * Return the value of the property, or NOT_FOUND if it is not present.
+     */
+    Object getValue(Object key)
+    {
+        int pos = indexOf(key);
+        if (pos < 0) {
+            return Scriptable.NOT_FOUND;
+        }
+        return values[pos];
+    }
+
+    /**
+     * Set the value of an existing property or append a new one. Returns false if
+     * the property cannot be represented by this map, in which case it is unchanged.
+     */
+    boolean putValue(Object key, Object value)
+    {
+        if (!isShapeKey(key)) {
+            return false;
+        }
+        int pos = shape.indexOf(key);
+        if (pos >= 0) {
+            values[pos] = value;
+            return true;
+        }
+        return appendValue(key, value);
+    }
+
+    private boolean appendValue(Object key, Object value)
+    {
+        PropertyShape newShape = shape.addProperty(key);
+        if (newShape == null) {
+            return false;
+        }
+        int pos = shape.size();
+        if (values == null) {
+            values = new Object[INITIAL_SIZE];
+        } else if (pos == values.length) {
+            Object[] newValues = new Object[Math.min(values.length * 2,
+                                                     PropertyShape.MAX_PROPERTIES)];
+            System.arraycopy(values, 0, newValues, 0, pos);
+            values = newValues;
+        }
+        values[pos] = value;
+        shape = newShape;
+        return true;
+    }
+
+    /**
+     * Return true if "slot" is a plain data property that this map can hold.
+     */
+    static boolean canHold(ScriptableObject.Slot slot)
+    {
+        return slot.getClass() == ScriptableObject.Slot.class
+            && slot.getAttributes() == 0
+            && isShapeKey(slot.name);
+    }
+
+    /**
+     * Copy all properties, in insertion order, to "newMap" as new Slots.
+     */
+    void copyTo(SlotMap newMap)
+    {
+        for (ScriptableObject.Slot slot : this) {
+            newMap.addSlot(slot);
+        }
+    }
+
+    @Override
+    public ScriptableObject.Slot get(Object key, int index, ScriptableObject.SlotAccess accessType)
+    {
+        throw Kit.codeBug();
+    }
+
+    @Override
+    public ScriptableObject.Slot query(Object key, int index)
+    {
+        throw Kit.codeBug();
+    }
+
+    @Override
+    public void addSlot(ScriptableObject.Slot newSlot)
+    {
+        if (!canHold(newSlot) || indexOf(newSlot.name) >= 0
+            || !appendValue(newSlot.name, newSlot.value)) {
+            throw Kit.codeBug();
+        }
+    }
+
+    @Override
+    public void remove(Object key, int index)
+    {
+        throw Kit.codeBug();
+    }
+
+    @Override
+    public Iterator<ScriptableObject.Slot> iterator()
+    {
+        return new Iter(shape, values);
+    }
+
+    private static final class Iter
+        implements Iterator<ScriptableObject.Slot>
+    {
+        private final PropertyShape shape;
+        private final Object[] values;
+        private int pos;
+
+        Iter(PropertyShape shape, Object[] values)
+        {
+            this.shape = shape;
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < shape.size();
+        }
+
+        @Override
+        public ScriptableObject.Slot next() {
+            if (pos >= shape.size()) {
+                throw new NoSuchElementException();
+            }
+            Object key = shape.getKey(pos);
+            ScriptableObject.Slot slot = new ScriptableObject.Slot(key, key.hashCode(), 0);
+            slot.value = values[pos++];
+            return slot;
+        }
+    }
+}
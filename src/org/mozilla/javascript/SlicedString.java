@@ -0,0 +1,148 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.io.Serializable;
+
+/**
+ * <p>This class represents a substring of a <code>java.lang.String</code>
+ * that shares the characters of the original String instead of copying
+ * them.</p>
+ *
+ * <p>String.prototype.substring, substr and slice return a SlicedString for
+ * long substrings, so that scripts that take apart a large document by
+ * slicing off its head do not copy the rest of it each time. Short
+ * substrings, and substrings that are short compared to the String they
+ * are taken from, are still copied, so that a small piece does not keep a
+ * large String from being collected.</p>
+ *
+ * <p>The String is only created when toString() is called, and is then
+ * kept.</p>
+ *
+ * <p>Both the name and the concept are borrowed from V8.</p>
+ */
+public final class SlicedString implements CharSequence, Serializable {
+
+    private static final long serialVersionUID = 4637436412735713402L;
+
+    // Substrings shorter than this are copied
+    private static final int MIN_LENGTH = 256;
+
+    private final String base;
+    private final int offset;
+    private final int length;
+    // Computed on first use; threads that race compute equal Strings
+    private transient String flat;
+
+    public SlicedString(String base, int begin, int end) {
+        if (begin < 0 || begin > end || end > base.length()) {
+            throw new StringIndexOutOfBoundsException(
+                "begin " + begin + ", end " + end + ", length " + base.length());
+        }
+        this.base = base;
+        this.offset = begin;
+        this.length = end - begin;
+    }
+
+    /**
+     * Return the characters of s from begin up to end, as a SlicedString if
+     * that saves copying them, or as a String. The range must be valid.
+     */
+    static CharSequence slice(CharSequence s, int begin, int end) {
+        int length = end - begin;
+        if (length == s.length()) {
+            return s;
+        }
+        String base;
+        int offset;
+        if (s instanceof String) {
+            base = (String) s;
+            offset = 0;
+        } else if (s instanceof SlicedString) {
+            SlicedString sliced = (SlicedString) s;
+            base = sliced.base;
+            offset = sliced.offset;
+        } else if (s instanceof ConsString && length >= MIN_LENGTH
+                   && length >= s.length() / 4)
+        {
+            // The substring is long compared to the rope, so flatten it
+            // once rather than copying from it for each substring
+            base = s.toString();
+            offset = 0;
+        } else {
+            return s.subSequence(begin, end).toString();
+        }
+        // Copy short substrings, and those that would keep a String more
+        // than four times as long alive
+        if (length < MIN_LENGTH || length < base.length() / 4) {
+            return base.substring(offset + begin, offset + end);
+        }
+        return new SlicedString(base, offset + begin, offset + end);
+    }
+
+    // Replace with string representation when serializing
+    private Object writeReplace() {
+        return this.toString();
+    }
+
+    @Override
+    public String toString() {
+        String s = flat;
+        if (s == null) {
+            s = base.substring(offset, offset + length);
+            flat = s;
+        }
+        return s;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        return base.charAt(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new StringIndexOutOfBoundsException(
+                "begin " + start + ", end " + end + ", length " + length);
+        }
+        return slice(this, start, end);
+    }
+
+    /**
+     * Like {@link String#indexOf(String, int)}, without creating the String.
+     */
+    public int indexOf(String str, int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        } else if (fromIndex >= length) {
+            return str.isEmpty() ? length : -1;
+        }
+        int index = base.indexOf(str, offset + fromIndex);
+        if (index < 0 || index + str.length() > offset + length) {
+            return -1;
+        }
+        return index - offset;
+    }
+
+    /**
+     * Like {@link String#startsWith(String, int)}, without creating the
+     * String.
+     */
+    public boolean startsWith(String prefix, int toffset) {
+        return toffset >= 0 && toffset <= length - prefix.length()
+            && base.startsWith(prefix, offset + toffset);
+    }
+}
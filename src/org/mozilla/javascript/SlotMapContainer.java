@@ -23,14 +23,34 @@ class SlotMapContainer
    * with HashSlotMap. We can adjust this parameter to balance
    * performance for typical objects versus performance for huge objects with many collisions.
    */
-  private static final int LARGE_HASH_SIZE = 2000;
+  static final int LARGE_HASH_SIZE = 2000;
 
   protected SlotMap map;
 
   SlotMapContainer(int initialSize)
+  {
+    this(initialSize, false);
+  }
+
+  /**
+   * Create a container that always uses "map".
+   */
+  SlotMapContainer(SlotMap map)
+  {
+    this.map = map;
+  }
+
+  /**
+   * Create a container that starts out with a ShapedSlotMap if "shaped" is true.
+   * The shaped map is replaced by a regular map as soon as the object needs
+   * something that shapes cannot express.
+   */
+  SlotMapContainer(int initialSize, boolean shaped)
   {
     if (initialSize > LARGE_HASH_SIZE) {
       map = new HashSlotMap();
+    } else if (shaped) {
+      map = new ShapedSlotMap();
     } else {
       map = new EmbeddedSlotMap();
     }
@@ -54,6 +74,12 @@ class SlotMapContainer
   @Override
   public Slot get(Object key, int index, SlotAccess accessType)
   {
+    if (map instanceof ShapedSlotMap) {
+      if (accessType == SlotAccess.QUERY && ((ShapedSlotMap) map).indexOf(key) < 0) {
+        return null;
+      }
+      unshape();
+    }
     if (accessType != SlotAccess.QUERY) {
       checkMapSize();
     }
@@ -62,18 +88,102 @@ class SlotMapContainer
 
   @Override
   public Slot query(Object key, int index) {
+    if (map instanceof ShapedSlotMap) {
+      if (((ShapedSlotMap) map).indexOf(key) < 0) {
+        return null;
+      }
+      unshape();
+    }
     return map.query(key, index);
   }
 
+  /**
+   * Return true if the map contains the property. Unlike "query", this never
+   * requires a shaped map to be converted.
+   */
+  public boolean has(Object key, int index) {
+    if (map instanceof ShapedSlotMap) {
+      return ((ShapedSlotMap) map).indexOf(key) >= 0;
+    }
+    return query(key, index) != null;
+  }
+
+  /**
+   * Return the value of the property, or NOT_FOUND if it is not present. Unlike
+   * "query", this never requires a shaped map to be converted.
+   */
+  public Object queryValue(Object key, int index, Scriptable start) {
+    if (map instanceof ShapedSlotMap) {
+      return ((ShapedSlotMap) map).getValue(key);
+    }
+    Slot slot = query(key, index);
+    if (slot == null) {
+      return Scriptable.NOT_FOUND;
+    }
+    return slot.getValue(start);
+  }
+
+  /**
+   * If the map is shaped, set or add the property to it and return true. Otherwise
+   * return false, and the caller must fall back to a Slot obtained from "get".
+   * The caller is responsible for the extensible and sealed checks.
+   */
+  public boolean putShapedValue(Object key, Object value) {
+    if (map instanceof ShapedSlotMap) {
+      if (((ShapedSlotMap) map).putValue(key, value)) {
+        return true;
+      }
+      unshape();
+    }
+    return false;
+  }
+
+  /**
+   * Return the shape of the map, or null if the map does not currently use shapes.
+   */
+  PropertyShape getShape() {
+    if (map instanceof ShapedSlotMap) {
+      return ((ShapedSlotMap) map).getShape();
+    }
+    return null;
+  }
+
+  /**
+   * Return the value at "index" of a shaped map. The caller must have checked the shape.
+   */
+  Object getShapedValue(int index) {
+    return ((ShapedSlotMap) map).getValueAt(index);
+  }
+
+  /**
+   * Replace the value at "index" of a shaped map. The caller must have checked the shape.
+   */
+  void setShapedValue(int index, Object value) {
+    ((ShapedSlotMap) map).setValueAt(index, value);
+  }
+
   @Override
   public void addSlot(Slot newSlot)
   {
+    if (map instanceof ShapedSlotMap) {
+      if (ShapedSlotMap.canHold(newSlot)
+          && ((ShapedSlotMap) map).putValue(newSlot.name, newSlot.value)) {
+        return;
+      }
+      unshape();
+    }
     checkMapSize();
     map.addSlot(newSlot);
   }
 
   @Override
   public void remove(Object key, int index) {
+    if (map instanceof ShapedSlotMap) {
+      if (((ShapedSlotMap) map).indexOf(key) < 0) {
+        return;
+      }
+      unshape();
+    }
     map.remove(key, index);
   }
 
@@ -93,6 +203,17 @@ class SlotMapContainer
     // No locking in the default implementationock.unlockRead(stamp);
   }
 
+  /**
+   * Replace a ShapedSlotMap with an EmbeddedSlotMap holding the same properties, so that
+   * individual Slots may be handed out and modified.
+   */
+  protected void unshape()
+  {
+    SlotMap newMap = new EmbeddedSlotMap();
+    ((ShapedSlotMap) map).copyTo(newMap);
+    map = newMap;
+  }
+
   /**
    * Before inserting a new item in the map, check and see if we need to expand from the embedded
    * map to a HashMap that is more robust against large numbers of hash collisions.
@@ -14,7 +14,9 @@ import org.mozilla.javascript.ScriptableObject.SlotAccess;
 
 /**
  * This class extends the SlotMapContainer so that we have thread-safe access to all
- * the properties of an object.
+ * the properties of an object. Reads never lock: they go straight to a
+ * ConcurrentSlotMap, which may be read while another thread modifies it. The lock
+ * only serializes modifications, and keeps iteration from overlapping with them.
  */
 class ThreadSafeSlotMapContainer
   extends SlotMapContainer {
@@ -24,24 +26,16 @@ class ThreadSafeSlotMapContainer
 
   ThreadSafeSlotMapContainer(int initialSize)
   {
-    super(initialSize);
+    super(new ConcurrentSlotMap());
+    if (initialSize > LARGE_HASH_SIZE) {
+      ((ConcurrentSlotMap) map).switchToHashMap();
+    }
   }
 
   @Override
   public int size()
   {
-    long stamp = lock.tryOptimisticRead();
-    int s = map.size();
-    if (lock.validate(stamp)) {
-      return s;
-    }
-
-    stamp = lock.readLock();
-    try {
-      return map.size();
-    } finally {
-      lock.unlockRead(stamp);
-    }
+    return map.size();
   }
 
   @Override
@@ -54,28 +48,19 @@ class ThreadSafeSlotMapContainer
   @Override
   public boolean isEmpty()
   {
-    long stamp = lock.tryOptimisticRead();
-    boolean e = map.isEmpty();
-    if (lock.validate(stamp)) {
-       return e;
-    }
-
-    stamp = lock.readLock();
-    try {
-      return map.isEmpty();
-    } finally {
-      lock.unlockRead(stamp);
-    }
+    return map.isEmpty();
   }
 
   @Override
   public Slot get(Object key, int index, SlotAccess accessType)
   {
+    Slot slot = ((ConcurrentSlotMap) map).getExisting(key, index, accessType);
+    if (slot != null || accessType == SlotAccess.QUERY) {
+      return slot;
+    }
     final long stamp = lock.writeLock();
     try {
-      if (accessType != SlotAccess.QUERY) {
-        checkMapSize();
-      }
+      checkMapSize();
       return map.get(key, index, accessType);
     } finally {
       lock.unlockWrite(stamp);
@@ -85,18 +70,13 @@ class ThreadSafeSlotMapContainer
   @Override
   public Slot query(Object key, int index)
   {
-    long stamp = lock.tryOptimisticRead();
-    Slot s = map.query(key, index);
-    if (lock.validate(stamp)) {
-      return s;
-    }
+    return map.query(key, index);
+  }
 
-    stamp = lock.readLock();
-    try {
-      return map.query(key, index);
-    } finally {
-      lock.unlockRead(stamp);
-    }
+  @Override
+  public boolean has(Object key, int index)
+  {
+    return map.query(key, index) != null;
   }
 
   @Override
@@ -151,13 +131,15 @@ class ThreadSafeSlotMapContainer
   }
 
   /**
-   * Before inserting a new item in the map, check and see if we need to expand from the embedded
-   * map to a HashMap that is more robust against large numbers of hash collisions.
+   * The ConcurrentSlotMap is never replaced by another map, but it switches to a
+   * ConcurrentHashMap, which is more robust against hash collisions, once it is large.
+   * The caller must hold the write lock.
    */
   @Override
   protected void checkMapSize()
   {
-    assert(lock.isWriteLocked());
-    super.checkMapSize();
+    if (map.size() >= LARGE_HASH_SIZE) {
+      ((ConcurrentSlotMap) map).switchToHashMap();
+    }
   }
 }
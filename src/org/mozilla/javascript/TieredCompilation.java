@@ -0,0 +1,340 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.ScriptNode;
+
+/**
+ * Tiered execution of interpreted code: scripts start out in the interpreter,
+ * and functions that turn out to be hot are compiled with the optimizer. Code
+ * that runs once does not pay for compilation, while code that runs often
+ * still gets the speed of compiled code. Install it with
+ * {@link ContextFactory#setTieredCompilation(TieredCompilation)} and compile
+ * scripts with optimization level -1.
+ *
+ * Every interpreted function counts its calls and the iterations of its loops.
+ * When the count reaches the threshold, the source of the function is
+ * compiled on a background thread while the function keeps running in the
+ * interpreter. Once the compiled code is ready, further calls of the function
+ * run the compiled code instead. A call that is already running in the
+ * interpreter stays there, and the iterations of its loops are only counted
+ * when it returns.
+ *
+ * A function is compiled on its own, with the scope it was defined in, so only
+ * functions that do not need an activation object are compiled. Functions
+ * that use arguments, eval or with, or that contain closures over their own
+ * variables are therefore always interpreted, as are generators and arrow
+ * functions. Nothing is compiled while a debugger is attached or when a
+ * SecurityController is used. Compiled code can not be captured in a
+ * continuation, so scripts that use continuations should not use tiered
+ * compilation.
+ *
+ * The source of each script is kept in memory as long as the script is, since
+ * it is needed to compile its functions later.
+ */
+
+public class TieredCompilation
+{
+    /**
+     * The default number of calls and loop iterations after which a function
+     * is compiled.
+     */
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    // Values of InterpreterData.tierCode besides the compiled code
+    private static final Object COMPILING = new Object();
+    private static final Object FAILED = new Object();
+
+    private final int threshold;
+    private final int optimizationLevel;
+    private final Executor executor;
+    private final AtomicLong compiledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Compile functions at optimization level 9 after DEFAULT_THRESHOLD calls
+     * and loop iterations.
+     */
+    public TieredCompilation()
+    {
+        this(DEFAULT_THRESHOLD, 9, null);
+    }
+
+    /**
+     * Compile functions at "optimizationLevel" after "threshold" calls and
+     * loop iterations, using "executor" to run the compiler. If executor is
+     * null, a background thread that is started when needed is used.
+     */
+    public TieredCompilation(int threshold, int optimizationLevel,
+                             Executor executor)
+    {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        if (optimizationLevel < 0) {
+            throw new IllegalArgumentException(
+                "optimizationLevel must not be negative");
+        }
+        Context.checkOptimizationLevel(optimizationLevel);
+        this.threshold = threshold;
+        this.optimizationLevel = optimizationLevel;
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                r -> {
+                    Thread t = new Thread(r, "Rhino tiered compilation");
+                    t.setDaemon(true);
+                    return t;
+                });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        this.executor = executor;
+    }
+
+    public final int getThreshold()
+    {
+        return threshold;
+    }
+
+    public final int getOptimizationLevel()
+    {
+        return optimizationLevel;
+    }
+
+    /**
+     * Return the number of functions that were compiled.
+     */
+    public long getCompiledCount()
+    {
+        return compiledCount.get();
+    }
+
+    /**
+     * Return the number of hot functions that could not be compiled.
+     */
+    public long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    /**
+     * Return the compiled version of "f", or null if it should still be
+     * interpreted. Counts the call, and starts compiling the function once it
+     * is hot.
+     */
+    Function getCompiledFunction(Context cx, InterpretedFunction f)
+    {
+        NativeFunction compiled = f.compiledFunction;
+        if (compiled != null) {
+            return cx.getDebugger() == null ? compiled : null;
+        }
+        InterpreterData idata = f.idata;
+        if (idata.rawSourceStart < 0) {
+            return null;
+        }
+        Object code = idata.tierCode;
+        if (code == null) {
+            if (++idata.tierCount < threshold) {
+                return null;
+            }
+            startCompilation(cx, f);
+            // The executor may have compiled it already
+            code = idata.tierCode;
+        }
+        if (code == COMPILING || code == FAILED || cx.getDebugger() != null) {
+            return null;
+        }
+        return createFunction(cx, f);
+    }
+
+    /**
+     * Add the iterations of loops in a call of a function that just returned.
+     */
+    static void countLoops(Context cx, InterpreterData idata, int count)
+    {
+        if (idata.tierCode == null
+            && cx.getFactory().getTieredCompilation() != null)
+        {
+            idata.tierCount += count;
+        }
+    }
+
+    private void startCompilation(Context cx, InterpretedFunction f)
+    {
+        InterpreterData idata = f.idata;
+        synchronized (idata) {
+            if (idata.tierCode != null) {
+                return;
+            }
+            idata.tierCode = COMPILING;
+        }
+        String source = getSource(idata);
+        if (source == null || idata.itsNeedsActivation
+            || f.securityController != null || cx.getDebugger() != null)
+        {
+            idata.tierCode = FAILED;
+            return;
+        }
+
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+        compilerEnv.setLanguageVersion(idata.languageVersion);
+        compilerEnv.setOptimizationLevel(optimizationLevel);
+        // Warnings were already reported when the script was compiled
+        compilerEnv.setErrorReporter(DefaultErrorReporter.instance);
+        ContextFactory factory = cx.getFactory();
+        try {
+            executor.execute(() -> compile(factory, compilerEnv, idata, source));
+        } catch (RejectedExecutionException ex) {
+            idata.tierCode = FAILED;
+        }
+    }
+
+    /**
+     * Return the source of the function alone, or null if it is not known.
+     */
+    private static String getSource(InterpreterData idata)
+    {
+        InterpreterData top = idata;
+        while (top.parentData != null) {
+            top = top.parentData;
+        }
+        String source = top.rawSource;
+        if (source == null || idata.rawSourceEnd > source.length()) {
+            return null;
+        }
+        return source.substring(idata.rawSourceStart, idata.rawSourceEnd);
+    }
+
+    private void compile(ContextFactory factory, CompilerEnvirons compilerEnv,
+                         InterpreterData idata, String source)
+    {
+        Object code = FAILED;
+        try {
+            Object bytecode = factory.call(cx -> compileFunction(
+                compilerEnv, source, idata.itsSourceFile, idata.rawSourceLine,
+                idata.isStrict, idata.itsFunctionType));
+            if (bytecode != null) {
+                code = bytecode;
+            }
+        } catch (RuntimeException ex) {
+            // The function stays interpreted
+        } finally {
+            if (code == FAILED) {
+                failedCount.incrementAndGet();
+            } else {
+                compiledCount.incrementAndGet();
+            }
+            idata.tierCode = code;
+        }
+    }
+
+    /**
+     * Compile the source of a function of the given type. The compiled
+     * function must see its own name as the interpreted one does: a function
+     * statement is parsed as a statement so that the name is looked up in the
+     * scope, which holds the interpreted function. A named function expression
+     * binds its name to itself, which would be the compiled copy, so one that
+     * uses its name is not compiled.
+     */
+    private static Object compileFunction(CompilerEnvirons compilerEnv,
+                                          String source, String sourceName,
+                                          int lineno, boolean strict,
+                                          int functionType)
+    {
+        Evaluator compiler = Context.createCodegen();
+        if (compiler == null) {
+            return null;
+        }
+        ErrorReporter reporter = compilerEnv.getErrorReporter();
+        Parser p = new Parser(compilerEnv, reporter);
+        p.calledByCompileFunction =
+            functionType == FunctionNode.FUNCTION_EXPRESSION;
+        p.setDefaultUseStrictDirective(strict);
+        AstRoot ast = p.parse(source, sourceName, lineno);
+        if (ast.getFirstChild() == null
+            || ast.getFirstChild().getType() != Token.FUNCTION
+            || ast.getFirstChild().getNext() != null)
+        {
+            // Not a function on its own, like a method of an object literal
+            return null;
+        }
+        FunctionNode fn = (FunctionNode) ast.getFirstChild();
+        if (p.calledByCompileFunction && usesOwnName(fn)) {
+            return null;
+        }
+        ScriptNode tree = new IRFactory(compilerEnv, reporter).transformTree(ast);
+        return compiler.compile(compilerEnv, tree, tree.getEncodedSource(), true);
+    }
+
+    private static boolean usesOwnName(FunctionNode fn)
+    {
+        Name name = fn.getFunctionName();
+        if (name == null || name.length() == 0) {
+            return false;
+        }
+        String id = name.getIdentifier();
+        boolean[] found = new boolean[1];
+        fn.getBody().visit(node -> {
+            if (node instanceof Name
+                && id.equals(((Name) node).getIdentifier()))
+            {
+                found[0] = true;
+            }
+            return !found[0];
+        });
+        return found[0];
+    }
+
+    /**
+     * Create the compiled function for "f" from the compiled code of its
+     * InterpreterData, in the same scope as f.
+     */
+    private static Function createFunction(Context cx, InterpretedFunction f)
+    {
+        InterpreterData idata = f.idata;
+        Scriptable scope = f.getParentScope();
+        NativeFunction compiled;
+        synchronized (idata) {
+            Object code = idata.tierCode;
+            if (code instanceof Class) {
+                compiled = newFunction((Class<?>) code, cx, scope);
+            } else {
+                compiled = (NativeFunction) Context.createCodegen()
+                    .createFunctionObject(cx, scope, code, null);
+                // Other closures of the function share the class
+                idata.tierCode = compiled.getClass();
+            }
+        }
+        f.compiledFunction = compiled;
+        return compiled;
+    }
+
+    private static NativeFunction newFunction(Class<?> cl, Context cx,
+                                              Scriptable scope)
+    {
+        try {
+            Constructor<?> ctor = cl.getConstructors()[0];
+            return (NativeFunction) ctor.newInstance(scope, cx, Integer.valueOf(0));
+        } catch (ReflectiveOperationException ex) {
+            throw new RuntimeException(
+                "Unable to instantiate compiled class:" + ex.toString());
+        }
+    }
+}
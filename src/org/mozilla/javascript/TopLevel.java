@@ -120,6 +120,15 @@ public class TopLevel extends IdScriptableObject {
         }
     }
 
+    /**
+     * Share the cached built-ins of another top-level scope, whose global
+     * properties were copied to this one.
+     */
+    void copyBuiltins(TopLevel source) {
+        ctors = source.ctors;
+        errors = source.errors;
+    }
+
     /**
      * Static helper method to get a built-in object constructor with the given
      * <code>type</code> from the given <code>scope</code>. If the scope is not
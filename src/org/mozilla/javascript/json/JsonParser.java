@@ -6,8 +6,13 @@
 
 package org.mozilla.javascript.json;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ScriptRuntime;
@@ -16,94 +21,220 @@ import org.mozilla.javascript.Scriptable;
 /**
  * This class converts a stream of JSON tokens into a JSON value.
  *
+ * The source text is read through a window of chars that is refilled from
+ * the input as it is consumed, so that parsing from a {@link Reader} never
+ * holds more of the text than the token being read.
+ *
  * See ECMA 15.12.
  * @author Raphael Speyer
  * @author Hannes Wallnoefer
  */
 public class JsonParser {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private Context cx;
     private Scriptable scope;
+    // True if Java collections are created instead of JavaScript objects
+    private final boolean javaValues;
 
+    private char[] buf;
+    // Next char to read and end of the chars read into buf
     private int pos;
     private int length;
+    // Start of the token whose chars must be kept in buf, or -1
+    private int mark;
+    // Number of chars that were dropped from the start of buf
+    private long offset;
+
     private String src;
+    private int srcPos;
+    private Reader reader;
 
     public JsonParser(Context cx, Scriptable scope) {
         this.cx = cx;
         this.scope = scope;
+        this.javaValues = false;
+    }
+
+    private JsonParser() {
+        this.javaValues = true;
+    }
+
+    /**
+     * Create a parser that returns Java values instead of JavaScript ones:
+     * objects become {@link LinkedHashMap}s with the members in the order of
+     * the text, arrays {@link ArrayList}s, and numbers are Integers, Longs
+     * for integers that do not fit in an int, or Doubles. No Context is
+     * needed to parse.
+     */
+    public static JsonParser forJavaValues() {
+        return new JsonParser();
     }
 
     public synchronized Object parseValue(String json) throws ParseException {
         if (json == null) {
             throw new ParseException("Input string may not be null");
         }
-        pos = 0;
-        length = json.length();
         src = json;
+        try {
+            return parse(Math.min(json.length(), BUFFER_SIZE));
+        } finally {
+            src = null;
+        }
+    }
+
+    /**
+     * Parse the JSON text read from reader, which is not closed. The text
+     * is read in chunks, so that it is never held in memory as a whole.
+     */
+    public synchronized Object parseReader(Reader reader) throws ParseException {
+        if (reader == null) {
+            throw new ParseException("Input reader may not be null");
+        }
+        this.reader = reader;
+        try {
+            return parse(BUFFER_SIZE);
+        } finally {
+            this.reader = null;
+        }
+    }
+
+    private Object parse(int bufferSize) throws ParseException {
+        if (buf == null || buf.length < bufferSize || buf.length > BUFFER_SIZE) {
+            buf = new char[Math.max(bufferSize, 16)];
+        }
+        pos = 0;
+        length = 0;
+        mark = -1;
+        offset = 0;
+        srcPos = 0;
         Object value = readValue();
         consumeWhitespace();
-        if (pos < length) {
-            throw new ParseException("Expected end of stream at char " + pos);
+        if (pos < length || fill()) {
+            throw new ParseException("Expected end of stream at char " + (offset + pos));
         }
         return value;
     }
 
+    /**
+     * Read more of the input into buf, keeping the chars from mark on.
+     * Return false if the input is exhausted.
+     */
+    private boolean fill() throws ParseException {
+        int keep = mark < 0 ? length : mark;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, length - keep);
+            offset += keep;
+            pos -= keep;
+            length -= keep;
+            if (mark >= 0) {
+                mark = 0;
+            }
+        } else if (length == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n;
+        if (reader != null) {
+            try {
+                n = reader.read(buf, length, buf.length - length);
+            } catch (IOException e) {
+                throw new ParseException(e);
+            }
+        } else if (src != null) {
+            n = Math.min(src.length() - srcPos, buf.length - length);
+            src.getChars(srcPos, srcPos + n, buf, length);
+            srcPos += n;
+        } else {
+            n = -1;
+        }
+        if (n <= 0) {
+            return false;
+        }
+        length += n;
+        return true;
+    }
+
+    /**
+     * Return the next char, or -1 at the end of the input.
+     */
+    private int next() throws ParseException {
+        if (pos < length || fill()) {
+            return buf[pos++];
+        }
+        return -1;
+    }
+
+    /**
+     * Return the next char without consuming it, or -1 at the end of the input.
+     */
+    private int peek() throws ParseException {
+        if (pos < length || fill()) {
+            return buf[pos];
+        }
+        return -1;
+    }
+
     private Object readValue() throws ParseException {
         consumeWhitespace();
-        while (pos < length) {
-            char c = src.charAt(pos++);
-            switch (c) {
-                case '{':
-                    return readObject();
-                case '[':
-                    return readArray();
-                case 't':
-                    return readTrue();
-                case 'f':
-                    return readFalse();
-                case '"':
-                    return readString();
-                case 'n':
-                    return readNull();
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                case '0':
-                case '-':
-                    return readNumber(c);
-                default:
-                    throw new ParseException("Unexpected token: " + c);
-            }
+        int c = next();
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case 't':
+                return readTrue();
+            case 'f':
+                return readFalse();
+            case '"':
+                return readString();
+            case 'n':
+                return readNull();
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+            case '0':
+            case '-':
+                return readNumber((char) c);
+            case -1:
+                throw new ParseException("Empty JSON string");
+            default:
+                throw new ParseException("Unexpected token: " + (char) c);
         }
-        throw new ParseException("Empty JSON string");
     }
 
     private Object readObject() throws ParseException {
         consumeWhitespace();
-        Scriptable object = cx.newObject(scope);
+        Scriptable object = null;
+        Map<String, Object> map = null;
+        if (javaValues) {
+            map = new LinkedHashMap<String, Object>();
+        } else {
+            object = cx.newObject(scope);
+        }
         // handle empty object literal case early
-        if (pos < length && src.charAt(pos) == '}') {
+        if (peek() == '}') {
             pos += 1;
-            return object;
+            return javaValues ? map : object;
         }
         String id;
         Object value;
         boolean needsComma = false;
-        while (pos < length) {
-            char c = src.charAt(pos++);
+        int c;
+        while ((c = next()) != -1) {
             switch(c) {
                 case '}':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in object literal");
                     }
-                    return object;
+                    return javaValues ? map : object;
                 case ',':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in object literal");
@@ -118,6 +249,11 @@ public class JsonParser {
                     consume(':');
                     value = readValue();
 
+                    if (javaValues) {
+                        map.put(id, value);
+                        needsComma = true;
+                        break;
+                    }
                     long index = ScriptRuntime.indexFromString(id);
                     if (index < 0) {
                       object.put(id, object, value);
@@ -138,21 +274,21 @@ public class JsonParser {
     private Object readArray() throws ParseException {
         consumeWhitespace();
         // handle empty array literal case early
-        if (pos < length && src.charAt(pos) == ']') {
+        if (peek() == ']') {
             pos += 1;
-            return cx.newArray(scope, 0);
+            return javaValues ? new ArrayList<Object>() : cx.newArray(scope, 0);
         }
         List<Object> list = new ArrayList<Object>();
         boolean needsComma = false;
-        while (pos < length) {
-            char c = src.charAt(pos);
+        int c;
+        while ((c = peek()) != -1) {
             switch(c) {
                 case ']':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in array literal");
                     }
                     pos += 1;
-                    return cx.newArray(scope, list.toArray());
+                    return javaValues ? list : cx.newArray(scope, list.toArray());
                 case ',':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in array literal");
@@ -174,90 +310,103 @@ public class JsonParser {
 
     private String readString() throws ParseException {
         /*
-         * Optimization: if the source contains no escaped characters, create the
-         * string directly from the source text.
+         * Optimization: if the string contains no escaped characters, create
+         * it directly from the buffered text, which is kept from mark on.
          */
-        int stringStart = pos;
-        while (pos < length) {
-            char c = src.charAt(pos++);
+        mark = pos;
+        StringBuilder b = null;
+        for (;;) {
+            if (pos == length && !fill()) {
+                mark = -1;
+                throw new ParseException("Unterminated string literal");
+            }
+            char c = buf[pos++];
             if (c <= '\u001F') {
+                mark = -1;
                 throw new ParseException("String contains control character");
-            } else if (c == '\\') {
-                break;
             } else if (c == '"') {
-                return src.substring(stringStart, pos - 1);
+                String s;
+                if (b == null) {
+                    s = new String(buf, mark, pos - 1 - mark);
+                } else {
+                    b.append(buf, mark, pos - 1 - mark);
+                    s = b.toString();
+                }
+                mark = -1;
+                return s;
+            } else if (c == '\\') {
+                /*
+                 * Slow case: string contains escaped characters.  Copy the
+                 * unescaped characters before it into a temporary buffer,
+                 * then the escaped character, and go on.
+                 */
+                if (b == null) {
+                    b = new StringBuilder();
+                }
+                b.append(buf, mark, pos - 1 - mark);
+                mark = -1;
+                readEscape(b);
+                mark = pos;
             }
         }
+    }
 
-        /*
-         * Slow case: string contains escaped characters.  Copy a maximal sequence
-         * of unescaped characters into a temporary buffer, then an escaped
-         * character, and repeat until the entire string is consumed.
-         */
-        StringBuilder b = new StringBuilder();
-        while (pos < length) {
-            assert src.charAt(pos - 1) == '\\';
-            b.append(src, stringStart, pos - 1);
-            if (pos >= length) {
-                throw new ParseException("Unterminated string");
-            }
-            char c = src.charAt(pos++);
-            switch (c) {
-                case '"':
-                    b.append('"');
-                    break;
-                case '\\':
-                    b.append('\\');
-                    break;
-                case '/':
-                    b.append('/');
-                    break;
-                case 'b':
-                    b.append('\b');
-                    break;
-                case 'f':
-                    b.append('\f');
-                    break;
-                case 'n':
-                    b.append('\n');
-                    break;
-                case 'r':
-                    b.append('\r');
-                    break;
-                case 't':
-                    b.append('\t');
-                    break;
-                case 'u':
-                    if (length - pos < 5) {
-                        throw new ParseException("Invalid character code: \\u" + src.substring(pos));
-                    }
-                    int code = fromHex(src.charAt(pos + 0)) << 12
-                             | fromHex(src.charAt(pos + 1)) << 8
-                             | fromHex(src.charAt(pos + 2)) << 4
-                             | fromHex(src.charAt(pos + 3));
-                    if (code < 0) {
-                        throw new ParseException("Invalid character code: " + src.substring(pos, pos + 4));
+    private void readEscape(StringBuilder b) throws ParseException {
+        int c = next();
+        switch (c) {
+            case '"':
+                b.append('"');
+                break;
+            case '\\':
+                b.append('\\');
+                break;
+            case '/':
+                b.append('/');
+                break;
+            case 'b':
+                b.append('\b');
+                break;
+            case 'f':
+                b.append('\f');
+                break;
+            case 'n':
+                b.append('\n');
+                break;
+            case 'r':
+                b.append('\r');
+                break;
+            case 't':
+                b.append('\t');
+                break;
+            case 'u':
+                // keep the digits in buf for the error message
+                mark = pos;
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int d = next();
+                    if (d == -1) {
+                        throw escapeError("\\u");
                     }
-                    pos += 4;
-                    b.append((char) code);
-                    break;
-                default:
-                    throw new ParseException("Unexpected character in string: '\\" + c + "'");
-            }
-            stringStart = pos;
-            while (pos < length) {
-                c = src.charAt(pos++);
-                if (c <= '\u001F') {
-                    throw new ParseException("String contains control character");
-                } else if (c == '\\') {
-                    break;
-                } else if (c == '"') {
-                    b.append(src, stringStart, pos - 1);
-                    return b.toString();
+                    int digit = fromHex((char) d);
+                    code = digit < 0 || code < 0 ? -1 : code << 4 | digit;
                 }
-            }
+                if (code < 0) {
+                    throw escapeError("");
+                }
+                mark = -1;
+                b.append((char) code);
+                break;
+            case -1:
+                throw new ParseException("Unterminated string literal");
+            default:
+                throw new ParseException("Unexpected character in string: '\\" + (char) c + "'");
         }
-        throw new ParseException("Unterminated string literal");
+    }
+
+    private ParseException escapeError(String prefix) {
+        String digits = new String(buf, mark, pos - mark);
+        mark = -1;
+        return new ParseException("Invalid character code: " + prefix + digits);
     }
 
     private int fromHex(char c) {
@@ -269,110 +418,114 @@ public class JsonParser {
 
     private Number readNumber(char c) throws ParseException {
         assert c == '-' || (c >= '0' && c <= '9');
-        final int numberStart = pos - 1;
+        // keep the text of the number in buf
+        mark = pos - 1;
         if (c == '-') {
-            c = nextOrNumberError(numberStart);
+            c = nextOrNumberError();
             if (!(c >= '0' && c <= '9')) {
-                throw numberError(numberStart, pos);
+                throw numberError();
             }
         }
         if (c != '0') {
             readDigits();
         }
+        boolean integer = true;
         // read optional fraction part
-        if (pos < length) {
-            c = src.charAt(pos);
-            if (c == '.') {
-                pos += 1;
-                c = nextOrNumberError(numberStart);
-                if (!(c >= '0' && c <= '9')) {
-                    throw numberError(numberStart, pos);
-                }
-                readDigits();
+        if (peek() == '.') {
+            integer = false;
+            pos += 1;
+            c = nextOrNumberError();
+            if (!(c >= '0' && c <= '9')) {
+                throw numberError();
             }
+            readDigits();
         }
         // read optional exponent part
-        if (pos < length) {
-            c = src.charAt(pos);
-            if (c == 'e' || c == 'E') {
-                pos += 1;
-                c = nextOrNumberError(numberStart);
-                if (c == '-' || c == '+') {
-                    c = nextOrNumberError(numberStart);
-                }
-                if (!(c >= '0' && c <= '9')) {
-                    throw numberError(numberStart, pos);
-                }
-                readDigits();
+        int e = peek();
+        if (e == 'e' || e == 'E') {
+            integer = false;
+            pos += 1;
+            c = nextOrNumberError();
+            if (c == '-' || c == '+') {
+                c = nextOrNumberError();
+            }
+            if (!(c >= '0' && c <= '9')) {
+                throw numberError();
+            }
+            readDigits();
+        }
+        String num = new String(buf, mark, pos - mark);
+        mark = -1;
+        // Integers of up to 18 digits fit in a long
+        if (javaValues && integer && num.length() <= 18) {
+            long lval = Long.parseLong(num);
+            if (lval != (int) lval) {
+                return Long.valueOf(lval);
             }
         }
-        String num = src.substring(numberStart, pos);
         final double dval = Double.parseDouble(num);
         final int ival = (int)dval;
-        if (ival == dval) {
-            return Integer.valueOf(ival);
+        // -0 is not an int
+        if (ival == dval && (ival != 0 || num.charAt(0) != '-')) {
+            return ScriptRuntime.wrapInt(ival);
         }
-        return Double.valueOf(dval);
+        return ScriptRuntime.wrapNumber(dval);
     }
 
-    private ParseException numberError(int start, int end) {
-        return new ParseException("Unsupported number format: " + src.substring(start, end));
+    private ParseException numberError() {
+        String num = new String(buf, mark, pos - mark);
+        mark = -1;
+        return new ParseException("Unsupported number format: " + num);
     }
 
-    private char nextOrNumberError(int numberStart) throws ParseException {
-        if (pos >= length) {
-            throw numberError(numberStart, length);
+    private char nextOrNumberError() throws ParseException {
+        int c = next();
+        if (c == -1) {
+            throw numberError();
         }
-        return src.charAt(pos++);
+        return (char) c;
     }
 
-    private void readDigits() {
-        for (; pos < length; ++pos) {
-            char c = src.charAt(pos);
+    private void readDigits() throws ParseException {
+        for (;;) {
+            if (pos == length && !fill()) {
+                return;
+            }
+            char c = buf[pos];
             if (!(c >= '0' && c <= '9')) {
-                break;
+                return;
             }
+            ++pos;
         }
     }
 
     private Boolean readTrue() throws ParseException {
-        if (length - pos < 3
-                || src.charAt(pos) != 'r'
-                || src.charAt(pos + 1) != 'u'
-                || src.charAt(pos + 2) != 'e') {
+        if (next() != 'r' || next() != 'u' || next() != 'e') {
             throw new ParseException("Unexpected token: t");
         }
-        pos += 3;
         return Boolean.TRUE;
     }
 
     private Boolean readFalse() throws ParseException {
-        if (length - pos < 4
-                || src.charAt(pos) != 'a'
-                || src.charAt(pos + 1) != 'l'
-                || src.charAt(pos + 2) != 's'
-                || src.charAt(pos + 3) != 'e') {
+        if (next() != 'a' || next() != 'l' || next() != 's' || next() != 'e') {
             throw new ParseException("Unexpected token: f");
         }
-        pos += 4;
         return Boolean.FALSE;
     }
 
     private Object readNull() throws ParseException {
-        if (length - pos < 3
-                || src.charAt(pos) != 'u'
-                || src.charAt(pos + 1) != 'l'
-                || src.charAt(pos + 2) != 'l') {
+        if (next() != 'u' || next() != 'l' || next() != 'l') {
             throw new ParseException("Unexpected token: n");
         }
-        pos += 3;
         return null;
     }
 
-    private void consumeWhitespace() {
-        while (pos < length) {
-            char c = src.charAt(pos);
-            switch (c) {
+    private void consumeWhitespace() throws ParseException {
+        for (;;) {
+            if (pos == length && !fill()) {
+                return;
+            }
+            switch (buf[pos]) {
                 case ' ':
                 case '\t':
                 case '\r':
@@ -387,14 +540,14 @@ public class JsonParser {
 
     private void consume(char token) throws ParseException {
         consumeWhitespace();
-        if (pos >= length) {
-            throw new ParseException("Expected " + token + " but reached end of stream");
-        }
-        char c = src.charAt(pos++);
+        int c = next();
         if (c == token) {
             return;
         }
-        throw new ParseException("Expected " + token + " found " + c);
+        if (c == -1) {
+            throw new ParseException("Expected " + token + " but reached end of stream");
+        }
+        throw new ParseException("Expected " + token + " found " + (char) c);
     }
 
     public static class ParseException extends Exception {
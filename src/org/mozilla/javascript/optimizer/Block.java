@@ -98,6 +98,9 @@ class Block
         for (int i = paramCount; i != varCount; i++) {
             if (varTypes[i] == Optimizer.NumberType) {
                 fn.setIsNumberVar(i);
+            } else if (varTypes[i] == Optimizer.Int32Type) {
+                fn.setIsNumberVar(i);
+                fn.setIsInt32Var(i);
             }
         }
 
@@ -457,13 +460,16 @@ class Block
         about are -
             Literals,
             Arithmetic operations - always return a Number
+            Bitwise operations - always return an Int32
     */
     private static int findExpressionType(OptFunctionNode fn, Node n,
                                           int[] varTypes)
     {
         switch (n.getType()) {
-            case Token.NUMBER:
-                return Optimizer.NumberType;
+            case Token.NUMBER: {
+                double d = n.getDouble();
+                return d == (int) d ? Optimizer.Int32Type : Optimizer.NumberType;
+            }
 
             case Token.CALL:
             case Token.NEW:
@@ -479,17 +485,19 @@ class Block
             case Token.GETVAR:
                 return varTypes[fn.getVarIndex(n)];
 
-            case Token.INC:
-            case Token.DEC:
-            case Token.MUL:
-            case Token.DIV:
-            case Token.MOD:
             case Token.BITOR:
             case Token.BITXOR:
             case Token.BITAND:
             case Token.BITNOT:
             case Token.LSH:
             case Token.RSH:
+                return Optimizer.Int32Type;
+
+            case Token.INC:
+            case Token.DEC:
+            case Token.MUL:
+            case Token.DIV:
+            case Token.MOD:
             case Token.URSH:
             case Token.SUB:
             case Token.POS:
@@ -538,7 +546,9 @@ class Block
                 Node child = n.getFirstChild();
                 int lType = findExpressionType(fn, child, varTypes);
                 int rType = findExpressionType(fn, child.getNext(), varTypes);
-                return lType | rType;    // we're not distinguishing strings yet
+                int type = lType | rType;   // we're not distinguishing strings yet
+                // the sum of two Int32 values can overflow
+                return type == Optimizer.Int32Type ? Optimizer.NumberType : type;
             }
 
             case Token.HOOK: {
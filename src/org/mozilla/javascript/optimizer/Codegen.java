@@ -1033,7 +1033,7 @@ public class Codegen implements Evaluator
     private void emitConstantDudeInitializers(ClassFileWriter cfw)
     {
         int N = itsConstantListSize;
-        if (N == 0)
+        if (N == 0 && itsPropertyCacheCount == 0)
             return;
 
         cfw.startMethod("<clinit>", "()V", (short)(ACC_STATIC | ACC_FINAL));
@@ -1058,10 +1058,48 @@ public class Codegen implements Evaluator
                     constantName, constantType);
         }
 
+        for (int i = 0; i != itsPropertyCacheCount; ++i) {
+            String cacheName = getPropertyCacheName(i);
+            cfw.addField(cacheName, PROPERTY_CACHE_SIGNATURE,
+                         (short)(ACC_STATIC | ACC_PRIVATE | ACC_FINAL));
+            cfw.add(ByteCode.NEW, PROPERTY_CACHE_CLASS);
+            cfw.add(ByteCode.DUP);
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, PROPERTY_CACHE_CLASS,
+                          "<init>", "()V");
+            cfw.add(ByteCode.PUTSTATIC, mainClassName,
+                    cacheName, PROPERTY_CACHE_SIGNATURE);
+        }
+
         cfw.add(ByteCode.RETURN);
         cfw.stopMethod((short)0);
     }
 
+    /**
+     * Allocate an inline cache for a new property access site and return its
+     * number, or -1 if caches are off or the class already has as many as it
+     * can hold.
+     */
+    int newPropertyCache()
+    {
+        if (!compilerEnv.isGeneratePropertyCaches()
+            || itsPropertyCacheCount >= MAX_PROPERTY_CACHES)
+        {
+            return -1;
+        }
+        return itsPropertyCacheCount++;
+    }
+
+    void pushPropertyCache(ClassFileWriter cfw, int cacheIndex)
+    {
+        cfw.add(ByteCode.GETSTATIC, mainClassName,
+                getPropertyCacheName(cacheIndex), PROPERTY_CACHE_SIGNATURE);
+    }
+
+    private static String getPropertyCacheName(int cacheIndex)
+    {
+        return "_pc" + cacheIndex;
+    }
+
     void pushNumberAsObject(ClassFileWriter cfw, double num)
     {
         if (num == 0.0) {
@@ -1243,6 +1281,24 @@ public class Codegen implements Evaluator
         = "(Lorg/mozilla/javascript/Scriptable;"
           +"Lorg/mozilla/javascript/Context;I)V";
 
+    static final String PROPERTY_CACHE_CLASS
+        = "org/mozilla/javascript/PropertyCache";
+    static final String PROPERTY_CACHE_SIGNATURE
+        = "Lorg/mozilla/javascript/PropertyCache;";
+
+    static final ClassFileWriter.MHandle DYNAMIC_CALL_BOOTSTRAP
+        = new ClassFileWriter.MHandle(ByteCode.MH_INVOKESTATIC,
+              "org/mozilla/javascript/optimizer/DynamicCallSite",
+              "bootstrap",
+              "(Ljava/lang/invoke/MethodHandles$Lookup;"
+              +"Ljava/lang/String;"
+              +"Ljava/lang/invoke/MethodType;"
+              +")Ljava/lang/invoke/CallSite;");
+
+    // Like the number constants, property caches are static fields and
+    // the JVM limits how many of those we can have per class.
+    private static final int MAX_PROPERTY_CACHES = 1000;
+
     private static final Object globalLock = new Object();
     private static int globalSerialClassCounter;
 
@@ -1259,6 +1315,7 @@ public class Codegen implements Evaluator
 
     private double[] itsConstantList;
     private int itsConstantListSize;
+    private int itsPropertyCacheCount;
 }
 
 
@@ -2370,12 +2427,11 @@ class BodyCodegen
               }
 
               case Token.BITNOT:
-                generateExpression(child, node);
-                addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
-                cfw.addPush(-1);         // implement ~a as (a ^ -1)
-                cfw.add(ByteCode.IXOR);
+                generateBitNot(node, child);
                 cfw.add(ByteCode.I2D);
-                addDoubleWrap();
+                if (node.getIntProp(Node.ISNUMBER_PROP, -1) == -1) {
+                    addDoubleWrap();
+                }
                 break;
 
               case Token.VOID:
@@ -3372,9 +3428,21 @@ class BodyCodegen
 
         String methodName;
         String signature;
+        int cacheIndex = -1;
+        // With dynamic call sites, name and property calls also load the
+        // function first so that the call itself can be linked directly
+        boolean dynamic = compilerEnv.isGenerateDynamicCallSites();
 
         if (firstArgChild == null) {
-            if (childType == Token.NAME) {
+            if (dynamic && childType != Token.GETPROPNOWARN) {
+                generateFunctionAndThisObj(child, node);
+                methodName = "call0";
+                signature = "(Lorg/mozilla/javascript/Callable;"
+                            +"Lorg/mozilla/javascript/Scriptable;"
+                            +"Lorg/mozilla/javascript/Context;"
+                            +"Lorg/mozilla/javascript/Scriptable;"
+                            +")Ljava/lang/Object;";
+            } else if (childType == Token.NAME) {
                 // name() call
                 String name = child.getString();
                 cfw.addPush(name);
@@ -3391,10 +3459,13 @@ class BodyCodegen
                 String property = id.getString();
                 cfw.addPush(property);
                 methodName = "callProp0";
+                cacheIndex = codegen.newPropertyCache();
                 signature = "(Ljava/lang/Object;"
                             +"Ljava/lang/String;"
                             +"Lorg/mozilla/javascript/Context;"
                             +"Lorg/mozilla/javascript/Scriptable;"
+                            +(cacheIndex >= 0
+                              ? Codegen.PROPERTY_CACHE_SIGNATURE : "")
                             +")Ljava/lang/Object;";
             } else if (childType == Token.GETPROPNOWARN) {
                 throw Kit.codeBug();
@@ -3408,7 +3479,7 @@ class BodyCodegen
                             +")Ljava/lang/Object;";
             }
 
-        } else if (childType == Token.NAME) {
+        } else if (childType == Token.NAME && !dynamic) {
             // XXX: this optimization is only possible if name
             // resolution
             // is not affected by arguments evaluation and currently
@@ -3463,7 +3534,15 @@ class BodyCodegen
 
         cfw.addALoad(contextLocal);
         cfw.addALoad(variableObjectLocal);
-        addOptRuntimeInvoke(methodName, signature);
+        if (cacheIndex >= 0) {
+            codegen.pushPropertyCache(cfw, cacheIndex);
+        }
+        if (dynamic) {
+            cfw.addInvokeDynamic(methodName, signature,
+                                 Codegen.DYNAMIC_CALL_BOOTSTRAP);
+        } else {
+            addOptRuntimeInvoke(methodName, signature);
+        }
     }
 
     private void visitStandardNew(Node node, Node child)
@@ -3682,13 +3761,26 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 cfw.addPush(property);
                 cfw.addALoad(contextLocal);
                 cfw.addALoad(variableObjectLocal);
-                addScriptRuntimeInvoke(
-                    "getPropFunctionAndThis",
-                    "(Ljava/lang/Object;"
-                    +"Ljava/lang/String;"
-                    +"Lorg/mozilla/javascript/Context;"
-                    +"Lorg/mozilla/javascript/Scriptable;"
-                    +")Lorg/mozilla/javascript/Callable;");
+                int cacheIndex = codegen.newPropertyCache();
+                if (cacheIndex >= 0) {
+                    codegen.pushPropertyCache(cfw, cacheIndex);
+                    addOptRuntimeInvoke(
+                        "getPropFunctionAndThis",
+                        "(Ljava/lang/Object;"
+                        +"Ljava/lang/String;"
+                        +"Lorg/mozilla/javascript/Context;"
+                        +"Lorg/mozilla/javascript/Scriptable;"
+                        +Codegen.PROPERTY_CACHE_SIGNATURE
+                        +")Lorg/mozilla/javascript/Callable;");
+                } else {
+                    addScriptRuntimeInvoke(
+                        "getPropFunctionAndThis",
+                        "(Ljava/lang/Object;"
+                        +"Ljava/lang/String;"
+                        +"Lorg/mozilla/javascript/Context;"
+                        +"Lorg/mozilla/javascript/Scriptable;"
+                        +")Lorg/mozilla/javascript/Callable;");
+                }
             } else {
                 generateExpression(id, node);  // id
                 if (node.getIntProp(Node.ISNUMBER_PROP, -1) != -1)
@@ -4604,12 +4696,31 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     private void visitBitOp(Node node, int type, Node child)
     {
         int childNumberFlag = node.getIntProp(Node.ISNUMBER_PROP, -1);
-        generateExpression(child, node);
+        generateBitOp(node, type, child);
+        if (type == Token.URSH) {
+            cfw.add(ByteCode.L2D);
+            addDoubleWrap();
+            return;
+        }
+        cfw.add(ByteCode.I2D);
+        if (childNumberFlag == -1) {
+            addDoubleWrap();
+        }
+    }
+
+    /**
+     * Generate the bitwise operation "node", leaving its result on the stack
+     * as an int, or as a long for URSH.
+     */
+    private void generateBitOp(Node node, int type, Node child)
+    {
+        int childNumberFlag = node.getIntProp(Node.ISNUMBER_PROP, -1);
 
         // special-case URSH; work with the target arg as a long, so
         // that we can return a 32-bit unsigned value, and call
         // toUint32 instead of toInt32.
         if (type == Token.URSH) {
+            generateExpression(child, node);
             addScriptRuntimeInvoke("toUint32", "(Ljava/lang/Object;)J");
             generateExpression(child.getNext(), node);
             addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
@@ -4618,20 +4729,10 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             cfw.addPush(31);
             cfw.add(ByteCode.IAND);
             cfw.add(ByteCode.LUSHR);
-            cfw.add(ByteCode.L2D);
-            addDoubleWrap();
             return;
         }
-        if (childNumberFlag == -1) {
-            addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
-            generateExpression(child.getNext(), node);
-            addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
-        }
-        else {
-            addScriptRuntimeInvoke("toInt32", "(D)I");
-            generateExpression(child.getNext(), node);
-            addScriptRuntimeInvoke("toInt32", "(D)I");
-        }
+        generateInt32Expression(child, node, childNumberFlag != -1);
+        generateInt32Expression(child.getNext(), node, childNumberFlag != -1);
         switch (type) {
           case Token.BITOR:
             cfw.add(ByteCode.IOR);
@@ -4651,10 +4752,147 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
           default:
             throw Codegen.badTree();
         }
-        cfw.add(ByteCode.I2D);
-        if (childNumberFlag == -1) {
-            addDoubleWrap();
+    }
+
+    private void generateBitNot(Node node, Node child)
+    {
+        generateInt32Expression(child, node,
+            node.getIntProp(Node.ISNUMBER_PROP, -1) != -1);
+        cfw.addPush(-1);         // implement ~a as (a ^ -1)
+        cfw.add(ByteCode.IXOR);
+    }
+
+    /**
+     * Generate "node" as the operand of a bitwise operation, leaving
+     * ToInt32 of its value on the stack as an int. "isNumber" tells whether
+     * the parent expects the operand as a double rather than an Object.
+     *
+     * Constants, Int32 variables and nested bitwise operations are generated
+     * as ints directly. So are additions, subtractions and multiplications
+     * of such values whose exact result fits in a double: ToInt32 of the
+     * exact result is the same as the int arithmetic, overflow included.
+     * Everything else is generated as usual and then converted.
+     */
+    private void generateInt32Expression(Node node, Node parent,
+                                         boolean isNumber)
+    {
+        int type = node.getType();
+        switch (type) {
+          case Token.NUMBER:
+            cfw.addPush(ScriptRuntime.toInt32(node.getDouble()));
+            return;
+
+          case Token.GETVAR:
+            if (isInt32Var(node)) {
+                cfw.addDLoad(varRegisters[fnCurrent.getVarIndex(node)]);
+                cfw.add(ByteCode.D2I);
+                return;
+            }
+            break;
+
+          case Token.BITOR:
+          case Token.BITXOR:
+          case Token.BITAND:
+          case Token.LSH:
+          case Token.RSH:
+            generateBitOp(node, type, node.getFirstChild());
+            return;
+
+          case Token.URSH:
+            generateBitOp(node, type, node.getFirstChild());
+            cfw.add(ByteCode.L2I);
+            return;
+
+          case Token.BITNOT:
+            generateBitNot(node, node.getFirstChild());
+            return;
+
+          case Token.ADD:
+          case Token.SUB:
+          case Token.MUL:
+            if (getIntegerBits(node) <= 53) {
+                Node child = node.getFirstChild();
+                generateInt32Expression(child, node, true);
+                generateInt32Expression(child.getNext(), node, true);
+                cfw.add(type == Token.ADD ? ByteCode.IADD
+                        : type == Token.SUB ? ByteCode.ISUB : ByteCode.IMUL);
+                return;
+            }
+            break;
+
+          case Token.TO_DOUBLE:
+            // Skip the conversion to double
+            generateExpression(node.getFirstChild(), node);
+            addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
+            return;
+        }
+        generateExpression(node, parent);
+        if (isNumber) {
+            addScriptRuntimeInvoke("toInt32", "(D)I");
+        } else {
+            addScriptRuntimeInvoke("toInt32", "(Ljava/lang/Object;)I");
+        }
+    }
+
+    /**
+     * If "node" is known to evaluate to an integer, return the number of bits
+     * needed for its magnitude, otherwise return Integer.MAX_VALUE.
+     */
+    private int getIntegerBits(Node node)
+    {
+        switch (node.getType()) {
+          case Token.NUMBER: {
+            double d = node.getDouble();
+            if (d != (int) d) {
+                break;
+            }
+            return 64 - Long.numberOfLeadingZeros(Math.abs((long) d));
+          }
+
+          case Token.GETVAR:
+            if (isInt32Var(node)) {
+                return 32;
+            }
+            break;
+
+          case Token.BITOR:
+          case Token.BITXOR:
+          case Token.BITAND:
+          case Token.BITNOT:
+          case Token.LSH:
+          case Token.RSH:
+          case Token.URSH:
+            return 32;
+
+          case Token.ADD:
+          case Token.SUB:
+          case Token.MUL: {
+            // Only the double arithmetic is exact
+            if (node.getIntProp(Node.ISNUMBER_PROP, -1) != Node.BOTH) {
+                break;
+            }
+            Node child = node.getFirstChild();
+            int lBits = getIntegerBits(child);
+            int rBits = getIntegerBits(child.getNext());
+            if (lBits == Integer.MAX_VALUE || rBits == Integer.MAX_VALUE) {
+                break;
+            }
+            return node.getType() == Token.MUL
+                ? lBits + rBits
+                : Math.max(lBits, rBits) + 1;
+          }
         }
+        return Integer.MAX_VALUE;
+    }
+
+    private boolean isInt32Var(Node node)
+    {
+        if (!hasVarsInRegs) {
+            return false;
+        }
+        int varIndex = fnCurrent.getVarIndex(node);
+        return !varIsDirectCallParameter(varIndex)
+            && fnCurrent.isInt32Var(varIndex);
     }
 
     private int nodeIsDirectCallParameter(Node node)
@@ -5110,6 +5348,12 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 +")Ljava/lang/Object;");
             return;
         }
+        int cacheIndex = nameChild.getType() == Token.STRING
+                         ? codegen.newPropertyCache() : -1;
+        if (cacheIndex >= 0) {
+            addCachedGetProp(cacheIndex);
+            return;
+        }
         /*
             for 'this.foo' we call getObjectProp(Scriptable...) which can
             skip some casting overhead.
@@ -5147,14 +5391,18 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         Node nameChild = child;
         generateExpression(child, node);
         child = child.getNext();
+        int cacheIndex = nameChild.getType() == Token.STRING
+                         ? codegen.newPropertyCache() : -1;
         if (type == Token.SETPROP_OP) {
             // stack: ... object object name -> ... object name object name
             cfw.add(ByteCode.DUP_X1);
-            //for 'this.foo += ...' we call thisGet which can skip some
-            //casting overhead.
-            if (objectChild.getType() == Token.THIS
+            if (cacheIndex >= 0) {
+                addCachedGetProp(cacheIndex);
+            } else if (objectChild.getType() == Token.THIS
                 && nameChild.getType() == Token.STRING)
             {
+                //for 'this.foo += ...' we call thisGet which can skip some
+                //casting overhead.
                 cfw.addALoad(contextLocal);
                 addScriptRuntimeInvoke(
                     "getObjectProp",
@@ -5177,6 +5425,19 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         generateExpression(child, node);
         cfw.addALoad(contextLocal);
         cfw.addALoad(variableObjectLocal);
+        if (cacheIndex >= 0) {
+            codegen.pushPropertyCache(cfw, cacheIndex);
+            addOptRuntimeInvoke(
+                "setObjectProp",
+                "(Ljava/lang/Object;"
+                +"Ljava/lang/String;"
+                +"Ljava/lang/Object;"
+                +"Lorg/mozilla/javascript/Context;"
+                +"Lorg/mozilla/javascript/Scriptable;"
+                +Codegen.PROPERTY_CACHE_SIGNATURE
+                +")Ljava/lang/Object;");
+            return;
+        }
         addScriptRuntimeInvoke(
             "setObjectProp",
             "(Ljava/lang/Object;"
@@ -5187,6 +5448,25 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             +")Ljava/lang/Object;");
     }
 
+    /**
+     * Emit a property read through an inline cache.
+     * Stack: ... object name -> ... value
+     */
+    private void addCachedGetProp(int cacheIndex)
+    {
+        cfw.addALoad(contextLocal);
+        cfw.addALoad(variableObjectLocal);
+        codegen.pushPropertyCache(cfw, cacheIndex);
+        addOptRuntimeInvoke(
+            "getObjectProp",
+            "(Ljava/lang/Object;"
+            +"Ljava/lang/String;"
+            +"Lorg/mozilla/javascript/Context;"
+            +"Lorg/mozilla/javascript/Scriptable;"
+            +Codegen.PROPERTY_CACHE_SIGNATURE
+            +")Ljava/lang/Object;");
+    }
+
     private void visitSetElem(int type, Node node, Node child)
     {
         generateExpression(child, node);
@@ -0,0 +1,223 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.optimizer;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+import org.mozilla.javascript.Callable;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Kit;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * An invokedynamic call site for a JavaScript function call in compiled code.
+ * Codegen emits these instead of calls to OptRuntime.call0, call1, call2 and callN
+ * when {@link Context#FEATURE_DYNAMIC_CALL_SITES} is set. The call site has the same
+ * type as the OptRuntime method it replaces, and the name of that method.
+ *
+ * The call site starts out unlinked. On the first call, it links itself to a method
+ * handle that calls the function directly, guarded by a test that the function
+ * being called is the same object. Since the function is then a constant of the
+ * call site, the JIT can inline its call method. When the guard fails, the call site
+ * is linked to the new function instead, unless the new function has the same class
+ * as the old one. That is the case for closures created by the same code, and then
+ * the call site guards on the class of the function instead of its identity. After
+ * MAX_RELINKS such changes the call site is considered megamorphic and is linked to
+ * the OptRuntime method for good.
+ *
+ * Note that a linked call site keeps a reference to the last function it called,
+ * and with it to the function's scope, for as long as the compiled class is alive.
+ */
+
+public final class DynamicCallSite extends MutableCallSite
+{
+    private static final int MAX_RELINKS = 8;
+
+    private static final MethodHandle CALL;
+    private static final MethodHandle IS_CALLEE;
+    private static final MethodHandle IS_CLASS;
+    private static final MethodHandle FALLBACK;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            CALL = lookup.findVirtual(Callable.class, "call",
+                MethodType.methodType(Object.class, Context.class,
+                                      Scriptable.class, Scriptable.class,
+                                      Object[].class));
+            IS_CALLEE = lookup.findStatic(DynamicCallSite.class, "isCallee",
+                MethodType.methodType(boolean.class, Callable.class,
+                                      Callable.class));
+            IS_CLASS = lookup.findStatic(DynamicCallSite.class, "isClass",
+                MethodType.methodType(boolean.class, Class.class,
+                                      Callable.class));
+            FALLBACK = lookup.findVirtual(DynamicCallSite.class, "fallback",
+                MethodType.methodType(Object.class, Object[].class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * The bootstrap method for call sites generated by Codegen.
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name,
+                                     MethodType type)
+    {
+        return new DynamicCallSite(name, type);
+    }
+
+    // Number of arguments passed separately, or -1 if passed as an array
+    private final int argCount;
+    private final MethodHandle fallback;
+    private final MethodHandle generic;
+    private int relinkCount;
+    // The function the call site is linked to, or null if it is linked to a class
+    private Callable linkedCallee;
+
+    private DynamicCallSite(String name, MethodType type)
+    {
+        super(type);
+        if (name.equals("call0")) {
+            argCount = 0;
+        } else if (name.equals("call1")) {
+            argCount = 1;
+        } else if (name.equals("call2")) {
+            argCount = 2;
+        } else if (name.equals("callN")) {
+            argCount = -1;
+        } else {
+            throw Kit.codeBug(name);
+        }
+        // fun, thisObj, arguments, cx, scope
+        if (type.parameterCount() != (argCount < 0 ? 1 : argCount) + 4) {
+            throw Kit.codeBug(type.toString());
+        }
+        fallback = FALLBACK.bindTo(this)
+                           .asCollector(Object[].class, type.parameterCount())
+                           .asType(type);
+        try {
+            generic = MethodHandles.lookup().findStatic(OptRuntime.class, name, type);
+        } catch (ReflectiveOperationException ex) {
+            throw Kit.codeBug(ex.toString());
+        }
+        setTarget(fallback);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean isCallee(Callable expected, Callable fun)
+    {
+        return fun == expected;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean isClass(Class<?> expected, Callable fun)
+    {
+        return fun.getClass() == expected;
+    }
+
+    /**
+     * Called when the call site is not linked or the guard failed. Relinks the
+     * call site and then performs the call the slow way.
+     */
+    @SuppressWarnings("unused")
+    private Object fallback(Object[] siteArgs)
+    {
+        Callable fun = (Callable) siteArgs[0];
+        Scriptable thisObj = (Scriptable) siteArgs[1];
+        Object[] args;
+        if (argCount < 0) {
+            args = (Object[]) siteArgs[2];
+        } else if (argCount == 0) {
+            args = ScriptRuntime.emptyArgs;
+        } else {
+            args = new Object[argCount];
+            System.arraycopy(siteArgs, 2, args, 0, argCount);
+        }
+        Context cx = (Context) siteArgs[siteArgs.length - 2];
+        Scriptable scope = (Scriptable) siteArgs[siteArgs.length - 1];
+
+        relink(fun);
+        return fun.call(cx, scope, thisObj, args);
+    }
+
+    private synchronized void relink(Callable fun)
+    {
+        if (relinkCount > MAX_RELINKS) {
+            // Already megamorphic
+            return;
+        }
+        if (++relinkCount > MAX_RELINKS) {
+            setTarget(generic);
+            return;
+        }
+        MethodHandle direct;
+        MethodHandle test;
+        if (linkedCallee != null && linkedCallee.getClass() == fun.getClass()) {
+            // A different function object of the same class, typically a new
+            // closure for the same code: guard on the class from now on
+            Class<?> cl = fun.getClass();
+            direct = findCall(cl);
+            test = IS_CLASS.bindTo(cl);
+            linkedCallee = null;
+        } else {
+            direct = MethodHandles.dropArguments(
+                findCall(fun.getClass()).bindTo(fun), 0, Callable.class);
+            test = IS_CALLEE.bindTo(fun);
+            linkedCallee = fun;
+        }
+        setTarget(MethodHandles.guardWithTest(test, adapt(direct), fallback));
+    }
+
+    /**
+     * Return a handle for the call method of the class "cl" itself. A virtual
+     * handle on the concrete class is easier for the JIT to inline than one on the
+     * Callable interface, but it is only available if the class is public.
+     */
+    private static MethodHandle findCall(Class<?> cl)
+    {
+        try {
+            return MethodHandles.publicLookup()
+                .findVirtual(cl, "call", CALL.type().dropParameterTypes(0, 1))
+                .asType(CALL.type());
+        } catch (ReflectiveOperationException | SecurityException ex) {
+            return CALL;
+        }
+    }
+
+    /**
+     * Adapt a handle of type (Callable, Context, Scriptable, Scriptable, Object[])
+     * to the type of this call site.
+     */
+    private MethodHandle adapt(MethodHandle call)
+    {
+        int n;
+        if (argCount < 0) {
+            n = 1;
+        } else if (argCount == 0) {
+            n = 0;
+            call = MethodHandles.insertArguments(call, 4,
+                                                 (Object) ScriptRuntime.emptyArgs);
+        } else {
+            n = argCount;
+            call = call.asCollector(Object[].class, argCount);
+        }
+        // The call site passes fun, thisObj, arguments, cx, scope
+        int[] reorder = new int[n + 4];
+        reorder[0] = 0;
+        reorder[1] = n + 2;
+        reorder[2] = n + 3;
+        reorder[3] = 1;
+        for (int i = 0; i < n; i++) {
+            reorder[4 + i] = 2 + i;
+        }
+        return MethodHandles.permuteArguments(call, type(), reorder);
+    }
+}
@@ -15,6 +15,7 @@ import org.mozilla.javascript.JavaScriptException;
 import org.mozilla.javascript.NativeFunction;
 import org.mozilla.javascript.NativeGenerator;
 import org.mozilla.javascript.NativeIterator;
+import org.mozilla.javascript.PropertyCache;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
@@ -23,9 +24,9 @@ import org.mozilla.javascript.ScriptableObject;
 public final class OptRuntime extends ScriptRuntime
 {
 
-    public static final Double zeroObj = new Double(0.0);
-    public static final Double oneObj = new Double(1.0);
-    public static final Double minusOneObj = new Double(-1.0);
+    public static final Double zeroObj = ScriptRuntime.wrapDouble(0.0);
+    public static final Double oneObj = ScriptRuntime.wrapDouble(1.0);
+    public static final Double minusOneObj = ScriptRuntime.wrapDouble(-1.0);
 
     /**
      * Implement ....() call shrinking optimizer code.
@@ -98,6 +99,49 @@ public final class OptRuntime extends ScriptRuntime
         return f.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
     }
 
+    /**
+     * Implement x.property() call shrinking optimizer code with an inline
+     * cache for the property lookup.
+     */
+    public static Object callProp0(Object value, String property,
+                                   Context cx, Scriptable scope,
+                                   PropertyCache cache)
+    {
+        Callable f = cache.getPropFunctionAndThis(value, property, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        return f.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
+    }
+
+    /**
+     * Implement obj.property with an inline cache.
+     */
+    public static Object getObjectProp(Object obj, String property,
+                                       Context cx, Scriptable scope,
+                                       PropertyCache cache)
+    {
+        return cache.getObjectProp(obj, property, cx, scope);
+    }
+
+    /**
+     * Implement obj.property = value with an inline cache.
+     */
+    public static Object setObjectProp(Object obj, String property,
+                                       Object value, Context cx,
+                                       Scriptable scope, PropertyCache cache)
+    {
+        return cache.setObjectProp(obj, property, value, cx, scope);
+    }
+
+    /**
+     * Implement the function lookup for obj.property(...) with an inline cache.
+     */
+    public static Callable getPropFunctionAndThis(Object obj, String property,
+                                                  Context cx, Scriptable scope,
+                                                  PropertyCache cache)
+    {
+        return cache.getPropFunctionAndThis(obj, property, cx, scope);
+    }
+
     public static Object add(Object val1, double val2)
     {
         if (val1 instanceof Scriptable)
@@ -171,19 +215,7 @@ public final class OptRuntime extends ScriptRuntime
 
     public static Double wrapDouble(double num)
     {
-        if (num == 0.0) {
-            if (1 / num > 0) {
-                // +0.0
-                return zeroObj;
-            }
-        } else if (num == 1.0) {
-            return oneObj;
-        } else if (num == -1.0) {
-            return minusOneObj;
-        } else if (Double.isNaN(num)) {
-            return NaNobj;
-        }
-        return Double.valueOf(num);
+        return ScriptRuntime.wrapDouble(num);
     }
 
     static String encodeIntArray(int[] array)
@@ -6,8 +6,6 @@
 
 package org.mozilla.javascript.regexp;
 
-import java.io.Serializable;
-
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.IdFunctionObject;
@@ -52,62 +50,67 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static final boolean debug = false;
 
-    private static final byte REOP_SIMPLE_START  = 1;  /* start of 'simple opcodes' */
-    private static final byte REOP_EMPTY         = 1;  /* match rest of input against rest of r.e. */
-    private static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
-    private static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
-    private static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
-    private static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
-    private static final byte REOP_DOT           = 6;  /* stands for any character */
-    private static final byte REOP_DIGIT         = 7;  /* match a digit char: [0-9] */
-    private static final byte REOP_NONDIGIT      = 8;  /* match a non-digit char: [^0-9] */
-    private static final byte REOP_ALNUM         = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
-    private static final byte REOP_NONALNUM      = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
-    private static final byte REOP_SPACE         = 11; /* match a whitespace char */
-    private static final byte REOP_NONSPACE      = 12; /* match a non-whitespace char */
-    private static final byte REOP_BACKREF       = 13; /* back-reference (e.g., \1) to a parenthetical */
-    private static final byte REOP_FLAT          = 14; /* match a flat string */
-    private static final byte REOP_FLAT1         = 15; /* match a single char */
-    private static final byte REOP_FLATi         = 16; /* case-independent REOP_FLAT */
-    private static final byte REOP_FLAT1i        = 17; /* case-independent REOP_FLAT1 */
-    private static final byte REOP_UCFLAT1       = 18; /* single Unicode char */
-    private static final byte REOP_UCFLAT1i      = 19; /* case-independent REOP_UCFLAT1 */
+    static final byte REOP_SIMPLE_START  = 1;  /* start of 'simple opcodes' */
+    static final byte REOP_EMPTY         = 1;  /* match rest of input against rest of r.e. */
+    static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
+    static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
+    static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
+    static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
+    static final byte REOP_DOT           = 6;  /* stands for any character */
+    static final byte REOP_DIGIT         = 7;  /* match a digit char: [0-9] */
+    static final byte REOP_NONDIGIT      = 8;  /* match a non-digit char: [^0-9] */
+    static final byte REOP_ALNUM         = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
+    static final byte REOP_NONALNUM      = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
+    static final byte REOP_SPACE         = 11; /* match a whitespace char */
+    static final byte REOP_NONSPACE      = 12; /* match a non-whitespace char */
+    static final byte REOP_BACKREF       = 13; /* back-reference (e.g., \1) to a parenthetical */
+    static final byte REOP_FLAT          = 14; /* match a flat string */
+    static final byte REOP_FLAT1         = 15; /* match a single char */
+    static final byte REOP_FLATi         = 16; /* case-independent REOP_FLAT */
+    static final byte REOP_FLAT1i        = 17; /* case-independent REOP_FLAT1 */
+    static final byte REOP_UCFLAT1       = 18; /* single Unicode char */
+    static final byte REOP_UCFLAT1i      = 19; /* case-independent REOP_UCFLAT1 */
 //    private static final byte REOP_UCFLAT        = 20; /* flat Unicode string; len immediate counts chars */
 //    private static final byte REOP_UCFLATi       = 21; /* case-independent REOP_UCFLAT */
-    private static final byte REOP_CLASS         = 22; /* character class with index */
-    private static final byte REOP_NCLASS        = 23; /* negated character class with index */
-    private static final byte REOP_SIMPLE_END    = 23; /* end of 'simple opcodes' */
-    private static final byte REOP_QUANT         = 25; /* quantified atom: atom{1,2} */
-    private static final byte REOP_STAR          = 26; /* zero or more occurrences of kid */
-    private static final byte REOP_PLUS          = 27; /* one or more occurrences of kid */
-    private static final byte REOP_OPT           = 28; /* optional subexpression in kid */
-    private static final byte REOP_LPAREN        = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
-    private static final byte REOP_RPAREN        = 30; /* right paren bytecode */
-    private static final byte REOP_ALT           = 31; /* alternative subexpressions in kid and next */
-    private static final byte REOP_JUMP          = 32; /* for deoptimized closure loops */
+    static final byte REOP_CLASS         = 22; /* character class with index */
+    static final byte REOP_NCLASS        = 23; /* negated character class with index */
+    static final byte REOP_SIMPLE_END    = 23; /* end of 'simple opcodes' */
+    static final byte REOP_QUANT         = 25; /* quantified atom: atom{1,2} */
+    static final byte REOP_STAR          = 26; /* zero or more occurrences of kid */
+    static final byte REOP_PLUS          = 27; /* one or more occurrences of kid */
+    static final byte REOP_OPT           = 28; /* optional subexpression in kid */
+    static final byte REOP_LPAREN        = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
+    static final byte REOP_RPAREN        = 30; /* right paren bytecode */
+    static final byte REOP_ALT           = 31; /* alternative subexpressions in kid and next */
+    static final byte REOP_JUMP          = 32; /* for deoptimized closure loops */
 //    private static final byte REOP_DOTSTAR       = 33; /* optimize .* to use a single opcode */
 //    private static final byte REOP_ANCHOR        = 34; /* like .* but skips left context to unanchored r.e. */
 //    private static final byte REOP_EOLONLY       = 35; /* $ not preceded by any pattern */
 //    private static final byte REOP_BACKREFi      = 37; /* case-independent REOP_BACKREF */
 //    private static final byte REOP_LPARENNON     = 40; /* non-capturing version of REOP_LPAREN */
-    private static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
-    private static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
-    private static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
-    private static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
-    private static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
-    private static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
-    private static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
-    private static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
-    private static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
-    private static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
-    private static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
-    private static final byte REOP_ALTPREREQ     = 53; /* prerequisite for ALT, either of two chars */
-    private static final byte REOP_ALTPREREQi    = 54; /* case-independent REOP_ALTPREREQ */
-    private static final byte REOP_ALTPREREQ2    = 55; /* prerequisite for ALT, a char or a class */
+    static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
+    static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
+    static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
+    static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
+    static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
+    static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
+    static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
+    static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
+    static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
+    static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
+    static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
+    static final byte REOP_ALTPREREQ     = 53; /* prerequisite for ALT, either of two chars */
+    static final byte REOP_ALTPREREQi    = 54; /* case-independent REOP_ALTPREREQ */
+    static final byte REOP_ALTPREREQ2    = 55; /* prerequisite for ALT, a char or a class */
 //    private static final byte REOP_ENDALT        = 56; /* end of final alternate */
-    private static final byte REOP_END           = 57;
+    static final byte REOP_END           = 57;
+
+    static final int ANCHOR_BOL = -2;
 
-    private static final int ANCHOR_BOL = -2;
+    // Backtracks allowed before a match switches to REAutomaton, per match
+    // and per character of input
+    private static final int BACKTRACK_BUDGET = 100000;
+    private static final int BACKTRACK_BUDGET_PER_CHAR = 16;
 
 
     public static void init(Context cx, Scriptable scope, boolean sealed)
@@ -189,7 +192,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
         String global = args.length > 1 && args[1] != Undefined.instance
             ? ScriptRuntime.toString(args[1])
             : null;
-        this.re = compileRE(cx, s, global, false);
+        this.re = RegExpImpl.compileCached(cx, s, global, false);
         this.lastIndex = 0d;
         return this;
     }
@@ -250,14 +253,14 @@ public class NativeRegExp extends IdScriptableObject implements Function
                            Object[] args, int matchType)
     {
         RegExpImpl reImpl = getImpl(cx);
-        String str;
+        CharSequence str;
         if (args.length == 0) {
             str = reImpl.input;
             if (str == null) {
                 str = ScriptRuntime.toString(Undefined.instance);
             }
         } else {
-            str = ScriptRuntime.toString(args[0]);
+            str = ScriptRuntime.toCharSequence(args[0]);
         }
         double d = 0;
         if ((re.flags & JSREG_GLOB) != 0) {
@@ -269,6 +272,13 @@ public class NativeRegExp extends IdScriptableObject implements Function
             lastIndex = 0d;
             rval = null;
         }
+        else if (matchType == TEST) {
+            int ep = executeTest(cx, reImpl, str, (int)d);
+            rval = ep < 0 ? null : Boolean.TRUE;
+            if ((re.flags & JSREG_GLOB) != 0) {
+                lastIndex = ep < 0 ? 0d : (double)ep;
+            }
+        }
         else {
             int indexp[] = { (int)d };
             rval = executeRegExp(cx, scopeObj, reImpl, str, indexp, matchType);
@@ -305,29 +315,23 @@ public class NativeRegExp extends IdScriptableObject implements Function
             }
         }
         regexp.flags = flags;
+        regexp.flat = flat && length > 0;
 
-        CompilerState state = new CompilerState(cx, regexp.source, length, flags);
-        if (flat && length > 0) {
+        CompilerState state;
+        if (regexp.flat) {
             if (debug) {
                 System.out.println("flat = \"" + str + "\"");
             }
+            state = new CompilerState(cx, regexp.source, length, flags);
             state.result = new RENode(REOP_FLAT);
             state.result.chr = state.cpbegin[0];
             state.result.length = length;
             state.result.flatIndex = 0;
             state.progLength += 5;
         } else {
-            if (!parseDisjunction(state))
+            state = parse(cx, regexp);
+            if (state == null)
                 return null;
-            // Need to reparse if pattern contains invalid backreferences:
-            // "Note: if the number of left parentheses is less than the number
-            // specified in \#, the \# is taken as an octal escape"
-            if (state.maxBackReference > state.parenCount) {
-                state = new CompilerState(cx, regexp.source, length, flags);
-                state.backReferenceLimit = state.parenCount;
-                if (!parseDisjunction(state))
-                    return null;
-            }
         }
 
         regexp.program = new byte[state.progLength + 1];
@@ -379,15 +383,45 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 System.out.println("Anchor ch = '" + (char)regexp.anchorCh + "'");
             }
         }
+        RESearch.analyze(regexp, state.result);
         return regexp;
     }
 
+    private static CompilerState parse(Context cx, RECompiled regexp)
+    {
+        int length = regexp.source.length;
+        CompilerState state = new CompilerState(cx, regexp.source, length,
+                                                regexp.flags);
+        if (!parseDisjunction(state))
+            return null;
+        // Need to reparse if pattern contains invalid backreferences:
+        // "Note: if the number of left parentheses is less than the number
+        // specified in \#, the \# is taken as an octal escape"
+        if (state.maxBackReference > state.parenCount) {
+            state = new CompilerState(cx, regexp.source, length, regexp.flags);
+            state.backReferenceLimit = state.parenCount;
+            if (!parseDisjunction(state))
+                return null;
+        }
+        return state;
+    }
+
+    /**
+     * Parse the source of a regexp that compileRE has already compiled
+     * again, for RECodegen. Warnings are not reported a second time.
+     */
+    static RENode parseTree(RECompiled regexp)
+    {
+        CompilerState state = parse(null, regexp);
+        return state == null ? null : state.result;
+    }
+
     static boolean isDigit(char c)
     {
         return '0' <= c && c <= '9';
     }
 
-    private static boolean isWord(char c)
+    static boolean isWord(char c)
     {
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || isDigit(c) || c == '_';
     }
@@ -418,7 +452,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
      *    code point value is less than decimal 128, then return ch.
      * 6. Return cu.
      */
-    private static char upcase(char ch)
+    static char upcase(char ch)
     {
         if (ch < 128) {
             if ('a' <= ch && ch <= 'z') {
@@ -1398,7 +1432,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
      */
     private static boolean
     flatNMatcher(REGlobalData gData, int matchChars,
-                 int length, String input, int end)
+                 int length, CharSequence input, int end)
     {
         if ((gData.cp + length) > end)
             return false;
@@ -1413,7 +1447,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static boolean
     flatNIMatcher(REGlobalData gData, int matchChars,
-                  int length, String input, int end)
+                  int length, CharSequence input, int end)
     {
         if ((gData.cp + length) > end)
             return false;
@@ -1454,7 +1488,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
     */
     private static boolean
     backrefMatcher(REGlobalData gData, int parenIndex,
-                   String input, int end)
+                   CharSequence input, int end)
     {
         int len;
         int i;
@@ -1476,13 +1510,31 @@ public class NativeRegExp extends IdScriptableObject implements Function
                     return false;
             }
         }
-        else if (!input.regionMatches(parenContent, input, gData.cp, len)) {
+        else if (!regionMatches(input, parenContent, gData.cp, len)) {
             return false;
         }
         gData.cp += len;
         return true;
     }
 
+    /**
+     * Whether the len characters of input at start1 and start2 are equal.
+     */
+    static boolean regionMatches(CharSequence input, int start1, int start2,
+                                 int len)
+    {
+        if (input instanceof String) {
+            String s = (String) input;
+            return s.regionMatches(start1, s, start2, len);
+        }
+        for (int i = 0; i < len; i++) {
+            if (input.charAt(start1 + i) != input.charAt(start2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 
     /* Add a single character to the RECharSet */
     private static void
@@ -1527,11 +1579,11 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     /* Compile the source of the class into a RECharSet */
     private static void
-    processCharSet(REGlobalData gData, RECharSet charSet)
+    processCharSet(RECompiled re, RECharSet charSet)
     {
         synchronized (charSet) {
             if (!charSet.converted) {
-                processCharSetImpl(gData, charSet);
+                processCharSetImpl(re, charSet);
                 charSet.converted = true;
             }
         }
@@ -1539,7 +1591,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
 
     private static void
-    processCharSetImpl(REGlobalData gData, RECharSet charSet)
+    processCharSetImpl(RECompiled re, RECharSet charSet)
     {
         int src = charSet.startIndex;
         int end = src + charSet.strlength;
@@ -1558,7 +1610,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
         if (src == end)
             return;
 
-        if (gData.regexp.source[src] == '^') {
+        if (re.source[src] == '^') {
             assert (!charSet.sense);
             ++src;
         } else {
@@ -1567,10 +1619,10 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
         while (src != end) {
             nDigits = 2;
-            switch (gData.regexp.source[src]) {
+            switch (re.source[src]) {
             case '\\':
                 ++src;
-                c = gData.regexp.source[src++];
+                c = re.source[src++];
                 switch (c) {
                 case 'b':
                     thisCh = 0x8;
@@ -1591,8 +1643,8 @@ public class NativeRegExp extends IdScriptableObject implements Function
                     thisCh = 0xB;
                     break;
                 case 'c':
-                    if ((src < end) && isControlLetter(gData.regexp.source[src]))
-                        thisCh = (char)(gData.regexp.source[src++] & 0x1F);
+                    if ((src < end) && isControlLetter(re.source[src]))
+                        thisCh = (char)(re.source[src++] & 0x1F);
                     else {
                         --src;
                         thisCh = '\\';
@@ -1604,7 +1656,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 case 'x':
                     n = 0;
                     for (i = 0; (i < nDigits) && (src < end); i++) {
-                        c = gData.regexp.source[src++];
+                        c = re.source[src++];
                         int digit = toASCIIHexDigit(c);
                         if (digit < 0) {
                             /* back off to accepting the original '\'
@@ -1633,11 +1685,11 @@ public class NativeRegExp extends IdScriptableObject implements Function
                      *
                      */
                     n = (c - '0');
-                    c = gData.regexp.source[src];
+                    c = re.source[src];
                     if ('0' <= c && c <= '7') {
                         src++;
                         n = 8 * n + (c - '0');
-                        c = gData.regexp.source[src];
+                        c = re.source[src];
                         if ('0' <= c && c <= '7') {
                             src++;
                             i = 8 * n + (c - '0');
@@ -1686,12 +1738,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 break;
 
             default:
-                thisCh = gData.regexp.source[src++];
+                thisCh = re.source[src++];
                 break;
 
             }
             if (inRange) {
-                if ((gData.regexp.flags & JSREG_FOLD) != 0) {
+                if ((re.flags & JSREG_FOLD) != 0) {
                     assert(rangeStart <= thisCh);
                     for (c = rangeStart; c <= thisCh;) {
                         addCharacterToCharSet(charSet, c);
@@ -1710,14 +1762,14 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 inRange = false;
             }
             else {
-                if ((gData.regexp.flags & JSREG_FOLD) != 0) {
+                if ((re.flags & JSREG_FOLD) != 0) {
                     addCharacterToCharSet(charSet, upcase(thisCh));
                     addCharacterToCharSet(charSet, downcase(thisCh));
                 } else {
                     addCharacterToCharSet(charSet, thisCh);
                 }
                 if (src < (end - 1)) {
-                    if (gData.regexp.source[src] == '-') {
+                    if (re.source[src] == '-') {
                         ++src;
                         inRange = true;
                         rangeStart = thisCh;
@@ -1734,9 +1786,15 @@ public class NativeRegExp extends IdScriptableObject implements Function
      */
     private static boolean
     classMatcher(REGlobalData gData, RECharSet charSet, char ch)
+    {
+        return classMatcher(gData.regexp, charSet, ch);
+    }
+
+    static boolean
+    classMatcher(RECompiled re, RECharSet charSet, char ch)
     {
         if (!charSet.converted) {
-            processCharSet(gData, charSet);
+            processCharSet(re, charSet);
         }
 
         int byteIndex = ch >> 3;
@@ -1755,7 +1813,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
      *   get a match, true if we do and update the state of the
      *   input and pc if the update flag is true.
      */
-    private static int simpleMatch(REGlobalData gData, String input, int op,
+    private static int simpleMatch(REGlobalData gData, CharSequence input, int op,
                                    byte[] program, int pc, int end, boolean updatecp)
     {
         boolean result = false;
@@ -1935,7 +1993,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
 
     private static boolean
-    executeREBytecode(REGlobalData gData, String input, int end)
+    executeREBytecode(REGlobalData gData, CharSequence input, int end)
     {
         int pc = 0;
         byte program[] = gData.regexp.program;
@@ -2335,6 +2393,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
             if (!result) {
                 REBackTrackData backTrackData = gData.backTrackStackTop;
                 if (backTrackData != null) {
+                    if (gData.backtrackBudget > 0
+                        && --gData.backtrackBudget == 0)
+                    {
+                        gData.budgetExceeded = true;
+                        return false;
+                    }
                     gData.backTrackStackTop = backTrackData.previous;
                     gData.parens = backTrackData.parens;
                     gData.cp = backTrackData.cp;
@@ -2355,12 +2419,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static boolean
     matchRegExp(REGlobalData gData, RECompiled re,
-                String input, int start, int end, boolean multiline)
+                CharSequence input, int start, int end, boolean multiline)
     {
-        if (re.parenCount != 0) {
-            gData.parens = new long[re.parenCount];
-        } else {
+        if (re.parenCount == 0) {
             gData.parens = null;
+        } else if (gData.parens == null || gData.parens.length != re.parenCount) {
+            gData.parens = new long[re.parenCount];
         }
 
         gData.backTrackStackTop = null;
@@ -2368,6 +2432,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
         gData.multiline = multiline || (re.flags & JSREG_MULTILINE) != 0;
         gData.regexp = re;
+        gData.requiredIndex = -1;
 
         int anchorCh = gData.regexp.anchorCh;
         //
@@ -2376,24 +2441,13 @@ public class NativeRegExp extends IdScriptableObject implements Function
         //
         for (int i = start; i <= end; ++i) {
             //
-            // If the first node is a literal match, step the index into
-            // the string until that match is made, or fail if it can't be
-            // found at all.
+            // Step the index to the next position where the literals the
+            // r.e. starts with or contains can be found, or fail if there
+            // is none.
             //
-            if (anchorCh >= 0) {
-                for (;;) {
-                    if (i == end) {
-                        return false;
-                    }
-                    char matchCh = input.charAt(i);
-                    if (matchCh == anchorCh ||
-                            ((gData.regexp.flags & JSREG_FOLD) != 0
-                             && upcase(matchCh) == upcase((char)anchorCh)))
-                    {
-                        break;
-                    }
-                    ++i;
-                }
+            i = RESearch.nextCandidate(gData, re, input, i, end);
+            if (i < 0) {
+                return false;
             }
             gData.cp = i;
             gData.skipped = i - start;
@@ -2407,6 +2461,9 @@ public class NativeRegExp extends IdScriptableObject implements Function
             if (result) {
                 return true;
             }
+            if (gData.budgetExceeded) {
+                return false;
+            }
             if (anchorCh == ANCHOR_BOL && !gData.multiline) {
                 gData.skipped = end;
                 return false;
@@ -2416,130 +2473,187 @@ public class NativeRegExp extends IdScriptableObject implements Function
         return false;
     }
 
-    /*
-     * indexp is assumed to be an array of length 1
+    /**
+     * Run the matcher that suits re: the automaton once re has been switched
+     * to it, otherwise code compiled by RECodegen if re is hot, otherwise the
+     * interpreter. Both backtracking matchers get a budget of backtracks that
+     * grows with the length of the input. If it runs out, the match is
+     * repeated with the automaton, which takes linear time, and re keeps
+     * using it. If re has no automaton, the match is repeated without a
+     * budget, and later matches have none, unless
+     * Context.FEATURE_REGEXP_BACKTRACK_LIMIT is set, in which case matching
+     * fails with an error.
      */
-    Object executeRegExp(Context cx, Scriptable scope, RegExpImpl res,
-                         String str, int indexp[], int matchType)
+    private boolean match(Context cx, REGlobalData gData, CharSequence str,
+                          int start, int end, boolean multiline)
+    {
+        REAutomaton automaton = re.automaton;
+        if (automaton != null) {
+            return automaton.match(gData, str, start, end, multiline);
+        }
+        boolean limited = cx.hasFeature(Context.FEATURE_REGEXP_BACKTRACK_LIMIT);
+        int budget = 0;
+        if (!re.noAutomaton || limited) {
+            budget = (int)Math.min(Integer.MAX_VALUE,
+                BACKTRACK_BUDGET + (long)BACKTRACK_BUDGET_PER_CHAR * (end - start));
+        }
+        boolean matches = backtrackingMatch(cx, gData, str, start, end,
+                                            multiline, budget);
+        if (!gData.budgetExceeded) {
+            return matches;
+        }
+        gData.budgetExceeded = false;
+        if (!re.noAutomaton) {
+            automaton = REAutomaton.build(re);
+            if (automaton != null) {
+                re.automaton = automaton;
+                return automaton.match(gData, str, start, end, multiline);
+            }
+            re.noAutomaton = true;
+        }
+        if (limited) {
+            throw Context.reportRuntimeError(
+                ScriptRuntime.getMessage1("msg.re.backtrack.limit",
+                                         new String(re.source)));
+        }
+        return backtrackingMatch(cx, gData, str, start, end, multiline, 0);
+    }
+
+    /**
+     * Match with the compiled matcher of re, if it has one, otherwise with
+     * the interpreter, allowing budget backtracks, or any number if 0.
+     */
+    private boolean backtrackingMatch(Context cx, REGlobalData gData,
+                                      CharSequence str, int start, int end,
+                                      boolean multiline, int budget)
     {
-        REGlobalData gData = new REGlobalData();
+        gData.budgetExceeded = false;
+        REMatcher matcher = gData.matcher;
+        if (matcher == null || matcher.regexp != re) {
+            matcher = RECodegen.getMatcher(cx, re);
+        }
+        if (matcher != null) {
+            gData.matcher = matcher;
+            return matcher.match(gData, str, start, end, multiline, budget);
+        }
+        gData.backtrackBudget = budget;
+        boolean matches = matchRegExp(gData, re, str, start, end, multiline);
+        gData.backtrackBudget = 0;
+        RECodegen.countInterpreted(re, gData.skipped + 1);
+        return matches;
+    }
+
+    /**
+     * Match str from start and record the match in res. Return the end of
+     * the match, or -1 if there is none. This is all that test() and the
+     * loops of global replace and split need, and it allocates nothing once
+     * res has seen a match: the REGlobalData and the captures array of the
+     * previous match are reused, and the statics are computed only when
+     * they are read.
+     */
+    int executeTest(Context cx, RegExpImpl res, CharSequence str, int start)
+    {
+        REGlobalData gData = res.globalData;
+        if (gData == null) {
+            gData = new REGlobalData();
+        } else {
+            // Not shared with a nested match
+            res.globalData = null;
+        }
 
-        int start = indexp[0];
         int end = str.length();
         if (start > end)
             start = end;
         //
         // Call the recursive matcher to do the real work.
         //
-        boolean matches = matchRegExp(gData, re, str, start, end,
-                                      res.multiline);
-        if (!matches) {
+        boolean matches = match(cx, gData, str, start, end, res.multiline);
+        int ep = -1;
+        if (matches) {
+            ep = gData.cp;
+            int index = start + gData.skipped;
+            int leftIndex;
+            if (cx.getLanguageVersion() == Context.VERSION_1_2) {
+                /*
+                 * JS1.2 emulated Perl4.0.1.8 (patch level 36) for global regexps used
+                 * in scalar contexts, and unintentionally for the string.match "list"
+                 * psuedo-context.  On "hi there bye", the following would result:
+                 *
+                 * Language     while(/ /g){print("$`");}   s/ /$`/g
+                 * perl4.036    "hi", "there"               "hihitherehi therebye"
+                 * perl5        "hi", "hi there"            "hihitherehi therebye"
+                 * js1.2        "hi", "there"               "hihitheretherebye"
+                 *
+                 * Insofar as JS1.2 always defined $` as "left context from the last
+                 * match" for global regexps, it was more consistent than perl4.
+                 */
+                leftIndex = start;
+            } else {
+                /*
+                 * For JS1.3 and ECMAv2, emulate Perl5 exactly:
+                 *
+                 * js1.3        "hi", "hi there"            "hihitherehi therebye"
+                 */
+                leftIndex = 0;
+            }
+            // The captures of the previous match become the buffer for the
+            // next one
+            gData.parens = res.setMatch(str, leftIndex, index, ep, gData.parens);
+        }
+        gData.regexp = null;
+        res.globalData = gData;
+        return ep;
+    }
+
+    /*
+     * indexp is assumed to be an array of length 1
+     */
+    Object executeRegExp(Context cx, Scriptable scope, RegExpImpl res,
+                         CharSequence str, int indexp[], int matchType)
+    {
+        int ep = executeTest(cx, res, str, indexp[0]);
+        if (ep < 0) {
             if (matchType != PREFIX) return null;
             return Undefined.instance;
         }
-        int index = gData.cp;
-        int ep = indexp[0] = index;
-        int matchlen = ep - (start + gData.skipped);
-        index -= matchlen;
-        Object result;
-        Scriptable obj;
+        indexp[0] = ep;
 
         if (matchType == TEST) {
             /*
              * Testing for a match and updating cx.regExpImpl: don't allocate
              * an array object, do return true.
              */
-            result = Boolean.TRUE;
-            obj = null;
-        }
-        else {
-            /*
-             * The array returned on match has element 0 bound to the matched
-             * string, elements 1 through re.parenCount bound to the paren
-             * matches, an index property telling the length of the left context,
-             * and an input property referring to the input string.
-             */
-            result = cx.newArray(scope, 0);
-            obj = (Scriptable) result;
-
-            String matchstr = str.substring(index, index + matchlen);
-            obj.put(0, obj, matchstr);
+            return Boolean.TRUE;
         }
 
-        if (re.parenCount == 0) {
-            res.parens = null;
-            res.lastParen = new SubString();
-        } else {
-            SubString parsub = null;
-            int num;
-            res.parens = new SubString[re.parenCount];
-            for (num = 0; num < re.parenCount; num++) {
-                int cap_index = gData.parensIndex(num);
-                if (cap_index != -1) {
-                    int cap_length = gData.parensLength(num);
-                    parsub = new SubString(str, cap_index, cap_length);
-                    res.parens[num] = parsub;
-                    if (matchType != TEST)
-                        obj.put(num+1, obj, parsub.toString());
-                }
-                else {
-                    if (matchType != TEST)
-                        obj.put(num+1, obj, Undefined.instance);
-                }
+        /*
+         * The array returned on match has element 0 bound to the matched
+         * string, elements 1 through re.parenCount bound to the paren
+         * matches, an index property telling the length of the left context,
+         * and an input property referring to the input string.
+         */
+        Scriptable obj = cx.newArray(scope, 0);
+        int index = res.matchIndex;
+        obj.put(0, obj, str.subSequence(index, ep).toString());
+
+        long[] parens = res.matchParens;
+        for (int num = 0; num < re.parenCount; num++) {
+            int cap_index = (int)parens[num];
+            if (cap_index != -1) {
+                int cap_length = (int)(parens[num] >>> 32);
+                obj.put(num+1, obj, str.subSequence(cap_index, cap_index + cap_length).toString());
+            } else {
+                obj.put(num+1, obj, Undefined.instance);
             }
-            res.lastParen = parsub;
-        }
-
-        if (! (matchType == TEST)) {
-            /*
-             * Define the index and input properties last for better for/in loop
-             * order (so they come after the elements).
-             */
-            obj.put("index", obj, Integer.valueOf(start + gData.skipped));
-            obj.put("input", obj, str);
-        }
-
-        if (res.lastMatch == null) {
-            res.lastMatch = new SubString();
-            res.leftContext = new SubString();
-            res.rightContext = new SubString();
-        }
-        res.lastMatch.str = str;
-        res.lastMatch.index = index;
-        res.lastMatch.length = matchlen;
-
-        res.leftContext.str = str;
-        if (cx.getLanguageVersion() == Context.VERSION_1_2) {
-            /*
-             * JS1.2 emulated Perl4.0.1.8 (patch level 36) for global regexps used
-             * in scalar contexts, and unintentionally for the string.match "list"
-             * psuedo-context.  On "hi there bye", the following would result:
-             *
-             * Language     while(/ /g){print("$`");}   s/ /$`/g
-             * perl4.036    "hi", "there"               "hihitherehi therebye"
-             * perl5        "hi", "hi there"            "hihitherehi therebye"
-             * js1.2        "hi", "there"               "hihitheretherebye"
-             *
-             * Insofar as JS1.2 always defined $` as "left context from the last
-             * match" for global regexps, it was more consistent than perl4.
-             */
-            res.leftContext.index = start;
-            res.leftContext.length = gData.skipped;
-        } else {
-            /*
-             * For JS1.3 and ECMAv2, emulate Perl5 exactly:
-             *
-             * js1.3        "hi", "hi there"            "hihitherehi therebye"
-             */
-            res.leftContext.index = 0;
-            res.leftContext.length = start + gData.skipped;
         }
 
-        res.rightContext.str = str;
-        res.rightContext.index = ep;
-        res.rightContext.length = end - ep;
-
-        return result;
+        /*
+         * Define the index and input properties last for better for/in loop
+         * order (so they come after the elements).
+         */
+        obj.put("index", obj, Integer.valueOf(index));
+        obj.put("input", obj, str);
+        return obj;
     }
 
     int getFlags()
@@ -2549,7 +2663,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static void reportWarning(Context cx, String messageId, String arg)
     {
-        if (cx.hasFeature(Context.FEATURE_STRICT_MODE)) {
+        if (cx != null && cx.hasFeature(Context.FEATURE_STRICT_MODE)) {
             String msg = ScriptRuntime.getMessage1(messageId, arg);
             Context.reportWarning(msg);
         }
@@ -2776,57 +2890,6 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
 }       // class NativeRegExp
 
-class RECompiled implements Serializable
-{
-    private static final long serialVersionUID = -6144956577595844213L;
-
-    final char[] source;    /* locked source string, sans // */
-    int parenCount;         /* number of parenthesized submatches */
-    int flags;              /* flags  */
-    byte[] program;         /* regular expression bytecode */
-    int classCount;         /* count [...] bitmaps */
-    RECharSet[] classList;  /* list of [...] bitmaps */
-    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
-
-    RECompiled(String str) {
-        this.source = str.toCharArray();
-    }
-}
-
-class RENode {
-
-    RENode(byte op)
-    {
-        this.op = op;
-    }
-
-    byte            op;         /* r.e. op bytecode */
-    RENode          next;       /* next in concatenation order */
-    RENode          kid;        /* first operand */
-
-    RENode          kid2;       /* second operand */
-    int             parenIndex; /* or a parenthesis index */
-
-                                /* or a range */
-    int             min;
-    int             max;
-    int             parenCount;
-    boolean         greedy;
-
-                                /* or a character class */
-    int             startIndex;
-    int             kidlen;     /* length of string at kid, in chars */
-    int             bmsize;     /* bitmap size, based on max char code */
-    int             index;      /* index into class list */
-    boolean         sense;
-
-                                /* or a literal sequence */
-    char            chr;        /* of one character */
-    int             length;     /* or many (via the index) */
-    int             flatIndex;  /* which is -1 if not sourced */
-
-}
-
 class CompilerState {
 
     CompilerState(Context cx, char[] source, int length, int flags)
@@ -2856,125 +2919,3 @@ class CompilerState {
     int         progLength;   /* estimated bytecode length */
     RENode      result;
 }
-
-class REProgState
-{
-    REProgState(REProgState previous, int min, int max, int index,
-                REBackTrackData backTrack,
-                int continuationOp, int continuationPc)
-    {
-        this.previous = previous;
-        this.min = min;
-        this.max = max;
-        this.index = index;
-        this.continuationOp = continuationOp;
-        this.continuationPc = continuationPc;
-        this.backTrack = backTrack;
-    }
-
-    final REProgState previous; // previous state in stack
-
-    final int min;                      /* current quantifier min */
-    final int max;                      /* current quantifier max */
-    final int index;                    /* progress in text */
-    final int continuationOp;
-    final int continuationPc;
-    final REBackTrackData backTrack; // used by ASSERT_  to recover state
-}
-
-class REBackTrackData {
-
-    REBackTrackData(REGlobalData gData, int op, int pc, int cp,
-                    int continuationOp, int continuationPc)
-    {
-        previous = gData.backTrackStackTop;
-        this.op = op;
-        this.pc = pc;
-        this.cp = cp;
-        this.continuationOp = continuationOp;
-        this.continuationPc = continuationPc;
-        parens = gData.parens;
-        stateStackTop = gData.stateStackTop;
-    }
-
-    final REBackTrackData previous;
-
-    final int op;                             /* operator */
-    final int pc;                             /* bytecode pointer */
-    final int cp;                             /* char buffer index */
-    final int continuationOp;                 /* continuation op */
-    final int continuationPc;                 /* continuation pc */
-    final long[] parens;                      /* parenthesis captures */
-    final REProgState stateStackTop;          /* state of op that backtracked */
-}
-
-class REGlobalData {
-    boolean multiline;
-    RECompiled regexp;              /* the RE in execution */
-    int skipped;                    /* chars skipped anchoring this r.e. */
-
-    int cp;                         /* char buffer index */
-    long[] parens;                  /* parens captures */
-
-    REProgState stateStackTop;       /* stack of state of current ancestors */
-
-    REBackTrackData backTrackStackTop;  /* last matched-so-far position */
-
-
-    /**
-     * Get start of parenthesis capture contents, -1 for empty.
-     */
-    int parensIndex(int i)
-    {
-        return (int)(parens[i]);
-    }
-
-    /**
-     * Get length of parenthesis capture contents.
-     */
-    int parensLength(int i)
-    {
-        return (int)(parens[i] >>> 32);
-    }
-
-    void setParens(int i, int index, int length)
-    {
-        // clone parens array if it is shared with backtrack state
-        if (backTrackStackTop != null && backTrackStackTop.parens == parens) {
-            parens = parens.clone();
-        }
-        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
-    }
-
-}
-
-/*
- * This struct holds a bitmap representation of a class from a regexp.
- * There's a list of these referenced by the classList field in the NativeRegExp
- * struct below. The initial state has startIndex set to the offset in the
- * original regexp source of the beginning of the class contents. The first
- * use of the class converts the source representation into a bitmap.
- *
- */
-final class RECharSet implements Serializable
-{
-    private static final long serialVersionUID = 7931787979395898394L;
-
-    RECharSet(int length, int startIndex, int strlength, boolean sense)
-    {
-        this.length = length;
-        this.startIndex = startIndex;
-        this.strlength = strlength;
-        this.sense = sense;
-    }
-
-    final int length;
-    final int startIndex;
-    final int strlength;
-    final boolean sense;
-
-    volatile transient boolean converted;
-    volatile transient byte[] bits;
-}
-
-
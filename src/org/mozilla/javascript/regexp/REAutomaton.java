@@ -0,0 +1,704 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A matcher for regular expressions that runs in time linear in the length of
+ * the input. The RENode tree is translated to a nondeterministic automaton
+ * that is simulated with a Pike VM: all threads advance over the input in
+ * lock step, one character at a time, and at most one thread per
+ * instruction is kept. Threads are kept in the order in which the
+ * backtracking matcher would try them, and a thread is only dropped when a
+ * thread of higher priority reaches the same instruction at the same
+ * position, so the match and its captures are the same as those of the
+ * backtracking matcher.
+ *
+ * An optional iteration of an atom that can match the empty string fails if
+ * it does match the empty string. Such an iteration records the position at
+ * which it starts in a slot of the thread, which is compared with the
+ * position at its end. Whether that check fails depends on more than the
+ * instruction a thread is at: a thread that started the iteration at the
+ * current position may fail where another one does not. Since an iteration
+ * can only have started at the current position if the iterations of the
+ * quantifiers around it did too, the threads at an instruction differ only
+ * in the number of enclosing iterations that started earlier, and one thread
+ * is kept for each of those numbers.
+ *
+ * NativeRegExp switches a regular expression to this matcher when a
+ * backtracking matcher exceeds its budget of backtracks for an input.
+ * Regular expressions with back references or lookahead assertions can not be
+ * expressed as an automaton.
+ */
+final class REAutomaton
+{
+    // Larger automatons, such as from large {min,max} counts, are not built
+    private static final int MAX_PROGRAM_LENGTH = 20000;
+    // Nor are those with more states, from deeply nested quantifiers whose
+    // atom can match the empty string
+    private static final int MAX_STATE_COUNT = 4 * MAX_PROGRAM_LENGTH;
+
+    // Instructions, followed by their operands
+    private static final int
+        OP_CHAR      = 1,   // char
+        OP_CHARi     = 2,   // char, case-independent
+        OP_DOT       = 3,
+        OP_DIGIT     = 4,
+        OP_NONDIGIT  = 5,
+        OP_ALNUM     = 6,
+        OP_NONALNUM  = 7,
+        OP_SPACE     = 8,
+        OP_NONSPACE  = 9,
+        OP_CLASS     = 10,  // class index
+        OP_BOL       = 11,
+        OP_EOL       = 12,
+        OP_WBDRY     = 13,
+        OP_WNONBDRY  = 14,
+        OP_SPLIT     = 15,  // preferred pc, other pc
+        OP_JUMP      = 16,  // pc
+        OP_SAVE      = 17,  // capture slot
+        OP_RESET     = 18,  // first slot, end slot
+        OP_MARK      = 19,  // slot
+        OP_CHECK     = 20,  // slot
+        OP_MATCH     = 21;
+
+    private final RECompiled regexp;
+    private final int[] program;
+    // Slot 0 is the start of the match, then start and end of each paren,
+    // then the start of each iteration that is checked for being empty
+    private final int slotCount;
+    // The states of an instruction are numbered from stateBase[pc] on, one
+    // for each number of the iterations around it that started before the
+    // current position. The slots of those iterations, outermost first, are
+    // in marks[pc]. Both are null if there are no such iterations.
+    private final int[] stateBase;
+    private final int[][] marks;
+    private final int stateCount;
+
+    private REAutomaton(RECompiled regexp, int[] program, int slotCount,
+                        int[] stateBase, int[][] marks, int stateCount)
+    {
+        this.regexp = regexp;
+        this.program = program;
+        this.slotCount = slotCount;
+        this.stateBase = stateBase;
+        this.marks = marks;
+        this.stateCount = stateCount;
+    }
+
+    /**
+     * Build the automaton for regexp, or return null if it has none.
+     */
+    static REAutomaton build(RECompiled regexp)
+    {
+        if (regexp.flat) {
+            return null;
+        }
+        RENode tree = NativeRegExp.parseTree(regexp);
+        if (tree == null || !isExpressible(tree)) {
+            return null;
+        }
+        Builder builder = new Builder(regexp);
+        if (!builder.emit(tree) || !builder.add(OP_MATCH)) {
+            return null;
+        }
+        int[] program = Arrays.copyOf(builder.code, builder.length);
+        int slotCount = builder.firstMark + builder.checks.size();
+        if (builder.checks.isEmpty()) {
+            return new REAutomaton(regexp, program, slotCount, null, null,
+                                   program.length);
+        }
+
+        // The checked iterations are nested or disjoint, so sorting them by
+        // start puts the outer ones first
+        List<int[]> checks = builder.checks;
+        checks.sort((a, b) -> a[0] - b[0]);
+        int[] depth = new int[program.length];
+        int stateCount = program.length;
+        for (int[] check : checks) {
+            stateCount += check[1] - check[0] + 1;
+            if (stateCount > MAX_STATE_COUNT) {
+                return null;
+            }
+            for (int pc = check[0]; pc <= check[1]; pc++) {
+                depth[pc]++;
+            }
+        }
+        int[] stateBase = new int[program.length];
+        int[][] marks = new int[program.length][];
+        int next = 0;
+        for (int pc = 0; pc < program.length; pc++) {
+            stateBase[pc] = next;
+            next += depth[pc] + 1;
+            if (depth[pc] != 0) {
+                marks[pc] = new int[depth[pc]];
+                depth[pc] = 0;
+            }
+        }
+        for (int[] check : checks) {
+            for (int pc = check[0]; pc <= check[1]; pc++) {
+                marks[pc][depth[pc]++] = check[2];
+            }
+        }
+        return new REAutomaton(regexp, program, slotCount, stateBase, marks,
+                               stateCount);
+    }
+
+    private static boolean isExpressible(RENode t)
+    {
+        for (; t != null; t = t.next) {
+            switch (t.op) {
+              case NativeRegExp.REOP_BACKREF:
+              case NativeRegExp.REOP_ASSERT:
+              case NativeRegExp.REOP_ASSERT_NOT:
+                return false;
+              default:
+                if (!isExpressible(t.kid) || !isExpressible(t.kid2)) {
+                    return false;
+                }
+                break;
+            }
+        }
+        return true;
+    }
+
+    private static boolean canMatchEmpty(RENode t)
+    {
+        for (; t != null; t = t.next) {
+            switch (t.op) {
+              case NativeRegExp.REOP_EMPTY:
+              case NativeRegExp.REOP_BOL:
+              case NativeRegExp.REOP_EOL:
+              case NativeRegExp.REOP_WBDRY:
+              case NativeRegExp.REOP_WNONBDRY:
+              case NativeRegExp.REOP_BACKREF:
+              case NativeRegExp.REOP_ASSERT:
+              case NativeRegExp.REOP_ASSERT_NOT:
+                break;
+              case NativeRegExp.REOP_ALT:
+              case NativeRegExp.REOP_ALTPREREQ:
+              case NativeRegExp.REOP_ALTPREREQi:
+              case NativeRegExp.REOP_ALTPREREQ2:
+                if (!canMatchEmpty(t.kid) && !canMatchEmpty(t.kid2)) {
+                    return false;
+                }
+                break;
+              case NativeRegExp.REOP_LPAREN:
+                if (!canMatchEmpty(t.kid)) {
+                    return false;
+                }
+                break;
+              case NativeRegExp.REOP_QUANT:
+                if (t.min != 0 && !canMatchEmpty(t.kid)) {
+                    return false;
+                }
+                break;
+              default:
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Builder
+    {
+        Builder(RECompiled regexp)
+        {
+            this.regexp = regexp;
+            this.fold = (regexp.flags & NativeRegExp.JSREG_FOLD) != 0;
+            this.firstMark = 1 + 2 * regexp.parenCount;
+        }
+
+        private final RECompiled regexp;
+        private final boolean fold;
+        int[] code = new int[64];
+        int length;
+        // The first slot of the iterations that are checked for being empty
+        final int firstMark;
+        // For each such iteration, the pc after its OP_MARK, the pc of its
+        // OP_CHECK and its slot
+        final List<int[]> checks = new ArrayList<int[]>();
+
+        /**
+         * Append an instruction and return false if the program gets too
+         * long.
+         */
+        boolean add(int... words)
+        {
+            if (length + words.length > MAX_PROGRAM_LENGTH) {
+                return false;
+            }
+            if (length + words.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2,
+                                                    length + words.length));
+            }
+            for (int word : words) {
+                code[length++] = word;
+            }
+            return true;
+        }
+
+        boolean emit(RENode t)
+        {
+            for (; t != null; t = t.next) {
+                if (!emitTerm(t)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean emitChar(char c)
+        {
+            return fold ? add(OP_CHARi, NativeRegExp.upcase(c))
+                        : add(OP_CHAR, c);
+        }
+
+        private boolean emitTerm(RENode t)
+        {
+            switch (t.op) {
+              case NativeRegExp.REOP_EMPTY:
+                return true;
+              case NativeRegExp.REOP_FLAT:
+                if (t.flatIndex != -1 && t.length > 1) {
+                    for (int i = 0; i < t.length; i++) {
+                        if (!emitChar(regexp.source[t.flatIndex + i])) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                return emitChar(t.chr);
+              case NativeRegExp.REOP_DOT:
+                return add(OP_DOT);
+              case NativeRegExp.REOP_DIGIT:
+                return add(OP_DIGIT);
+              case NativeRegExp.REOP_NONDIGIT:
+                return add(OP_NONDIGIT);
+              case NativeRegExp.REOP_ALNUM:
+                return add(OP_ALNUM);
+              case NativeRegExp.REOP_NONALNUM:
+                return add(OP_NONALNUM);
+              case NativeRegExp.REOP_SPACE:
+                return add(OP_SPACE);
+              case NativeRegExp.REOP_NONSPACE:
+                return add(OP_NONSPACE);
+              case NativeRegExp.REOP_CLASS:
+                return add(OP_CLASS, t.index);
+              case NativeRegExp.REOP_BOL:
+                return add(OP_BOL);
+              case NativeRegExp.REOP_EOL:
+                return add(OP_EOL);
+              case NativeRegExp.REOP_WBDRY:
+                return add(OP_WBDRY);
+              case NativeRegExp.REOP_WNONBDRY:
+                return add(OP_WNONBDRY);
+
+              case NativeRegExp.REOP_ALT:
+              case NativeRegExp.REOP_ALTPREREQ:
+              case NativeRegExp.REOP_ALTPREREQi:
+              case NativeRegExp.REOP_ALTPREREQ2:
+              {
+                int split = length;
+                if (!add(OP_SPLIT, split + 3, 0) || !emit(t.kid)) {
+                    return false;
+                }
+                int jump = length;
+                if (!add(OP_JUMP, 0)) {
+                    return false;
+                }
+                code[split + 2] = length;
+                if (!emit(t.kid2)) {
+                    return false;
+                }
+                code[jump + 1] = length;
+                return true;
+              }
+
+              case NativeRegExp.REOP_LPAREN:
+                return add(OP_SAVE, 1 + 2 * t.parenIndex)
+                    && emit(t.kid)
+                    && add(OP_SAVE, 2 + 2 * t.parenIndex);
+
+              case NativeRegExp.REOP_QUANT:
+                return emitQuant(t);
+            }
+            throw new IllegalStateException(String.valueOf(t.op));
+        }
+
+        /**
+         * Emit one iteration of a quantified atom. With reset set, it starts
+         * with undefined captures for its parens. With check set, it fails if
+         * it matches the empty string.
+         */
+        private boolean emitIteration(RENode t, boolean reset, boolean check)
+        {
+            int slot = firstMark + checks.size();
+            int body = length + 2;
+            if (check && !add(OP_MARK, slot)) {
+                return false;
+            }
+            if (reset && t.parenCount != 0) {
+                if (!add(OP_RESET, 1 + 2 * t.parenIndex,
+                         1 + 2 * (t.parenIndex + t.parenCount)))
+                {
+                    return false;
+                }
+            }
+            if (!emit(t.kid)) {
+                return false;
+            }
+            if (check) {
+                checks.add(new int[] { body, length, slot });
+                return add(OP_CHECK, slot);
+            }
+            return true;
+        }
+
+        /**
+         * Emit a quantifier. Like the interpreter, it resets the captures of
+         * each iteration after the first, except of those a greedy
+         * quantifier requires, and a lazy one with a minimum of 0 resets them
+         * for the first iteration too.
+         */
+        private boolean emitQuant(RENode t)
+        {
+            for (int i = 0; i < t.min; i++) {
+                if (!emitIteration(t, !t.greedy && i > 0, false)) {
+                    return false;
+                }
+            }
+            // Iterations beyond the minimum must not match the empty string
+            boolean check = canMatchEmpty(t.kid);
+            if (t.max == -1) {
+                if (t.greedy && t.min == 0 && t.parenCount != 0) {
+                    // SPLIT first, exit; first: JUMP body;
+                    // L: SPLIT reset, exit; reset: RESET; body: ...; JUMP L;
+                    // exit:
+                    int first = length;
+                    if (!add(OP_SPLIT, first + 3, 0) || !add(OP_JUMP, 0)) {
+                        return false;
+                    }
+                    int loop = length;
+                    if (!add(OP_SPLIT, loop + 3, 0)
+                        || !add(OP_RESET, 1 + 2 * t.parenIndex,
+                                1 + 2 * (t.parenIndex + t.parenCount)))
+                    {
+                        return false;
+                    }
+                    code[first + 4] = length;
+                    if (!emitIteration(t, false, check) || !add(OP_JUMP, loop)) {
+                        return false;
+                    }
+                    code[first + 2] = length;
+                    code[loop + 2] = length;
+                    return true;
+                }
+                // L: SPLIT body, exit; body: ...; JUMP L; exit:
+                int loop = length;
+                if (!add(OP_SPLIT, 0, 0) || !emitIteration(t, true, check)
+                    || !add(OP_JUMP, loop))
+                {
+                    return false;
+                }
+                setSplit(loop, loop + 3, length, t.greedy);
+                return true;
+            }
+            // Each optional iteration may exit to the end
+            int optional = t.max - t.min;
+            int[] splits = new int[optional];
+            for (int i = 0; i < optional; i++) {
+                splits[i] = length;
+                if (!add(OP_SPLIT, 0, 0)
+                    || !emitIteration(t, !t.greedy || t.min + i > 0, check))
+                {
+                    return false;
+                }
+            }
+            for (int split : splits) {
+                setSplit(split, split + 3, length, t.greedy);
+            }
+            return true;
+        }
+
+        private void setSplit(int split, int body, int exit, boolean greedy)
+        {
+            code[split + 1] = greedy ? body : exit;
+            code[split + 2] = greedy ? exit : body;
+        }
+    }
+
+    /**
+     * The threads at one position, in priority order.
+     */
+    private static final class ThreadList
+    {
+        ThreadList(int stateCount)
+        {
+            pcs = new int[stateCount];
+            slots = new int[stateCount][];
+            added = new int[stateCount];
+        }
+
+        final int[] pcs;
+        final int[][] slots;
+        // A thread was added in a state in this generation if
+        // added[state] == generation
+        final int[] added;
+        int generation = 1;
+        int size;
+
+        void clear()
+        {
+            size = 0;
+            generation++;
+        }
+    }
+
+    /**
+     * Find the first match at or after start and store it in gData, like
+     * NativeRegExp.matchRegExp.
+     */
+    boolean match(REGlobalData gData, CharSequence input, int start, int end,
+                  boolean multiline)
+    {
+        RECompiled re = regexp;
+        multiline = multiline || (re.flags & NativeRegExp.JSREG_MULTILINE) != 0;
+        gData.regexp = re;
+        gData.multiline = multiline;
+        gData.requiredIndex = -1;
+
+        int anchorCh = re.anchorCh;
+        ThreadList current = new ThreadList(stateCount);
+        ThreadList next = new ThreadList(stateCount);
+        int[][] stack = new int[stateCount][];
+        int[] stackPcs = new int[stateCount];
+
+        int[] matched = null;
+        int matchEnd = -1;
+        boolean bolOnly = anchorCh == NativeRegExp.ANCHOR_BOL && !multiline;
+        for (int cp = start; ; cp++) {
+            if (matched == null && (!bolOnly || cp == start)) {
+                if (current.size == 0) {
+                    // Nothing can match before the next candidate position
+                    cp = RESearch.nextCandidate(gData, re, input, cp, end);
+                    if (cp < 0) {
+                        return false;
+                    }
+                }
+                // A new thread for a match starting at cp, after all
+                // threads of matches that started earlier
+                int[] slots = new int[slotCount];
+                Arrays.fill(slots, -1);
+                slots[0] = cp;
+                addThread(current, 0, slots, input, cp, end, multiline,
+                          stack, stackPcs);
+            }
+            if (current.size == 0) {
+                if (matched != null || cp >= end || bolOnly) {
+                    break;
+                }
+                current.clear();
+                continue;
+            }
+
+            next.clear();
+            char c = cp < end ? input.charAt(cp) : 0;
+            for (int i = 0; i < current.size; i++) {
+                int pc = current.pcs[i];
+                int op = program[pc];
+                if (op == OP_MATCH) {
+                    matched = current.slots[i];
+                    matchEnd = cp;
+                    // Threads of lower priority can not win any more
+                    break;
+                }
+                if (cp < end && matchesChar(op, pc, c)) {
+                    addThread(next, pc + instructionLength(op),
+                              current.slots[i], input, cp + 1, end,
+                              multiline, stack, stackPcs);
+                }
+            }
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+            if (cp >= end) {
+                break;
+            }
+        }
+        if (matched == null) {
+            return false;
+        }
+        gData.cp = matchEnd;
+        gData.skipped = matched[0] - start;
+        if (re.parenCount != 0) {
+            long[] parens = new long[re.parenCount];
+            for (int i = 0; i < parens.length; i++) {
+                int parenStart = matched[1 + 2 * i];
+                int parenEnd = matched[2 + 2 * i];
+                parens[i] = parenStart < 0 || parenEnd < 0 ? -1L
+                    : (parenStart & 0xffffffffL)
+                      | ((long)(parenEnd - parenStart) << 32);
+            }
+            gData.parens = parens;
+        } else {
+            gData.parens = null;
+        }
+        return true;
+    }
+
+    /**
+     * Add the thread at pc to list, following jumps, splits, captures and
+     * assertions at position cp in priority order.
+     */
+    private void addThread(ThreadList list, int pc, int[] slots, CharSequence input,
+                           int cp, int end, boolean multiline,
+                           int[][] stack, int[] stackPcs)
+    {
+        int top = 0;
+        stackPcs[top] = pc;
+        stack[top++] = slots;
+        while (top > 0) {
+            --top;
+            pc = stackPcs[top];
+            slots = stack[top];
+            stack[top] = null;
+            for (;;) {
+                int state = state(pc, slots, cp);
+                if (list.added[state] == list.generation) {
+                    break;
+                }
+                list.added[state] = list.generation;
+                int op = program[pc];
+                if (op == OP_JUMP) {
+                    pc = program[pc + 1];
+                    continue;
+                }
+                if (op == OP_SPLIT) {
+                    // Try the preferred branch first, the other one later
+                    stackPcs[top] = program[pc + 2];
+                    stack[top++] = slots;
+                    pc = program[pc + 1];
+                    continue;
+                }
+                if (op == OP_SAVE) {
+                    slots = slots.clone();
+                    slots[program[pc + 1]] = cp;
+                    pc += 2;
+                    continue;
+                }
+                if (op == OP_RESET) {
+                    slots = slots.clone();
+                    Arrays.fill(slots, program[pc + 1], program[pc + 2], -1);
+                    pc += 3;
+                    continue;
+                }
+                if (op == OP_MARK) {
+                    slots = slots.clone();
+                    slots[program[pc + 1]] = cp;
+                    pc += 2;
+                    continue;
+                }
+                if (op == OP_CHECK) {
+                    if (slots[program[pc + 1]] == cp) {
+                        // An optional iteration matched the empty string
+                        break;
+                    }
+                    pc += 2;
+                    continue;
+                }
+                if (op == OP_BOL || op == OP_EOL || op == OP_WBDRY
+                    || op == OP_WNONBDRY)
+                {
+                    if (!matchesPosition(op, input, cp, end, multiline)) {
+                        break;
+                    }
+                    pc++;
+                    continue;
+                }
+                list.pcs[list.size] = pc;
+                list.slots[list.size] = slots;
+                list.size++;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return the state of a thread at pc with the given slots at position
+     * cp: the number of iterations around pc that started before cp, which
+     * are the outer ones, counted from the state of the instruction.
+     */
+    private int state(int pc, int[] slots, int cp)
+    {
+        if (marks == null) {
+            return pc;
+        }
+        int[] enclosing = marks[pc];
+        int i = 0;
+        if (enclosing != null) {
+            while (i < enclosing.length && slots[enclosing[i]] != cp) {
+                i++;
+            }
+        }
+        return stateBase[pc] + i;
+    }
+
+    private static boolean matchesPosition(int op, CharSequence input, int cp,
+                                           int end, boolean multiline)
+    {
+        switch (op) {
+          case OP_BOL:
+            return cp == 0
+                || (multiline && REMatcher.isLineTerm(input.charAt(cp - 1)));
+          case OP_EOL:
+            return cp == end
+                || (multiline && REMatcher.isLineTerm(input.charAt(cp)));
+          default:
+            boolean boundary =
+                (cp == 0 || !NativeRegExp.isWord(input.charAt(cp - 1)))
+                ^ !(cp < end && NativeRegExp.isWord(input.charAt(cp)));
+            return op == OP_WBDRY ? boundary : !boundary;
+        }
+    }
+
+    private boolean matchesChar(int op, int pc, char c)
+    {
+        switch (op) {
+          case OP_CHAR:
+            return c == program[pc + 1];
+          case OP_CHARi:
+            return NativeRegExp.upcase(c) == program[pc + 1];
+          case OP_DOT:
+            return !REMatcher.isLineTerm(c);
+          case OP_DIGIT:
+            return NativeRegExp.isDigit(c);
+          case OP_NONDIGIT:
+            return !NativeRegExp.isDigit(c);
+          case OP_ALNUM:
+            return NativeRegExp.isWord(c);
+          case OP_NONALNUM:
+            return !NativeRegExp.isWord(c);
+          case OP_SPACE:
+            return REMatcher.isSpace(c);
+          case OP_NONSPACE:
+            return !REMatcher.isSpace(c);
+          case OP_CLASS:
+            return NativeRegExp.classMatcher(regexp,
+                                             regexp.classList[program[pc + 1]], c);
+        }
+        throw new IllegalStateException(String.valueOf(op));
+    }
+
+    private static int instructionLength(int op)
+    {
+        return op == OP_CHAR || op == OP_CHARi || op == OP_CLASS ? 2 : 1;
+    }
+}
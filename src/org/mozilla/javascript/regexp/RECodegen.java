@@ -0,0 +1,820 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import static org.mozilla.classfile.ClassFileWriter.ACC_FINAL;
+import static org.mozilla.classfile.ClassFileWriter.ACC_PRIVATE;
+import static org.mozilla.classfile.ClassFileWriter.ACC_PROTECTED;
+import static org.mozilla.classfile.ClassFileWriter.ACC_PUBLIC;
+import static org.mozilla.classfile.ClassFileWriter.ACC_SUPER;
+
+import java.util.ArrayList;
+
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.SecurityController;
+
+/**
+ * Compiles hot regular expressions to Java bytecode when
+ * {@link Context#FEATURE_COMPILED_REGEXP} is set. A regular expression is
+ * interpreted by NativeRegExp until the interpreter has tried to match it at
+ * COMPILE_THRESHOLD positions, counted over all executions, so both regular
+ * expressions that run often and those that scan long inputs become hot. Its
+ * source is then parsed again and the RENode tree is translated to a
+ * subclass of {@link REMatcher}.
+ *
+ * The generated code backtracks through Java method calls. Every point that
+ * execution may return to, such as the second alternative of an ALT or the
+ * term after a quantifier, becomes a method "boolean m<N>(int cp)" that
+ * matches the rest of the regular expression from cp and calls the method of
+ * its continuation, so a method returns false to backtrack. Quantified single
+ * characters count their matches in a loop and give them back one at a time,
+ * so the depth of the Java stack depends on the size of the regular
+ * expression and not on the input. Each alternative tried after the first
+ * one counts against the backtrack budget of the match, as in the
+ * interpreter.
+ *
+ * Only a subset of regular expressions is compiled: quantifiers must apply to
+ * a single character, character class or escape, and lookahead assertions
+ * must not contain capturing parentheses. All others, and regular expressions
+ * that fail to compile for any other reason, keep using the interpreter.
+ */
+final class RECodegen
+{
+    /**
+     * The number of positions at which the interpreter must have tried to
+     * match a regular expression before it is compiled.
+     */
+    static final int COMPILE_THRESHOLD = 1000;
+
+    // Larger regular expressions are not worth a class of their own
+    private static final int MAX_NODES = 1000;
+
+    private static final String SUPER_CLASS_NAME =
+        "org.mozilla.javascript.regexp.REMatcher";
+    private static final String SUPER_CLASS_SIGNATURE =
+        "Lorg/mozilla/javascript/regexp/REMatcher;";
+    private static final String MATCH_SIGNATURE = "(I)Z";
+
+    // Continuations that do not have their own method
+    private static final int ACCEPT = 0;
+    private static final int ASSERT_ACCEPT = 1;
+
+    // Local variables of the generated match methods
+    private static final int CP_LOCAL = 1;
+    private static final int INPUT_LOCAL = 2;
+    private static final int END_LOCAL = 3;
+    private static final int FIRST_TEMP_LOCAL = 4;
+
+    private static final Object globalLock = new Object();
+    private static int globalSerialClassCounter;
+
+    /**
+     * Return a new matcher for re, or null if it should be interpreted. re
+     * is compiled once it is hot.
+     */
+    static REMatcher getMatcher(Context cx, RECompiled re)
+    {
+        REMatcher matcher = re.matcher;
+        if (matcher == null) {
+            if (re.interpretedCount < COMPILE_THRESHOLD
+                || !cx.hasFeature(Context.FEATURE_COMPILED_REGEXP))
+            {
+                return null;
+            }
+            matcher = compile(re);
+            if (matcher == null) {
+                // Never try again
+                re.interpretedCount = -1;
+                return null;
+            }
+            re.matcher = matcher;
+        }
+        return matcher.newMatcher();
+    }
+
+    /**
+     * Record that the interpreter tried to match re at the given number of
+     * positions. Races between threads only lose counts.
+     */
+    static void countInterpreted(RECompiled re, int positions)
+    {
+        int count = re.interpretedCount;
+        if (count >= 0 && count < COMPILE_THRESHOLD) {
+            re.interpretedCount = count + positions;
+        }
+    }
+
+    /**
+     * Compile re and return an instance of the generated class, or null if
+     * re can not be compiled.
+     */
+    static REMatcher compile(RECompiled re)
+    {
+        if (re.flat) {
+            // A flat string is a single REOP_FLAT, the interpreter is as fast
+            return null;
+        }
+        RENode tree = NativeRegExp.parseTree(re);
+        if (tree == null) {
+            return null;
+        }
+        RECodegen codegen = new RECodegen(re);
+        if (!codegen.isCompilable(tree)) {
+            return null;
+        }
+
+        int serial;
+        synchronized (globalLock) {
+            serial = ++globalSerialClassCounter;
+        }
+        String className = "org.mozilla.javascript.gen.RegExp_" + serial;
+        try {
+            byte[] classBytes = codegen.generate(className, tree);
+            GeneratedClassLoader loader = SecurityController.createLoader(
+                RECodegen.class.getClassLoader(), null);
+            Class<?> cl = loader.defineClass(className, classBytes);
+            loader.linkClass(cl);
+            REMatcher matcher = (REMatcher)cl.getConstructor().newInstance();
+            matcher.regexp = re;
+            return matcher;
+        } catch (RuntimeException | ReflectiveOperationException
+                 | LinkageError ex) {
+            // Compilation is only an optimization, keep interpreting
+            return null;
+        }
+    }
+
+    private static final class MethodRequest
+    {
+        MethodRequest(int id, RENode node, int continuation)
+        {
+            this.id = id;
+            this.node = node;
+            this.continuation = continuation;
+        }
+
+        final int id;
+        final RENode node;
+        final int continuation;
+    }
+
+    private final RECompiled re;
+    private final boolean fold;
+    private final ArrayList<MethodRequest> pending = new ArrayList<>();
+    private int nodeCount;
+    private int methodCount = ASSERT_ACCEPT + 1;
+    private ClassFileWriter cfw;
+    private int localsTop;
+    private int maxLocals;
+    private int failLabel;
+    private boolean failUsed;
+
+    private RECodegen(RECompiled re)
+    {
+        this.re = re;
+        this.fold = (re.flags & NativeRegExp.JSREG_FOLD) != 0;
+    }
+
+    private boolean isCompilable(RENode t)
+    {
+        for (; t != null; t = t.next) {
+            if (++nodeCount > MAX_NODES) {
+                return false;
+            }
+            switch (t.op) {
+              case NativeRegExp.REOP_EMPTY:
+              case NativeRegExp.REOP_BOL:
+              case NativeRegExp.REOP_EOL:
+              case NativeRegExp.REOP_WBDRY:
+              case NativeRegExp.REOP_WNONBDRY:
+              case NativeRegExp.REOP_BACKREF:
+                break;
+              case NativeRegExp.REOP_DOT:
+              case NativeRegExp.REOP_DIGIT:
+              case NativeRegExp.REOP_NONDIGIT:
+              case NativeRegExp.REOP_ALNUM:
+              case NativeRegExp.REOP_NONALNUM:
+              case NativeRegExp.REOP_SPACE:
+              case NativeRegExp.REOP_NONSPACE:
+              case NativeRegExp.REOP_CLASS:
+              case NativeRegExp.REOP_FLAT:
+                break;
+              case NativeRegExp.REOP_ALT:
+              case NativeRegExp.REOP_ALTPREREQ:
+              case NativeRegExp.REOP_ALTPREREQi:
+              case NativeRegExp.REOP_ALTPREREQ2:
+                if (!isCompilable(t.kid) || !isCompilable(t.kid2)) {
+                    return false;
+                }
+                break;
+              case NativeRegExp.REOP_LPAREN:
+                if (!isCompilable(t.kid)) {
+                    return false;
+                }
+                break;
+              case NativeRegExp.REOP_ASSERT:
+              case NativeRegExp.REOP_ASSERT_NOT:
+                if (hasParens(t.kid) || !isCompilable(t.kid)) {
+                    return false;
+                }
+                break;
+              case NativeRegExp.REOP_QUANT:
+                if (!isSingleChar(t.kid)) {
+                    return false;
+                }
+                break;
+              default:
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasParens(RENode t)
+    {
+        for (; t != null; t = t.next) {
+            if (t.op == NativeRegExp.REOP_LPAREN
+                || hasParens(t.kid) || hasParens(t.kid2))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether t is a single term that always matches one character.
+     */
+    private static boolean isSingleChar(RENode t)
+    {
+        if (t == null || t.next != null) {
+            return false;
+        }
+        switch (t.op) {
+          case NativeRegExp.REOP_DOT:
+          case NativeRegExp.REOP_DIGIT:
+          case NativeRegExp.REOP_NONDIGIT:
+          case NativeRegExp.REOP_ALNUM:
+          case NativeRegExp.REOP_NONALNUM:
+          case NativeRegExp.REOP_SPACE:
+          case NativeRegExp.REOP_NONSPACE:
+          case NativeRegExp.REOP_CLASS:
+            return true;
+          case NativeRegExp.REOP_FLAT:
+            return t.flatIndex == -1 || t.length == 1;
+        }
+        return false;
+    }
+
+    private byte[] generate(String className, RENode tree)
+    {
+        cfw = new ClassFileWriter(className, SUPER_CLASS_NAME, null);
+        cfw.setFlags((short)(ACC_PUBLIC | ACC_FINAL | ACC_SUPER));
+
+        generateConstructor();
+        generateCreate();
+        generateMatchMethod("matchAt", (short)(ACC_PROTECTED | ACC_FINAL),
+                            tree, ACCEPT);
+        while (!pending.isEmpty()) {
+            MethodRequest r = pending.remove(pending.size() - 1);
+            generateMatchMethod("m" + r.id, ACC_PRIVATE, r.node,
+                                r.continuation);
+        }
+        return cfw.toByteArray();
+    }
+
+    private void generateConstructor()
+    {
+        cfw.startMethod("<init>", "()V", ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS_NAME,
+                      "<init>", "()V");
+        cfw.add(ByteCode.RETURN);
+        // 1 parameter = this
+        cfw.stopMethod((short)1);
+    }
+
+    private void generateCreate()
+    {
+        cfw.startMethod("create", "()" + SUPER_CLASS_SIGNATURE,
+                        (short)(ACC_PROTECTED | ACC_FINAL));
+        cfw.add(ByteCode.NEW, cfw.getClassName());
+        cfw.add(ByteCode.DUP);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, cfw.getClassName(),
+                      "<init>", "()V");
+        cfw.add(ByteCode.ARETURN);
+        cfw.stopMethod((short)1);
+    }
+
+    /**
+     * Return the continuation that matches the terms starting at node and
+     * then continues with continuation.
+     */
+    private int continuationFor(RENode node, int continuation)
+    {
+        if (node == null) {
+            return continuation;
+        }
+        int id = methodCount++;
+        pending.add(new MethodRequest(id, node, continuation));
+        return id;
+    }
+
+    private void generateMatchMethod(String name, short flags, RENode node,
+                                     int continuation)
+    {
+        cfw.startMethod(name, MATCH_SIGNATURE, flags);
+        localsTop = FIRST_TEMP_LOCAL;
+        maxLocals = FIRST_TEMP_LOCAL;
+
+        cfw.addLoadThis();
+        cfw.add(ByteCode.GETFIELD, cfw.getClassName(), "input",
+                "Ljava/lang/CharSequence;");
+        cfw.addAStore(INPUT_LOCAL);
+        cfw.addLoadThis();
+        cfw.add(ByteCode.GETFIELD, cfw.getClassName(), "end", "I");
+        cfw.addIStore(END_LOCAL);
+
+        int fail = cfw.acquireLabel();
+        failLabel = fail;
+        failUsed = false;
+        boolean returned = false;
+        for (RENode t = node; t != null && !returned; t = t.next) {
+            returned = generateNode(t, continuation, fail);
+        }
+        if (!returned) {
+            addContinuationCall(continuation);
+            cfw.add(ByteCode.IRETURN);
+        }
+
+        if (failUsed) {
+            cfw.markLabel(fail);
+            cfw.addPush(false);
+            cfw.add(ByteCode.IRETURN);
+        }
+        cfw.stopMethod((short)maxLocals);
+    }
+
+    /**
+     * Generate the code for t. Return true if it returns the result of the
+     * whole method, which means that it has consumed the rest of the terms.
+     */
+    private boolean generateNode(RENode t, int continuation, int fail)
+    {
+        switch (t.op) {
+          case NativeRegExp.REOP_EMPTY:
+            return false;
+
+          case NativeRegExp.REOP_BOL:
+            addPositionTest("bol");
+            addJump(ByteCode.IFEQ, fail);
+            return false;
+
+          case NativeRegExp.REOP_EOL:
+            addPositionTest("eol");
+            addJump(ByteCode.IFEQ, fail);
+            return false;
+
+          case NativeRegExp.REOP_WBDRY:
+            addPositionTest("wordBoundary");
+            addJump(ByteCode.IFEQ, fail);
+            return false;
+
+          case NativeRegExp.REOP_WNONBDRY:
+            addPositionTest("wordBoundary");
+            addJump(ByteCode.IFNE, fail);
+            return false;
+
+          case NativeRegExp.REOP_BACKREF:
+            cfw.addLoadThis();
+            cfw.addPush(t.parenIndex);
+            cfw.addILoad(CP_LOCAL);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                          "backref", "(II)I");
+            cfw.add(ByteCode.DUP);
+            cfw.addIStore(CP_LOCAL);
+            addJump(ByteCode.IFLT, fail);
+            return false;
+
+          case NativeRegExp.REOP_FLAT:
+            if (t.flatIndex != -1 && t.length > 1) {
+                generateFlatN(t, fail);
+            } else {
+                generateSingleChar(t, fail);
+            }
+            return false;
+
+          case NativeRegExp.REOP_DOT:
+          case NativeRegExp.REOP_DIGIT:
+          case NativeRegExp.REOP_NONDIGIT:
+          case NativeRegExp.REOP_ALNUM:
+          case NativeRegExp.REOP_NONALNUM:
+          case NativeRegExp.REOP_SPACE:
+          case NativeRegExp.REOP_NONSPACE:
+          case NativeRegExp.REOP_CLASS:
+            generateSingleChar(t, fail);
+            return false;
+
+          case NativeRegExp.REOP_ALT:
+          case NativeRegExp.REOP_ALTPREREQ:
+          case NativeRegExp.REOP_ALTPREREQi:
+          case NativeRegExp.REOP_ALTPREREQ2:
+          {
+            int rest = continuationFor(t.next, continuation);
+            int first = continuationFor(t.kid, rest);
+            int second = continuationFor(t.kid2, rest);
+            int tryNext = cfw.acquireLabel();
+            addContinuationCall(first);
+            addJump(ByteCode.IFEQ, tryNext);
+            cfw.addPush(true);
+            cfw.add(ByteCode.IRETURN);
+            cfw.markLabel(tryNext);
+            addBacktrack();
+            addContinuationCall(second);
+            cfw.add(ByteCode.IRETURN);
+            return true;
+          }
+
+          case NativeRegExp.REOP_LPAREN:
+          {
+            RENode close = new RENode(NativeRegExp.REOP_RPAREN);
+            close.parenIndex = t.parenIndex;
+            int rest = continuationFor(t.next, continuation);
+            int kid = continuationFor(t.kid, continuationFor(close, rest));
+            generateParen("openParen", t.parenIndex, kid);
+            return true;
+          }
+
+          case NativeRegExp.REOP_RPAREN:
+            generateParen("closeParen", t.parenIndex,
+                          continuationFor(t.next, continuation));
+            return true;
+
+          case NativeRegExp.REOP_ASSERT:
+          case NativeRegExp.REOP_ASSERT_NOT:
+          {
+            // Lookahead is atomic: its kid is not backtracked into once
+            // it has matched, so it ends in ASSERT_ACCEPT
+            addContinuationCall(continuationFor(t.kid, ASSERT_ACCEPT));
+            addJump(t.op == NativeRegExp.REOP_ASSERT ? ByteCode.IFEQ
+                                                     : ByteCode.IFNE, fail);
+            return false;
+          }
+
+          case NativeRegExp.REOP_QUANT:
+          {
+            int rest = continuationFor(t.next, continuation);
+            if (t.greedy) {
+                generateGreedyQuant(t, t.next, rest, fail);
+            } else {
+                generateMinimalQuant(t, rest, fail);
+            }
+            return true;
+          }
+        }
+        throw new IllegalStateException(String.valueOf(t.op));
+    }
+
+    /**
+     * Set paren parenIndex with the given helper, call continuation and
+     * restore the paren if it fails.
+     */
+    private void generateParen(String helper, int parenIndex, int continuation)
+    {
+        int saved = newLocal(2);
+        cfw.addLoadThis();
+        cfw.addPush(parenIndex);
+        cfw.addILoad(CP_LOCAL);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                      helper, "(II)J");
+        cfw.addLStore(saved);
+
+        int failed = cfw.acquireLabel();
+        addContinuationCall(continuation);
+        addJump(ByteCode.IFEQ, failed);
+        cfw.addPush(true);
+        cfw.add(ByteCode.IRETURN);
+        cfw.markLabel(failed);
+        cfw.addLoadThis();
+        cfw.addPush(parenIndex);
+        cfw.addLLoad(saved);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                      "restoreParen", "(IJ)V");
+        cfw.addPush(false);
+        cfw.add(ByteCode.IRETURN);
+        releaseLocal(2);
+    }
+
+    /**
+     * Match as many characters as allowed, then try the continuation,
+     * giving back one character at a time until the continuation matches
+     * or fewer than min characters are left. next is the first term of the
+     * continuation, if any.
+     */
+    private void generateGreedyQuant(RENode t, RENode next, int continuation,
+                                     int fail)
+    {
+        int count = newLocal(1);
+        int c = newLocal(1);
+        cfw.addPush(0);
+        cfw.addIStore(count);
+
+        int loop = cfw.acquireLabel();
+        int done = cfw.acquireLabel();
+        cfw.markLabel(loop);
+        if (t.max != -1) {
+            cfw.addILoad(count);
+            cfw.addPush(t.max);
+            addJump(ByteCode.IF_ICMPGE, done);
+        }
+        addCharAt(CP_LOCAL, 0, c, done);
+        addCharTest(t.kid, c, done);
+        cfw.add(ByteCode.IINC, CP_LOCAL, 1);
+        cfw.add(ByteCode.IINC, count, 1);
+        addJump(ByteCode.GOTO, loop);
+
+        cfw.markLabel(done);
+        cfw.addILoad(count);
+        cfw.addPush(t.min);
+        addJump(ByteCode.IF_ICMPLT, fail);
+
+        int tryContinuation = cfw.acquireLabel();
+        int giveBack = cfw.acquireLabel();
+        cfw.markLabel(tryContinuation);
+        if (next != null && next.op == NativeRegExp.REOP_FLAT && !fold) {
+            // Only call the continuation where its first character matches
+            addCharAt(CP_LOCAL, 0, c, giveBack);
+            addFlatTest(next.chr, c, giveBack);
+        }
+        addContinuationCall(continuation);
+        addJump(ByteCode.IFEQ, giveBack);
+        cfw.addPush(true);
+        cfw.add(ByteCode.IRETURN);
+        cfw.markLabel(giveBack);
+        addBacktrack();
+        cfw.addILoad(count);
+        cfw.addPush(t.min);
+        addJump(ByteCode.IF_ICMPLE, fail);
+        addDecrement(CP_LOCAL);
+        addDecrement(count);
+        addJump(ByteCode.GOTO, tryContinuation);
+        releaseLocal(2);
+    }
+
+    /**
+     * Match min characters, then try the continuation, matching one more
+     * character each time it fails.
+     */
+    private void generateMinimalQuant(RENode t, int continuation, int fail)
+    {
+        int count = newLocal(1);
+        int c = newLocal(1);
+        cfw.addPush(0);
+        cfw.addIStore(count);
+
+        int minLoop = cfw.acquireLabel();
+        int tryContinuation = cfw.acquireLabel();
+        cfw.markLabel(minLoop);
+        cfw.addILoad(count);
+        cfw.addPush(t.min);
+        addJump(ByteCode.IF_ICMPGE, tryContinuation);
+        addCharAt(CP_LOCAL, 0, c, fail);
+        addCharTest(t.kid, c, fail);
+        cfw.add(ByteCode.IINC, CP_LOCAL, 1);
+        cfw.add(ByteCode.IINC, count, 1);
+        addJump(ByteCode.GOTO, minLoop);
+
+        int more = cfw.acquireLabel();
+        cfw.markLabel(tryContinuation);
+        addContinuationCall(continuation);
+        addJump(ByteCode.IFEQ, more);
+        cfw.addPush(true);
+        cfw.add(ByteCode.IRETURN);
+        cfw.markLabel(more);
+        addBacktrack();
+        if (t.max != -1) {
+            cfw.addILoad(count);
+            cfw.addPush(t.max);
+            addJump(ByteCode.IF_ICMPGE, fail);
+        }
+        addCharAt(CP_LOCAL, 0, c, fail);
+        addCharTest(t.kid, c, fail);
+        cfw.add(ByteCode.IINC, CP_LOCAL, 1);
+        cfw.add(ByteCode.IINC, count, 1);
+        addJump(ByteCode.GOTO, tryContinuation);
+        releaseLocal(2);
+    }
+
+    /**
+     * Generate the code for a term that matches one char, t.
+     */
+    private void generateSingleChar(RENode t, int fail)
+    {
+        int c = newLocal(1);
+        addCharAt(CP_LOCAL, 0, c, fail);
+        addCharTest(t, c, fail);
+        cfw.add(ByteCode.IINC, CP_LOCAL, 1);
+        releaseLocal(1);
+    }
+
+    private void generateFlatN(RENode t, int fail)
+    {
+        // Check the length once, then compare the characters
+        cfw.addILoad(CP_LOCAL);
+        cfw.addPush(t.length);
+        cfw.add(ByteCode.IADD);
+        cfw.addILoad(END_LOCAL);
+        addJump(ByteCode.IF_ICMPGT, fail);
+        int c = newLocal(1);
+        for (int i = 0; i < t.length; i++) {
+            cfw.addALoad(INPUT_LOCAL);
+            cfw.addILoad(CP_LOCAL);
+            cfw.addPush(i);
+            cfw.add(ByteCode.IADD);
+            cfw.addInvoke(ByteCode.INVOKEINTERFACE, "java/lang/CharSequence",
+                          "charAt", "(I)C");
+            cfw.addIStore(c);
+            addFlatTest(re.source[t.flatIndex + i], c, fail);
+        }
+        cfw.addILoad(CP_LOCAL);
+        cfw.addPush(t.length);
+        cfw.add(ByteCode.IADD);
+        cfw.addIStore(CP_LOCAL);
+        releaseLocal(1);
+    }
+
+    /**
+     * Store the character at cpLocal + offset in local c, jumping to fail if
+     * it is past the end of the input.
+     */
+    private void addCharAt(int cpLocal, int offset, int c, int fail)
+    {
+        cfw.addILoad(cpLocal);
+        if (offset != 0) {
+            cfw.addPush(offset);
+            cfw.add(ByteCode.IADD);
+        }
+        cfw.addILoad(END_LOCAL);
+        addJump(ByteCode.IF_ICMPGE, fail);
+        cfw.addALoad(INPUT_LOCAL);
+        cfw.addILoad(cpLocal);
+        if (offset != 0) {
+            cfw.addPush(offset);
+            cfw.add(ByteCode.IADD);
+        }
+        cfw.addInvoke(ByteCode.INVOKEINTERFACE, "java/lang/CharSequence",
+                      "charAt", "(I)C");
+        cfw.addIStore(c);
+    }
+
+    /**
+     * Jump to fail unless the character in local c matches the single
+     * character term t.
+     */
+    private void addCharTest(RENode t, int c, int fail)
+    {
+        switch (t.op) {
+          case NativeRegExp.REOP_DOT:
+            addCharPredicate("isLineTerm", c);
+            addJump(ByteCode.IFNE, fail);
+            break;
+          case NativeRegExp.REOP_DIGIT:
+            addCharPredicate("isDigit", c);
+            addJump(ByteCode.IFEQ, fail);
+            break;
+          case NativeRegExp.REOP_NONDIGIT:
+            addCharPredicate("isDigit", c);
+            addJump(ByteCode.IFNE, fail);
+            break;
+          case NativeRegExp.REOP_ALNUM:
+            addCharPredicate("isWord", c);
+            addJump(ByteCode.IFEQ, fail);
+            break;
+          case NativeRegExp.REOP_NONALNUM:
+            addCharPredicate("isWord", c);
+            addJump(ByteCode.IFNE, fail);
+            break;
+          case NativeRegExp.REOP_SPACE:
+            addCharPredicate("isSpace", c);
+            addJump(ByteCode.IFEQ, fail);
+            break;
+          case NativeRegExp.REOP_NONSPACE:
+            addCharPredicate("isSpace", c);
+            addJump(ByteCode.IFNE, fail);
+            break;
+          case NativeRegExp.REOP_CLASS:
+            cfw.addLoadThis();
+            cfw.addPush(t.index);
+            cfw.addILoad(c);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                          "classMatch", "(IC)Z");
+            addJump(ByteCode.IFEQ, fail);
+            break;
+          case NativeRegExp.REOP_FLAT:
+            addFlatTest(t.chr, c, fail);
+            break;
+          default:
+            throw new IllegalStateException(String.valueOf(t.op));
+        }
+    }
+
+    private void addFlatTest(char matchCh, int c, int fail)
+    {
+        cfw.addILoad(c);
+        cfw.addPush(matchCh);
+        if (!fold) {
+            addJump(ByteCode.IF_ICMPNE, fail);
+            return;
+        }
+        int matched = cfw.acquireLabel();
+        addJump(ByteCode.IF_ICMPEQ, matched);
+        cfw.addILoad(c);
+        cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME,
+                      "upcase", "(C)C");
+        cfw.addPush(NativeRegExp.upcase(matchCh));
+        addJump(ByteCode.IF_ICMPNE, fail);
+        cfw.markLabel(matched);
+    }
+
+    private void addCharPredicate(String name, int c)
+    {
+        cfw.addILoad(c);
+        cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME, name, "(C)Z");
+    }
+
+    private void addPositionTest(String name)
+    {
+        cfw.addLoadThis();
+        cfw.addILoad(CP_LOCAL);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                      name, "(I)Z");
+    }
+
+    /**
+     * Push the result of matching continuation at the current position.
+     */
+    private void addContinuationCall(int continuation)
+    {
+        if (continuation == ASSERT_ACCEPT) {
+            cfw.addPush(true);
+            return;
+        }
+        cfw.addLoadThis();
+        cfw.addILoad(CP_LOCAL);
+        if (continuation == ACCEPT) {
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                          "accept", MATCH_SIGNATURE);
+        } else {
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, cfw.getClassName(),
+                          "m" + continuation, MATCH_SIGNATURE);
+        }
+    }
+
+    private void addBacktrack()
+    {
+        cfw.addLoadThis();
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                      "backtrack", "()V");
+    }
+
+    private void addJump(int opcode, int label)
+    {
+        // The code at the failure label must only be generated if it is
+        // reachable, since the verifier rejects dead code without a frame
+        if (label == failLabel) {
+            failUsed = true;
+        }
+        cfw.add(opcode, label);
+    }
+
+    private void addDecrement(int local)
+    {
+        // ClassFileWriter does not accept negative IINC increments
+        cfw.addILoad(local);
+        cfw.addPush(1);
+        cfw.add(ByteCode.ISUB);
+        cfw.addIStore(local);
+    }
+
+    private int newLocal(int size)
+    {
+        int local = localsTop;
+        localsTop += size;
+        if (localsTop > maxLocals) {
+            maxLocals = localsTop;
+        }
+        return local;
+    }
+
+    private void releaseLocal(int size)
+    {
+        localsTop -= size;
+    }
+}
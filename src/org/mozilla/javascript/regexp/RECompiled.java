@@ -0,0 +1,37 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import java.io.Serializable;
+
+class RECompiled implements Serializable
+{
+    private static final long serialVersionUID = -6144956577595844213L;
+
+    final char[] source;    /* locked source string, sans // */
+    int parenCount;         /* number of parenthesized submatches */
+    int flags;              /* flags  */
+    byte[] program;         /* regular expression bytecode */
+    int classCount;         /* count [...] bitmaps */
+    RECharSet[] classList;  /* list of [...] bitmaps */
+    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
+    boolean flat;           /* source is a literal string, not a regexp */
+    String prefix;          /* literal every match starts with, see RESearch */
+    String required;        /* other literal every match contains */
+    int requiredMin;        /* least offset of required in a match */
+    int requiredMax;        /* largest offset, or -1 if unbounded */
+    char[] firstChars;      /* chars every match starts with one of */
+
+    transient int interpretedCount;       /* positions tried, -1 if not compilable */
+    transient volatile REMatcher matcher; /* compiled by RECodegen, if hot */
+    transient volatile REAutomaton automaton; /* used after too much backtracking */
+    transient boolean noAutomaton;        /* REAutomaton can not match it */
+
+    RECompiled(String str) {
+        this.source = str.toCharArray();
+    }
+}
@@ -0,0 +1,52 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+class REGlobalData {
+    boolean multiline;
+    RECompiled regexp;              /* the RE in execution */
+    int skipped;                    /* chars skipped anchoring this r.e. */
+    int requiredIndex;              /* where RESearch last found re.required */
+
+    int cp;                         /* char buffer index */
+    long[] parens;                  /* parens captures */
+
+    REProgState stateStackTop;       /* stack of state of current ancestors */
+
+    REBackTrackData backTrackStackTop;  /* last matched-so-far position */
+
+    int backtrackBudget;            /* backtracks left, 0 if unlimited */
+    boolean budgetExceeded;         /* matching stopped for lack of budget */
+
+    REMatcher matcher;              /* generated matcher last used, if any */
+
+    /**
+     * Get start of parenthesis capture contents, -1 for empty.
+     */
+    int parensIndex(int i)
+    {
+        return (int)(parens[i]);
+    }
+
+    /**
+     * Get length of parenthesis capture contents.
+     */
+    int parensLength(int i)
+    {
+        return (int)(parens[i] >>> 32);
+    }
+
+    void setParens(int i, int index, int length)
+    {
+        // clone parens array if it is shared with backtrack state
+        if (backTrackStackTop != null && backTrackStackTop.parens == parens) {
+            parens = parens.clone();
+        }
+        parens[i] = (index & 0xffffffffL) | ((long)length << 32);
+    }
+
+}
@@ -0,0 +1,248 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * Base class of the matchers that {@link RECodegen} generates for hot
+ * regular expressions. It holds the state of one match and implements the
+ * search for the start of a match, while the generated subclass implements
+ * matching at a given position.
+ *
+ * This class is public only so that generated classes, which are loaded by
+ * a different class loader, can extend it. It is not part of the API.
+ */
+public abstract class REMatcher
+{
+    // Thrown to abandon a match that has run out of backtracks
+    private static final BudgetExceeded BUDGET_EXCEEDED = new BudgetExceeded();
+
+    RECompiled regexp;
+    // Backtracks left in the current match
+    private int backtrackBudget;
+
+    protected CharSequence input;
+    protected int end;
+    protected boolean multiline;
+    protected long[] parens;
+    protected int matchEnd;
+
+    protected REMatcher()
+    {
+    }
+
+    /**
+     * Create an instance of the generated class.
+     */
+    protected abstract REMatcher create();
+
+    /**
+     * Match the regular expression at position cp of the input. On success,
+     * set matchEnd to the end of the match.
+     */
+    protected abstract boolean matchAt(int cp);
+
+    final REMatcher newMatcher()
+    {
+        REMatcher m = create();
+        m.regexp = regexp;
+        return m;
+    }
+
+    /**
+     * The compiled counterpart of NativeRegExp.matchRegExp: find the first
+     * match at or after start and store it in gData. If the match backtracks
+     * more than budget times, set gData.budgetExceeded and return false. A
+     * budget of 0 is unlimited.
+     */
+    final boolean match(REGlobalData gData, CharSequence input, int start, int end,
+                        boolean multiline, int budget)
+    {
+        this.backtrackBudget = budget;
+        try {
+            return match(gData, input, start, end, multiline);
+        } catch (BudgetExceeded ex) {
+            gData.budgetExceeded = true;
+            return false;
+        } finally {
+            // Do not keep the input alive, the matcher may be kept for reuse
+            this.input = null;
+        }
+    }
+
+    private boolean match(REGlobalData gData, CharSequence input, int start,
+                          int end, boolean multiline)
+    {
+        RECompiled re = regexp;
+        this.input = input;
+        this.end = end;
+        this.multiline = multiline || (re.flags & NativeRegExp.JSREG_MULTILINE) != 0;
+        long[] parens = gData.parens;
+        if (re.parenCount == 0) {
+            parens = null;
+        } else if (parens == null || parens.length != re.parenCount) {
+            parens = new long[re.parenCount];
+        }
+        this.parens = parens;
+
+        gData.regexp = re;
+        gData.multiline = this.multiline;
+        gData.requiredIndex = -1;
+
+        int anchorCh = re.anchorCh;
+        for (int i = start; i <= end; ++i) {
+            i = RESearch.nextCandidate(gData, re, input, i, end);
+            if (i < 0) {
+                break;
+            }
+            if (parens != null) {
+                for (int j = 0; j < parens.length; j++) {
+                    parens[j] = -1L;
+                }
+            }
+            if (matchAt(i)) {
+                gData.cp = matchEnd;
+                gData.skipped = i - start;
+                gData.parens = parens;
+                return true;
+            }
+            if (anchorCh == NativeRegExp.ANCHOR_BOL && !this.multiline) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    // Helpers for the generated code
+
+    /**
+     * Count a backtrack, and abandon the match if there are none left.
+     */
+    protected final void backtrack()
+    {
+        if (backtrackBudget > 0 && --backtrackBudget == 0) {
+            throw BUDGET_EXCEEDED;
+        }
+    }
+
+    protected final boolean accept(int cp)
+    {
+        matchEnd = cp;
+        return true;
+    }
+
+    protected final boolean bol(int cp)
+    {
+        return cp == 0 || (multiline && isLineTerm(input.charAt(cp - 1)));
+    }
+
+    protected final boolean eol(int cp)
+    {
+        return cp == end || (multiline && isLineTerm(input.charAt(cp)));
+    }
+
+    protected final boolean wordBoundary(int cp)
+    {
+        return (cp == 0 || !isWord(input.charAt(cp - 1)))
+                ^ !(cp < end && isWord(input.charAt(cp)));
+    }
+
+    protected final boolean classMatch(int index, char c)
+    {
+        return NativeRegExp.classMatcher(regexp, regexp.classList[index], c);
+    }
+
+    /**
+     * Match the contents of paren parenIndex at cp, returning the position
+     * after it, or -1 if it does not match.
+     */
+    protected final int backref(int parenIndex, int cp)
+    {
+        if (parens == null || parenIndex >= parens.length)
+            return -1;
+        int parenContent = (int)parens[parenIndex];
+        if (parenContent == -1)
+            return cp;
+        int len = (int)(parens[parenIndex] >>> 32);
+        if (cp + len > end)
+            return -1;
+        if ((regexp.flags & NativeRegExp.JSREG_FOLD) != 0) {
+            for (int i = 0; i < len; i++) {
+                char c1 = input.charAt(parenContent + i);
+                char c2 = input.charAt(cp + i);
+                if (c1 != c2 && upcase(c1) != upcase(c2))
+                    return -1;
+            }
+        } else if (!NativeRegExp.regionMatches(input, parenContent, cp, len)) {
+            return -1;
+        }
+        return cp + len;
+    }
+
+    /**
+     * Start paren parenIndex at cp and return its previous value.
+     */
+    protected final long openParen(int parenIndex, int cp)
+    {
+        long old = parens[parenIndex];
+        parens[parenIndex] = cp & 0xffffffffL;
+        return old;
+    }
+
+    /**
+     * End paren parenIndex at cp and return its previous value.
+     */
+    protected final long closeParen(int parenIndex, int cp)
+    {
+        long old = parens[parenIndex];
+        int index = (int)old;
+        parens[parenIndex] = (index & 0xffffffffL) | ((long)(cp - index) << 32);
+        return old;
+    }
+
+    protected final void restoreParen(int parenIndex, long value)
+    {
+        parens[parenIndex] = value;
+    }
+
+    protected static boolean isDigit(char c)
+    {
+        return NativeRegExp.isDigit(c);
+    }
+
+    protected static boolean isWord(char c)
+    {
+        return NativeRegExp.isWord(c);
+    }
+
+    protected static boolean isLineTerm(char c)
+    {
+        return ScriptRuntime.isJSLineTerminator(c);
+    }
+
+    protected static boolean isSpace(char c)
+    {
+        return ScriptRuntime.isJSWhitespaceOrLineTerminator(c);
+    }
+
+    protected static char upcase(char c)
+    {
+        return NativeRegExp.upcase(c);
+    }
+
+    private static final class BudgetExceeded extends RuntimeException
+    {
+        private static final long serialVersionUID = -5395207524618102843L;
+
+        BudgetExceeded()
+        {
+            // Thrown and caught within REMatcher, so no stack trace
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+class RENode {
+
+    RENode(byte op)
+    {
+        this.op = op;
+    }
+
+    byte            op;         /* r.e. op bytecode */
+    RENode          next;       /* next in concatenation order */
+    RENode          kid;        /* first operand */
+
+    RENode          kid2;       /* second operand */
+    int             parenIndex; /* or a parenthesis index */
+
+                                /* or a range */
+    int             min;
+    int             max;
+    int             parenCount;
+    boolean         greedy;
+
+                                /* or a character class */
+    int             startIndex;
+    int             kidlen;     /* length of string at kid, in chars */
+    int             bmsize;     /* bitmap size, based on max char code */
+    int             index;      /* index into class list */
+    boolean         sense;
+
+                                /* or a literal sequence */
+    char            chr;        /* of one character */
+    int             length;     /* or many (via the index) */
+    int             flatIndex;  /* which is -1 if not sourced */
+
+}
@@ -0,0 +1,384 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.regexp;
+
+import org.mozilla.javascript.ConsString;
+import org.mozilla.javascript.SlicedString;
+
+/**
+ * Finds the positions where a match of a regular expression can start, so
+ * that the matchers are not run at the others. When a regexp is compiled,
+ * its parse tree is searched for literals that every match must contain:
+ *
+ * <ul>
+ * <li>the literal prefix, which every match starts with;</li>
+ * <li>the longest literal that every match contains, when it is not the
+ * prefix, with the range of its distance from the start of the match;</li>
+ * <li>the set of characters a match can start with, when the regexp
+ * starts with a choice of literals such as (foo|bar).</li>
+ * </ul>
+ *
+ * The literals are searched for with String.indexOf, which the JVM
+ * implements with vector instructions; a ConsString is searched that way
+ * in each of the Strings it is made of. A match can only start where the
+ * required literal follows within its distance range, so the positions
+ * before the next such place are skipped too. The prefix and the required
+ * literal are not used when case is ignored.
+ */
+final class RESearch
+{
+    private static final int MAX_FIRST_CHARS = 16;
+
+    // Widths above this are treated as unbounded
+    private static final int MAX_WIDTH = 1 << 16;
+
+    private RESearch()
+    {
+    }
+
+    /**
+     * Record the literals of the parse tree of re in re.
+     */
+    static void analyze(RECompiled re, RENode tree)
+    {
+        boolean fold = (re.flags & NativeRegExp.JSREG_FOLD) != 0;
+        if (!fold) {
+            Literals literals = new Literals(re);
+            literals.scan(tree);
+            literals.endRun();
+            if (literals.prefix != null && literals.prefix.length() > 1) {
+                re.prefix = literals.prefix;
+            }
+            if (literals.required != null && literals.required.length() > 1
+                && literals.required != literals.prefix)
+            {
+                re.required = literals.required;
+                re.requiredMin = literals.requiredMin;
+                re.requiredMax = literals.requiredMax;
+            }
+        }
+        if (re.anchorCh == -1) {
+            StringBuilder chars = new StringBuilder();
+            if (addFirstChars(re, tree, chars, fold)) {
+                re.firstChars = chars.toString().toCharArray();
+            }
+        }
+    }
+
+    /**
+     * Return the first position at or after i, and before end, at which a
+     * match of re can start, or -1 if there is none. Position end itself is
+     * returned only if a match could be empty there.
+     */
+    static int nextCandidate(REGlobalData gData, RECompiled re, CharSequence input,
+                             int i, int end)
+    {
+        for (;;) {
+            String required = re.required;
+            if (required != null) {
+                // A match that starts at i contains required between
+                // i + requiredMin and i + requiredMax, and before end
+                int from = i + re.requiredMin;
+                if (gData.requiredIndex < from) {
+                    int index = indexOf(input, required, from);
+                    if (index < 0 || index + required.length() > end) {
+                        return -1;
+                    }
+                    gData.requiredIndex = index;
+                }
+                if (re.requiredMax >= 0 && gData.requiredIndex - re.requiredMax > i) {
+                    i = gData.requiredIndex - re.requiredMax;
+                }
+            }
+            int candidate = nextStart(re, input, i, end);
+            if (candidate == i || candidate < 0 || required == null) {
+                return candidate;
+            }
+            i = candidate;
+        }
+    }
+
+    private static int nextStart(RECompiled re, CharSequence input, int i, int end)
+    {
+        String prefix = re.prefix;
+        if (prefix != null) {
+            int index = indexOf(input, prefix, i);
+            if (index < 0 || index + prefix.length() > end) {
+                return -1;
+            }
+            return index;
+        }
+        int anchorCh = re.anchorCh;
+        if (anchorCh >= 0) {
+            boolean fold = (re.flags & NativeRegExp.JSREG_FOLD) != 0;
+            for (; i < end; i++) {
+                char c = input.charAt(i);
+                if (c == anchorCh || (fold && NativeRegExp.upcase(c)
+                                      == NativeRegExp.upcase((char)anchorCh)))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        char[] firstChars = re.firstChars;
+        if (firstChars != null) {
+            boolean fold = (re.flags & NativeRegExp.JSREG_FOLD) != 0;
+            for (; i < end; i++) {
+                char c = input.charAt(i);
+                if (fold) {
+                    c = NativeRegExp.upcase(c);
+                }
+                for (char first : firstChars) {
+                    if (c == first) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Like String.indexOf, for any input. Ropes and substrings are searched
+     * in the Strings that they are made of, without copying them.
+     */
+    static int indexOf(CharSequence input, String str, int from)
+    {
+        if (input instanceof String) {
+            return ((String) input).indexOf(str, from);
+        }
+        if (input instanceof ConsString) {
+            return ((ConsString) input).indexOf(str, from);
+        }
+        if (input instanceof SlicedString) {
+            return ((SlicedString) input).indexOf(str, from);
+        }
+        int n = str.length();
+        int last = input.length() - n;
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            int k = 0;
+            while (k < n && input.charAt(i + k) == str.charAt(k)) {
+                k++;
+            }
+            if (k == n) {
+                return i;
+            }
+        }
+        return n == 0 ? input.length() : -1;
+    }
+
+    /**
+     * Add the characters that a match of the terms from node on can start
+     * with to chars. Return false if there are too many, or if the terms can
+     * match the empty string or something other than a literal first.
+     */
+    private static boolean addFirstChars(RECompiled re, RENode node,
+                                         StringBuilder chars, boolean fold)
+    {
+        while (node != null && node.op == NativeRegExp.REOP_EMPTY) {
+            node = node.next;
+        }
+        if (node == null) {
+            return false;
+        }
+        switch (node.op) {
+          case NativeRegExp.REOP_FLAT: {
+            char c = node.flatIndex != -1 ? re.source[node.flatIndex] : node.chr;
+            if (fold) {
+                c = NativeRegExp.upcase(c);
+            }
+            if (chars.indexOf(String.valueOf(c)) < 0) {
+                if (chars.length() == MAX_FIRST_CHARS) {
+                    return false;
+                }
+                chars.append(c);
+            }
+            return true;
+          }
+          case NativeRegExp.REOP_LPAREN:
+            return addFirstChars(re, node.kid, chars, fold);
+          case NativeRegExp.REOP_ALT:
+          case NativeRegExp.REOP_ALTPREREQ:
+          case NativeRegExp.REOP_ALTPREREQi:
+            return addFirstChars(re, node.kid, chars, fold)
+                && addFirstChars(re, node.kid2, chars, fold);
+          case NativeRegExp.REOP_QUANT:
+            return node.min > 0 && addFirstChars(re, node.kid, chars, fold);
+          default:
+            return false;
+        }
+    }
+
+    /**
+     * Return the least number of chars that node matches, or with max set,
+     * the largest number, which is -1 if there is no limit.
+     */
+    private static int width(RENode node, boolean max)
+    {
+        switch (node.op) {
+          case NativeRegExp.REOP_EMPTY:
+          case NativeRegExp.REOP_BOL:
+          case NativeRegExp.REOP_EOL:
+          case NativeRegExp.REOP_WBDRY:
+          case NativeRegExp.REOP_WNONBDRY:
+          case NativeRegExp.REOP_ASSERT:
+          case NativeRegExp.REOP_ASSERT_NOT:
+            return 0;
+          case NativeRegExp.REOP_DOT:
+          case NativeRegExp.REOP_DIGIT:
+          case NativeRegExp.REOP_NONDIGIT:
+          case NativeRegExp.REOP_ALNUM:
+          case NativeRegExp.REOP_NONALNUM:
+          case NativeRegExp.REOP_SPACE:
+          case NativeRegExp.REOP_NONSPACE:
+          case NativeRegExp.REOP_CLASS:
+            return 1;
+          case NativeRegExp.REOP_FLAT:
+            return node.length;
+          case NativeRegExp.REOP_LPAREN:
+            return chainWidth(node.kid, max);
+          case NativeRegExp.REOP_ALT:
+          case NativeRegExp.REOP_ALTPREREQ:
+          case NativeRegExp.REOP_ALTPREREQi:
+          case NativeRegExp.REOP_ALTPREREQ2: {
+            int w1 = chainWidth(node.kid, max);
+            int w2 = chainWidth(node.kid2, max);
+            if (max) {
+                return w1 < 0 || w2 < 0 ? -1 : Math.max(w1, w2);
+            }
+            return Math.min(w1, w2);
+          }
+          case NativeRegExp.REOP_QUANT: {
+            int count = max ? node.max : node.min;
+            int w = chainWidth(node.kid, max);
+            if (count < 0 || w < 0) {
+                return -1;
+            }
+            return bound((long)count * w, max);
+          }
+          default:
+            // Back references
+            return max ? -1 : 0;
+        }
+    }
+
+    private static int chainWidth(RENode node, boolean max)
+    {
+        int width = 0;
+        for (; node != null; node = node.next) {
+            width = add(width, width(node, max), max);
+        }
+        return width;
+    }
+
+    private static int add(int w1, int w2, boolean max)
+    {
+        if (w1 < 0 || w2 < 0) {
+            return -1;
+        }
+        return bound((long)w1 + w2, max);
+    }
+
+    private static int bound(long width, boolean max)
+    {
+        if (width > MAX_WIDTH) {
+            return max ? -1 : MAX_WIDTH;
+        }
+        return (int)width;
+    }
+
+    /**
+     * Collects the runs of adjacent literals that every match contains.
+     */
+    private static final class Literals
+    {
+        private final RECompiled re;
+        private final StringBuilder run = new StringBuilder();
+        private boolean atStart = true;
+        // Range of the width of the nodes scanned so far
+        private int min;
+        private int max;
+        // Range of the width of the nodes before the current run
+        private int runMin;
+        private int runMax;
+        String prefix;
+        String required;
+        int requiredMin;
+        int requiredMax;
+
+        Literals(RECompiled re)
+        {
+            this.re = re;
+        }
+
+        void scan(RENode node)
+        {
+            for (; node != null; node = node.next) {
+                switch (node.op) {
+                  case NativeRegExp.REOP_FLAT:
+                    if (run.length() == 0) {
+                        runMin = min;
+                        runMax = max;
+                    }
+                    if (node.flatIndex != -1) {
+                        run.append(re.source, node.flatIndex, node.length);
+                    } else {
+                        run.append(node.chr);
+                    }
+                    skip(node);
+                    break;
+                  case NativeRegExp.REOP_EMPTY:
+                    break;
+                  case NativeRegExp.REOP_LPAREN:
+                    scan(node.kid);
+                    break;
+                  case NativeRegExp.REOP_QUANT:
+                    // The atom is repeated, so literals inside it are not
+                    // adjacent to the ones around it
+                    endRun();
+                    if (node.min > 0) {
+                        int min0 = min;
+                        int max0 = max;
+                        scan(node.kid);
+                        endRun();
+                        min = min0;
+                        max = max0;
+                    }
+                    skip(node);
+                    break;
+                  default:
+                    endRun();
+                    skip(node);
+                    break;
+                }
+            }
+        }
+
+        private void skip(RENode node)
+        {
+            min = add(min, width(node, false), false);
+            max = add(max, width(node, true), true);
+        }
+
+        void endRun()
+        {
+            String s = run.toString();
+            run.setLength(0);
+            if (atStart) {
+                atStart = false;
+                prefix = s;
+            }
+            if (required == null || s.length() > required.length()) {
+                required = s;
+                requiredMin = runMin;
+                requiredMax = runMax;
+            }
+        }
+    }
+}
@@ -6,6 +6,10 @@
 
 package org.mozilla.javascript.regexp;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Kit;
@@ -28,7 +32,7 @@ public class RegExpImpl implements RegExpProxy {
     @Override
     public Object compileRegExp(Context cx, String source, String flags)
     {
-        return NativeRegExp.compileRE(cx, source, flags, false);
+        return compileCached(cx, source, flags, false);
     }
 
     @Override
@@ -45,7 +49,7 @@ public class RegExpImpl implements RegExpProxy {
     {
         GlobData data = new GlobData();
         data.mode = actionType;
-        data.str = ScriptRuntime.toString(thisObj);
+        data.str = ScriptRuntime.toCharSequence(thisObj);
 
         switch (actionType) {
           case RA_MATCH:
@@ -109,14 +113,10 @@ public class RegExpImpl implements RegExpProxy {
                     val = matchOrReplace(cx, scope, thisObj, args,
                                          this, data, re);
                 } else {
-                    String str = data.str;
-                    int index = str.indexOf(search);
+                    CharSequence str = data.str;
+                    int index = RESearch.indexOf(str, search, 0);
                     if (index >= 0) {
-                        int slen = search.length();
-                        this.lastParen = null;
-                        this.leftContext = new SubString(str, 0, index);
-                        this.lastMatch = new SubString(str, index, slen);
-                        this.rightContext = new SubString(str, index + slen, str.length() - index - slen);
+                        setStringMatch(str, index, search.length());
                         val = Boolean.TRUE;
                     } else {
                         val = Boolean.FALSE;
@@ -130,10 +130,10 @@ public class RegExpImpl implements RegExpProxy {
                         /* Didn't match even once. */
                         return data.str;
                     }
-                    SubString lc = this.leftContext;
+                    SubString lc = getLeftContext();
                     replace_glob(data, cx, scope, this, lc.index, lc.length);
                 }
-                SubString rc = this.rightContext;
+                SubString rc = getRightContext();
                 data.charBuf.append(rc.str, rc.index, rc.index + rc.length);
                 return data.charBuf.toString();
             }
@@ -150,7 +150,7 @@ public class RegExpImpl implements RegExpProxy {
         NativeRegExp re;
         Scriptable topScope = ScriptableObject.getTopLevelScope(scope);
         if (args.length == 0 || args[0] == Undefined.instance) {
-            RECompiled compiled = NativeRegExp.compileRE(cx, "", "", false);
+            RECompiled compiled = compileCached(cx, "", "", false);
             re = new NativeRegExp(topScope, compiled);
         } else if (args[0] instanceof NativeRegExp) {
             re = (NativeRegExp) args[0];
@@ -163,7 +163,7 @@ public class RegExpImpl implements RegExpProxy {
             } else {
                 opt = null;
             }
-            RECompiled compiled = NativeRegExp.compileRE(cx, src, opt, forceFlat);
+            RECompiled compiled = compileCached(cx, src, opt, forceFlat);
             re = new NativeRegExp(topScope, compiled);
         }
         return re;
@@ -177,7 +177,7 @@ public class RegExpImpl implements RegExpProxy {
                                          RegExpImpl reImpl,
                                          GlobData data, NativeRegExp re)
     {
-        String str = data.str;
+        CharSequence str = data.str;
         data.global = (re.getFlags() & NativeRegExp.JSREG_GLOB) != 0;
         int[] indexp = { 0 };
         Object result = null;
@@ -185,7 +185,7 @@ public class RegExpImpl implements RegExpProxy {
             result = re.executeRegExp(cx, scope, reImpl,
                                       str, indexp, NativeRegExp.TEST);
             if (result != null && result.equals(Boolean.TRUE))
-                result = Integer.valueOf(reImpl.leftContext.length);
+                result = Integer.valueOf(reImpl.getLeftContext().length);
             else
                 result = Integer.valueOf(-1);
         } else if (data.global) {
@@ -199,13 +199,12 @@ public class RegExpImpl implements RegExpProxy {
                     match_glob(data, cx, scope, count, reImpl);
                 } else {
                     if (data.mode != RA_REPLACE) Kit.codeBug();
-                    SubString lastMatch = reImpl.lastMatch;
                     int leftIndex = data.leftIndex;
-                    int leftlen = lastMatch.index - leftIndex;
-                    data.leftIndex = lastMatch.index + lastMatch.length;
+                    int leftlen = reImpl.matchIndex - leftIndex;
+                    data.leftIndex = reImpl.matchEnd;
                     replace_glob(data, cx, scope, reImpl, leftIndex, leftlen);
                 }
-                if (reImpl.lastMatch.length == 0) {
+                if (reImpl.matchIndex == reImpl.matchEnd) {
                     if (indexp[0] == str.length())
                         break;
                     indexp[0]++;
@@ -253,8 +252,7 @@ public class RegExpImpl implements RegExpProxy {
             ip[0] = ipsave;
             matched[0] = true;
 
-            SubString sep = this.lastMatch;
-            matchlen[0] = sep.length;
+            matchlen[0] = matchEnd - matchIndex;
             if (matchlen[0] == 0) {
                 /*
                  * Empty string match: never split on an empty
@@ -286,7 +284,7 @@ public class RegExpImpl implements RegExpProxy {
             result = i - matchlen[0];
             break;
         }
-        int size = (parens == null) ? 0 : parens.length;
+        int size = getParenCount();
         parensp[0] = new String[size];
         for (int num = 0; num < size; num++) {
             SubString parsub = getParenSubString(num);
@@ -301,6 +299,7 @@ public class RegExpImpl implements RegExpProxy {
      */
     SubString getParenSubString(int i)
     {
+        updateParens();
         if (parens != null && i < parens.length) {
             SubString parsub = parens[i];
             if (parsub != null) {
@@ -320,8 +319,8 @@ public class RegExpImpl implements RegExpProxy {
         if (mdata.arrayobj == null) {
             mdata.arrayobj = cx.newArray(scope, 0);
         }
-        SubString matchsub = reImpl.lastMatch;
-        String matchstr = matchsub.toString();
+        String matchstr = reImpl.matchStr.subSequence(reImpl.matchIndex,
+                                                      reImpl.matchEnd).toString();
         mdata.arrayobj.put(count, mdata.arrayobj, matchstr);
     }
 
@@ -337,10 +336,11 @@ public class RegExpImpl implements RegExpProxy {
         if (rdata.lambda != null) {
             // invoke lambda function with args lastMatch, $1, $2, ... $n,
             // leftContext.length, whole string.
+            reImpl.updateParens();
             SubString[] parens = reImpl.parens;
             int parenCount = (parens == null) ? 0 : parens.length;
             Object[] args = new Object[parenCount + 3];
-            args[0] = reImpl.lastMatch.toString();
+            args[0] = reImpl.getLastMatch().toString();
             for (int i=0; i < parenCount; i++) {
                 SubString sub = parens[i];
                 if (sub != null) {
@@ -349,7 +349,7 @@ public class RegExpImpl implements RegExpProxy {
                     args[i+1] = Undefined.instance;
                 }
             }
-            args[parenCount+1] = Integer.valueOf(reImpl.leftContext.length);
+            args[parenCount+1] = Integer.valueOf(reImpl.getLeftContext().length);
             args[parenCount+2] = rdata.str;
             // This is a hack to prevent expose of reImpl data to
             // JS function which can run new regexps modifing
@@ -372,10 +372,10 @@ public class RegExpImpl implements RegExpProxy {
             lambdaStr = null;
             replen = rdata.repstr.length();
             if (rdata.dollar >= 0) {
-                int[] skip = new int[1];
+                int[] skip = rdata.skip;
                 int dp = rdata.dollar;
                 do {
-                    SubString sub = interpretDollar(cx, reImpl, rdata.repstr,
+                    SubString sub = interpretDollar(cx, reImpl, rdata, rdata.repstr,
                                                     dp, skip);
                     if (sub != null) {
                         replen += sub.length - skip[0];
@@ -388,7 +388,7 @@ public class RegExpImpl implements RegExpProxy {
             }
         }
 
-        int growth = leftlen + replen + reImpl.rightContext.length;
+        int growth = leftlen + replen + reImpl.matchStr.length() - reImpl.matchEnd;
         StringBuilder charBuf = rdata.charBuf;
         if (charBuf == null) {
             charBuf = new StringBuilder(growth);
@@ -397,7 +397,7 @@ public class RegExpImpl implements RegExpProxy {
             charBuf.ensureCapacity(rdata.charBuf.length() + growth);
         }
 
-        charBuf.append(reImpl.leftContext.str, leftIndex, leftIndex + leftlen);
+        charBuf.append(reImpl.matchStr, leftIndex, leftIndex + leftlen);
         if (rdata.lambda != null) {
             charBuf.append(lambdaStr);
         } else {
@@ -406,7 +406,8 @@ public class RegExpImpl implements RegExpProxy {
     }
 
     private static SubString interpretDollar(Context cx, RegExpImpl res,
-                                             String da, int dp, int[] skip)
+                                             GlobData rdata, String da,
+                                             int dp, int[] skip)
     {
         char dc;
         int num, tmp;
@@ -445,7 +446,7 @@ public class RegExpImpl implements RegExpProxy {
                 }
             }
             else {  /* ECMA 3, 1-9 or 01-99 */
-                int parenCount = (res.parens == null) ? 0 : res.parens.length;
+                int parenCount = res.getParenCount();
                 num = dc - '0';
                 if (num > parenCount)
                     return null;
@@ -465,7 +466,7 @@ public class RegExpImpl implements RegExpProxy {
             /* Adjust num from 1 $n-origin to 0 array-index-origin. */
             num--;
             skip[0] = cp - dp;
-            return res.getParenSubString(num);
+            return res.getParenSubString(num, rdata.sub);
         }
 
         skip[0] = 2;
@@ -473,9 +474,9 @@ public class RegExpImpl implements RegExpProxy {
           case '$':
             return new SubString("$");
           case '&':
-            return res.lastMatch;
+            return res.getLastMatch();
           case '+':
-            return res.lastParen;
+            return res.getLastParen();
           case '`':
             if (version == Context.VERSION_1_2) {
                 /*
@@ -485,12 +486,14 @@ public class RegExpImpl implements RegExpProxy {
                  * $` at the beginning of the target string when it is used in a
                  * substitution, so we emulate that special case here.
                  */
-                res.leftContext.index = 0;
-                res.leftContext.length = res.lastMatch.index;
+                SubString leftContext = res.getLeftContext();
+                leftContext.index = 0;
+                leftContext.length = res.getLastMatch().index;
+                return leftContext;
             }
-            return res.leftContext;
+            return res.getLeftContext();
           case '\'':
-            return res.rightContext;
+            return res.getRightContext();
         }
         return null;
     }
@@ -506,12 +509,12 @@ public class RegExpImpl implements RegExpProxy {
         String da = rdata.repstr;
         int dp = rdata.dollar;
         if (dp != -1) {
-            int[] skip = new int[1];
+            int[] skip = rdata.skip;
             do {
                 int len = dp - cp;
-                charBuf.append(da.substring(cp, dp));
+                charBuf.append(da, cp, dp);
                 cp = dp;
-                SubString sub = interpretDollar(cx, regExpImpl, da,
+                SubString sub = interpretDollar(cx, regExpImpl, rdata, da,
                                                 dp, skip);
                 if (sub != null) {
                     len = sub.length;
@@ -528,7 +531,7 @@ public class RegExpImpl implements RegExpProxy {
         }
         int daL = da.length();
         if (daL > cp) {
-            charBuf.append(da.substring(cp, daL));
+            charBuf.append(da, cp, daL);
         }
     }
 
@@ -750,14 +753,318 @@ public class RegExpImpl implements RegExpProxy {
         return (i != -1) ? i : length;
     }
 
+    /**
+     * Set the maximum number of compiled regular expressions that are kept
+     * for reuse. The cache is shared by all Contexts; a size of 0 disables
+     * it. The default is 256.
+     */
+    public static void setCacheSize(int maxSize)
+    {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        synchronized (cache) {
+            cacheSize = maxSize;
+            Iterator<CacheKey> iter = cache.keySet().iterator();
+            while (cache.size() > maxSize) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    public static int getCacheSize()
+    {
+        synchronized (cache) {
+            return cacheSize;
+        }
+    }
+
+    /**
+     * Return the number of regular expressions that were taken from the
+     * cache instead of being compiled.
+     */
+    public static long getCacheHitCount()
+    {
+        synchronized (cache) {
+            return cacheHits;
+        }
+    }
+
+    /**
+     * Return the number of regular expressions that were compiled because
+     * the cache did not hold them.
+     */
+    public static long getCacheMissCount()
+    {
+        synchronized (cache) {
+            return cacheMisses;
+        }
+    }
+
+    /**
+     * Remove all regular expressions from the cache. The statistics are kept.
+     */
+    public static void clearCache()
+    {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Compile a regular expression, or return the program compiled earlier
+     * for the same source and flags. Sharing a RECompiled between NativeRegExp
+     * objects is safe, as it is for a literal in a loop: the lastIndex and
+     * the match state are kept elsewhere.
+     */
+    static RECompiled compileCached(Context cx, String source, String flags,
+                                    boolean flat)
+    {
+        // Warnings are only reported while compiling, so they would be
+        // lost for cached programs
+        if (cx.hasFeature(Context.FEATURE_STRICT_MODE)) {
+            return NativeRegExp.compileRE(cx, source, flags, flat);
+        }
+        CacheKey key = new CacheKey(source, flags, flat);
+        synchronized (cache) {
+            if (cacheSize == 0) {
+                return NativeRegExp.compileRE(cx, source, flags, flat);
+            }
+            RECompiled compiled = cache.get(key);
+            if (compiled != null) {
+                cacheHits++;
+                return compiled;
+            }
+            cacheMisses++;
+        }
+        // Compile outside the lock; if two threads race, both results are
+        // correct and the later one stays in the cache
+        RECompiled compiled = NativeRegExp.compileRE(cx, source, flags, flat);
+        if (compiled != null) {
+            synchronized (cache) {
+                if (cacheSize != 0) {
+                    cache.put(key, compiled);
+                }
+            }
+        }
+        return compiled;
+    }
+
+    private static final class CacheKey
+    {
+        private final String source;
+        private final String flags;
+        private final boolean flat;
+        private final int hashCode;
+
+        CacheKey(String source, String flags, boolean flat)
+        {
+            this.source = source;
+            this.flags = flags == null ? "" : flags;
+            this.flat = flat;
+            this.hashCode = (source.hashCode() * 31 + this.flags.hashCode()) * 2
+                            + (flat ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey k = (CacheKey) obj;
+            return hashCode == k.hashCode
+                && flat == k.flat
+                && flags.equals(k.flags)
+                && source.equals(k.source);
+        }
+    }
+
+    private static int cacheSize = 256;
+    private static long cacheHits;
+    private static long cacheMisses;
+
+    // Access-ordered, so that the least recently used program is dropped
+    private static final LinkedHashMap<CacheKey, RECompiled> cache =
+        new LinkedHashMap<CacheKey, RECompiled>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, RECompiled> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+
+    /**
+     * Record a match of a regexp in str. Only the indices are stored; the
+     * statics (lastMatch, parens and so on) are computed from them when
+     * they are read.
+     *
+     * @param leftIndex the start of leftContext
+     * @param parens the captures, as in REGlobalData; the array then
+     *        belongs to this object
+     * @return the captures array of the match recorded before, which the
+     *         caller may reuse
+     */
+    long[] setMatch(CharSequence str, int leftIndex, int index, int end, long[] parens)
+    {
+        long[] old = matchParens;
+        matchStr = str;
+        matchLeftIndex = leftIndex;
+        matchIndex = index;
+        matchEnd = end;
+        matchParens = parens;
+        contextStale = true;
+        parensStale = true;
+        return old;
+    }
+
+    /**
+     * Record a match of a plain string, for String.prototype.replace. The
+     * parens keep the values of the last regexp match.
+     */
+    private void setStringMatch(CharSequence str, int index, int length)
+    {
+        updateParens();
+        setMatch(str, 0, index, index + length, null);
+        parensStale = false;
+        lastParen = null;
+    }
+
+    private void updateContext()
+    {
+        if (!contextStale) {
+            return;
+        }
+        contextStale = false;
+        if (lastMatch == null) {
+            lastMatch = new SubString();
+            leftContext = new SubString();
+            rightContext = new SubString();
+        }
+        CharSequence str = matchStr;
+        lastMatch.str = str;
+        lastMatch.index = matchIndex;
+        lastMatch.length = matchEnd - matchIndex;
+        leftContext.str = str;
+        leftContext.index = matchLeftIndex;
+        leftContext.length = matchIndex - matchLeftIndex;
+        rightContext.str = str;
+        rightContext.index = matchEnd;
+        rightContext.length = str.length() - matchEnd;
+    }
+
+    void updateParens()
+    {
+        if (!parensStale) {
+            return;
+        }
+        parensStale = false;
+        long[] captures = matchParens;
+        if (captures == null) {
+            parens = null;
+            lastParen = new SubString();
+            return;
+        }
+        SubString parsub = null;
+        parens = new SubString[captures.length];
+        for (int num = 0; num < captures.length; num++) {
+            int index = (int)captures[num];
+            if (index != -1) {
+                parsub = new SubString(matchStr, index,
+                                       (int)(captures[num] >>> 32));
+                parens[num] = parsub;
+            }
+        }
+        lastParen = parsub;
+    }
+
+    SubString getLastMatch()
+    {
+        updateContext();
+        return lastMatch;
+    }
+
+    SubString getLeftContext()
+    {
+        updateContext();
+        return leftContext;
+    }
+
+    SubString getRightContext()
+    {
+        updateContext();
+        return rightContext;
+    }
+
+    SubString getLastParen()
+    {
+        updateParens();
+        return lastParen;
+    }
+
+    int getParenCount()
+    {
+        if (parensStale) {
+            return matchParens == null ? 0 : matchParens.length;
+        }
+        return parens == null ? 0 : parens.length;
+    }
+
+    /**
+     * Like getParenSubString(i), but fill in sub instead of creating the
+     * SubString objects of all parens.
+     */
+    SubString getParenSubString(int i, SubString sub)
+    {
+        if (!parensStale) {
+            return getParenSubString(i);
+        }
+        sub.str = null;
+        sub.index = 0;
+        sub.length = 0;
+        if (matchParens != null && i < matchParens.length) {
+            int index = (int)matchParens[i];
+            if (index != -1) {
+                sub.str = matchStr;
+                sub.index = index;
+                sub.length = (int)(matchParens[i] >>> 32);
+            }
+        }
+        return sub;
+    }
+
     protected String          input;         /* input string to match (perl $_, GC root) */
     protected boolean         multiline;     /* whether input contains newlines (perl $*) */
+
+    /*
+     * The statics below are filled in from the last match when they are
+     * read through the getters.
+     */
     protected SubString[]     parens;        /* Vector of SubString; last set of parens
                                       matched (perl $1, $2) */
     protected SubString       lastMatch;     /* last string matched (perl $&) */
     protected SubString       lastParen;     /* last paren matched (perl $+) */
     protected SubString       leftContext;   /* input to left of last match (perl $`) */
     protected SubString       rightContext;  /* input to right of last match (perl $') */
+
+    CharSequence matchStr;      /* input of the last match */
+    int     matchLeftIndex;     /* start of leftContext */
+    int     matchIndex;         /* start of lastMatch */
+    int     matchEnd;           /* end of lastMatch */
+    long[]  matchParens;        /* captures, as in REGlobalData */
+    private boolean contextStale;   /* lastMatch and contexts need update */
+    private boolean parensStale;    /* parens and lastParen need update */
+
+    REGlobalData globalData;    /* kept for the next match, if not in use */
 }
 
 
@@ -765,7 +1072,7 @@ final class GlobData
 {
     int      mode;      /* input: return index, match object, or void */
     boolean  global;    /* output: whether regexp was global */
-    String   str;       /* output: 'this' parameter object as string */
+    CharSequence str;   /* output: 'this' parameter object as string */
 
     // match-specific data
 
@@ -778,4 +1085,6 @@ final class GlobData
     int           dollar = -1;   /* -1 or index of first $ in repstr */
     StringBuilder charBuf;       /* result characters, null initially */
     int           leftIndex;     /* leftContext index, always 0 for JS1.2 */
+    final int[]   skip = new int[1];        /* for interpretDollar */
+    final SubString sub = new SubString();  /* $n, see getParenSubString */
 }
@@ -22,7 +22,7 @@ public class SubString {
         length = str.length();
     }
 
-    public SubString(String source, int start, int len)
+    public SubString(CharSequence source, int start, int len)
     {
         str = source;
         index = start;
@@ -33,10 +33,10 @@ public class SubString {
     public String toString() {
         return str == null
                ? ""
-               : str.substring(index, index + length);
+               : str.subSequence(index, index + length).toString();
     }
 
-    String str;
+    CharSequence str;
     int    index;
     int    length;
 }
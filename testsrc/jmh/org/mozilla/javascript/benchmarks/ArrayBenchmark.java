@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Creating, filling and reading arrays, and the common Array methods.
+ */
+public class ArrayBenchmark extends ScriptState
+{
+    private Function push;
+    private Function sumIndexed;
+    private Function mapFilterReduce;
+    private Function sort;
+    private Function join;
+    private Function indexOf;
+
+    @Override
+    protected String getScript()
+    {
+        return "var numbers = []; for (var i = 0; i < 1000; i++) numbers.push(i * 7 % 1000);\n"
+            + "function push() {\n"
+            + "  var a = [];\n"
+            + "  for (var i = 0; i < 1000; i++) a.push(i);\n"
+            + "  return a;\n"
+            + "}\n"
+            + "function sumIndexed() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < numbers.length; i++) s += numbers[i];\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function mapFilterReduce() {\n"
+            + "  return numbers.map(function(x) { return x * 2; })\n"
+            + "    .filter(function(x) { return x % 3 == 0; })\n"
+            + "    .reduce(function(s, x) { return s + x; }, 0);\n"
+            + "}\n"
+            + "function sort() { return numbers.slice().sort(function(a, b) { return a - b; }); }\n"
+            + "function join() { return numbers.join(); }\n"
+            + "function indexOf() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 100; i++) s += numbers.indexOf(i * 10);\n"
+            + "  return s;\n"
+            + "}\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        push = getFunction("push");
+        sumIndexed = getFunction("sumIndexed");
+        mapFilterReduce = getFunction("mapFilterReduce");
+        sort = getFunction("sort");
+        join = getFunction("join");
+        indexOf = getFunction("indexOf");
+    }
+
+    @Benchmark
+    public Object push()
+    {
+        return call(push);
+    }
+
+    @Benchmark
+    public Object sumIndexed()
+    {
+        return call(sumIndexed);
+    }
+
+    @Benchmark
+    public Object mapFilterReduce()
+    {
+        return call(mapFilterReduce);
+    }
+
+    @Benchmark
+    public Object sort()
+    {
+        return call(sort);
+    }
+
+    @Benchmark
+    public Object join()
+    {
+        return call(join);
+    }
+
+    @Benchmark
+    public Object indexOf()
+    {
+        return call(indexOf);
+    }
+}
@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of what embeddings do for every request: entering and leaving a
+ * Context, creating a scope and compiling and running a small script.
+ */
+@State(Scope.Thread)
+public class ContextBenchmark
+{
+    private static final String SCRIPT =
+        "var r = 0; for (var i = 0; i < 10; i++) r += i; r";
+
+    @Param({"-1", "0", "9"})
+    public int optLevel;
+
+    @Param({"false", "true"})
+    public boolean threadSafe;
+
+    private ContextFactory factory;
+    private ScriptableObject sharedScope;
+    private Script script;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        factory = new ScriptState.BenchmarkContextFactory(threadSafe);
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            sharedScope = cx.initStandardObjects(null, true);
+            script = cx.compileString(SCRIPT, "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object enterExit()
+    {
+        Context cx = factory.enterContext();
+        try {
+            return cx.getOptimizationLevel();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object initStandardObjects()
+    {
+        Context cx = factory.enterContext();
+        try {
+            return cx.initStandardObjects();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object runInNewScope()
+    {
+        Context cx = factory.enterContext();
+        try {
+            return script.exec(cx, newScope(cx));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object compileAndRun()
+    {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            return cx.evaluateString(newScope(cx), SCRIPT, "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Return a new scope that shares the standard objects.
+     */
+    private Scriptable newScope(Context cx)
+    {
+        Scriptable scope = cx.newObject(sharedScope);
+        scope.setPrototype(sharedScope);
+        scope.setParentScope(null);
+        return scope;
+    }
+}
@@ -0,0 +1,90 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Calls of script functions and closures, and of builtin functions.
+ */
+public class FunctionBenchmark extends ScriptState
+{
+    private Function callFunction;
+    private Function recursion;
+    private Function createClosures;
+    private Function callClosure;
+    private Function callBuiltin;
+
+    @Override
+    protected String getScript()
+    {
+        return "function add(a, b) { return a + b; }\n"
+            + "function callFunction() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) s = add(s, i);\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+            + "function recursion() { return fib(15); }\n"
+            + "function counter() { var n = 0; return function() { return ++n; }; }\n"
+            + "function createClosures() {\n"
+            + "  var c;\n"
+            + "  for (var i = 0; i < 100; i++) c = counter();\n"
+            + "  return c;\n"
+            + "}\n"
+            + "var next = counter();\n"
+            + "function callClosure() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) s = next();\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function callBuiltin() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) s += Math.max(i, s & 0xff);\n"
+            + "  return s;\n"
+            + "}\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        callFunction = getFunction("callFunction");
+        recursion = getFunction("recursion");
+        createClosures = getFunction("createClosures");
+        callClosure = getFunction("callClosure");
+        callBuiltin = getFunction("callBuiltin");
+    }
+
+    @Benchmark
+    public Object callFunction()
+    {
+        return call(callFunction);
+    }
+
+    @Benchmark
+    public Object recursion()
+    {
+        return call(recursion);
+    }
+
+    @Benchmark
+    public Object createClosures()
+    {
+        return call(createClosures);
+    }
+
+    @Benchmark
+    public Object callClosure()
+    {
+        return call(callClosure);
+    }
+
+    @Benchmark
+    public Object callBuiltin()
+    {
+        return call(callBuiltin);
+    }
+}
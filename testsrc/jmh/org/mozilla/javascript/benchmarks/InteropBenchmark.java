@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Scripts that use Java objects, and Java code that calls scripts.
+ */
+public class InteropBenchmark extends ScriptState
+{
+    private Function callMethods;
+    private Function readFields;
+    private Function useCollection;
+    private Function identity;
+    private final Object[] args = { "a", 1 };
+
+    @Override
+    protected String getScript()
+    {
+        return "function callMethods() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) { point.setX(i); s += point.getX(); }\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function readFields() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) s += point.y;\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function useCollection() {\n"
+            + "  var list = new java.util.ArrayList();\n"
+            + "  for (var i = 0; i < 100; i++) list.add(\"v\" + i);\n"
+            + "  var n = 0;\n"
+            + "  for (var i = 0; i < list.size(); i++) n += list.get(i).length();\n"
+            + "  return n;\n"
+            + "}\n"
+            + "function identity(a, b) { return b; }\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        ScriptableObject.putProperty(scope, "point",
+                                     Context.javaToJS(new Point(), scope));
+        callMethods = getFunction("callMethods");
+        readFields = getFunction("readFields");
+        useCollection = getFunction("useCollection");
+        identity = getFunction("identity");
+    }
+
+    @Benchmark
+    public Object callMethods()
+    {
+        return call(callMethods);
+    }
+
+    @Benchmark
+    public Object readFields()
+    {
+        return call(readFields);
+    }
+
+    @Benchmark
+    public Object useCollection()
+    {
+        return call(useCollection);
+    }
+
+    @Benchmark
+    public Object callFromJava()
+    {
+        return identity.call(cx, scope, scope, args);
+    }
+
+    public static class Point
+    {
+        private int x;
+        public int y = 2;
+
+        public int getX()
+        {
+            return x;
+        }
+
+        public void setX(int x)
+        {
+            this.x = x;
+        }
+    }
+}
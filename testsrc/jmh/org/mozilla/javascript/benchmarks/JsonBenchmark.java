@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Parsing and serializing JSON.
+ */
+public class JsonBenchmark extends ScriptState
+{
+    private Function parse;
+    private Function stringify;
+    private Function stringifyIndented;
+    private Function parseReviver;
+
+    @Override
+    protected String getScript()
+    {
+        return "var data = [];\n"
+            + "for (var i = 0; i < 100; i++) {\n"
+            + "  data.push({ id: i, name: \"item\" + i, price: i * 1.25, tags: [\"a\", \"b\"],\n"
+            + "              nested: { ok: i % 2 == 0, value: null } });\n"
+            + "}\n"
+            + "var json = JSON.stringify(data);\n"
+            + "function parse() { return JSON.parse(json); }\n"
+            + "function stringify() { return JSON.stringify(data); }\n"
+            + "function stringifyIndented() { return JSON.stringify(data, null, 2); }\n"
+            + "function parseReviver() {\n"
+            + "  return JSON.parse(json, function(k, v) { return k == \"price\" ? v * 2 : v; });\n"
+            + "}\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        parse = getFunction("parse");
+        stringify = getFunction("stringify");
+        stringifyIndented = getFunction("stringifyIndented");
+        parseReviver = getFunction("parseReviver");
+    }
+
+    @Benchmark
+    public Object parse()
+    {
+        return call(parse);
+    }
+
+    @Benchmark
+    public Object stringify()
+    {
+        return call(stringify);
+    }
+
+    @Benchmark
+    public Object stringifyIndented()
+    {
+        return call(stringifyIndented);
+    }
+
+    @Benchmark
+    public Object parseReviver()
+    {
+        return call(parseReviver);
+    }
+}
@@ -0,0 +1,112 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Objects with many properties, created from random string and integer keys:
+ * the tests of testsrc/benchmarks/caliper/fieldTests.js.
+ */
+public class ObjectBenchmark extends ScriptState
+{
+    private static final int COUNT = 100;
+
+    @Param({"10", "1000"})
+    public int stringKeys;
+
+    @Param({"10", "1000"})
+    public int intKeys;
+
+    private Scriptable strings;
+    private Scriptable ints;
+    private Object object;
+    private Function createObject;
+    private Function accessObject;
+    private Function iterateObject;
+    private Function iterateOwnKeysObject;
+    private Function deleteObject;
+
+    @Override
+    protected String getScript()
+    {
+        try {
+            return new String(Files.readAllBytes(
+                Paths.get("testsrc/benchmarks/caliper/fieldTests.js")),
+                StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    @Override
+    protected void init()
+    {
+        Random rand = new Random(0);
+        Object[] sarray = new Object[stringKeys];
+        for (int i = 0; i < stringKeys; i++) {
+            int len = rand.nextInt(49) + 1;
+            char[] c = new char[len];
+            for (int cc = 0; cc < len; cc++) {
+                c[cc] = (char) ('a' + rand.nextInt(25));
+            }
+            sarray[i] = new String(c);
+        }
+        strings = cx.newArray(scope, sarray);
+
+        Object[] iarray = new Object[intKeys];
+        for (int i = 0; i < intKeys; i++) {
+            iarray[i] = rand.nextInt(10000);
+        }
+        ints = cx.newArray(scope, iarray);
+
+        createObject = getFunction("createObject");
+        accessObject = getFunction("accessObject");
+        iterateObject = getFunction("iterateObject");
+        iterateOwnKeysObject = getFunction("iterateOwnKeysObject");
+        deleteObject = getFunction("deleteObject");
+        object = call(createObject, 1, strings, ints);
+    }
+
+    @Benchmark
+    public Object createFields()
+    {
+        return call(createObject, COUNT, strings, ints);
+    }
+
+    @Benchmark
+    public Object accessFields()
+    {
+        return call(accessObject, COUNT, object, strings, ints);
+    }
+
+    @Benchmark
+    public Object iterateFields()
+    {
+        return call(iterateObject, COUNT, object);
+    }
+
+    @Benchmark
+    public Object ownKeysFields()
+    {
+        return call(iterateOwnKeysObject, COUNT, object);
+    }
+
+    @Benchmark
+    public Object deleteFields()
+    {
+        Object o = call(createObject, 1, strings, ints);
+        return call(deleteObject, COUNT, o, strings, ints);
+    }
+}
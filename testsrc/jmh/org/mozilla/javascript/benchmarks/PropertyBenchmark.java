@@ -0,0 +1,78 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Reading and writing named and indexed properties of ordinary objects.
+ */
+public class PropertyBenchmark extends ScriptState
+{
+    private Function getNamed;
+    private Function setNamed;
+    private Function getIndexed;
+    private Function createObjects;
+
+    @Override
+    protected String getScript()
+    {
+        return "var o = { a: 1, b: 2, c: 3, d: 4, e: 5 };\n"
+            + "var ix = {}; for (var i = 0; i < 100; i++) ix[i] = i;\n"
+            + "function getNamed() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) s += o.a + o.b + o.c + o.d + o.e;\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function setNamed() {\n"
+            + "  for (var i = 0; i < 1000; i++) { o.a = i; o.c = i; o.e = i; }\n"
+            + "  return o.e;\n"
+            + "}\n"
+            + "function getIndexed() {\n"
+            + "  var s = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) s += ix[i % 100];\n"
+            + "  return s;\n"
+            + "}\n"
+            + "function createObjects() {\n"
+            + "  var p;\n"
+            + "  for (var i = 0; i < 100; i++) p = { x: i, y: i, z: i, w: i };\n"
+            + "  return p;\n"
+            + "}\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        getNamed = getFunction("getNamed");
+        setNamed = getFunction("setNamed");
+        getIndexed = getFunction("getIndexed");
+        createObjects = getFunction("createObjects");
+    }
+
+    @Benchmark
+    public Object getNamed()
+    {
+        return call(getNamed);
+    }
+
+    @Benchmark
+    public Object setNamed()
+    {
+        return call(setNamed);
+    }
+
+    @Benchmark
+    public Object getIndexed()
+    {
+        return call(getIndexed);
+    }
+
+    @Benchmark
+    public Object createObjects()
+    {
+        return call(createObjects);
+    }
+}
@@ -0,0 +1,82 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Regular expression matching, searching and replacing.
+ */
+public class RegExpBenchmark extends ScriptState
+{
+    private Function test;
+    private Function exec;
+    private Function replace;
+    private Function replaceFunction;
+    private Function split;
+
+    @Override
+    protected String getScript()
+    {
+        return "var text = \"\";\n"
+            + "for (var i = 0; i < 100; i++) text += \"user\" + i + \"@example.com, 555-01\" + (i % 10) + \" lorem ipsum; \";\n"
+            + "function test() {\n"
+            + "  var re = /\\d{3}-\\d{4}/, n = 0;\n"
+            + "  for (var i = 0; i < 100; i++) if (re.test(\"call 555-0123 now\")) n++;\n"
+            + "  return n;\n"
+            + "}\n"
+            + "function exec() {\n"
+            + "  var re = /(\\w+)@(\\w+)\\.com/g, m, n = 0;\n"
+            + "  while ((m = re.exec(text)) != null) n += m[1].length;\n"
+            + "  return n;\n"
+            + "}\n"
+            + "function replace() { return text.replace(/\\d+/g, \"#\"); }\n"
+            + "function replaceFunction() {\n"
+            + "  return text.replace(/[aeiou]/g, function(c) { return c.toUpperCase(); });\n"
+            + "}\n"
+            + "function split() { return text.split(/[,;] */); }\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        test = getFunction("test");
+        exec = getFunction("exec");
+        replace = getFunction("replace");
+        replaceFunction = getFunction("replaceFunction");
+        split = getFunction("split");
+    }
+
+    @Benchmark
+    public Object test()
+    {
+        return call(test);
+    }
+
+    @Benchmark
+    public Object exec()
+    {
+        return call(exec);
+    }
+
+    @Benchmark
+    public Object replace()
+    {
+        return call(replace);
+    }
+
+    @Benchmark
+    public Object replaceFunction()
+    {
+        return call(replaceFunction);
+    }
+
+    @Benchmark
+    public Object split()
+    {
+        return call(split);
+    }
+}
@@ -0,0 +1,94 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The common state of the benchmarks: a Context that stays entered on the
+ * benchmark thread for the whole trial, and a scope in which the script of
+ * the benchmark was run. Every benchmark runs at each optimization level, with
+ * and without thread-safe objects.
+ */
+@State(Scope.Thread)
+public abstract class ScriptState
+{
+    @Param({"-1", "0", "9"})
+    public int optLevel;
+
+    @Param({"false", "true"})
+    public boolean threadSafe;
+
+    protected Context cx;
+    protected Scriptable scope;
+
+    /**
+     * Return the script that defines the functions of the benchmark.
+     */
+    protected abstract String getScript();
+
+    /**
+     * Called after the script was run, to look up what the benchmark needs.
+     */
+    protected void init()
+    {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        cx = new BenchmarkContextFactory(threadSafe).enterContext();
+        cx.setOptimizationLevel(optLevel);
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        scope = cx.initStandardObjects();
+        cx.evaluateString(scope, getScript(), getClass().getSimpleName(), 1, null);
+        init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        Context.exit();
+    }
+
+    protected Function getFunction(String name)
+    {
+        return (Function) ScriptableObject.getProperty(scope, name);
+    }
+
+    protected Object call(Function f, Object... args)
+    {
+        return f.call(cx, scope, scope, args);
+    }
+
+    static class BenchmarkContextFactory extends ContextFactory
+    {
+        private final boolean threadSafe;
+
+        BenchmarkContextFactory(boolean threadSafe)
+        {
+            this.threadSafe = threadSafe;
+        }
+
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex)
+        {
+            if (featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS) {
+                return threadSafe;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Building strings by concatenation and the common String methods.
+ */
+public class StringBenchmark extends ScriptState
+{
+    private Function concat;
+    private Function concatNumbers;
+    private Function charCodes;
+    private Function substrings;
+    private Function splitJoin;
+
+    @Override
+    protected String getScript()
+    {
+        return "var words = \"the quick brown fox jumps over the lazy dog\".split(\" \");\n"
+            + "function concat() {\n"
+            + "  var s = \"\";\n"
+            + "  for (var i = 0; i < 1000; i++) s += words[i % words.length];\n"
+            + "  return s.length;\n"
+            + "}\n"
+            + "function concatNumbers() {\n"
+            + "  var s = \"\";\n"
+            + "  for (var i = 0; i < 1000; i++) s = s + i + \",\";\n"
+            + "  return s.length;\n"
+            + "}\n"
+            + "var text = words.join(\" \"); for (var i = 0; i < 5; i++) text += text;\n"
+            + "function charCodes() {\n"
+            + "  var h = 0;\n"
+            + "  for (var i = 0; i < text.length; i++) h = (h * 31 + text.charCodeAt(i)) | 0;\n"
+            + "  return h;\n"
+            + "}\n"
+            + "function substrings() {\n"
+            + "  var n = 0;\n"
+            + "  for (var i = 0; i < 1000; i++) n += text.substring(i, i + 10).indexOf(\"o\");\n"
+            + "  return n;\n"
+            + "}\n"
+            + "function splitJoin() { return text.split(\" \").join(\"-\"); }\n";
+    }
+
+    @Override
+    protected void init()
+    {
+        concat = getFunction("concat");
+        concatNumbers = getFunction("concatNumbers");
+        charCodes = getFunction("charCodes");
+        substrings = getFunction("substrings");
+        splitJoin = getFunction("splitJoin");
+    }
+
+    @Benchmark
+    public Object concat()
+    {
+        return call(concat);
+    }
+
+    @Benchmark
+    public Object concatNumbers()
+    {
+        return call(concatNumbers);
+    }
+
+    @Benchmark
+    public Object charCodes()
+    {
+        return call(charCodes);
+    }
+
+    @Benchmark
+    public Object substrings()
+    {
+        return call(substrings);
+    }
+
+    @Benchmark
+    public Object splitJoin()
+    {
+        return call(splitJoin);
+    }
+}
@@ -0,0 +1,502 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Evaluator;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.IRFactory;
+import org.mozilla.javascript.Interpreter;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ScriptNode;
+import org.mozilla.javascript.json.JsonParser;
+import org.mozilla.javascript.optimizer.Codegen;
+import org.mozilla.javascript.tools.shell.Global;
+import org.mozilla.classfile.ClassFileWriter.ClassFileFormatException;
+
+/**
+ * Runs the SunSpider and V8 benchmark suites and reports, for every benchmark
+ * and optimization level, where the time goes: parsing, compiling, defining
+ * the generated classes, the first iteration, every later iteration, and the
+ * steady state over the last iterations. The results are written as JSON, and
+ * can be compared with the results of an earlier run.
+ *
+ * Every benchmark runs with a new ContextFactory and scope. The JVM itself is
+ * shared, so only the first benchmark sees a cold JVM; to measure that for a
+ * particular benchmark, select it alone with -b.
+ *
+ * Usage: MacroBenchmark [options] [sunspider] [v8]
+ * <pre>
+ *   -opt N          optimization level, may be repeated (default -1, 0 and 9)
+ *   -i N            number of iterations (default 20)
+ *   -steady N       number of last iterations for the steady state (default 5)
+ *   -b NAME         only run the benchmarks with this name, may be repeated
+ *   -o FILE         write the results to FILE as JSON
+ *   -baseline FILE  compare the results with those of an earlier run
+ * </pre>
+ * It must run in testsrc/benchmarks.
+ */
+public class MacroBenchmark
+{
+    private static final String SUNSPIDER_DIR = "sunspider-0.9.1";
+    private static final String V8_DIR = "v8-benchmarks-v6";
+    private static final String[] V8_BENCHMARKS = {
+        "richards", "deltablue", "crypto", "raytrace", "earley-boyer",
+        "regexp", "splay"
+    };
+
+    private final List<Integer> optLevels = new ArrayList<Integer>();
+    private final List<String> names = new ArrayList<String>();
+    private int iterations = 20;
+    private int steady = 5;
+    private final List<Result> results = new ArrayList<Result>();
+
+    /**
+     * The measurements of one benchmark at one optimization level. All times
+     * are in milliseconds.
+     */
+    static final class Result
+    {
+        String suite;
+        String name;
+        int optLevel;
+        boolean interpreted;
+        double parse;
+        double compile;
+        double define;
+        // Running the script of a V8 benchmark, which only defines it
+        double load;
+        double[] iterations;
+        String error;
+
+        double firstIteration()
+        {
+            return iterations.length == 0 ? 0 : iterations[0];
+        }
+
+        double steadyState(int count)
+        {
+            int from = Math.max(1, iterations.length - count);
+            if (from >= iterations.length) {
+                return firstIteration();
+            }
+            double sum = 0;
+            for (int i = from; i < iterations.length; i++) {
+                sum += iterations[i];
+            }
+            return sum / (iterations.length - from);
+        }
+
+        double steadyStateDeviation(int count)
+        {
+            int from = Math.max(1, iterations.length - count);
+            if (iterations.length - from < 2) {
+                return 0;
+            }
+            double mean = steadyState(count);
+            double sum = 0;
+            for (int i = from; i < iterations.length; i++) {
+                double d = iterations[i] - mean;
+                sum += d * d;
+            }
+            return Math.sqrt(sum / (iterations.length - from - 1));
+        }
+
+        String key()
+        {
+            return suite + '/' + name + '/' + optLevel;
+        }
+    }
+
+    public static void main(String[] args)
+        throws IOException
+    {
+        MacroBenchmark runner = new MacroBenchmark();
+        List<String> suites = new ArrayList<String>();
+        String output = null;
+        String baseline = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-opt") && i + 1 < args.length) {
+                runner.optLevels.add(Integer.valueOf(args[++i]));
+            } else if (arg.equals("-i") && i + 1 < args.length) {
+                runner.iterations = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("-steady") && i + 1 < args.length) {
+                runner.steady = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("-b") && i + 1 < args.length) {
+                runner.names.add(args[++i]);
+            } else if (arg.equals("-o") && i + 1 < args.length) {
+                output = args[++i];
+            } else if (arg.equals("-baseline") && i + 1 < args.length) {
+                baseline = args[++i];
+            } else if (arg.equals("sunspider") || arg.equals("v8")) {
+                suites.add(arg);
+            } else {
+                System.err.println("Unknown argument: " + arg);
+                System.exit(1);
+            }
+        }
+        if (runner.optLevels.isEmpty()) {
+            runner.optLevels.add(-1);
+            runner.optLevels.add(0);
+            runner.optLevels.add(9);
+        }
+        if (suites.isEmpty()) {
+            suites.add("sunspider");
+            suites.add("v8");
+        }
+
+        for (String suite : suites) {
+            if (suite.equals("sunspider")) {
+                runner.runSunSpider();
+            } else {
+                runner.runV8();
+            }
+        }
+
+        if (output != null) {
+            PrintWriter out = new PrintWriter(output, "UTF-8");
+            try {
+                runner.writeJson(out);
+            } finally {
+                out.close();
+            }
+        }
+        if (baseline != null) {
+            runner.compare(System.out, readResults(new File(baseline)));
+        }
+    }
+
+    private void runSunSpider()
+        throws IOException
+    {
+        String list = readFile(new File(SUNSPIDER_DIR, "LIST"));
+        for (String name : list.split("\\s+")) {
+            if (name.isEmpty() || !isSelected(name)) {
+                continue;
+            }
+            for (int optLevel : optLevels) {
+                Result r = newResult("sunspider", name, optLevel);
+                runBenchmark(r, null, new File(SUNSPIDER_DIR, name + ".js"));
+            }
+        }
+    }
+
+    private void runV8()
+        throws IOException
+    {
+        for (String name : V8_BENCHMARKS) {
+            if (!isSelected(name)) {
+                continue;
+            }
+            for (int optLevel : optLevels) {
+                Result r = newResult("v8", name, optLevel);
+                runBenchmark(r, new File(V8_DIR, "base.js"),
+                             new File(V8_DIR, name + ".js"));
+            }
+        }
+    }
+
+    private boolean isSelected(String name)
+    {
+        return names.isEmpty() || names.contains(name);
+    }
+
+    private Result newResult(String suite, String name, int optLevel)
+    {
+        Result r = new Result();
+        r.suite = suite;
+        r.name = name;
+        r.optLevel = optLevel;
+        r.iterations = new double[0];
+        results.add(r);
+        return r;
+    }
+
+    /**
+     * Run "file" as one benchmark, after "prelude" if that is not null. A
+     * SunSpider benchmark is the whole script, so an iteration runs the
+     * script again. A V8 benchmark file registers a BenchmarkSuite, and an
+     * iteration calls the run function of each of its benchmarks once.
+     */
+    private void runBenchmark(Result r, File prelude, File file)
+        throws IOException
+    {
+        System.err.println("Running " + r.key());
+        String source = readFile(file);
+        Context cx = new ContextFactory().enterContext();
+        try {
+            cx.setOptimizationLevel(r.optLevel);
+            cx.setLanguageVersion(Context.VERSION_1_8);
+            Global scope = new Global(cx);
+            if (prelude != null) {
+                cx.evaluateString(scope, readFile(prelude), prelude.getPath(),
+                                  1, null);
+            }
+
+            Script script = compile(cx, r, source, file.getPath());
+
+            if (prelude == null) {
+                r.iterations = new double[iterations];
+                for (int i = 0; i < iterations; i++) {
+                    long start = System.nanoTime();
+                    script.exec(cx, scope);
+                    r.iterations[i] = millisSince(start);
+                }
+            } else {
+                long start = System.nanoTime();
+                script.exec(cx, scope);
+                r.load = millisSince(start);
+                runV8Suite(cx, scope, r);
+            }
+        } catch (RuntimeException ex) {
+            r.error = ex.toString();
+            System.err.println(r.key() + " failed: " + ex);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private void runV8Suite(Context cx, Scriptable scope, Result r)
+    {
+        Scriptable suiteClass = (Scriptable)
+            ScriptableObject.getProperty(scope, "BenchmarkSuite");
+        NativeArray suites = (NativeArray)
+            ScriptableObject.getProperty(suiteClass, "suites");
+        Scriptable suite = (Scriptable) suites.get(suites.size() - 1);
+        NativeArray benchmarks = (NativeArray)
+            ScriptableObject.getProperty(suite, "benchmarks");
+        for (Object b : benchmarks) {
+            callMethod(cx, scope, (Scriptable) b, "Setup");
+        }
+        r.iterations = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            for (Object b : benchmarks) {
+                callMethod(cx, scope, (Scriptable) b, "run");
+            }
+            r.iterations[i] = millisSince(start);
+        }
+        for (Object b : benchmarks) {
+            callMethod(cx, scope, (Scriptable) b, "TearDown");
+        }
+    }
+
+    private static void callMethod(Context cx, Scriptable scope,
+                                   Scriptable obj, String name)
+    {
+        Function f = (Function) ScriptableObject.getProperty(obj, name);
+        f.call(cx, scope, obj, Context.emptyArgs);
+    }
+
+    /**
+     * Compile the script the way Context.compileString does, timing the
+     * parser, the code generator and the definition of the script object
+     * separately. Like Context, fall back to the interpreter for scripts
+     * that are too large for the class file format.
+     */
+    private static Script compile(Context cx, Result r, String source,
+                                  String sourceName)
+    {
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+
+        long start = System.nanoTime();
+        Parser p = new Parser(compilerEnv, compilerEnv.getErrorReporter());
+        AstRoot ast = p.parse(source, sourceName, 1);
+        r.parse = millisSince(start);
+
+        start = System.nanoTime();
+        Evaluator compiler = r.optLevel < 0 ? new Interpreter() : new Codegen();
+        ScriptNode tree = new IRFactory(compilerEnv).transformTree(ast);
+        Object bytecode;
+        try {
+            bytecode = compiler.compile(compilerEnv, tree,
+                                        tree.getEncodedSource(), false);
+        } catch (ClassFileFormatException ex) {
+            ast = new Parser(compilerEnv, compilerEnv.getErrorReporter())
+                .parse(source, sourceName, 1);
+            tree = new IRFactory(compilerEnv).transformTree(ast);
+            compiler = new Interpreter();
+            bytecode = compiler.compile(compilerEnv, tree,
+                                        tree.getEncodedSource(), false);
+            r.interpreted = true;
+        }
+        r.compile = millisSince(start);
+
+        start = System.nanoTime();
+        Script script = compiler.createScriptObject(bytecode, null);
+        r.define = millisSince(start);
+        return script;
+    }
+
+    private static double millisSince(long start)
+    {
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static String readFile(File file)
+        throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    void writeJson(PrintWriter out)
+    {
+        out.println("{");
+        out.println("  \"rhinoVersion\": " + quote(getImplementationVersion()) + ",");
+        out.println("  \"javaVersion\": "
+                    + quote(System.getProperty("java.version")) + ",");
+        out.println("  \"iterations\": " + iterations + ",");
+        out.println("  \"steadyIterations\": " + steady + ",");
+        out.println("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.println("    {");
+            out.println("      \"suite\": " + quote(r.suite) + ",");
+            out.println("      \"name\": " + quote(r.name) + ",");
+            out.println("      \"optLevel\": " + r.optLevel + ",");
+            if (r.error != null) {
+                out.println("      \"error\": " + quote(r.error) + ",");
+            }
+            out.println("      \"interpreted\": " + r.interpreted + ",");
+            out.println("      \"parseMillis\": " + format(r.parse) + ",");
+            out.println("      \"compileMillis\": " + format(r.compile) + ",");
+            out.println("      \"defineMillis\": " + format(r.define) + ",");
+            out.println("      \"loadMillis\": " + format(r.load) + ",");
+            out.println("      \"firstIterationMillis\": "
+                        + format(r.firstIteration()) + ",");
+            out.println("      \"steadyStateMillis\": "
+                        + format(r.steadyState(steady)) + ",");
+            out.println("      \"steadyStateDeviation\": "
+                        + format(r.steadyStateDeviation(steady)) + ",");
+            double mean = r.steadyState(steady);
+            out.println("      \"iterationsPerSecond\": "
+                        + format(mean > 0 ? 1000 / mean : 0) + ",");
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < r.iterations.length; j++) {
+                if (j > 0) {
+                    sb.append(", ");
+                }
+                sb.append(format(r.iterations[j]));
+            }
+            out.println("      \"iterationMillis\": [" + sb + "]");
+            out.println(i + 1 < results.size() ? "    }," : "    }");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static String getImplementationVersion()
+    {
+        Context cx = Context.enter();
+        try {
+            return cx.getImplementationVersion();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static String format(double d)
+    {
+        return String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    private static String quote(String s)
+    {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Read the steady state and first iteration times of an earlier run,
+     * keyed by suite, name and optimization level.
+     */
+    static Map<String, double[]> readResults(File file)
+        throws IOException
+    {
+        String json = readFile(file);
+        Map<String, double[]> times = new HashMap<String, double[]>();
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initSafeStandardObjects();
+            Scriptable root = (Scriptable) new JsonParser(cx, scope).parseValue(json);
+            NativeArray list = (NativeArray) ScriptableObject.getProperty(root, "results");
+            for (Object o : list) {
+                Scriptable r = (Scriptable) o;
+                String key = ScriptableObject.getProperty(r, "suite") + "/"
+                    + ScriptableObject.getProperty(r, "name") + "/"
+                    + (int) Context.toNumber(ScriptableObject.getProperty(r, "optLevel"));
+                times.put(key, new double[] {
+                    Context.toNumber(ScriptableObject.getProperty(r, "steadyStateMillis")),
+                    Context.toNumber(ScriptableObject.getProperty(r, "firstIterationMillis"))
+                });
+            }
+        } catch (JsonParser.ParseException ex) {
+            throw new IOException(file + ": " + ex.getMessage());
+        } finally {
+            Context.exit();
+        }
+        return times;
+    }
+
+    void compare(PrintStream out, Map<String, double[]> baseline)
+    {
+        out.println(String.format(Locale.ROOT, "%-40s %12s %8s %12s %8s",
+                                  "benchmark", "steady ms", "change",
+                                  "first ms", "change"));
+        for (Result r : results) {
+            double[] old = baseline.get(r.key());
+            double steadyMs = r.steadyState(steady);
+            double first = r.firstIteration();
+            out.println(String.format(Locale.ROOT, "%-40s %12.3f %8s %12.3f %8s",
+                                      r.key(), steadyMs,
+                                      change(old == null ? 0 : old[0], steadyMs),
+                                      first,
+                                      change(old == null ? 0 : old[1], first)));
+        }
+    }
+
+    private static String change(double before, double after)
+    {
+        if (before <= 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", (after - before) * 100 / before);
+    }
+}
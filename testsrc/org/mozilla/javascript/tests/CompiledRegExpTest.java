@@ -0,0 +1,119 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for regular expressions compiled to bytecode (FEATURE_COMPILED_REGEXP).
+ * Each regular expression runs often enough to be compiled, and its results
+ * must be the same as those of the interpreter.
+ */
+public class CompiledRegExpTest {
+
+    private static final ContextFactory COMPILING_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_COMPILED_REGEXP) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static final String INPUTS =
+        "['aab', 'abcd', 'ab', '12.34', 'foo fooz', 'xxy', 'aabaab', 'aaab',"
+        + " 'yyz', '  b', 'me@host.com', '', 'foobar', 'ABC', 'a\\nC', 'x%',"
+        + " 'xyz', '\\u0100\\u0100', 'AaB\\nab', 'abcdabcd']";
+
+    private static String run(ContextFactory factory, final String script) {
+        return (String) factory.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, script, "test", 1, null));
+        });
+    }
+
+    private static void assertSameAsInterpreter(String pattern) {
+        for (String flags : new String[] {"", "i", "g", "m"}) {
+            String script =
+                "var inputs = " + INPUTS + ";\n"
+                + "var re = new RegExp(" + pattern + ", '" + flags + "');\n"
+                + "var out = [];\n"
+                + "for (var k = 0; k < 100; k++) {\n"
+                + "  for (var i = 0; i < inputs.length; i++) {\n"
+                + "    re.lastIndex = 0;\n"
+                + "    var m = re.exec(inputs[i]);\n"
+                + "    if (k == 99) out.push(JSON.stringify(m) + ' ' + (m && m.index)\n"
+                + "        + ' ' + re.lastIndex + ' ' + RegExp.lastParen);\n"
+                + "  }\n"
+                + "}\n"
+                + "out.join('\\n');";
+            assertEquals(pattern + " /" + flags,
+                         run(new ContextFactory(), script),
+                         run(COMPILING_FACTORY, script));
+        }
+    }
+
+    @Test
+    public void simpleTerms() {
+        assertSameAsInterpreter("'abc'");
+        assertSameAsInterpreter("'A.C'");
+        assertSameAsInterpreter("'\\\\W\\\\D'");
+        assertSameAsInterpreter("'^$'");
+        assertSameAsInterpreter("'\\\\bfoo\\\\B'");
+        assertSameAsInterpreter("'[^x][a-c]'");
+    }
+
+    @Test
+    public void quantifiers() {
+        assertSameAsInterpreter("'a+b'");
+        assertSameAsInterpreter("'x*?y'");
+        assertSameAsInterpreter("'a{2,3}?b'");
+        assertSameAsInterpreter("'a{2,}'");
+        assertSameAsInterpreter("'[^x]{1,2}z'");
+        assertSameAsInterpreter("'\\\\s+\\\\S'");
+        assertSameAsInterpreter("'\\\\w+@\\\\w+\\\\.com'");
+        assertSameAsInterpreter("'\\\\u0100+'");
+    }
+
+    @Test
+    public void parensAndAlternatives() {
+        assertSameAsInterpreter("'(a|ab)(c|bcd)(d*)'");
+        assertSameAsInterpreter("'^(\\\\d+)\\\\.(\\\\d+)$'");
+        assertSameAsInterpreter("'(a)|b'");
+        assertSameAsInterpreter("'((a)|(b))c'");
+        assertSameAsInterpreter("'(x)(y)?z'");
+    }
+
+    @Test
+    public void backReferencesAndLookahead() {
+        assertSameAsInterpreter("'([a-c]+)\\\\1'");
+        assertSameAsInterpreter("'(a*)b\\\\1'");
+        assertSameAsInterpreter("'(?=ab)a'");
+        assertSameAsInterpreter("'(?!ab)a.'");
+    }
+
+    @Test
+    public void notCompiled() {
+        // Quantified groups are left to the interpreter
+        assertSameAsInterpreter("'(foo|bar)+'");
+        assertSameAsInterpreter("'(?:a|b)*c'");
+    }
+
+    @Test
+    public void replaceOverLongInput() {
+        String script =
+            "var s = '';\n"
+            + "for (var i = 0; i < 2000; i++) s += 'id=' + i + ' name=n' + i + ';';\n"
+            + "s.replace(/id=(\\d+) name=(\\w+);/g, '$2:$1,').length + ' '\n"
+            + "  + s.replace(/id=(\\d+) name=(\\w+);/g, '$2:$1,').substring(0, 30);";
+        assertEquals(run(new ContextFactory(), script), run(COMPILING_FACTORY, script));
+    }
+}
@@ -1,5 +1,9 @@
 package org.mozilla.javascript.tests;
 
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Random;
+
 import org.mozilla.javascript.ConsString;
 
 import junit.framework.TestCase;
@@ -43,4 +47,136 @@ public class ConsStringTest extends TestCase {
             recurseAndAppend(depth-1);
         }
     }
+
+    public void testPrependManyStrings() {
+        CharSequence current = "a";
+        StringBuilder expected = new StringBuilder("a");
+        for (int i = 0; i < 100000; i++) {
+            String piece = Integer.toString(i % 10);
+            current = new ConsString(piece, current);
+            expected.insert(0, piece);
+        }
+        assertEquals(expected.toString(), current.toString());
+    }
+
+    public void testWrapManyTimes() throws Exception {
+        CharSequence current = "x";
+        StringBuilder expected = new StringBuilder("x");
+        String a = repeat('a', 40);
+        String b = repeat('b', 40);
+        for (int i = 0; i < 20000; i++) {
+            current = new ConsString(new ConsString(a, current), b);
+            expected.insert(0, a).append(b);
+        }
+        assertBalanced(current);
+        assertReads(expected.toString(), current);
+    }
+
+    public void testAppendAndPrependAlternately() throws Exception {
+        CharSequence current = "x";
+        StringBuilder expected = new StringBuilder("x");
+        for (int i = 0; i < 100000; i++) {
+            String piece = Integer.toString(i % 10);
+            if (i % 2 == 0) {
+                current = new ConsString(piece, current);
+                expected.insert(0, piece);
+            } else {
+                current = new ConsString(current, piece);
+                expected.append(piece);
+            }
+            if (i % 1000 == 0) {
+                assertBalanced(current);
+            }
+        }
+        assertBalanced(current);
+        assertReads(expected.toString(), current);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static void assertBalanced(CharSequence rope) throws Exception {
+        Field depth = ConsString.class.getDeclaredField("depth");
+        depth.setAccessible(true);
+        int log2 = 31 - Integer.numberOfLeadingZeros(rope.length());
+        int actual = depth.getInt(rope);
+        assertTrue("depth " + actual + ", length " + rope.length(), actual <= 2 * log2 + 8);
+    }
+
+    private static void assertReads(String expected, CharSequence rope) {
+        assertEquals(expected.length(), rope.length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), rope.charAt(i));
+        }
+        int third = expected.length() / 3;
+        assertEquals(expected.substring(third, 2 * third), rope.subSequence(third, 2 * third).toString());
+        assertEquals(expected, rope.toString());
+    }
+
+    public void testReadWithoutFlattening() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            CharSequence rope = "";
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 300; i++) {
+                StringBuilder piece = new StringBuilder();
+                for (int n = random.nextInt(80); n > 0; n--) {
+                    piece.append((char) ('a' + random.nextInt(26)));
+                }
+                CharSequence other = piece.toString();
+                if (random.nextInt(4) == 0) {
+                    // Join two ropes
+                    other = new ConsString(new ConsString(other, expected.substring(0, Math.min(expected.length(), 100))),
+                        new ConsString(piece, "-" + piece));
+                }
+                if (random.nextBoolean()) {
+                    rope = new ConsString(rope, other);
+                    expected.append(other);
+                } else {
+                    rope = new ConsString(other, rope);
+                    expected.insert(0, other);
+                }
+            }
+            int length = expected.length();
+            assertEquals(length, rope.length());
+            for (int i = 0; i < 100; i++) {
+                int index = random.nextInt(length);
+                assertEquals(expected.charAt(index), rope.charAt(index));
+            }
+            for (int i = 0; i < length; i += 7) {
+                assertEquals(expected.charAt(i), rope.charAt(i));
+            }
+            for (int i = 0; i < 20; i++) {
+                int start = random.nextInt(length);
+                int end = start + random.nextInt(length - start + 1);
+                assertEquals(expected.substring(start, end), rope.subSequence(start, end).toString());
+                char[] chars = new char[end - start + 2];
+                ((ConsString) rope).getChars(start, end, chars, 1);
+                assertEquals(expected.substring(start, end), new String(chars, 1, end - start));
+            }
+            assertEquals(expected.toString(), rope.toString());
+            // Reading after flattening
+            assertEquals(expected.charAt(length / 2), rope.charAt(length / 2));
+            assertEquals(expected.substring(1, length / 2), rope.subSequence(1, length / 2).toString());
+        }
+    }
+
+    public void testIndexOutOfBounds() {
+        ConsString current = new ConsString(new ConsString("abcdefghijklmnopqrstuvwxyz", "0123456789"), "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        try {
+            current.charAt(current.length());
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            current.subSequence(5, 2);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,110 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Tests for compiled code that calls functions through invokedynamic call sites
+ * (FEATURE_DYNAMIC_CALL_SITES). Each script runs the same call site many times
+ * with changing callees.
+ */
+public class DynamicCallSiteTest {
+
+    private static final ContextFactory DYNAMIC_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_DYNAMIC_CALL_SITES) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(DYNAMIC_FACTORY, cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "javaSum", new BaseFunction() {
+                @Override
+                public Object call(Context cx, Scriptable scope, Scriptable thisObj,
+                                   Object[] args) {
+                    double sum = 0;
+                    for (Object arg : args) {
+                        sum += Context.toNumber(arg);
+                    }
+                    return sum;
+                }
+            });
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test
+    public void allArities() {
+        assertScript("0|1|3|6|10",
+            "function sum() { var s = 0; for (var i = 0; i < arguments.length; i++) s += arguments[i]; return s; }\n"
+            + "var r = [];\n"
+            + "for (var i = 0; i < 3; i++) {\n"
+            + "  r = [sum(), sum(1), sum(1, 2), sum(1, 2, 3), sum(1, 2, 3, 4)];\n"
+            + "}\n"
+            + "r.join('|')");
+    }
+
+    @Test
+    public void changingCallee() {
+        assertScript("a,b,a,c0,c1,c2,c3,c4,c5,c6,c7,c8,c9",
+            "function a() { return 'a'; } function b() { return 'b'; }\n"
+            + "function invoke(f) { return f(); }\n"
+            + "var r = [invoke(a), invoke(b), invoke(a)];\n"
+            + "for (var i = 0; i < 10; i++) {\n"
+            + "  r.push(invoke((function(n) { return function() { return 'c' + n; }; })(i)));\n"
+            + "}\n"
+            + "r.join()");
+    }
+
+    @Test
+    public void thisAndMethods() {
+        assertScript("5|6|7",
+            "function P(x) { this.x = x; }\n"
+            + "P.prototype.get = function() { return this.x; };\n"
+            + "P.prototype.add = function(y) { return this.x + y; };\n"
+            + "var p = new P(5);\n"
+            + "var q = { x: 3, get: function() { return this.x * 2; } };\n"
+            + "p.get() + '|' + q.get() + '|' + p.add(2)");
+    }
+
+    @Test
+    public void builtinAndJavaFunctions() {
+        assertScript("3|6|abc|true",
+            "var r = [Math.max(1, 3), javaSum(1, 2, 3), ['a', 'b', 'c'].join(''),\n"
+            + "         Array.isArray([])];\n"
+            + "r.join('|')");
+    }
+
+    @Test
+    public void notAFunction() {
+        assertScript("TypeError|TypeError",
+            "function invoke(f, x) { try { return f(x); } catch (e) { return e.name; } }\n"
+            + "invoke(function(x) { return x; }, 1);\n"
+            + "invoke(null, 1) + '|' + invoke({}, 1)");
+    }
+
+    @Test
+    public void recursion() {
+        assertScript("832040",
+            "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+            + "fib(30)");
+    }
+}
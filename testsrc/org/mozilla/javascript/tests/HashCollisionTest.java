@@ -7,6 +7,7 @@ import java.io.StringWriter;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.tools.shell.Global;
 
 public class HashCollisionTest {
@@ -46,9 +47,33 @@ public class HashCollisionTest {
   @Test
   public void testMediumCollisions()
       throws IOException
+  {
+    runCollisions(new ContextFactory());
+  }
+
+  /**
+   * The same with thread-safe objects, which use a different slot map.
+   */
+  @Test
+  public void testMediumCollisionsThreadSafe()
+      throws IOException
+  {
+    runCollisions(new ContextFactory() {
+      @Override
+      protected boolean hasFeature(Context cx, int featureIndex) {
+        if (featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS) {
+          return true;
+        }
+        return super.hasFeature(cx, featureIndex);
+      }
+    });
+  }
+
+  private static void runCollisions(ContextFactory factory)
+      throws IOException
   {
     FileReader scriptIn = new FileReader("testsrc/jstests/hash-collisions.js");
-    Context cx = Context.enter();
+    Context cx = factory.enterContext();
     try {
       Global glob = new Global(cx);
       glob.put("collisions", glob, collisions);
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the int arithmetic that the optimizer uses for bitwise
+ * operations and for variables that only hold int32 values. Every script is
+ * run in the interpreter as well, which computes everything with doubles.
+ */
+public class Int32ArithmeticTest {
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test
+    public void checksums() {
+        assertScript("3000786752,720736809",
+            "function crc(s) {\n"
+            + "  var c = -1, i, j, b;\n"
+            + "  for (i = 0; i < s.length; i++) {\n"
+            + "    c = c ^ s.charCodeAt(i);\n"
+            + "    for (j = 0; j < 8; j++) { b = c & 1; c = (c >>> 1) ^ (-b & 0xEDB88320); }\n"
+            + "  }\n"
+            + "  return (c ^ -1) >>> 0;\n"
+            + "}\n"
+            + "function djb(s) {\n"
+            + "  var h = 5381;\n"
+            + "  for (var i = 0; i < s.length; i++) h = ((h << 5) + h + s.charCodeAt(i)) | 0;\n"
+            + "  return h;\n"
+            + "}\n"
+            + "var s = '';\n"
+            + "for (var k = 0; k < 200; k++) s += String.fromCharCode(k * 7 % 256);\n"
+            + "[crc(s), djb(s)].join()");
+    }
+
+    @Test
+    public void overflow() {
+        assertScript("-1155987725,0,991495922,-577993863,-1073741824",
+            "function f(n) {\n"
+            + "  var a = 0x7fffffff, b = 3;\n"
+            + "  for (var i = 0; i < n; i++) {\n"
+            + "    a = (a * 31 + i) | 0;\n"
+            + "    b = (b * a) | 0;\n"
+            + "  }\n"
+            + "  var m = 0x40000000;\n"
+            + "  return [a, b, (a + b + 2147483647) | 0, (a - b) >> 1,\n"
+            + "          (m * m + m * 3) | 0].join();\n"
+            + "}\n"
+            + "f(1000)");
+    }
+
+    @Test
+    public void int32Variables() {
+        assertScript("2147483648,-1,-Infinity,3,1,8000,1",
+            "function f() {\n"
+            + "  var z = 0; z = z + 0x7fffffff; z = z + 1;\n"
+            + "  var w = 4294967295; w = w | 0;\n"
+            + "  var q = -0; q = 1 / q;\n"
+            + "  var x = 0, y = 1;\n"
+            + "  for (var i = 0; i < 1000; i++) { x = x + 1; y = ~y; y = y & (x << 3); }\n"
+            + "  var c = 1.5; c = c | 0;\n"
+            + "  return [z, w, q, ~~3.7, ~-2.5, y, c].join();\n"
+            + "}\n"
+            + "f()");
+    }
+
+    @Test
+    public void objectOperands() {
+        assertScript("7,31,-4,0,5",
+            "function f(a) {\n"
+            + "  var o = { valueOf: function() { return 6; } }, s = '3';\n"
+            + "  var x = 0; x = o | 1;\n"
+            + "  var y = 0; y = (s + a) & 0xff;\n"
+            + "  return [x, y, ~s, (a * 2 + s) >> 5, (o - 1) ^ 0].join();\n"
+            + "}\n"
+            + "f(1)");
+    }
+}
@@ -0,0 +1,158 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.debug.DebugFrame;
+import org.mozilla.javascript.debug.DebuggableScript;
+import org.mozilla.javascript.debug.Debugger;
+
+/**
+ * Tests for the interpreter instructions that compute on function variables
+ * directly. Each script is written so that its statements compile to these
+ * instructions, and checks that they behave like the generic stack code.
+ */
+public class InterpreterVarOpsTest {
+
+    private static void assertScript(final String expected, final String script) {
+        assertScript(expected, script, false);
+    }
+
+    private static void assertScript(final String expected, final String script,
+                                     final boolean debug) {
+        Utils.runWithOptimizationLevel(cx -> {
+            if (debug) {
+                cx.setDebugger(new NullDebugger(), null);
+            }
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        }, -1);
+    }
+
+    private static final String NUMBERS =
+        "function f(n) {\n"
+        + "  var s = 0, p = 1, b = 0, i = 0, t;\n"
+        + "  for (i = 0; i < n; i++) {\n"
+        + "    s = s + i; t = i * 3; t = t - 1; p = p * 2; p = p % 1000;\n"
+        + "    b = b ^ i; b = b | 256; t = b << 3; t = t >> 1; b = b & 255;\n"
+        + "  }\n"
+        + "  var u = -8; u = u >>> 28; var d = s / 0; var q = 7; q = q / 2;\n"
+        + "  return [s, t, p, b, u, d, q].join();\n"
+        + "}\n"
+        + "f(100)";
+
+    @Test
+    public void numbers() {
+        assertScript("4950,1024,376,0,15,Infinity,3.5", NUMBERS);
+    }
+
+    @Test
+    public void numbersWithActivation() {
+        assertScript("4950,1024,376,0,15,Infinity,3.5", NUMBERS, true);
+    }
+
+    private static final String OBJECTS =
+        "function f(a, b) {\n"
+        + "  var log = [];\n"
+        + "  var o = { valueOf: function() { log.push('o'); return 2; } };\n"
+        + "  var p = { valueOf: function() { log.push('p'); return 3; } };\n"
+        + "  var r1 = 0, r2 = 0, r3 = 0, r4, r5, c = 0;\n"
+        + "  r1 = o + p; r2 = o - 1; r3 = o << p;\n"
+        + "  r4 = a + b; r5 = a + 1; r5 = r5 + a;\n"
+        + "  if (o < p) c = c + 1;\n"
+        + "  if (a < b) c = c + 10;\n"
+        + "  if (p <= 2) c = c + 100;\n"
+        + "  return [r1, r2, r3, r4, r5, c, log.join('')].join();\n"
+        + "}\n"
+        + "f('x', 'y')";
+
+    @Test
+    public void objects() {
+        assertScript("5,1,16,xy,x1x,11,opoopopp", OBJECTS);
+    }
+
+    @Test
+    public void objectsWithActivation() {
+        assertScript("5,1,16,xy,x1x,11,opoopopp", OBJECTS, true);
+    }
+
+    @Test
+    public void comparisons() {
+        assertScript("2,2,1,1,1,1,2,2,3",
+            "function f(x, y) {\n"
+            + "  var lt = 0, le = 0, gt = 0, ge = 0, n = 0;\n"
+            + "  if (x < y) lt = lt + 1;\n"
+            + "  if (x <= y) le = le + 1;\n"
+            + "  if (x > y) gt = gt + 1;\n"
+            + "  if (x >= y) ge = ge + 1;\n"
+            + "  if (!(x < y)) n = n + 1;\n"
+            + "  return lt + le + gt + ge + n;\n"
+            + "}\n"
+            + "[f(1, 2), f(-3, 5), f(0 / 0, 1), f(1, 0 / 0), f(0 / 0, 0 / 0),\n"
+            + " f(undefined, 1), f('a', 'b'), f('10', '9'), f(10, '9')].join()");
+    }
+
+    @Test
+    public void constants() {
+        assertScript("1,1,4",
+            "function f() {\n"
+            + "  const c = 1; var x = 3;\n"
+            + "  c = x + 1; var y = c; var z = 0;\n"
+            + "  z = x + c;\n"
+            + "  return [c, y, z].join();\n"
+            + "}\n"
+            + "f()");
+    }
+
+    @Test
+    public void negativeZero() {
+        assertScript("-Infinity,Infinity",
+            "function f() {\n"
+            + "  var x = 0, y = 1, z = 1;\n"
+            + "  x = x * -1; y = y / x; z = z / 0;\n"
+            + "  return [y, z].join();\n"
+            + "}\n"
+            + "f()");
+    }
+
+    private static class NullDebugger implements Debugger, DebugFrame {
+        @Override
+        public void handleCompilationDone(Context cx, DebuggableScript fnOrScript,
+                                          String source) {
+        }
+
+        @Override
+        public DebugFrame getFrame(Context cx, DebuggableScript fnOrScript) {
+            return this;
+        }
+
+        @Override
+        public void onEnter(Context cx, Scriptable activation,
+                            Scriptable thisObj, Object[] args) {
+        }
+
+        @Override
+        public void onLineChange(Context cx, int lineNumber) {
+        }
+
+        @Override
+        public void onExceptionThrown(Context cx, Throwable ex) {
+        }
+
+        @Override
+        public void onExit(Context cx, boolean byThrow, Object resultOrException) {
+        }
+
+        @Override
+        public void onDebuggerStatement(Context cx) {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for arrays whose elements are stored as ints or doubles, and their
+ * switch to boxed elements.
+ */
+public class NativeArrayElementsTest {
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test
+    public void intsToDoublesToObjects() {
+        assertScript("1,2,0.5,-Infinity,NaN,x;24;true;2;-1",
+            "var a = [];\n"
+            + "a.push(1, 2); a[2] = 0.5; a[3] = -0; a.push(NaN);\n"
+            + "var z = 1 / a[3];\n"
+            + "a[3] = z; a.push('x');\n"
+            + "[a.join(), a.length * 4, a.includes(NaN), a.indexOf(0.5),"
+            + " a.indexOf(NaN)].join(';')");
+    }
+
+    @Test
+    public void holes() {
+        assertScript("1,2,,,;5;false;0,1;-1;true;1,2,7;1,;false",
+            "var b = new Array(5); b[0] = 1; b[1] = 2;\n"
+            + "var r = [b.join(), b.length, 2 in b, Object.keys(b).join(),"
+            + " b.indexOf(undefined), b.includes(undefined)];\n"
+            + "b.length = 2; b.push(7); r.push(b.join());\n"
+            + "delete b[2]; b.length = 2; delete b[1];\n"
+            + "r.push(b.join(), 1 in b);\n"
+            + "r.join(';')");
+    }
+
+    @Test
+    public void holesSeePrototype() {
+        assertScript("1;true;-1",
+            "Array.prototype[1] = 'p';\n"
+            + "var q = new Array(3); q[0] = 1;\n"
+            + "var r = [q.indexOf('p'), q.includes('p')];\n"
+            + "delete Array.prototype[1];\n"
+            + "r.push(q.lastIndexOf('p'));\n"
+            + "r.join(';')");
+    }
+
+    @Test
+    public void sort() {
+        assertScript("1,10,2,20,3;20,10,3,2,1;-1,-0.5,0.5,3;1,2,3,,",
+            "var a = []; a.push(3, 20, 1, 10, 2);\n"
+            + "var r = [a.sort().join()];\n"
+            + "r.push(a.sort(function(x, y) { return y - x; }).join());\n"
+            + "var d = [0.5, -1, 3, -0.5].slice();\n"
+            + "r.push(d.sort(function(x, y) { return x - y; }).join());\n"
+            + "var h = new Array(5); h[0] = 3; h[1] = 1; h[2] = 2;\n"
+            + "r.push(h.sort().join());\n"
+            + "r.join(';')");
+    }
+
+    @Test
+    public void sortCompareFunctionChangesArray() {
+        assertScript("1,2,3,x",
+            "var a = []; a.push(3, 1, 2);\n"
+            + "var once = true;\n"
+            + "a.sort(function(x, y) { if (once) { once = false; a[3] = 'x'; } return x - y; });\n"
+            + "a.join()");
+    }
+
+    @Test
+    public void stackAndQueue() {
+        assertScript("7;5;6;6,1.5;1.5,6;[1.5,6]",
+            "var e = []; e[0] = 5; e[1] = 6; e[2] = 7;\n"
+            + "var r = [e.pop(), e.shift()];\n"
+            + "r.push(e.join()); e.push(1.5); r.push(e.join());\n"
+            + "r.push(e.reverse().join(), JSON.stringify(e));\n"
+            + "r.join(';')");
+    }
+
+    @Test
+    public void descriptorsAndConcat() {
+        assertScript("20;true;false;4,5,1,2.5,1.25;5",
+            "var s = []; s.push(10, 20, 2.5);\n"
+            + "var d = Object.getOwnPropertyDescriptor(s, 1);\n"
+            + "var h = [4, 5].concat([1, s[2]], [1.25]);\n"
+            + "[d.value, d.writable, s.hasOwnProperty(3), h.join(), h.length].join(';')");
+    }
+
+    @Test
+    public void javaAccess() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            NativeArray a = (NativeArray) cx.evaluateString(scope,
+                "var a = []; a.push(1, 2); a.push(2.5); a", "test", 1, null);
+            assertEquals(3, a.size());
+            assertEquals(1, ((Number) a.get(0)).intValue());
+            assertEquals(2.5, ((Number) a.get(2)).doubleValue(), 0.0);
+            assertEquals(3, a.toArray().length);
+            return null;
+        });
+    }
+
+    @Test
+    public void javaAccessKeepsDoubles() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            NativeArray a = (NativeArray) cx.evaluateString(scope,
+                "var a = []; a.push(1.5 - 0.5, 2 * 3); a[2] = a[0] + a[1]; a", "test", 1, null);
+            assertEquals(Double.valueOf(1.0), a.get(0));
+            assertEquals(Double.valueOf(6.0), a.get(1));
+            assertEquals(Double.valueOf(7.0), a.get(2));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,57 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the shared instances of small integers that are returned when
+ * numbers are boxed.
+ */
+public class NumberCacheTest {
+
+    @Test
+    public void smallIntegersAreShared() {
+        assertSame(ScriptRuntime.wrapNumber(42), ScriptRuntime.wrapNumber(42.0));
+        assertSame(ScriptRuntime.wrapInt(1000), ScriptRuntime.wrapInt(1000));
+        assertSame(ScriptRuntime.wrapDouble(ScriptRuntime.NUMBER_CACHE_LOW),
+                   ScriptRuntime.wrapDouble(ScriptRuntime.NUMBER_CACHE_LOW));
+        assertSame(ScriptRuntime.NaNobj, ScriptRuntime.wrapNumber(0.0 / 0.0));
+    }
+
+    @Test
+    public void otherNumbers() {
+        Number negativeZero = ScriptRuntime.wrapNumber(-0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, 1 / negativeZero.doubleValue(), 0.0);
+        assertNotSame(ScriptRuntime.wrapNumber(0.0), negativeZero);
+        assertEquals(0.5, ScriptRuntime.wrapNumber(0.5).doubleValue(), 0.0);
+        double big = ScriptRuntime.NUMBER_CACHE_HIGH + 1;
+        assertEquals(big, ScriptRuntime.wrapNumber(big).doubleValue(), 0.0);
+        assertEquals(-129, ScriptRuntime.wrapInt(-129).intValue());
+    }
+
+    @Test
+    public void scriptResults() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                "function f(a, b) { return a + b; }\n"
+                + "f(600, 400)", "test", 1, null);
+            assertSame(ScriptRuntime.wrapNumber(1000), result);
+            result = cx.evaluateString(scope,
+                "function g(a) { var z = a * -1; return [1 / z, f(a, 0.5)]; }\n"
+                + "g(0).join()", "test", 1, null);
+            assertEquals("-Infinity,0.5", Context.toString(result));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,130 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the inline property caches that compiled code uses on shaped objects.
+ * Each script runs the same access site many times with changing receivers.
+ */
+public class PropertyCacheTest {
+
+    private static final ContextFactory SHAPED_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_SHAPED_OBJECTS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(SHAPED_FACTORY, cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test
+    public void polymorphicReads() {
+        assertScript("1,2,3,4,5,6,7",
+            "function getA(o) { return o.a; }\n"
+            + "var objs = [{a: 1}, {b: 0, a: 2}, {c: 0, a: 3}, {d: 0, a: 4},\n"
+            + "            {e: 0, a: 5}, {f: 0, a: 6}, {a: 7, g: 0}];\n"
+            + "var r = [];\n"
+            + "for (var i = 0; i < objs.length; i++) { getA(objs[i]); r.push(getA(objs[i])); }\n"
+            + "r.join()");
+    }
+
+    @Test
+    public void writesAreVisible() {
+        assertScript("3|3|5",
+            "function setA(o, v) { o.a = v; }\n"
+            + "var o1 = {a: 1}; var o2 = {a: 2};\n"
+            + "setA(o1, 3); setA(o2, 3); var s = o1.a + '|' + o2.a;\n"
+            + "setA(o1, 5); s + '|' + o1.a");
+    }
+
+    @Test
+    public void prototypeChanges() {
+        assertScript("p|p|own|q|r|x",
+            "var proto = {v: 'p'};\n"
+            + "function getV(o) { return o.v; }\n"
+            + "var o = Object.create(proto); var r = [];\n"
+            + "r.push(getV(o)); r.push(getV(o));\n"
+            + "var o2 = Object.create(proto); o2.v = 'own'; r.push(getV(o2));\n"
+            + "proto.v = 'q'; r.push(getV(o));\n"
+            + "Object.setPrototypeOf(o, {v: 'r'}); r.push(getV(o));\n"
+            + "Object.defineProperty(Object.getPrototypeOf(o), 'v', {value: 'x', enumerable: false});\n"
+            + "r.push(getV(o)); r.join('|')");
+    }
+
+    @Test
+    public void deleteAndAttributes() {
+        assertScript("1||1|2",
+            "function getA(o) { return o.a; }\n"
+            + "function setA(o, v) { o.a = v; }\n"
+            + "var o = {a: 1}; var r = [getA(o)];\n"
+            + "delete o.a; r.push(getA(o));\n"
+            + "var f = {a: 1}; setA(f, 1); Object.freeze(f); setA(f, 2); r.push(getA(f));\n"
+            + "var s = {a: 1}; setA(s, 1); Object.seal(s);\n"
+            + "try { setA(s, 2); } catch (e) {} r.push(getA(s));\n"
+            + "r.join('|')");
+    }
+
+    @Test
+    public void methodCalls() {
+        assertScript("10,20,m2,none",
+            "function P(x) { this.x = x; }\n"
+            + "P.prototype = { get2: function() { return this.x * 2; } };\n"
+            + "function call(o) { return o.get2(); }\n"
+            + "var r = [call(new P(5)), call(new P(10))];\n"
+            + "P.prototype.get2 = function() { return 'm2'; }; r.push(call(new P(1)));\n"
+            + "var o = new P(1); o.get2 = 5;\n"
+            + "try { call(o); } catch (e) { r.push(e instanceof TypeError ? 'none' : e); }\n"
+            + "r.join()");
+    }
+
+    @Test
+    public void compoundAssignment() {
+        assertScript("10",
+            "var o = {n: 0};\n"
+            + "for (var i = 0; i < 10; i++) { o.n += 1; }\n"
+            + "o.n");
+    }
+
+    @Test
+    public void cachesOnlyWithShapes() {
+        assertEquals(0, countCaches(new ContextFactory()));
+        assertEquals(2, countCaches(SHAPED_FACTORY));
+    }
+
+    private static int countCaches(ContextFactory factory) {
+        return (Integer) factory.call(cx -> {
+            cx.setOptimizationLevel(9);
+            Script script = cx.compileString("var o = {a: 1}; o.b = o.a;", "test", 1, null);
+            int count = 0;
+            for (Field field : script.getClass().getDeclaredFields()) {
+                if (field.getName().startsWith("_pc")) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+}
@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.RealmSnapshot;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for scopes created from a RealmSnapshot.
+ */
+public class RealmSnapshotTest {
+
+    private static String eval(Context cx, Scriptable scope, String script) {
+        return Context.toString(cx.evaluateString(scope, script, "test", 1, null));
+    }
+
+    @Test
+    public void standardObjects() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = new RealmSnapshot(cx).newScope();
+            assertEquals("3,2,1;{\"a\":[1]};b;1970;2;true;true;object",
+                eval(cx, scope,
+                    "var m = new Map(); m.set(1, 2);\n"
+                    + "[[1, 2, 3].reverse().join(), JSON.stringify({a: [1]}),\n"
+                    + " /a(b)/.exec('ab')[1], new Date(0).getUTCFullYear(), m.get(1),\n"
+                    + " this.Array === Array, Object.getPrototypeOf(this) === Object.prototype,\n"
+                    + " typeof java.lang].join(';')"));
+            return null;
+        });
+    }
+
+    @Test
+    public void scopesAreIsolated() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            RealmSnapshot snapshot = new RealmSnapshot(cx);
+            Scriptable a = snapshot.newScope();
+            Scriptable b = snapshot.newScope();
+            assertNotSame(a, b);
+            eval(cx, a, "var x = 1; y = 2; Array = null; function f() { return 3; }");
+            assertEquals("undefined,undefined,function,undefined",
+                eval(cx, b, "[typeof x, typeof y, typeof Array, typeof f].join()"));
+            assertEquals("1,2,true,3", eval(cx, a, "[x, y, Array === null, f()].join()"));
+            assertEquals("true,false",
+                eval(cx, b, "[Symbol.for('s') === Symbol.for('s'), Symbol.keyFor(Symbol.iterator) === 's'].join()"));
+            return null;
+        });
+    }
+
+    @Test
+    public void builtinsAreSealed() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            RealmSnapshot snapshot = new RealmSnapshot(cx);
+            Scriptable a = snapshot.newScope();
+            try {
+                eval(cx, a, "Array.prototype.push = function() {}");
+                fail();
+            } catch (EvaluatorException e) {
+                // expected
+            }
+            assertEquals("1", eval(cx, snapshot.newScope(), "[].push(1)"));
+            return null;
+        });
+    }
+}
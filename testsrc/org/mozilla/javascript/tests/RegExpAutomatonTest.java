@@ -0,0 +1,145 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for regular expressions that backtrack too much and are switched to
+ * the linear-time automaton. Without it, each of these would take longer
+ * than the universe is old.
+ */
+public class RegExpAutomatonTest {
+
+    private static final ContextFactory COMPILING_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_COMPILED_REGEXP) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static final ContextFactory LIMITED_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_REGEXP_BACKTRACK_LIMIT) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test(timeout = 60000)
+    public void nestedQuantifiers() {
+        assertScript("false",
+            "/(a+)+b/.test(new Array(50).join('a'))");
+        assertScript("null",
+            "JSON.stringify(/(x+x+)+y/.exec(new Array(50).join('x')))");
+        assertScript("false",
+            "/^(\\w+\\s?)+$/.test('an example of a rather long sentence that fails!')");
+    }
+
+    @Test(timeout = 60000)
+    public void alternativesUnderQuantifier() {
+        assertScript("null",
+            "JSON.stringify(/(a|aa)+$/.exec(new Array(50).join('a') + '!'))");
+        assertScript("[\"aaaab\",\"a\"]",
+            "var s = new Array(50).join('a') + '!aaaab';\n"
+            + "JSON.stringify(/(a|aa)+b/.exec(s))");
+    }
+
+    @Test(timeout = 60000)
+    public void capturesAfterSwitch() {
+        // The first exec exceeds the budget, the later ones use the automaton
+        assertScript("null|[\"xxy\",\"xx\"]|[\"abab!\",\"b\",null,\"b\"]|[\"ab\",null]",
+            "var bad = new Array(50).join('x');\n"
+            + "var re = /(x+x+)+y/;\n"
+            + "var r1 = re.exec(bad);\n"
+            + "var r2 = re.exec('xxy');\n"
+            + "var re2 = /((a)|(b))+!/;\n"
+            + "re2.exec(new Array(30).join('ab'));\n"
+            + "var r3 = re2.exec('abab!');\n"
+            + "var r4 = /(?:(a)|b)+/.exec('ab');\n"
+            + "[r1, r2, r3, r4].map(JSON.stringify).join('|')");
+    }
+
+    @Test(timeout = 60000)
+    public void backReferencesKeepBacktracking() {
+        assertScript("aaaaaaaaaaaaaaaaaab,aaaaaaaaa",
+            "String(/(a*)\\1b/.exec(new Array(20).join('a') + 'b'))");
+    }
+
+    @Test(timeout = 60000)
+    public void quantifiedAtomsThatMatchEmpty() {
+        assertScript("false",
+            "/(a*)*b/.test(new Array(40).join('a'))");
+        assertScript("null",
+            "JSON.stringify(/^(?:a?|a{2})+$/.exec(new Array(40).join('a') + '!'))");
+        assertScript("[\"aab\",\"aa\"]|[\"bb\",null]|[\"abb\",\"a\"]",
+            "var re = /(a*)*b/;\n"
+            + "re.test(new Array(40).join('a'));\n"
+            + "[re.exec('aab'), /(?:(a)?b){2}/.exec('bb'), /(?:(a)?b){2}/.exec('abb')]"
+            + ".map(JSON.stringify).join('|')");
+    }
+
+    @Test(timeout = 60000)
+    public void compiledMatchersKeepTheBudget() {
+        // The first executions compile the regexp, the last one backtracks
+        // in the generated matcher until it switches to the automaton
+        Object result = COMPILING_FACTORY.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            return cx.evaluateString(scope,
+                "var re = /(a|a)*a*a*a*a*a*b/, r = [];\n"
+                + "for (var i = 0; i < 200; i++) r = re.exec('aaaab');\n"
+                + "String(re.test(new Array(60).join('a'))) + r",
+                "test", 1, null);
+        });
+        assertEquals("falseaaaab,a", Context.toString(result));
+    }
+
+    @Test(timeout = 60000)
+    public void backReferencesKeepBacktrackingOverBudget() {
+        // No automaton can match these, so they go on without a budget
+        assertScript("false|false|7",
+            "var s = new Array(19).join('a');\n"
+            + "[/(a)(?:a|a)*\\1b/.test(s), /(a)(?:a|a)*\\1b/.test(s),\n"
+            + " /(.{1,}(([^\\w]??)b*?(?:[^\\w]$b|[a-c1]{0,})))*(?=(?=(AA*\\D+)(abb)A)\\S)|b{1,}?/"
+            + ".exec('1  a1A-bA -1').index].join('|')");
+    }
+
+    @Test(timeout = 60000)
+    public void backReferencesFailOverBudgetWithLimit() {
+        Utils.runWithAllOptimizationLevels(LIMITED_FACTORY, cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            try {
+                cx.evaluateString(scope,
+                    "/(a)(?:a|a)*\\1b/.test(new Array(19).join('a'))", "test", 1, null);
+                fail();
+            } catch (EvaluatorException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("backtracked too much"));
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,105 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.regexp.RegExpImpl;
+
+/**
+ * Tests for the cache of compiled regular expressions in RegExpImpl.
+ */
+public class RegExpCacheTest {
+
+    @Before
+    public void setUp() {
+        RegExpImpl.setCacheSize(256);
+        RegExpImpl.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        RegExpImpl.setCacheSize(256);
+    }
+
+    private static String eval(final String script) {
+        return (String) new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, script, "test", 1, null));
+        });
+    }
+
+    @Test
+    public void sameSourceAndFlagsIsCompiledOnce() {
+        long hits = RegExpImpl.getCacheHitCount();
+        long misses = RegExpImpl.getCacheMissCount();
+        assertEquals("true,true,true",
+            eval("var r = [];\n"
+                 + "for (var i = 0; i < 3; i++) r.push(new RegExp('cache-(\\\\d+)', 'g').test('cache-1'));\n"
+                 + "r.join()"));
+        assertEquals(misses + 1, RegExpImpl.getCacheMissCount());
+        assertEquals(hits + 2, RegExpImpl.getCacheHitCount());
+
+        // Another Context shares the cache
+        assertEquals("cache-7", eval("'x cache-7'.match(new RegExp('cache-(\\\\d+)', 'g'))[0]"));
+        assertEquals(hits + 3, RegExpImpl.getCacheHitCount());
+    }
+
+    @Test
+    public void flagsAreTakenIntoAccount() {
+        assertEquals("1,0,1,1",
+            eval("[new RegExp('cachedFlags').test('CACHEDFLAGS') ? 0 : 1,\n"
+                 + " new RegExp('cachedFlags', 'i').test('CACHEDFLAGS') ? 0 : 1,\n"
+                 + " new RegExp('cachedFlags').test('CACHEDFLAGS') ? 0 : 1,\n"
+                 + " 'cachedFlags'.split('cachedFlags').length - 1].join()"));
+    }
+
+    @Test
+    public void sharedProgramsKeepTheirOwnState() {
+        assertEquals("3,1,true",
+            eval("var a = new RegExp('(a)(b)?', 'g'), b = new RegExp('(a)(b)?', 'g');\n"
+                 + "a.exec('xab');\n"
+                 + "var m = b.exec('a');\n"
+                 + "[a.lastIndex, b.lastIndex, m[2] === undefined].join()"));
+    }
+
+    @Test
+    public void errorsAreNotCached() {
+        long misses = RegExpImpl.getCacheMissCount();
+        for (int i = 0; i < 2; i++) {
+            try {
+                eval("new RegExp('cached(', '')");
+                fail();
+            } catch (EcmaError e) {
+                assertEquals("SyntaxError", e.getName());
+            }
+        }
+        assertEquals(misses + 2, RegExpImpl.getCacheMissCount());
+    }
+
+    @Test
+    public void cacheSizeIsBounded() {
+        RegExpImpl.setCacheSize(2);
+        long hits = RegExpImpl.getCacheHitCount();
+        eval("new RegExp('one'); new RegExp('two'); new RegExp('three'); new RegExp('one')");
+        assertEquals(hits, RegExpImpl.getCacheHitCount());
+        eval("new RegExp('three')");
+        assertEquals(hits + 1, RegExpImpl.getCacheHitCount());
+
+        RegExpImpl.setCacheSize(0);
+        long misses = RegExpImpl.getCacheMissCount();
+        eval("new RegExp('three')");
+        assertEquals(hits + 1, RegExpImpl.getCacheHitCount());
+        assertEquals(misses, RegExpImpl.getCacheMissCount());
+    }
+}
@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.ConsString;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.SlicedString;
+
+/**
+ * Tests for matching regular expressions against ConsStrings and
+ * SlicedStrings, which are read in place rather than copied to a String.
+ * The results must be the same as for the equal String.
+ */
+public class RegExpRopeTest {
+
+    private static final ContextFactory COMPILING_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_COMPILED_REGEXP) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static final String SCRIPT =
+        "var out = [];\n"
+        + "for (var k = 0; k < 60; k++) {\n"
+        + "  var m = /line (\\d+)7 (\\w+)/.exec(s);\n"
+        + "  var r = s.replace(/(\\d)(\\d)\\b/g, '$2$1');\n"
+        + "  var n = s.match(/[0-9]+9 text\\n/g);\n"
+        + "  if (k == 59) {\n"
+        + "    out.push(JSON.stringify(m), m.index, RegExp.lastParen, RegExp.leftContext.length,\n"
+        + "        r.length, r.slice(-40), n.length, n[3], s.search(/3 (text)?\\n(line)/),\n"
+        + "        /Text/i.test(s), /(a|e)\\1/.exec(s), s.replace('8 text', '[$&]').indexOf('['),\n"
+        + "        s.replace(/text\\n/g, function(a) { return ''; }).length);\n"
+        + "  }\n"
+        + "}\n"
+        + "out.join(' ')";
+
+    private static String run(ContextFactory factory, final CharSequence input) {
+        return (String) factory.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "s", input);
+            return Context.toString(cx.evaluateString(scope, SCRIPT, "test", 1, null));
+        });
+    }
+
+    private static CharSequence rope() {
+        CharSequence rope = "";
+        for (int i = 0; i < 400; i++) {
+            rope = new ConsString(rope, "line " + i + " text\n");
+        }
+        return rope;
+    }
+
+    @Test
+    public void shouldMatchRopesInPlace() {
+        String text = rope().toString();
+        for (ContextFactory factory : new ContextFactory[] {new ContextFactory(), COMPILING_FACTORY}) {
+            String expected = run(factory, text);
+            assertEquals(expected, run(factory, rope()));
+            assertEquals(expected, run(factory,
+                new SlicedString("xx" + text + "yy", 2, 2 + text.length())));
+        }
+    }
+
+    @Test
+    public void shouldFindLiteralsAcrossComponents() {
+        String text = "abcdefghijklmnopqrstuvwxyz0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ!";
+        ConsString rope = new ConsString(new ConsString("abcdefghijklmnopqrstuvwxyz0123", "4567"),
+            new ConsString("89ABCDEFGHIJKLMNOPQRSTUVWXYZ", "!"));
+        for (String literal : new String[] {"0123456789", "z0", "3456", "Z!", "6789AB", "!", "",
+                "abc", "xyz0123456789ABC", "zz"}) {
+            for (int from = -1; from <= text.length() + 1; from++) {
+                assertEquals(literal + " " + from, text.indexOf(literal, from),
+                    rope.indexOf(literal, from));
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the search of literal prefixes, required literals and first
+ * characters that decides where matching starts.
+ */
+public class RegExpSearchTest {
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test
+    public void literalPrefix() {
+        assertScript("[\"foobar1\",\"1\"] 11",
+            "var m = /foobar(\\d)/.exec('foobafoobarfoobar1');\n"
+            + "JSON.stringify(m) + ' ' + m.index");
+        assertScript("null", "JSON.stringify(/(?:fo)o(bar)/.exec('fobar foob'))");
+        assertScript("<ab>c<ab>", "'abcab'.replace(/ab/g, '<$&>')");
+        assertScript("a,b,c", "'a--b--c'.split(/--/).join()");
+    }
+
+    @Test
+    public void requiredLiteral() {
+        assertScript("[\"user@example.com\"]",
+            "JSON.stringify(/\\w+@example\\.com/.exec('x@example.org user@example.com'))");
+        assertScript("null", "JSON.stringify(/\\d+ code/.exec('12 cod 3 cde code'))");
+        // The literal must be found in the part of the input after lastIndex
+        assertScript("null 0",
+            "var re = /\\d{1,3}-end/g; re.lastIndex = 6;\n"
+            + "JSON.stringify(re.exec('12-end 3-en')) + ' ' + re.lastIndex");
+    }
+
+    @Test
+    public void requiredLiteralAtBoundedDistance() {
+        assertScript("[\"ERROR code\",\"ERROR\"] 22",
+            "var s = 'WARNcode FATAL cod xx ERROR code';\n"
+            + "var m = /(WARN|FATAL|ERROR) code/.exec(s);\n"
+            + "JSON.stringify(m) + ' ' + m.index");
+        assertScript("[\"123abc\",\"a\"]",
+            "JSON.stringify(/\\d{1,3}(a|ab)?bc/.exec('1234 1bbc 123abc'.substring(5)))");
+        assertScript("[\"-x--yz\"] 1", "var m = /.?x?-{2}yz/.exec('--x--yz');\n"
+            + "JSON.stringify(m) + ' ' + m.index");
+    }
+
+    @Test
+    public void firstCharacters() {
+        assertScript("bar,foo,baz", "'a bar, a foo, a baz'.match(/(foo|ba[rz])/g).join()");
+        assertScript("[\"FOO\",\"FOO\"] 2", "var m = /(foo|bar)/i.exec('xxFOO');\n"
+            + "JSON.stringify(m) + ' ' + m.index");
+        assertScript("[\"\",null]", "JSON.stringify(/(a|b)?/.exec('xyz'))");
+        assertScript("[\"ab\"]", "JSON.stringify(/(?:a+|c)b/.exec('cxb cab'))");
+    }
+}
@@ -0,0 +1,86 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the RegExp statics (RegExp.lastMatch, RegExp.$1 and so on),
+ * which are computed from the last match only when they are read.
+ */
+public class RegExpStaticsTest {
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    private static final String STATICS =
+        "[RegExp.lastMatch, RegExp.leftContext, RegExp.rightContext,"
+        + " RegExp.lastParen, RegExp.$1, RegExp.$2].join('|')";
+
+    @Test
+    public void staticsAfterTest() {
+        assertScript("b1|a|c|1|b|1",
+            "/(b)(\\d)/.test('ab1c');\n" + STATICS);
+    }
+
+    @Test
+    public void failedMatchKeepsStatics() {
+        assertScript("b1|a|c|1|b|1",
+            "var re = /(b)(\\d)/;\n"
+            + "re.test('ab1c');\n"
+            + "re.test('bb');\n"
+            + "/(x)/.exec('yyy');\n" + STATICS);
+    }
+
+    @Test
+    public void staticsOfEachMatch() {
+        assertScript("x:b1|a|c|1|b|1,y:d2|c|e|2|d|2",
+            "var re = /(\\w)(\\d)/g, s1 = 'ab1c', s2 = 'cd2e';\n"
+            + "re.test(s1); var a = " + STATICS + ";\n"
+            + "re.lastIndex = 0; re.test(s2);\n"
+            + "['x:' + a, 'y:' + " + STATICS + "].join()");
+    }
+
+    @Test
+    public void globalReplace() {
+        assertScript("[x1:x|1:|-y2-c]-[y2:y|2:x1-|-c]-c",
+            "'x1-y2-c'.replace(/(\\w)(\\d)/g, '[$&:$1|$2:$`|$\\']')");
+        assertScript("x1,x,1,0;y2,y,2,3|y2|-",
+            "var out = [];\n"
+            + "'x1-y2'.replace(/(\\w)(\\d)/g, function(m, p1, p2, i) {\n"
+            + "  out.push([m, p1, p2, i].join());\n"
+            + "  /(z)/.test('z');\n"
+            + "});\n"
+            + "out.join(';') + '|' + RegExp.lastMatch + '|' + RegExp.leftContext.charAt(2)");
+    }
+
+    @Test
+    public void stringReplaceKeepsParens() {
+        assertScript("b|d|c|b|",
+            "/(b)/.test('abc');\n"
+            + "'cde'.replace('d', 'x');\n"
+            + "[RegExp.$1, RegExp.lastMatch, RegExp.leftContext,"
+            + " RegExp.$1, RegExp.lastParen].join('|')");
+    }
+
+    @Test
+    public void testInALoop() {
+        assertScript("5000 true 9999 99",
+            "var re = /^(\\d+)-(\\d+)$/, n = 0;\n"
+            + "for (var i = 0; i < 10000; i++) if (re.test(i + '-' + (i % 100))) n += i % 2;\n"
+            + "n + ' ' + re.test('1-2') + ' ' + (re.exec('9999-99') && RegExp.$1)"
+            + " + ' ' + RegExp.$2");
+    }
+}
@@ -0,0 +1,135 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptCache;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the in-memory cache of compiled scripts.
+ */
+public class ScriptCacheTest {
+
+    private ScriptCache cache;
+    private ContextFactory factory;
+
+    @Before
+    public void setUp() {
+        cache = new ScriptCache(2);
+        factory = new ContextFactory();
+        factory.setScriptCache(cache);
+    }
+
+    private Script compile(int optLevel, int version, String source, String sourceName) {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            cx.setLanguageVersion(version);
+            return cx.compileString(source, sourceName, 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private Script compile(String source) {
+        return compile(0, Context.VERSION_DEFAULT, source, "test.js");
+    }
+
+    private Object exec(Script script) {
+        Context cx = factory.enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(script.exec(cx, scope));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void sameSourceReturnsSameScript() {
+        Script s1 = compile("var x = 1; x + 1");
+        Script s2 = compile("var x = 1; x + 1");
+        assertSame(s1, s2);
+        assertEquals("2", exec(s1));
+        assertEquals("2", exec(s2));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void keyIncludesNameVersionAndOptLevel() {
+        Script s = compile(0, Context.VERSION_DEFAULT, "1", "a.js");
+        assertNotSame(s, compile(0, Context.VERSION_DEFAULT, "1", "b.js"));
+        assertNotSame(s, compile(0, Context.VERSION_ES6, "1", "a.js"));
+        assertNotSame(s, compile(-1, Context.VERSION_DEFAULT, "1", "a.js"));
+        assertNotSame(s, compile(0, Context.VERSION_DEFAULT, "1 ", "a.js"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        Script a = compile("'a'");
+        Script b = compile("'b'");
+        assertSame(a, compile("'a'"));
+        compile("'c'");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, compile("'a'"));
+        assertNotSame(b, compile("'b'"));
+    }
+
+    @Test
+    public void evaluateStringUsesCache() {
+        Context cx = factory.enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            for (int i = 0; i < 3; i++) {
+                cx.evaluateString(scope, "var n = (typeof n == 'number') ? n + 1 : 1;", "n.js", 1, null);
+            }
+            assertEquals(3.0, Context.toNumber(scope.get("n", scope)), 0.0);
+        } finally {
+            Context.exit();
+        }
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        cache = new ScriptCache(100);
+        factory.setScriptCache(cache);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i % 10;
+                results.add(executor.submit(() ->
+                    exec(compile("function f(x) { return x * 2; } f(" + n + ")"))));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(String.valueOf((i % 10) * 2), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(200, cache.getHitCount() + cache.getMissCount());
+        assertEquals(10, cache.size());
+    }
+}
@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptFileCache;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for the on-disk cache of compiled scripts.
+ */
+public class ScriptFileCacheTest {
+
+    private static final String SOURCE =
+        "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+        + "var re = /a+b/g; fib(10) + ':' + 'xaabyab'.match(re).join()";
+
+    private File dir;
+    private ScriptFileCache cache;
+    private ContextFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rhino-cache").toFile();
+        cache = new ScriptFileCache(dir);
+        factory = new ContextFactory();
+        factory.setScriptFileCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+        dir.delete();
+    }
+
+    private Object run(int optLevel, String source, String sourceName) {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.initStandardObjects();
+            Script script = cx.compileString(source, sourceName, 1, null);
+            return Context.toString(script.exec(cx, scope));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private void assertCached(int optLevel) {
+        assertEquals("55:aab,ab", run(optLevel, SOURCE, "test.js"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, dir.list().length);
+
+        assertEquals("55:aab,ab", run(optLevel, SOURCE, "test.js"));
+        assertEquals("55:aab,ab", run(optLevel, SOURCE, "test.js"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void interpreted() {
+        assertCached(-1);
+    }
+
+    @Test
+    public void compiled() {
+        assertCached(0);
+    }
+
+    @Test
+    public void optimized() {
+        assertCached(9);
+    }
+
+    @Test
+    public void keyIncludesSettings() {
+        run(-1, SOURCE, "test.js");
+        run(9, SOURCE, "test.js");
+        run(9, SOURCE, "other.js");
+        run(9, SOURCE + ";1", "test.js");
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, dir.list().length);
+    }
+
+    @Test
+    public void sharedBetweenFactories() {
+        run(9, SOURCE, "test.js");
+        factory = new ContextFactory();
+        factory.setScriptFileCache(new ScriptFileCache(dir));
+        assertEquals("55:aab,ab", run(9, SOURCE, "test.js"));
+        assertEquals(1, factory.getScriptFileCache().getHitCount());
+    }
+
+    @Test
+    public void damagedEntry() throws IOException {
+        run(0, SOURCE, "test.js");
+        for (File f : dir.listFiles()) {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.setLength(20);
+            }
+        }
+        assertEquals("55:aab,ab", run(0, SOURCE, "test.js"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals("55:aab,ab", run(0, SOURCE, "test.js"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void functions() {
+        for (int optLevel : new int[] { -1, 0 }) {
+            for (int i = 0; i < 2; i++) {
+                Context cx = factory.enterContext();
+                try {
+                    cx.setOptimizationLevel(optLevel);
+                    Scriptable scope = cx.initStandardObjects();
+                    Function f = cx.compileFunction(scope,
+                        "function add(a, b) { return a + b; }", "add.js", 1, null);
+                    assertEquals(5, ((Number) f.call(cx, scope, scope,
+                        new Object[] { 2, 3 })).intValue());
+                } finally {
+                    Context.exit();
+                }
+            }
+        }
+        assertEquals(2, cache.getHitCount());
+    }
+}
@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Tests for objects using shared property shapes (FEATURE_SHAPED_OBJECTS).
+ */
+public class ShapedObjectsTest {
+
+    private static final ContextFactory SHAPED_FACTORY = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_SHAPED_OBJECTS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static void assertScript(final String expected, final String script) {
+        Utils.runWithAllOptimizationLevels(SHAPED_FACTORY, cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, script, "test", 1, null);
+            assertEquals(expected, Context.toString(result));
+            return null;
+        });
+    }
+
+    @Test
+    public void getAndPut() {
+        assertScript("1,2,3,4",
+            "function P(x, y) { this.x = x; this.y = y; }\n"
+            + "var a = new P(1, 2); var b = new P(3, 4);\n"
+            + "[a.x, a.y, b.x, b.y].join()");
+    }
+
+    @Test
+    public void enumerationOrder() {
+        assertScript("c,a,b|1,2,3",
+            "var o = { c: 1, a: 2 }; o.b = 3;\n"
+            + "var vals = []; for (var k in o) vals.push(o[k]);\n"
+            + "Object.keys(o).join() + '|' + vals.join()");
+    }
+
+    @Test
+    public void deleteFallsBackToSlotMap() {
+        assertScript("a,c|undefined|false",
+            "var o = { a: 1, b: 2, c: 3 }; delete o.b;\n"
+            + "Object.keys(o).join() + '|' + o.b + '|' + ('b' in o)");
+    }
+
+    @Test
+    public void attributesFallBackToSlotMap() {
+        assertScript("1|a|false",
+            "var o = { a: 1, b: 2 };\n"
+            + "Object.defineProperty(o, 'b', { enumerable: false });\n"
+            + "o.b = 5;\n"
+            + "Object.defineProperty(o, 'a', { writable: false }); o.a = 7;\n"
+            + "o.a + '|' + Object.keys(o).join() + '|' + Object.getOwnPropertyDescriptor(o, 'a').writable");
+    }
+
+    @Test
+    public void gettersSettersAndIndexes() {
+        assertScript("10|x|s",
+            "var o = { a: 1 }; o[0] = 'x'; o[Symbol.iterator] = 's';\n"
+            + "Object.defineProperty(o, 'b', { get: function() { return this.a * 10; } });\n"
+            + "o.b + '|' + o[0] + '|' + o[Symbol.iterator]");
+    }
+
+    @Test
+    public void manyProperties() {
+        assertScript("200|199",
+            "var o = {}; for (var i = 0; i < 200; i++) o['p' + i] = i;\n"
+            + "Object.keys(o).length + '|' + o.p199");
+    }
+
+    @Test
+    public void sealedAndFrozen() {
+        assertScript("1|2|1",
+            "var s = { a: 1 }; Object.seal(s); s.b = 2;\n"
+            + "var f = { a: 2 }; Object.freeze(f); f.a = 3;\n"
+            + "var n = { a: 1 }; Object.preventExtensions(n); n.c = 4;\n"
+            + "s.a + '|' + f.a + '|' + Object.keys(n).length");
+    }
+
+    @Test
+    public void prototypeProperties() {
+        assertScript("1|2|1",
+            "function P() {} P.prototype.v = 1;\n"
+            + "var a = new P(); var b = new P(); b.v = 2;\n"
+            + "a.v + '|' + b.v + '|' + P.prototype.v");
+    }
+
+    @Test
+    public void shadowingKeepsPrototypeShape() throws Exception {
+        final Method getShape = ScriptableObject.class.getDeclaredMethod("getShape");
+        getShape.setAccessible(true);
+        Utils.runWithAllOptimizationLevels(SHAPED_FACTORY, cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject proto = (ScriptableObject) cx.evaluateString(scope,
+                "var proto = { v: 1, w: 2 }; proto", "test", 1, null);
+            try {
+                Object shape = getShape.invoke(proto);
+                assertNotNull(shape);
+                assertEquals("2|1|3", cx.evaluateString(scope,
+                    "function F() {} F.prototype = proto;\n"
+                    + "var o = new F(); o.v = 2; o.x = 3;\n"
+                    + "o.v + '|' + proto.v + '|' + o.x", "test", 1, null));
+                assertSame(shape, getShape.invoke(proto));
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+            return null;
+        });
+    }
+}
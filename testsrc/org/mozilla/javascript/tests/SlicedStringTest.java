@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.SlicedString;
+
+/**
+ * Tests for substrings that share the characters of the String they are
+ * taken from.
+ */
+public class SlicedStringTest {
+    private Context cx;
+    private Scriptable scope;
+
+    @Before
+    public void setUp() {
+        cx = Context.enter();
+        cx.setLanguageVersion(Context.VERSION_ES6);
+        scope = cx.initStandardObjects();
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    private Object eval(String source) {
+        return cx.evaluateString(scope, source, "test", 1, null);
+    }
+
+    private Object property(String name) {
+        return ScriptableObject.getProperty(scope, name);
+    }
+
+    @Test
+    public void shouldShareLongSubstrings() {
+        eval("var text = ''; for (var i = 0; i < 1000; i++) text += 'line ' + i + '\\n';"
+            + " text = String(text);"
+            + " var a = text.slice(10), b = text.substring(20, 5000), c = text.substr(-3000),"
+            + " d = a.slice(100, -100), small = text.slice(5, 50), far = text.slice(-300)");
+        String text = (String) property("text");
+        assertSliced(text.substring(10), property("a"));
+        assertSliced(text.substring(20, 5000), property("b"));
+        assertSliced(text.substring(text.length() - 3000), property("c"));
+        assertSliced(text.substring(110, text.length() - 100), property("d"));
+        // Short substrings, and those of a much longer String, are copied
+        assertEquals(text.substring(5, 50), property("small"));
+        assertEquals(text.substring(text.length() - 300), property("far"));
+    }
+
+    private static void assertSliced(String expected, Object value) {
+        assertTrue(value instanceof SlicedString);
+        assertEquals(expected.length(), ((CharSequence) value).length());
+        assertEquals(expected, value.toString());
+    }
+
+    @Test
+    public void shouldTokenizeBySlicing() {
+        Object result = eval("var text = ''; for (var i = 0; i < 20000; i++) text += 'token' + i + ';';"
+            + " var rest = String(text), count = 0, sum = 0;"
+            + " while (rest.length > 0) {"
+            + "   var end = rest.indexOf(';');"
+            + "   if (!rest.startsWith('token')) throw 'bad token';"
+            + "   sum += +rest.substring(5, end); count++;"
+            + "   rest = rest.slice(end + 1);"
+            + " }"
+            + " count + ' ' + sum");
+        assertEquals("20000 199990000", result);
+    }
+
+    @Test
+    public void shouldBehaveAsStrings() {
+        eval("var text = 'abcdefghij'.repeat(100), s = text.slice(1), t = text.slice(1);"
+            + " var map = new Map(); map.set(s, 1);");
+        assertEquals(Boolean.TRUE, eval("s === t && s == text.substring(1) && typeof s === 'string'"));
+        assertEquals(1, ((Number) eval("map.get(t)")).intValue());
+        assertEquals("bcd", eval("s.slice(0, 3)"));
+        assertEquals("string", eval("typeof s.slice(1)"));
+        assertEquals(text(999), eval("s"));
+        assertEquals(text(999).toUpperCase(), eval("s.toUpperCase()"));
+        assertEquals(Boolean.TRUE, eval("s.includes('jab') && !s.includes('jb') && s.endsWith('ij')"));
+        assertEquals(999, ((Number) eval("s.lastIndexOf('j') + 1")).intValue());
+        assertEquals("{\"s\":\"" + text(999) + "\"}", eval("JSON.stringify({s: s})"));
+    }
+
+    private static String text(int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1000) {
+            sb.append("abcdefghij");
+        }
+        return sb.substring(1000 - length);
+    }
+
+    @Test
+    public void shouldSearchWithinTheSubstring() {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        String base = sb.toString();
+        for (int round = 0; round < 200; round++) {
+            int begin = random.nextInt(1000);
+            int end = base.length() - random.nextInt(1000);
+            SlicedString sliced = new SlicedString(base, begin, end);
+            String expected = base.substring(begin, end);
+            String search = base.substring(random.nextInt(3990)).substring(0, 1 + random.nextInt(4));
+            int from = random.nextInt(expected.length() + 10) - 5;
+            assertEquals(expected.indexOf(search, from), sliced.indexOf(search, from));
+            assertEquals(expected.startsWith(search, from), sliced.startsWith(search, from));
+            // Matches just past the end do not count
+            String tail = base.substring(end - 1, end + 1);
+            assertEquals(expected.indexOf(tail, expected.length() - 5),
+                sliced.indexOf(tail, expected.length() - 5));
+            assertFalse(sliced.startsWith(tail, expected.length() - 1));
+        }
+        assertEquals(2, new SlicedString(base, 1, 3).indexOf("", 5));
+    }
+}
@@ -0,0 +1,121 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Tests for objects created with FEATURE_THREAD_SAFE_OBJECTS, whose properties
+ * are read without locking while other threads modify them.
+ */
+public class ThreadSafeSlotMapTest {
+
+    private static final ContextFactory factory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    @Test
+    public void properties() {
+        Object result = factory.call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope,
+                "var o = {};\n"
+                + "for (var i = 0; i < 100; i++) o['p' + i] = i;\n"
+                + "for (var i = 0; i < 100; i += 3) delete o['p' + i];\n"
+                + "Object.defineProperty(o, 'p1', { get: function() { return 'g'; } });\n"
+                + "Object.defineProperty(o, 'p1', { value: 'v' });\n"
+                + "o[5] = 'five'; delete o.p2;\n"
+                + "var keys = Object.keys(o);\n"
+                + "[keys.length, keys[0], keys[1], keys[keys.length - 1], o.p1, o.p4, o.p3, o[5]].join()",
+                "test", 1, null));
+        });
+        assertEquals("66,5,p1,p98,v,4,,five", result);
+    }
+
+    @Test
+    public void largeObject() {
+        Object result = factory.call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope,
+                "var o = {};\n"
+                + "for (var i = 0; i < 3000; i++) o['p' + i] = i;\n"
+                + "for (var i = 0; i < 3000; i += 3) delete o['p' + i];\n"
+                + "Object.defineProperty(o, 'p1', { get: function() { return 'g'; } });\n"
+                + "o[5] = 'five'; o.q = 'q';\n"
+                + "var keys = Object.keys(o);\n"
+                + "[keys.length, keys[0], keys[1], keys[keys.length - 1], o.p1, o.p4, o.p3, o[5]].join()",
+                "test", 1, null));
+        });
+        assertEquals("2002,5,p1,q,g,4,,five", result);
+    }
+
+    @Test
+    public void readWhileWriting() throws InterruptedException {
+        final ScriptableObject obj = (ScriptableObject) factory.call(cx -> {
+            ScriptableObject o = (ScriptableObject) cx.newObject(cx.initStandardObjects());
+            for (int i = 0; i < 10; i++) {
+                o.put("stable" + i, o, Integer.valueOf(i));
+            }
+            return o;
+        });
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final Thread writer = new Thread(() -> factory.call(cx -> {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 500; i++) {
+                    obj.put("p" + i, obj, Integer.valueOf(i));
+                }
+                for (int i = 0; i < 500; i++) {
+                    obj.delete("p" + i);
+                }
+            }
+            return null;
+        }));
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> factory.call(cx -> {
+                while (writer.isAlive()) {
+                    for (int i = 0; i < 10; i++) {
+                        Object v = obj.get("stable" + i, obj);
+                        if (!Integer.valueOf(i).equals(v)) {
+                            failure.set("stable" + i + " was " + v);
+                        }
+                    }
+                    Object p = obj.get("p7", obj);
+                    if (p != Scriptable.NOT_FOUND && !Integer.valueOf(7).equals(p)) {
+                        failure.set("p7 was " + p);
+                    }
+                }
+                return null;
+            }));
+        }
+        writer.start();
+        for (Thread t : readers) {
+            t.start();
+        }
+        writer.join();
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertNull(failure.get());
+        assertEquals(10, obj.getIds().length);
+    }
+}
@@ -0,0 +1,180 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.TieredCompilation;
+
+/**
+ * Tests for the promotion of hot interpreted functions to compiled code. The
+ * compiler runs synchronously here, so a function is compiled as soon as it
+ * reaches the threshold.
+ */
+public class TieredCompilationTest {
+
+    private static final int THRESHOLD = 10;
+
+    private TieredCompilation tiers;
+
+    private void assertScript(String expected, String script) {
+        assertScript(new TieredCompilation(THRESHOLD, 9, Runnable::run),
+                     expected, script);
+    }
+
+    private void assertScript(TieredCompilation tieredCompilation,
+                              String expected, String script) {
+        tiers = tieredCompilation;
+        ContextFactory factory = new ContextFactory();
+        factory.setTieredCompilation(tiers);
+        String result = (String) factory.call(cx -> {
+            cx.setOptimizationLevel(-1);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "isCompiled", new IsCompiled());
+            return Context.toString(
+                cx.evaluateString(scope, script, "test.js", 1, null));
+        });
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Returns true if it was called from compiled code.
+     */
+    private static class IsCompiled extends BaseFunction {
+        @Override
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj,
+                           Object[] args) {
+            for (StackTraceElement e : new Throwable().getStackTrace()) {
+                if (e.getClassName().startsWith("org.mozilla.javascript.gen.")) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    }
+
+    @Test
+    public void hotFunctionIsCompiled() {
+        assertScript("false,true,380",
+            "function f(x) { return [isCompiled(), x * 2]; }\n"
+            + "var first = f(0)[0], last, sum = 0;\n"
+            + "for (var i = 0; i < 20; i++) { var r = f(i); last = r[0]; sum += r[1]; }\n"
+            + "[first, last, sum].join()");
+        assertEquals(1, tiers.getCompiledCount());
+    }
+
+    @Test
+    public void loopsCount() {
+        assertScript("false,true",
+            "function f(n) { for (var i = 0; i < n; i++) {} return isCompiled(); }\n"
+            + "[f(100), f(1)].join()");
+    }
+
+    @Test
+    public void coldFunctionIsInterpreted() {
+        assertScript("false",
+            "function f() { return isCompiled(); }\n"
+            + "f(); f(); f()");
+        assertEquals(0, tiers.getCompiledCount());
+    }
+
+    @Test
+    public void functionsNeedingActivationAreInterpreted() {
+        assertScript("false,false,false",
+            "function a() { return arguments.length ? isCompiled() : 0; }\n"
+            + "function c() { var x = isCompiled(); return function() { return x; }; }\n"
+            + "var o = { m() { return isCompiled(); } };\n"
+            + "var r = [];\n"
+            + "for (var i = 0; i < 20; i++) { r[0] = a(1); r[1] = c()(); r[2] = o.m(); }\n"
+            + "r.join()");
+        assertEquals(1, tiers.getFailedCount());
+    }
+
+    @Test
+    public void sameScopeAndPrototype() {
+        assertScript("6,true,p,true,true",
+            "var k = 1;\n"
+            + "function P(x) { this.x = x + k; }\n"
+            + "P.prototype.get = function() { return 'p'; };\n"
+            + "var o;\n"
+            + "for (var i = 0; i < 20; i++) { o = new P(i); }\n"
+            + "k = 5; o = new P(1);\n"
+            + "[o.x, o instanceof P, o.get(), o.constructor === P, P.prototype.get.call(o) === 'p'].join()");
+    }
+
+    @Test
+    public void closuresAndNamedExpressions() {
+        assertScript("10,15,120,true",
+            "function make(n) { return function(x) { return x + n; }; }\n"
+            + "var add5 = make(5), add10 = make(10), r1, r2;\n"
+            + "for (var i = 0; i < 20; i++) { r1 = add5(5); r2 = add10(5); }\n"
+            + "var fact = function f(n) { return n <= 1 ? 1 : n * f(n - 1); }, r3;\n"
+            + "for (var i = 0; i < 20; i++) { r3 = fact(5); }\n"
+            + "var g = function h() { return isCompiled(); }, r4;\n"
+            + "for (var i = 0; i < 20; i++) { r4 = g(); }\n"
+            + "[r1, r2, r3, r4].join()");
+    }
+
+    @Test
+    public void ownNameIsTheInterpretedFunction() {
+        assertScript("T,true,true,true",
+            "g.tag = 'T';\n"
+            + "function g() { return g.tag; }\n"
+            + "function h() { return [h, isCompiled()]; }\n"
+            + "var e = function k() { return k; };\n"
+            + "var tags = '', same = true, sameE = true, compiled;\n"
+            + "for (var i = 0; i < 20; i++) {\n"
+            + "  tags += g(); var r = h(); same = same && r[0] === h; compiled = r[1];\n"
+            + "  sameE = sameE && e() === e;\n"
+            + "}\n"
+            + "[tags.replace(/T+/, 'T'), same, sameE, compiled].join()");
+    }
+
+    @Test
+    public void strictMode() {
+        assertScript("true,true",
+            "'use strict';\n"
+            + "function f() {\n"
+            + "  try { undeclared = 1; } catch (e) { return e instanceof ReferenceError; }\n"
+            + "}\n"
+            + "function g() { return isCompiled(); }\n"
+            + "var r = [];\n"
+            + "for (var i = 0; i < 20; i++) { r[0] = f(); r[1] = g(); }\n"
+            + "r.join()");
+    }
+
+    @Test
+    public void lineNumbers() {
+        assertScript("4,true",
+            "var x = 0;\n"
+            + "function f(fail) {\n"
+            + "  if (fail)\n"
+            + "    undefined.foo;\n"
+            + "  return isCompiled();\n"
+            + "}\n"
+            + "var compiled;\n"
+            + "for (var i = 0; i < 20; i++) { compiled = f(false); }\n"
+            + "try { f(true); } catch (e) { x = e.lineNumber; }\n"
+            + "[x, compiled].join()");
+    }
+
+    @Test
+    public void backgroundCompilation() {
+        TieredCompilation background = new TieredCompilation(THRESHOLD, 9, null);
+        assertScript(background, "true",
+            "function f() { return isCompiled(); }\n"
+            + "var r = false;\n"
+            + "for (var i = 0; i < 1000000 && !r; i++) { r = f(); }\n"
+            + "r");
+        assertEquals(1, background.getCompiledCount());
+    }
+}
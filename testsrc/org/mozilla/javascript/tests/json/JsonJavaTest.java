@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.NativeJSON;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests for parsing JSON into Java collections, and for stringifying them.
+ */
+public class JsonJavaTest {
+
+    @Test
+    public void shouldParseIntoJavaValues() throws IOException {
+        String json = "{\"b\": [1, 2.5, 12345678901, -9007199254740993, 1e3, \"s\", true, null],"
+            + " \"a\": {}, \"1\": []}";
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("b", Arrays.<Object>asList(1, 2.5, 12345678901L, -9007199254740993L, 1000,
+            "s", true, null));
+        expected.put("a", new LinkedHashMap<String, Object>());
+        expected.put("1", new ArrayList<Object>());
+
+        Object value = NativeJSON.parseJava(json);
+        assertEquals(expected, value);
+        // The members keep the order of the text
+        assertEquals(Arrays.asList("b", "a", "1"), new ArrayList<String>(((Map<String, ?>) value).keySet()));
+        assertEquals(expected, NativeJSON.parseJavaReader(new StringReader(json)));
+        assertEquals(123456789012345678901.0, NativeJSON.parseJava("123456789012345678901"));
+        assertEquals(-0.0, NativeJSON.parseJava("-0"));
+        assertEquals(0, NativeJSON.parseJava("0"));
+    }
+
+    @Test
+    public void shouldFailToParseInvalidText() {
+        try {
+            NativeJSON.parseJava("{\"a\": }");
+            fail();
+        } catch (EcmaError e) {
+            assertEquals("SyntaxError", e.getName());
+        }
+    }
+
+    @Test
+    public void shouldStringifyJavaValues() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("list", Arrays.asList(1, 2.5, "x\n", 'c', null, Double.NaN));
+        map.put("long", 9007199254740993L);
+        map.put("big", new BigInteger("123456789012345678901"));
+        map.put("array", new int[] { 1, 2 });
+        map.put("strings", new String[] { "a" });
+        map.put("skipped", new Object());
+        map.put("empty", new LinkedHashMap<String, Object>());
+
+        String expected = "{\"list\":[1,2.5,\"x\\n\",\"c\",null,null],\"long\":9007199254740993,"
+            + "\"big\":123456789012345678901,\"array\":[1,2],\"strings\":[\"a\"],\"empty\":{}}";
+        assertEquals(expected, NativeJSON.stringifyJava(map, null));
+        assertEquals("[\n  {},\n  [\n    true\n  ]\n]",
+            NativeJSON.stringifyJava(Arrays.asList(map.get("empty"), Arrays.asList(true)), 2));
+        assertNull(NativeJSON.stringifyJava(new Object(), null));
+
+        StringWriter writer = new StringWriter();
+        assertTrue(NativeJSON.stringifyJava(map, null, writer));
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void shouldDetectCycles() {
+        List<Object> list = new ArrayList<Object>();
+        list.add(list);
+        try {
+            NativeJSON.stringifyJava(list, null);
+            fail();
+        } catch (EcmaError e) {
+            assertEquals("TypeError", e.getName());
+        }
+    }
+
+    @Test
+    public void shouldStringifyWrappedAndScriptValues() {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("n", 7L);
+            scope.put("map", scope, map);
+            Object wrapped = cx.evaluateString(scope, "map", "test", 1, null);
+            assertEquals("{\"n\":7}", NativeJSON.stringifyJava(wrapped, null));
+
+            Object object = cx.evaluateString(scope,
+                "({a: [1, 'b'], d: {toJSON: function() { return 'date'; }}})", "test", 1, null);
+            assertEquals("[{\"a\":[1,\"b\"],\"d\":\"date\"}]",
+                NativeJSON.stringifyJava(Arrays.asList(object), null));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void shouldStringifyScriptValuesWithoutContext() {
+        Object object;
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            object = cx.evaluateString(scope,
+                "({a: 1, d: {toJSON: function(key) { return key + '!'; }}})", "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+        assertNull(Context.getCurrentContext());
+        assertEquals("{\"a\":1,\"d\":\"d!\"}", NativeJSON.stringifyJava(object, null));
+        assertNull(Context.getCurrentContext());
+    }
+}
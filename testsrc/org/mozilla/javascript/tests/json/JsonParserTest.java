@@ -5,6 +5,7 @@
 package org.mozilla.javascript.tests.json;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import org.junit.After;
 import org.junit.Before;
@@ -56,6 +57,7 @@ public class JsonParserTest {
     public void shouldParseJsonNumbers() throws Exception {
         assertEquals(1, parser.parseValue("1"));
         assertEquals(-1, parser.parseValue("-1"));
+        assertEquals(-0.0, parser.parseValue("-0"));
         assertEquals(1.5, parser.parseValue("1.5"));
         assertEquals(1.5e13, parser.parseValue("1.5e13"));
         assertEquals(1.0e16, parser.parseValue("9999999999999999"));
@@ -113,6 +115,22 @@ public class JsonParserTest {
         parser.parseValue(str('"', '\n', '"'));
     }
 
+    @Test
+    public void shouldReportInvalidCharacterCodes() throws Exception {
+        assertParseError("Invalid character code: 12G4", "\"\\u12G4\"");
+        assertParseError("Invalid character code: 00aX", "\"\\u00aX\"");
+        assertParseError("Invalid character code: \\u0g\"", "\"\\u0g\"");
+    }
+
+    private void assertParseError(String message, String json) {
+        try {
+            parser.parseValue(json);
+            fail();
+        } catch (ParseException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
     @Test
     public void shouldParseEmptyJsonArray() throws Exception {
         assertEquals(0, ((NativeArray) parser.parseValue("[]")).getLength() );
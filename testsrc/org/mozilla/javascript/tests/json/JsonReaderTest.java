@@ -0,0 +1,179 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Callable;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.NativeJSON;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.json.JsonParser;
+import org.mozilla.javascript.json.JsonParser.ParseException;
+
+/**
+ * Tests for parsing JSON text from a Reader, which is read in chunks.
+ */
+public class JsonReaderTest {
+    private Context cx;
+    private Scriptable scope;
+    private JsonParser parser;
+
+    @Before
+    public void setUp() {
+        cx = Context.enter();
+        scope = cx.initStandardObjects();
+        parser = new JsonParser(cx, scope);
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    /**
+     * A reader that returns at most one char from each read, so that every
+     * token crosses the end of the buffered chars.
+     */
+    private static class TrickleReader extends Reader {
+        private final String s;
+        private int pos;
+
+        TrickleReader(String s) {
+            this.s = s;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos == s.length()) {
+                return -1;
+            }
+            cbuf[off] = s.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private String stringify(Object value) {
+        return (String) NativeJSON.stringify(cx, scope, value, null, null);
+    }
+
+    private void assertSameAsString(String json) throws Exception {
+        String expected = stringify(parser.parseValue(json));
+        assertEquals(expected, stringify(parser.parseReader(new StringReader(json))));
+        assertEquals(expected, stringify(parser.parseReader(new TrickleReader(json))));
+    }
+
+    @Test
+    public void shouldParseLikeString() throws Exception {
+        assertSameAsString("null");
+        assertSameAsString(" -12.5e-3 ");
+        assertSameAsString("[1, 2.5, -0, 1e400, true, false, null, \"\"]");
+        assertSameAsString("{\"a\": {\"b\": [\"c\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0041\\u00e9\"]}, \"2\": {}}");
+        assertSameAsString("[[], {}, [[]], {\"\": []}]");
+    }
+
+    @Test
+    public void shouldParseTokensLongerThanTheBuffer() throws Exception {
+        StringBuilder text = new StringBuilder();
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append((char) ('a' + i % 26));
+            digits.append((char) ('1' + i % 9));
+            if (i % 5000 == 0) {
+                text.append("\\u20AC");
+            }
+        }
+        String json = "[\"" + text + "\", " + digits + ", \"" + text + "\"]";
+        assertSameAsString(json);
+
+        StringBuilder array = new StringBuilder("[");
+        for (int i = 0; i < 10000; i++) {
+            array.append(i == 0 ? "" : ",").append("{\"key").append(i).append("\": ").append(i).append('}');
+        }
+        assertSameAsString(array.append(']').toString());
+    }
+
+    @Test
+    public void shouldFailLikeString() throws Exception {
+        String[] invalid = {
+            "", " ", "[1,]", "{\"a\" 1}", "\"abc", "\"a\\u00g0\"", "\"\\x\"", "tru",
+            "nul", "01", "-", "1.", "1e", "[1] 2", "\"\t\"", "{", "[", "\"\\"
+        };
+        for (String json : invalid) {
+            String message = null;
+            try {
+                parser.parseValue(json);
+                fail(json);
+            } catch (ParseException e) {
+                message = e.getMessage();
+            }
+            for (Reader reader : new Reader[] { new StringReader(json), new TrickleReader(json) }) {
+                try {
+                    parser.parseReader(reader);
+                    fail(json);
+                } catch (ParseException e) {
+                    assertEquals(message, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldParseFromNativeJson() throws Exception {
+        byte[] bytes = "{\"price\": \"\u20ac 5\", \"list\": [1, 2]}".getBytes(StandardCharsets.UTF_8);
+        Object value = NativeJSON.parseStream(cx, scope, new ByteArrayInputStream(bytes));
+        assertEquals("{\"price\":\"\u20ac 5\",\"list\":[1,2]}", stringify(value));
+
+        Object revived = cx.evaluateString(scope,
+            "(function(k, v) { return typeof v === 'number' ? undefined : v; })", "test", 1, null);
+        value = NativeJSON.parseReader(cx, scope, new StringReader("{\"a\": 1, \"b\": \"x\"}"),
+            (Callable) revived);
+        assertEquals("{\"b\":\"x\"}", stringify(value));
+
+        try {
+            NativeJSON.parseReader(cx, scope, new StringReader("[1,"));
+            fail();
+        } catch (EcmaError e) {
+            assertEquals("SyntaxError", e.getName());
+        }
+    }
+
+    @Test
+    public void shouldPropagateReadErrors() throws Exception {
+        final IOException failure = new IOException("broken");
+        Reader broken = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                throw failure;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            NativeJSON.parseReader(cx, scope, broken);
+            fail();
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+    }
+}
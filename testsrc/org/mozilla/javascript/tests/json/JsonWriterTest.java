@@ -0,0 +1,129 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.javascript.tests.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.NativeJSON;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+
+/**
+ * Tests for JSON.stringify, and for writing its text to a Writer.
+ */
+public class JsonWriterTest {
+    private Context cx;
+    private Scriptable scope;
+
+    @Before
+    public void setUp() {
+        cx = Context.enter();
+        scope = cx.initStandardObjects();
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    private Object eval(String source) {
+        return cx.evaluateString(scope, source, "test", 1, null);
+    }
+
+    private void assertStringify(String expected, String source) {
+        assertEquals(expected, eval(source));
+    }
+
+    @Test
+    public void shouldStringifyValues() {
+        assertStringify("[1,-2.5,null,null,\"a\\\"\\\\\\n\\u0001\\u001fé\",true,null,null]",
+            "JSON.stringify([1, -2.5, NaN, -Infinity, 'a\"\\\\\\n\\u0001\\u001fé',"
+            + " true, null, undefined])");
+        assertStringify("{\"a\":1,\"1\":{},\"c\":[]}",
+            "JSON.stringify({a: 1, b: undefined, 1: {}, c: [], d: function() {}})");
+        assertStringify("[4.5,\"s\",false]",
+            "JSON.stringify([new Number(4.5), new String('s'), new Boolean(false)])");
+        assertEquals(Undefined.instance, eval("JSON.stringify(undefined)"));
+    }
+
+    @Test
+    public void shouldStringifyNumberArrays() {
+        assertStringify("[1,2,3,null,null]", "var a = [1, 2, 3]; a.length = 5; JSON.stringify(a)");
+        assertStringify("[0.5,null,1e+21,null]", "JSON.stringify([0.5, NaN, 1e21, Infinity])");
+        assertStringify("[2,3]", "JSON.stringify([1, 2], function(k, v) {"
+            + " return typeof v === 'number' ? v + 1 : v; })");
+        assertStringify("[1,\"x\"]", "Array.prototype[1] = 'x';"
+            + " var s = JSON.stringify([1, , ]); delete Array.prototype[1]; s");
+    }
+
+    @Test
+    public void shouldIndent() {
+        assertStringify("{\n  \"a\": [\n    1,\n    {}\n  ],\n  \"b\": []\n}",
+            "JSON.stringify({a: [1, {}], b: []}, null, 2)");
+        assertStringify("[\n--[\n----1\n--]\n]", "JSON.stringify([[1]], null, '--')");
+    }
+
+    @Test
+    public void shouldCallToJson() {
+        assertStringify("{\"d\":\"key d\",\"n\":{\"x\":1,\"toJSON\":1}}",
+            "JSON.stringify({d: {toJSON: function(k) { return 'key ' + k; }},"
+            + " n: {x: 1, toJSON: 1}})");
+    }
+
+    @Test
+    public void shouldDetectCycles() {
+        try {
+            eval("var a = {b: [1]}; a.b.push(a); JSON.stringify(a)");
+            fail();
+        } catch (EcmaError e) {
+            assertEquals("TypeError", e.getName());
+        }
+        // The same object may appear more than once if it is not its own child
+        assertStringify("[{},{},{\"a\":{}}]", "var o = {}; JSON.stringify([o, o, {a: o}])");
+    }
+
+    @Test
+    public void shouldWriteToWriter() throws IOException {
+        Object value = eval("var a = []; for (var i = 0; i < 5000; i++) a.push({i: i, s: 'text ' + i}); a");
+        String expected = (String) NativeJSON.stringify(cx, scope, value, null, 1);
+
+        final int[] writes = {0};
+        StringWriter text = new StringWriter();
+        Writer writer = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                writes[0]++;
+                text.write(cbuf, off, len);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertTrue(NativeJSON.stringify(cx, scope, value, null, 1, writer));
+        assertEquals(expected, text.toString());
+        assertTrue(writes[0] > 1);
+
+        text.getBuffer().setLength(0);
+        assertFalse(NativeJSON.stringify(cx, scope, Undefined.instance, null, null, writer));
+        assertEquals("", text.toString());
+    }
+}